@@ -5,6 +5,8 @@
  */
 package org.jboss.elasticsearch.river.sysinfo;
 
+import java.util.Map;
+
 import org.elasticsearch.river.RiverName;
 
 /**
@@ -42,4 +44,11 @@ public interface IRiverMgm {
    */
   public abstract boolean changeIndexerPeriod(String[] indexerNames, long indexingPeriod);
 
+  /**
+   * Get runtime statistics of river and its indexers.
+   * 
+   * @return map with statistics, never null
+   */
+  public abstract Map<String, Object> getStatistics();
+
 }
\ No newline at end of file
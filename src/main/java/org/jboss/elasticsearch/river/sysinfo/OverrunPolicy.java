@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import org.elasticsearch.common.settings.SettingsException;
+
+/**
+ * Enum with policies applied by {@link SysinfoIndexer} when indexing cycle takes longer than indexing period (overrun).
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public enum OverrunPolicy {
+
+  /**
+   * Cycles missed during overrun are skipped, next cycle starts at next regular time.
+   */
+  SKIP("skip"),
+  /**
+   * Cycles missed during overrun are coalesced into one cycle started immediately.
+   */
+  COALESCE("coalesce"),
+  /**
+   * Period is stretched to the shortest multiple of configured period overrunning cycle fits into, so next cycles start
+   * at stretched period. Stretched period shrinks back by one configured period after each cycle which fits into
+   * shorter period.
+   */
+  STRETCH("stretch");
+
+  private String name;
+
+  private OverrunPolicy(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Get name of this policy. Used in config files also.
+   * 
+   * @return name of policy
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get enum value based on String value read from configuration file.
+   * 
+   * @param value to be parsed (values stored in {@link #name} are supported here)
+   * @param defaultValue returned if value is empty
+   * @return Enum value
+   * @throws SettingsException for bad value
+   */
+  public static OverrunPolicy parseConfiguration(String value, OverrunPolicy defaultValue) throws SettingsException {
+    if (Utils.isEmpty(value)) {
+      return defaultValue;
+    }
+    for (OverrunPolicy t : values()) {
+      if (t.getName().equalsIgnoreCase(value.trim()))
+        return t;
+    }
+    throw new SettingsException("indexers/overrun_policy contains unsupported name: " + value);
+  }
+
+}
@@ -7,6 +7,11 @@ package org.jboss.elasticsearch.river.sysinfo;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 /**
  * Abstraction interface used to read status info from ES cluster over distinct protocols.
@@ -16,8 +21,48 @@ import java.util.Map;
 public interface SourceClient {
 
   /**
-   * Read status information of given type from ES cluster.
+   * Prepare plan of request to read status information of given type with given params. Called once when indexer is
+   * configured, returned plan is then passed to each {@link #readSysinfoBytes(SysinfoRequestPlan)} call.
+   * 
+   * @param infoType type of information to read
+   * @param params additional params from info obtaining
+   * @return immutable request plan
+   */
+  public SysinfoRequestPlan prepareRequestPlan(SysinfoType infoType, Map<String, String> params);
+
+  /**
+   * Read status information from ES cluster as UTF-8 encoded JSON bytes, without any charset conversion.
    * 
+   * @param plan of request prepared by {@link #prepareRequestPlan(SysinfoType, Map)}
+   * @return read information
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public BytesReference readSysinfoBytes(SysinfoRequestPlan plan) throws IOException, InterruptedException;
+
+  /**
+   * Read status information from ES cluster as JSON parser, so big information can be processed incrementally.
+   * 
+   * @param plan of request prepared by {@link #prepareRequestPlan(SysinfoType, Map)}
+   * @return parser of read information, must be closed by caller
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public XContentParser readSysinfoParser(SysinfoRequestPlan plan) throws IOException, InterruptedException;
+
+  /**
+   * Read status information from ES cluster asynchronously, so calling thread doesn't wait for response. Listener may
+   * be called from I/O thread of the client, so it must not block.
+   * 
+   * @param plan of request prepared by {@link #prepareRequestPlan(SysinfoType, Map)}
+   * @param listener notified about read information or failure of read, may be null
+   * @return future of read information
+   */
+  public Future<BytesReference> readSysinfoBytesAsync(SysinfoRequestPlan plan, ActionListener<BytesReference> listener);
+
+  /**
+   * Read status information of given type from ES cluster as string. Request plan is prepared for each call, use
+   * {@link #readSysinfoBytes(SysinfoRequestPlan)} for repeated reads.
    * 
    * @param infoType type of information to read
    * @param params additional params from info obtaining
@@ -28,6 +73,13 @@ public interface SourceClient {
   public String readSysinfoValue(SysinfoType infoType, Map<String, String> params) throws IOException,
       InterruptedException;
 
+  /**
+   * Get statistics of this client.
+   * 
+   * @return map with statistics, empty if client has no statistics
+   */
+  public Map<String, Object> getStatistics();
+
   /**
    * Start client to be used.
    */
@@ -6,7 +6,15 @@
 package org.jboss.elasticsearch.river.sysinfo;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 /**
  * Abstract base implementation of {@link SourceClient} interface for simpler implementations.
@@ -18,9 +26,26 @@ public abstract class SourceClientBase implements SourceClient {
   @Override
   public String readSysinfoValue(SysinfoType infoType, Map<String, String> params) throws IOException,
       InterruptedException {
+    BytesReference value = readSysinfoBytes(prepareRequestPlan(infoType, params));
+    return value != null ? value.toUtf8() : null;
+  }
+
+  /**
+   * Plan with type and params only by default, override to precompute client specific request parts.
+   */
+  @Override
+  public SysinfoRequestPlan prepareRequestPlan(SysinfoType infoType, Map<String, String> params) {
     if (infoType == null)
       throw new IllegalArgumentException("infoType parameter must be defined");
-    switch (infoType) {
+    return new SysinfoRequestPlan(infoType, params);
+  }
+
+  @Override
+  public BytesReference readSysinfoBytes(SysinfoRequestPlan plan) throws IOException, InterruptedException {
+    if (plan == null || plan.getInfoType() == null)
+      throw new IllegalArgumentException("infoType parameter must be defined");
+    Map<String, String> params = plan.getParams();
+    switch (plan.getInfoType()) {
     case CLUSTER_HEALTH:
       return readClusterHealthInfo(params);
     case CLUSTER_STATE:
@@ -41,113 +66,188 @@ public abstract class SourceClientBase implements SourceClient {
       return readIndicesSegmentsInfo(params);
     case INDICES_RECOVERY:
       return readIndicesRecoveryInfo(params);
+    case LOCAL_NODE_STATS:
+      return readLocalNodeStatsInfo(params);
     default:
-      throw new UnsupportedOperationException("Unsupported information type: " + infoType);
+      throw new UnsupportedOperationException("Unsupported information type: " + plan.getInfoType());
+    }
+  }
+
+  /**
+   * Parser over information read by {@link #readSysinfoBytes(SysinfoRequestPlan)} by default, override if client is able
+   * to stream information.
+   */
+  @Override
+  public XContentParser readSysinfoParser(SysinfoRequestPlan plan) throws IOException, InterruptedException {
+    BytesReference value = readSysinfoBytes(plan);
+    if (value == null)
+      throw new IOException("No information read for " + plan.getInfoType());
+    return XContentHelper.createParser(value);
+  }
+
+  /**
+   * Information is read by {@link #readSysinfoBytes(SysinfoRequestPlan)} in calling thread by default, override if
+   * client is able to read asynchronously.
+   */
+  @Override
+  public Future<BytesReference> readSysinfoBytesAsync(SysinfoRequestPlan plan, ActionListener<BytesReference> listener) {
+    PlainActionFuture<BytesReference> ret = PlainActionFuture.newFuture();
+    BytesReference value;
+    try {
+      value = readSysinfoBytes(plan);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      notifyFailure(ret, listener, e);
+      return ret;
+    } catch (Exception e) {
+      notifyFailure(ret, listener, e);
+      return ret;
     }
+    ret.onResponse(value);
+    if (listener != null)
+      listener.onResponse(value);
+    return ret;
+  }
+
+  /**
+   * Complete future and notify listener about failure of asynchronous read.
+   * 
+   * @param future to complete
+   * @param listener to notify, may be null
+   * @param failure of read
+   */
+  protected static void notifyFailure(PlainActionFuture<BytesReference> future, ActionListener<BytesReference> listener,
+      Throwable failure) {
+    future.onFailure(failure);
+    if (listener != null)
+      listener.onFailure(failure);
+  }
+
+  /**
+   * No statistics by default.
+   */
+  @Override
+  public Map<String, Object> getStatistics() {
+    return new LinkedHashMap<String, Object>();
   }
 
   /**
    * Load information for {@link SysinfoType#CLUSTER_STATE} type.
    * 
    * @param params configured to narrow down information
-   * @return information JSON string
+   * @return information JSON bytes
    * @throws IOException
    * @throws InterruptedException
    */
-  protected abstract String readClusterStateInfo(Map<String, String> params) throws IOException, InterruptedException;
+  protected abstract BytesReference readClusterStateInfo(Map<String, String> params) throws IOException, InterruptedException;
 
   /**
    * Load information for {@link SysinfoType#CLUSTER_HEALTH} type.
    * 
    * @param params configured to narrow down information
-   * @return information JSON string
+   * @return information JSON bytes
    * @throws IOException
    * @throws InterruptedException
    */
-  protected abstract String readClusterHealthInfo(Map<String, String> params) throws IOException, InterruptedException;
+  protected abstract BytesReference readClusterHealthInfo(Map<String, String> params) throws IOException, InterruptedException;
 
   /**
    * Load information for {@link SysinfoType#CLUSTER_STATS} type.
-   *
+   * 
    * @param params
    * @return
    * @throws IOException
    * @throws InterruptedException
    */
-  protected abstract String readClusterStatsInfo(Map<String, String> params) throws IOException, InterruptedException;
+  protected abstract BytesReference readClusterStatsInfo(Map<String, String> params) throws IOException, InterruptedException;
 
   /**
    * Load information for {@link SysinfoType#PENDING_CLUSTER_TASKS} type.
-   *
+   * 
    * @param params
    * @return
    * @throws IOException
    * @throws InterruptedException
    */
-  protected abstract String readPendingClusterTasksInfo(Map<String, String> params) throws IOException, InterruptedException;
+  protected abstract BytesReference readPendingClusterTasksInfo(Map<String, String> params) throws IOException, InterruptedException;
 
   /**
    * Load information for {@link SysinfoType#CLUSTER_NODES_INFO} type.
    * 
    * @param params configured to narrow down information
-   * @return information JSON string
+   * @return information JSON bytes
    * @throws IOException
    * @throws InterruptedException
    */
-  protected abstract String readClusterNodesInfoInfo(Map<String, String> params) throws IOException,
+  protected abstract BytesReference readClusterNodesInfoInfo(Map<String, String> params) throws IOException,
       InterruptedException;
 
   /**
    * Load information for {@link SysinfoType#CLUSTER_NODES_STATS} type.
    * 
    * @param params configured to narrow down information
-   * @return information JSON string
+   * @return information JSON bytes
    * @throws IOException
    * @throws InterruptedException
    */
-  protected abstract String readClusterNodesStatsInfo(Map<String, String> params) throws IOException,
+  protected abstract BytesReference readClusterNodesStatsInfo(Map<String, String> params) throws IOException,
       InterruptedException;
 
   /**
    * Load information for {@link SysinfoType#INDICES_STATUS} type.
    * 
    * @param params configured to narrow down information
-   * @return information JSON string
+   * @return information JSON bytes
    * @throws IOException
    * @throws InterruptedException
    */
-  protected abstract String readIndicesStatusInfo(Map<String, String> params) throws IOException, InterruptedException;
+  protected abstract BytesReference readIndicesStatusInfo(Map<String, String> params) throws IOException, InterruptedException;
 
   /**
    * Load information for {@link SysinfoType#INDICES_STATS} type.
    * 
    * @param params configured to narrow down information
-   * @return information JSON string
+   * @return information JSON bytes
    * @throws IOException
    * @throws InterruptedException
    */
-  protected abstract String readIndicesStatsInfo(Map<String, String> params) throws IOException, InterruptedException;
+  protected abstract BytesReference readIndicesStatsInfo(Map<String, String> params) throws IOException, InterruptedException;
 
   /**
    * Load information for {@link SysinfoType#INDICES_SEGMENTS} type.
    * 
    * @param params configured to narrow down information
-   * @return information JSON string
+   * @return information JSON bytes
    * @throws IOException
    * @throws InterruptedException
    */
-  protected abstract String readIndicesSegmentsInfo(Map<String, String> params) throws IOException,
+  protected abstract BytesReference readIndicesSegmentsInfo(Map<String, String> params) throws IOException,
       InterruptedException;
 
   /**
    * Load information for {@link SysinfoType#INDICES_RECOVERY} type.
-   *
+   * 
    * @param params
-   * @return information JSON string
+   * @return information JSON bytes
    * @throws IOException
    * @throws InterruptedException
    */
-  protected abstract String readIndicesRecoveryInfo(Map<String, String> params) throws IOException,
+  protected abstract BytesReference readIndicesRecoveryInfo(Map<String, String> params) throws IOException,
       InterruptedException;
 
+  /**
+   * Load information for {@link SysinfoType#LOCAL_NODE_STATS} type. Not supported by default, as it is available for
+   * local connection only.
+   * 
+   * @param params configured to narrow down information
+   * @return information JSON bytes
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  protected BytesReference readLocalNodeStatsInfo(Map<String, String> params) throws IOException,
+      InterruptedException {
+    throw new UnsupportedOperationException("Information type " + SysinfoType.LOCAL_NODE_STATS.getName()
+        + " is available for local es_connection only");
+  }
+
 }
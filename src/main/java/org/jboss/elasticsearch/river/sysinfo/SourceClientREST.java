@@ -5,16 +5,34 @@
  */
 package org.jboss.elasticsearch.river.sysinfo;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.http.Consts;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.auth.AuthScope;
@@ -36,9 +54,17 @@ import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.Streams;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.jboss.elasticsearch.river.sysinfo.SysinfoEndpointBalancer.Endpoint;
 
 /**
  * {@link SourceClient} implementation using remote ES HTTP REST API calls.
@@ -47,11 +73,32 @@ import org.elasticsearch.common.settings.SettingsException;
  * 
  * <pre>
  * "es_connection" : {
- *   "type"     : "rest",
- *   "urlBase"  : "http://localhost:9200",
- *   "timeout"  : "1s",
- *   "username" : "aaaa",
- *   "pwd"      : "bbb"
+ *   "type"        : "rest",
+ *   "urlBase"     : "http://localhost:9200",
+ *   "timeout"     : "1s",
+ *   "username"    : "aaaa",
+ *   "pwd"         : "bbb",
+ *   "compression" : true
+ * }
+ * </pre>
+ * <p>
+ * <code>timeout</code> is used for requests whose plan has no {@link SysinfoRequestPlan#getTimeout()} defined. Requests
+ * in progress are aborted when client is closed, so connection is released immediately.
+ * <p>
+ * Compressed responses are requested if <code>compression</code> is true (default), and decompressed while read, so
+ * neither whole compressed nor decompressed response is buffered by the decompression. Count of bytes received and
+ * decompressed is recorded into statistics of client and into {@link SysinfoRequestPlan} of each read.
+ * <p>
+ * <code>urlBase</code> may contain list of more endpoints (nodes) of the cluster. Requests are then distributed over
+ * them by {@link SysinfoEndpointBalancer}, failed request is retried on other endpoint, and endpoint ejected after
+ * <code>failure_threshold</code> consecutive failures is probed each <code>probe_interval</code> until it's back:
+ * 
+ * <pre>
+ * "es_connection" : {
+ *   "type"              : "rest",
+ *   "urlBase"           : ["http://node1:9200", "http://node2:9200"],
+ *   "failure_threshold" : 3,
+ *   "probe_interval"    : "10s"
  * }
  * </pre>
  * 
@@ -63,14 +110,69 @@ public class SourceClientREST extends SourceClientBase {
 
 	protected static final String PARAM_INDEX = "index";
 
+	/**
+	 * Value of <code>Accept-Encoding</code> header sent if {@link #compression} is enabled.
+	 */
+	protected static final String ACCEPT_ENCODING = "gzip,deflate";
+
+	protected static final long DEFAULT_PROBE_INTERVAL = 10 * 1000;
+
 	private static final ESLogger logger = Loggers.getLogger(SourceClientREST.class);
 
 	protected CloseableHttpClient httpclient;
 
+	/**
+	 * Base URL of first configured endpoint.
+	 */
 	protected String restAPIUrlBase;
 
+	/**
+	 * Balancer of requests over endpoints, null if only one endpoint is configured.
+	 */
+	protected SysinfoEndpointBalancer balancer;
+
+	/**
+	 * Interval [ms] of probes of ejected endpoints.
+	 */
+	protected long probeInterval = DEFAULT_PROBE_INTERVAL;
+
+	/**
+	 * Scheduler of probes of ejected endpoints, exists only while client with {@link #balancer} is started.
+	 */
+	protected ScheduledExecutorService prober;
+
 	protected boolean isAuthConfigured = false;
 
+	/**
+	 * Credentials used for http basic authentication, null if not configured.
+	 */
+	protected CredentialsProvider credentialsProvider;
+
+	/**
+	 * Default configuration of requests, per request timeout is applied over it.
+	 */
+	protected RequestConfig requestConfig = RequestConfig.DEFAULT;
+
+	/**
+	 * Requests in progress, aborted when client is closed.
+	 */
+	protected final Set<HttpGet> activeRequests = Collections.newSetFromMap(new ConcurrentHashMap<HttpGet, Boolean>());
+
+	/**
+	 * Node level pool of buffers responses are read into, responses are read into new buffers if null.
+	 */
+	protected SysinfoBufferPool bufferPool;
+
+	/**
+	 * If true then compressed responses are requested.
+	 */
+	protected boolean compression = true;
+
+	protected long responsesCount = 0;
+	protected long compressedResponsesCount = 0;
+	protected long receivedBytes = 0;
+	protected long contentBytes = 0;
+
 	/**
 	 * Constructor performing configuration.
 	 * 
@@ -78,48 +180,77 @@ public class SourceClientREST extends SourceClientBase {
 	 * @throws SettingsException in case of configuration problem
 	 */
 	public SourceClientREST(Map<String, Object> sourceClientSettings) throws SettingsException {
+		this(sourceClientSettings, true);
+	}
+
+	/**
+	 * Constructor performing configuration.
+	 * 
+	 * @param sourceClientSettings Map of configuration parameters
+	 * @param createHttpClient if true then blocking {@link #httpclient} is created, subclass creates its own client
+	 *          otherwise
+	 * @throws SettingsException in case of configuration problem
+	 */
+	protected SourceClientREST(Map<String, Object> sourceClientSettings, boolean createHttpClient)
+			throws SettingsException {
 
-		restAPIUrlBase = prepareAPIURLFromBaseURL((String) sourceClientSettings.get("urlBase"));
-		if (restAPIUrlBase == null) {
+		List<String> urlBases = prepareAPIURLsFromBaseURLs(sourceClientSettings.get("urlBase"));
+		if (urlBases.isEmpty()) {
 			throw new SettingsException("Parameter es_connection/urlBase must be set!");
 		}
+		restAPIUrlBase = urlBases.get(0);
 
-		URL url = null;
-		try {
-			url = new URL(restAPIUrlBase);
-		} catch (MalformedURLException e) {
-			throw new SettingsException("Parameter es_connection/urlBase is malformed: " + e.getMessage());
+		List<URL> urls = new ArrayList<URL>();
+		for (String urlBase : urlBases) {
+			try {
+				urls.add(new URL(urlBase));
+			} catch (MalformedURLException e) {
+				throw new SettingsException("Parameter es_connection/urlBase is malformed: " + e.getMessage());
+			}
+		}
+		if (urlBases.size() > 1) {
+			balancer = new SysinfoEndpointBalancer(urlBases, configPositiveInteger(sourceClientSettings,
+					"failure_threshold", SysinfoEndpointBalancer.DEFAULT_FAILURE_THRESHOLD));
+			probeInterval = Utils.parseTimeValue(sourceClientSettings, "probe_interval", DEFAULT_PROBE_INTERVAL,
+					TimeUnit.MILLISECONDS);
 		}
-
-		PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager();
-		connManager.setDefaultMaxPerRoute(20);
-		connManager.setMaxTotal(20);
-
-		ConnectionConfig connectionConfig = ConnectionConfig.custom().setCharset(Consts.UTF_8).build();
-		connManager.setDefaultConnectionConfig(connectionConfig);
-
-		HttpClientBuilder clientBuilder = HttpClients.custom().setConnectionManager(connManager);
 
 		int timeout = (int) Utils.parseTimeValue(sourceClientSettings, "timeout", 5, TimeUnit.SECONDS);
-		RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(timeout).setConnectTimeout(timeout).build();
-		clientBuilder.setDefaultRequestConfig(requestConfig);
+		compression = XContentMapValues.nodeBooleanValue(sourceClientSettings.get("compression"), true);
+		requestConfig = RequestConfig.custom().setSocketTimeout(timeout).setConnectTimeout(timeout).build();
 
 		String username = Utils.trimToNull((String) sourceClientSettings.get("username"));
 		String password = (String) sourceClientSettings.get("pwd");
 		if (!Utils.isEmpty(username)) {
 			if (password != null) {
-				String host = url.getHost();
-				CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-				credentialsProvider.setCredentials(new AuthScope(host, AuthScope.ANY_PORT), new UsernamePasswordCredentials(
-						username, password));
-				clientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+				credentialsProvider = new BasicCredentialsProvider();
+				for (URL url : urls) {
+					credentialsProvider.setCredentials(new AuthScope(url.getHost(), AuthScope.ANY_PORT),
+							new UsernamePasswordCredentials(username, password));
+				}
 				isAuthConfigured = true;
 			} else {
 				logger.warn("Password not found so authentication is not used!");
 				username = null;
 			}
 		}
-		httpclient = clientBuilder.build();
+
+		if (createHttpClient) {
+			PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager();
+			connManager.setDefaultMaxPerRoute(20);
+			connManager.setMaxTotal(20);
+
+			ConnectionConfig connectionConfig = ConnectionConfig.custom().setCharset(Consts.UTF_8).build();
+			connManager.setDefaultConnectionConfig(connectionConfig);
+
+			// responses are decompressed by this client, so compressed bytes can be counted
+			HttpClientBuilder clientBuilder = HttpClients.custom().setConnectionManager(connManager)
+					.disableContentCompression();
+			clientBuilder.setDefaultRequestConfig(requestConfig);
+			if (credentialsProvider != null)
+				clientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+			httpclient = clientBuilder.build();
+		}
 	}
 
 	/**
@@ -129,6 +260,62 @@ public class SourceClientREST extends SourceClientBase {
 
 	}
 
+	/**
+	 * Read positive integer configuration parameter.
+	 * 
+	 * @param sourceClientSettings Map of configuration parameters
+	 * @param key of parameter
+	 * @param defaultValue used if parameter is not defined
+	 * @return value of parameter
+	 * @throws SettingsException if value is not positive number
+	 */
+	protected static int configPositiveInteger(Map<String, Object> sourceClientSettings, String key, int defaultValue)
+			throws SettingsException {
+		Integer value = Utils.nodeIntegerValue(sourceClientSettings.get(key));
+		if (value == null)
+			return defaultValue;
+		if (value < 1)
+			throw new SettingsException("Parameter es_connection/" + key + " must be positive number");
+		return value;
+	}
+
+	/**
+	 * Prepare ES API URLs from configured base URLs.
+	 * 
+	 * @param baseURLs list of base ES URLs or string with comma separated URLs
+	 * @return list of URLs with trailing <code>/</code>, empty if not configured
+	 */
+	protected static List<String> prepareAPIURLsFromBaseURLs(Object baseURLs) {
+		List<String> ret = new ArrayList<String>();
+		if (baseURLs instanceof Collection) {
+			for (Object baseURL : (Collection<?>) baseURLs) {
+				String url = prepareAPIURLFromBaseURL(baseURL != null ? Utils.trimToNull(baseURL.toString()) : null);
+				if (url != null)
+					ret.add(url);
+			}
+		} else if (baseURLs != null) {
+			for (String baseURL : baseURLs.toString().split(",")) {
+				String url = prepareAPIURLFromBaseURL(Utils.trimToNull(baseURL));
+				if (url != null)
+					ret.add(url);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return base URLs of all configured endpoints, in order of endpoints of {@link #balancer}
+	 */
+	protected List<String> getUrlBases() {
+		if (balancer == null)
+			return Collections.singletonList(restAPIUrlBase);
+		List<String> ret = new ArrayList<String>();
+		for (Endpoint endpoint : balancer.getEndpoints()) {
+			ret.add(endpoint.getUrlBase());
+		}
+		return ret;
+	}
+
 	/**
 	 * Prepare ES API URL from configured base URL.
 	 * 
@@ -144,101 +331,172 @@ public class SourceClientREST extends SourceClientBase {
 		return baseURL;
 	}
 
+	/**
+	 * Set pool of buffers responses are read into.
+	 * 
+	 * @param bufferPool to use, responses are read into new buffers if null
+	 */
+	public void setBufferPool(SysinfoBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Start probes of ejected endpoints if more endpoints are configured.
+	 */
 	@Override
-	public void start() {
+	public synchronized void start() {
+		if (balancer != null && prober == null) {
+			prober = Executors.newSingleThreadScheduledExecutor(EsExecutors.daemonThreadFactory("sysinfo_river_probe"));
+			prober.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					probeEjectedEndpoints();
+				}
+			}, probeInterval, probeInterval, TimeUnit.MILLISECONDS);
+		}
 	}
 
+	/**
+	 * Stop probes and abort requests in progress. HTTP client itself is kept open, so client may be started again.
+	 */
 	@Override
 	public void close() {
+		synchronized (this) {
+			if (prober != null) {
+				prober.shutdownNow();
+				prober = null;
+			}
+		}
+		for (HttpGet method : activeRequests) {
+			logger.debug("Aborting ES REST API call to the {}", method.getURI());
+			method.abort();
+		}
+		activeRequests.clear();
 	}
 
 	@Override
-	protected String readClusterStateInfo(Map<String, String> params) throws IOException, InterruptedException {
-		return performRESTCall("_cluster/state", prepareRequestParams(params, null));
+	protected BytesReference readClusterStateInfo(Map<String, String> params) throws IOException, InterruptedException {
+		return performRESTCall(prepareRequestPlan(SysinfoType.CLUSTER_STATE, params));
 	}
 
 	@Override
-	protected String readClusterHealthInfo(Map<String, String> params) throws IOException, InterruptedException {
-		String op = "_cluster/health";
-		if (params != null && !Utils.isEmpty(params.get(PARAM_INDEX))) {
-			op = op + "/" + params.get(PARAM_INDEX);
-		}
-		return performRESTCall(op, prepareRequestParams(params, PARAM_INDEX));
+	protected BytesReference readClusterHealthInfo(Map<String, String> params) throws IOException, InterruptedException {
+		return performRESTCall(prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, params));
 	}
 
 	@Override
-	protected String readClusterStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
-		String op = "";
-		if (params != null && !Utils.isEmpty(params.get(PARAM_NODE_ID))) {
-			op = "/nodes/" + params.get(PARAM_NODE_ID);
-		}
-		op = "_cluster/stats" + op;
-		return performRESTCall(op, prepareRequestParams(params, PARAM_NODE_ID));
+	protected BytesReference readClusterStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
+		return performRESTCall(prepareRequestPlan(SysinfoType.CLUSTER_STATS, params));
 	}
 
 	@Override
-	protected String readPendingClusterTasksInfo(Map<String, String> params) throws IOException {
-		return performRESTCall("_cluster/pending_tasks", prepareRequestParams(params, null));
+	protected BytesReference readPendingClusterTasksInfo(Map<String, String> params) throws IOException {
+		return performRESTCall(prepareRequestPlan(SysinfoType.PENDING_CLUSTER_TASKS, params));
 	}
 
 	@Override
-	protected String readClusterNodesInfoInfo(Map<String, String> params) throws IOException, InterruptedException {
-		String op = "_nodes";
-		if (params != null && !Utils.isEmpty(params.get(PARAM_NODE_ID))) {
-			op = op + "/" + params.get(PARAM_NODE_ID);
-		}
-		return performRESTCall(op, prepareRequestParams(params, PARAM_NODE_ID));
+	protected BytesReference readClusterNodesInfoInfo(Map<String, String> params) throws IOException, InterruptedException {
+		return performRESTCall(prepareRequestPlan(SysinfoType.CLUSTER_NODES_INFO, params));
 	}
 
 	@Override
-	protected String readClusterNodesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
-		String op = "_nodes";
-		if (params != null && !Utils.isEmpty(params.get(PARAM_NODE_ID))) {
-			op = op + "/" + params.get(PARAM_NODE_ID);
-		}
-		op = op + "/stats";
-		return performRESTCall(op, prepareRequestParams(params, PARAM_NODE_ID));
+	protected BytesReference readClusterNodesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
+		return performRESTCall(prepareRequestPlan(SysinfoType.CLUSTER_NODES_STATS, params));
 	}
 
 	@Override
-	protected String readIndicesStatusInfo(Map<String, String> params) throws IOException, InterruptedException {
-		String op = "";
-		if (params != null && !Utils.isEmpty(params.get(PARAM_INDEX))) {
-			op = params.get(PARAM_INDEX) + "/";
-		}
-		op = op + "_status";
-		return performRESTCall(op, prepareRequestParams(params, PARAM_INDEX));
+	protected BytesReference readIndicesStatusInfo(Map<String, String> params) throws IOException, InterruptedException {
+		return performRESTCall(prepareRequestPlan(SysinfoType.INDICES_STATUS, params));
 	}
 
 	@Override
-	protected String readIndicesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
-		String op = "";
-		if (params != null && !Utils.isEmpty(params.get(PARAM_INDEX))) {
-			op = params.get(PARAM_INDEX) + "/";
-		}
-		op = op + "_stats";
-		return performRESTCall(op, prepareRequestParams(params, PARAM_INDEX));
+	protected BytesReference readIndicesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
+		return performRESTCall(prepareRequestPlan(SysinfoType.INDICES_STATS, params));
+	}
+
+	@Override
+	protected BytesReference readIndicesSegmentsInfo(Map<String, String> params) throws IOException, InterruptedException {
+		return performRESTCall(prepareRequestPlan(SysinfoType.INDICES_SEGMENTS, params));
 	}
 
 	@Override
-	protected String readIndicesSegmentsInfo(Map<String, String> params) throws IOException, InterruptedException {
-		String op = "";
-		if (params != null && !Utils.isEmpty(params.get(PARAM_INDEX))) {
-			op = params.get(PARAM_INDEX) + "/";
+	protected BytesReference readIndicesRecoveryInfo(Map<String, String> params) throws IOException, InterruptedException {
+		return performRESTCall(prepareRequestPlan(SysinfoType.INDICES_RECOVERY, params));
+	}
+
+	/**
+	 * Prepare plan with complete request URI and target host, so nothing but request method and context is created for
+	 * each call.
+	 */
+	@Override
+	public RESTRequestPlan prepareRequestPlan(SysinfoType infoType, Map<String, String> params) {
+		if (infoType == null)
+			throw new IllegalArgumentException("infoType parameter must be defined");
+		String op;
+		String pathParamName;
+		switch (infoType) {
+		case CLUSTER_STATE:
+			pathParamName = null;
+			op = "_cluster/state";
+			break;
+		case CLUSTER_HEALTH:
+			pathParamName = PARAM_INDEX;
+			op = "_cluster/health" + pathElement("/", params, pathParamName, "");
+			break;
+		case CLUSTER_STATS:
+			pathParamName = PARAM_NODE_ID;
+			op = "_cluster/stats" + pathElement("/nodes/", params, pathParamName, "");
+			break;
+		case PENDING_CLUSTER_TASKS:
+			pathParamName = null;
+			op = "_cluster/pending_tasks";
+			break;
+		case CLUSTER_NODES_INFO:
+			pathParamName = PARAM_NODE_ID;
+			op = "_nodes" + pathElement("/", params, pathParamName, "");
+			break;
+		case CLUSTER_NODES_STATS:
+			pathParamName = PARAM_NODE_ID;
+			op = "_nodes" + pathElement("/", params, pathParamName, "") + "/stats";
+			break;
+		case INDICES_STATUS:
+			pathParamName = PARAM_INDEX;
+			op = pathElement("", params, pathParamName, "/") + "_status";
+			break;
+		case INDICES_STATS:
+			pathParamName = PARAM_INDEX;
+			op = pathElement("", params, pathParamName, "/") + "_stats";
+			break;
+		case INDICES_SEGMENTS:
+			pathParamName = PARAM_INDEX;
+			op = pathElement("", params, pathParamName, "/") + "_segments";
+			break;
+		case INDICES_RECOVERY:
+			pathParamName = PARAM_INDEX;
+			op = pathElement("", params, pathParamName, "/") + "_recovery";
+			break;
+		default:
+			throw new UnsupportedOperationException("Unsupported information type: " + infoType);
 		}
-		op = op + "_segments";
-		return performRESTCall(op, prepareRequestParams(params, PARAM_INDEX));
+		return new RESTRequestPlan(infoType, params, getUrlBases(), op, prepareRequestParams(params, pathParamName));
+	}
+
+	/**
+	 * Read information using plan prepared by {@link #prepareRequestPlan(SysinfoType, Map)}.
+	 */
+	@Override
+	public BytesReference readSysinfoBytes(SysinfoRequestPlan plan) throws IOException, InterruptedException {
+		if (plan instanceof RESTRequestPlan)
+			return performRESTCall((RESTRequestPlan) plan);
+		return super.readSysinfoBytes(plan);
 	}
 
-    @Override
-    protected String readIndicesRecoveryInfo(Map<String, String> params) throws IOException, InterruptedException {
-	    String op = "";
-	    if (params != null && !Utils.isEmpty(params.get(PARAM_INDEX))) {
-		    op = params.get(PARAM_INDEX) + "/";
-	    }
-	    op = op + "_recovery";
-	    return performRESTCall(op, prepareRequestParams(params, PARAM_INDEX));
-    }
+	private static String pathElement(String prefix, Map<String, String> params, String paramName, String suffix) {
+		if (params != null && !Utils.isEmpty(params.get(paramName))) {
+			return prefix + params.get(paramName) + suffix;
+		}
+		return "";
+	}
 
 	/**
 	 * Prepare request params to be used by {@link #performRESTCall(String, NameValuePair[])}
@@ -271,49 +529,346 @@ public class SourceClientREST extends SourceClientBase {
 	 * @return response from server if successful
 	 * @throws IOException in case of unsuccessful call
 	 */
-	protected String performRESTCall(String restOperation, NameValuePair[] requestParams) throws IOException {
-
-		try {
-			String url = restAPIUrlBase + restOperation;
-			logger.debug("Go to perform ES REST API call to the {} with parameters {}", url, requestParams);
+	protected BytesReference performRESTCall(String restOperation, NameValuePair[] requestParams) throws IOException {
+		return performRESTCall(new RESTRequestPlan(null, null, getUrlBases(), restOperation, requestParams));
+	}
 
-			URIBuilder builder = new URIBuilder(url);
-			if (requestParams != null) {
-				for (NameValuePair param : requestParams) {
-					builder.addParameter(param.getName(), param.getValue());
+	/**
+	 * Perform REST call to remote ES REST API as defined by plan. Call is retried on other endpoint if endpoint fails.
+	 * 
+	 * @param plan of request
+	 * @return response from server if successful
+	 * @throws IOException in case of unsuccessful call
+	 */
+	protected BytesReference performRESTCall(RESTRequestPlan plan) throws IOException {
+		Set<Endpoint> tried = null;
+		while (true) {
+			Endpoint endpoint = selectEndpoint(tried);
+			HttpGet method = prepareRESTMethod(plan, endpoint);
+			activeRequests.add(method);
+			long startTime = endpoint != null ? endpoint.requestStarted() : 0;
+			try {
+				CloseableHttpResponse response = executeRESTCall(plan, endpoint, method);
+				BytesReference ret;
+				try {
+					ret = readEntity(response.getEntity(), plan);
+				} finally {
+					response.close();
 				}
+				if (endpoint != null)
+					endpoint.requestSucceeded(startTime);
+				return ret;
+			} catch (IOException e) {
+				if (tried == null)
+					tried = new HashSet<Endpoint>();
+				if (!endpointFailed(endpoint, startTime, e, method.isAborted(), tried))
+					throw e;
+				logger.debug("ES REST API call to the {} failed, going to retry on other endpoint: {}", endpoint,
+						e.getMessage());
+			} finally {
+				activeRequests.remove(method);
+				if (endpoint != null)
+					endpoint.requestFinished();
 			}
-			HttpGet method = new HttpGet(builder.build());
-			method.addHeader("Accept", "application/json");
+		}
+	}
 
-			CloseableHttpResponse response = null;
+	/**
+	 * Select endpoint for next call.
+	 * 
+	 * @param tried endpoints already failed for this call, can be null
+	 * @return endpoint, null if only one endpoint is configured
+	 */
+	protected Endpoint selectEndpoint(Collection<Endpoint> tried) {
+		return balancer != null ? balancer.select(tried) : null;
+	}
+
+	/**
+	 * Record failed call into statistics of endpoint and decide if call may be retried on other endpoint. Response with
+	 * client error status is not failure of endpoint.
+	 * 
+	 * @param endpoint call failed on, may be null
+	 * @param startTime of call returned by {@link Endpoint#requestStarted()}
+	 * @param e failure
+	 * @param aborted true if call was aborted by this client, so it's not failure of endpoint
+	 * @param tried endpoints already failed for this call, endpoint is added into it
+	 * @return true if call may be retried on other endpoint
+	 */
+	protected boolean endpointFailed(Endpoint endpoint, long startTime, IOException e, boolean aborted,
+			Set<Endpoint> tried) {
+		if (endpoint == null || aborted || Thread.currentThread().isInterrupted())
+			return false;
+		if (e instanceof StatusException && ((StatusException) e).getStatusCode() < HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+			endpoint.requestSucceeded(startTime);
+			return false;
+		}
+		endpoint.requestFailed(e.getMessage());
+		tried.add(endpoint);
+		return balancer.select(tried) != null;
+	}
+
+	/**
+	 * Probe ejected endpoints, endpoint is reinstated if probe is successful.
+	 */
+	protected void probeEjectedEndpoints() {
+		for (Endpoint endpoint : balancer.getEjectedEndpoints()) {
+			String error = null;
 			try {
+				probeEndpoint(endpoint);
+				logger.info("ES REST API endpoint {} is available again", endpoint);
+			} catch (Exception e) {
+				error = e.getMessage();
+				logger.debug("Probe of ES REST API endpoint {} failed: {}", endpoint, error);
+			}
+			endpoint.probed(error);
+		}
+	}
+
+	/**
+	 * Probe endpoint by call of its root URL.
+	 * 
+	 * @param endpoint to probe
+	 * @throws IOException if probe fails
+	 */
+	protected void probeEndpoint(Endpoint endpoint) throws IOException {
+		RESTRequestPlan plan = new RESTRequestPlan(null, null, endpoint.getUrlBase(), null);
+		HttpGet method = prepareRESTMethod(plan);
+		activeRequests.add(method);
+		try {
+			CloseableHttpResponse response = executeRESTCall(plan, null, method);
+			try {
+				EntityUtils.consume(response.getEntity());
+			} finally {
+				response.close();
+			}
+		} finally {
+			activeRequests.remove(method);
+		}
+	}
+
+	/**
+	 * Read response entity, into pages of {@link #bufferPool} if available. Compressed entity is decompressed.
+	 * 
+	 * @param entity to read, may be null
+	 * @param plan of request, transferred bytes are recorded into it
+	 * @return entity content, null if no entity
+	 * @throws IOException if entity can't be read
+	 */
+	protected BytesReference readEntity(HttpEntity entity, RESTRequestPlan plan) throws IOException {
+		if (entity == null)
+			return null;
+		TransferInputStream in = openEntityStream(entity, plan);
+		if (in == null)
+			return null;
+		try {
+			if (bufferPool == null)
+				return new BytesArray(Streams.copyToByteArray(in));
+			return bufferPool.read(in, in.compressed ? -1 : entity.getContentLength());
+		} finally {
+			in.close();
+		}
+	}
 
-				// Preemptive authentication enabled - see
-				// http://hc.apache.org/httpcomponents-client-ga/tutorial/html/authentication.html#d5e1032
-				HttpHost targetHost = new HttpHost(builder.getHost(), builder.getPort(), builder.getScheme());
-				AuthCache authCache = new BasicAuthCache();
-				BasicScheme basicAuth = new BasicScheme();
-				authCache.put(targetHost, basicAuth);
-				HttpClientContext localcontext = HttpClientContext.create();
-				localcontext.setAuthCache(authCache);
-
-				response = httpclient.execute(targetHost, method, localcontext);
-				int statusCode = response.getStatusLine().getStatusCode();
-				String responseContent = null;
-				if (response.getEntity() != null) {
-					responseContent = EntityUtils.toString(response.getEntity(), "UTF-8");
+	/**
+	 * Open stream of response entity content, decompressed if entity is compressed. Bytes received and read from stream
+	 * are recorded into statistics when stream is closed.
+	 * 
+	 * @param entity to open
+	 * @param plan of request, transferred bytes are recorded into it, may be null
+	 * @return stream of decompressed content, null if entity has no content
+	 * @throws IOException if content can't be opened or its encoding is not supported
+	 */
+	protected TransferInputStream openEntityStream(HttpEntity entity, RESTRequestPlan plan) throws IOException {
+		InputStream content = entity.getContent();
+		if (content == null)
+			return null;
+		String encoding = getContentEncoding(entity);
+		CountingInputStream received = new CountingInputStream(content);
+		try {
+			return new TransferInputStream(decodeContent(received, encoding), received, encoding != null, plan);
+		} catch (IOException e) {
+			content.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get content encoding of entity.
+	 * 
+	 * @param entity to get encoding for
+	 * @return encoding, null if entity is not encoded
+	 */
+	protected static String getContentEncoding(HttpEntity entity) {
+		Header header = entity.getContentEncoding();
+		String encoding = header != null ? Utils.trimToNull(header.getValue()) : null;
+		if (encoding == null || "identity".equalsIgnoreCase(encoding))
+			return null;
+		return encoding;
+	}
+
+	/**
+	 * Wrap content stream by decompressing stream.
+	 * 
+	 * @param in content stream
+	 * @param encoding of content, null if not encoded
+	 * @return decompressed stream
+	 * @throws IOException if encoding is not supported or compressed stream is malformed
+	 */
+	protected static InputStream decodeContent(InputStream in, String encoding) throws IOException {
+		if (encoding == null)
+			return in;
+		if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding))
+			return new GZIPInputStream(in, 8192);
+		if ("deflate".equalsIgnoreCase(encoding))
+			return new InflaterInputStream(in);
+		throw new IOException("Failed ES REST API call: unsupported response Content-Encoding " + encoding);
+	}
+
+	/**
+	 * Record bytes transferred by one response into statistics of client and plan.
+	 * 
+	 * @param plan of request, may be null
+	 * @param received count of bytes received over network
+	 * @param content count of bytes of decompressed content
+	 * @param compressed true if response was compressed
+	 */
+	protected void recordTransfer(RESTRequestPlan plan, long received, long content, boolean compressed) {
+		synchronized (this) {
+			responsesCount++;
+			if (compressed)
+				compressedResponsesCount++;
+			receivedBytes += received;
+			contentBytes += content;
+		}
+		if (plan != null)
+			plan.recordTransfer(received, content);
+	}
+
+	/**
+	 * Get statistics of transferred responses.
+	 */
+	@Override
+	public synchronized Map<String, Object> getStatistics() {
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		ret.put("compression", compression);
+		ret.put("responses", responsesCount);
+		ret.put("compressed_responses", compressedResponsesCount);
+		ret.put("received_bytes", receivedBytes);
+		ret.put("content_bytes", contentBytes);
+		if (balancer != null)
+			ret.put("endpoints", balancer.getStatistics());
+		return ret;
+	}
+
+	/**
+	 * Read information using plan prepared by {@link #prepareRequestPlan(SysinfoType, Map)}. Parser reads directly from
+	 * HTTP response stream, so response is never buffered whole. Connection is released when parser is closed.
+	 */
+	@Override
+	public XContentParser readSysinfoParser(SysinfoRequestPlan plan) throws IOException, InterruptedException {
+		if (!(plan instanceof RESTRequestPlan))
+			return super.readSysinfoParser(plan);
+		RESTRequestPlan restPlan = (RESTRequestPlan) plan;
+		Set<Endpoint> tried = null;
+		while (true) {
+			final Endpoint endpoint = selectEndpoint(tried);
+			final HttpGet method = prepareRESTMethod(restPlan, endpoint);
+			activeRequests.add(method);
+			final long startTime = endpoint != null ? endpoint.requestStarted() : 0;
+			CloseableHttpResponse response = null;
+			try {
+				response = executeRESTCall(restPlan, endpoint, method);
+				if (response.getEntity() == null) {
+					throw new IOException("Failed ES REST API call: response body is empty");
 				}
-				if (statusCode != HttpStatus.SC_OK) {
-					throw new IOException("Failed ES REST API call. HTTP error code: " + statusCode + " Response body: "
-							+ responseContent);
+				InputStream content = openEntityStream(response.getEntity(), restPlan);
+				if (content == null) {
+					throw new IOException("Failed ES REST API call: response body is empty");
 				}
-				return responseContent;
-			} finally {
-				if (response != null)
+				return JsonXContent.jsonXContent.createParser(new StreamedCallInputStream(content, endpoint, method,
+						startTime));
+			} catch (IOException e) {
+				closeFailedCall(endpoint, method, response);
+				if (tried == null)
+					tried = new HashSet<Endpoint>();
+				if (!endpointFailed(endpoint, startTime, e, method.isAborted(), tried))
+					throw e;
+				logger.debug("ES REST API call to the {} failed, going to retry on other endpoint: {}", endpoint,
+						e.getMessage());
+			} catch (RuntimeException e) {
+				closeFailedCall(endpoint, method, response);
+				throw e;
+			}
+		}
+	}
+
+	private void closeFailedCall(Endpoint endpoint, HttpGet method, CloseableHttpResponse response) throws IOException {
+		if (activeRequests.remove(method) && endpoint != null)
+			endpoint.requestFinished();
+		if (response != null)
+			response.close();
+	}
+
+	/**
+	 * Prepare request method to first endpoint as defined by plan, with timeout from plan if defined.
+	 * 
+	 * @param plan of request
+	 * @return request method
+	 * @throws IOException if plan has no valid URI
+	 */
+	protected HttpGet prepareRESTMethod(RESTRequestPlan plan) throws IOException {
+		return prepareRESTMethod(plan, null);
+	}
+
+	/**
+	 * Prepare request method as defined by plan, with timeout from plan if defined.
+	 * 
+	 * @param plan of request
+	 * @param endpoint to call, first endpoint is called if null
+	 * @return request method
+	 * @throws IOException if plan has no valid URI
+	 */
+	protected HttpGet prepareRESTMethod(RESTRequestPlan plan, Endpoint endpoint) throws IOException {
+		if (plan.uri == null) {
+			throw new IOException("Failed ES REST API call: " + plan.uriError);
+		}
+		HttpGet method = new HttpGet(plan.getURI(endpoint));
+		method.addHeader("Accept", "application/json");
+		if (compression)
+			method.addHeader("Accept-Encoding", ACCEPT_ENCODING);
+		if (plan.getTimeout() > 0) {
+			int timeout = (int) Math.min(plan.getTimeout(), Integer.MAX_VALUE);
+			method.setConfig(RequestConfig.copy(requestConfig).setSocketTimeout(timeout).setConnectTimeout(timeout)
+					.setConnectionRequestTimeout(timeout).build());
+		}
+		return method;
+	}
+
+	/**
+	 * Execute REST call to remote ES REST API as defined by plan and check response status.
+	 * 
+	 * @param plan of request
+	 * @param endpoint to call, first endpoint is called if null
+	 * @param method prepared by {@link #prepareRESTMethod(RESTRequestPlan, Endpoint)}
+	 * @return successful response from server, must be closed by caller
+	 * @throws IOException in case of unsuccessful call
+	 */
+	protected CloseableHttpResponse executeRESTCall(RESTRequestPlan plan, Endpoint endpoint, HttpGet method)
+			throws IOException {
+
+		try {
+			logger.debug("Go to perform ES REST API call to the {}", method.getURI());
+
+			CloseableHttpResponse response = httpclient.execute(plan.getTargetHost(endpoint), method, prepareContext(plan,
+					endpoint));
+			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+				try {
+					throw prepareStatusException(response);
+				} finally {
 					response.close();
-				method.releaseConnection();
+				}
 			}
+			return response;
 		} catch (IOException e) {
 			throw e;
 		} catch (Exception e) {
@@ -321,4 +876,284 @@ public class SourceClientREST extends SourceClientBase {
 		}
 	}
 
+	/**
+	 * Prepare context of one REST call.
+	 * 
+	 * @param plan of request
+	 * @param endpoint to call, first endpoint is called if null
+	 * @return context
+	 */
+	protected HttpClientContext prepareContext(RESTRequestPlan plan, Endpoint endpoint) {
+		HttpClientContext localcontext = HttpClientContext.create();
+		if (isAuthConfigured) {
+			// Preemptive authentication enabled - see
+			// http://hc.apache.org/httpcomponents-client-ga/tutorial/html/authentication.html#d5e1032
+			// auth cache and scheme are mutated during call, so they can't be shared in plan
+			AuthCache authCache = new BasicAuthCache();
+			authCache.put(plan.getTargetHost(endpoint), new BasicScheme());
+			localcontext.setAuthCache(authCache);
+		}
+		return localcontext;
+	}
+
+	/**
+	 * Prepare exception for response with unsuccessful status, response body is read into message.
+	 * 
+	 * @param response with unsuccessful status
+	 * @return exception to throw
+	 * @throws IOException if response body can't be read
+	 */
+	protected static IOException prepareStatusException(HttpResponse response) throws IOException {
+		String responseContent = null;
+		InputStream content = response.getEntity() != null ? response.getEntity().getContent() : null;
+		if (content != null) {
+			responseContent = Streams.copyToString(new InputStreamReader(decodeContent(content,
+					getContentEncoding(response.getEntity())), Consts.UTF_8));
+		}
+		int statusCode = response.getStatusLine().getStatusCode();
+		return new StatusException("Failed ES REST API call. HTTP error code: " + statusCode + " Response body: "
+				+ responseContent, statusCode);
+	}
+
+	/**
+	 * Exception for response with unsuccessful status.
+	 */
+	protected static class StatusException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int statusCode;
+
+		protected StatusException(String message, int statusCode) {
+			super(message);
+			this.statusCode = statusCode;
+		}
+
+		/**
+		 * @return HTTP status code of response
+		 */
+		public int getStatusCode() {
+			return statusCode;
+		}
+	}
+
+	/**
+	 * Stream counting bytes read from it.
+	 */
+	protected static class CountingInputStream extends FilterInputStream {
+
+		protected long count = 0;
+
+		protected CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int r = super.read(b, off, len);
+			if (r > 0)
+				count += r;
+			return r;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long r = super.skip(n);
+			count += r;
+			return r;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	/**
+	 * Stream of decompressed response content, records transferred bytes by
+	 * {@link SourceClientREST#recordTransfer(RESTRequestPlan, long, long, boolean)} once when closed.
+	 */
+	protected class TransferInputStream extends CountingInputStream {
+
+		protected final CountingInputStream received;
+
+		protected final boolean compressed;
+
+		protected final RESTRequestPlan plan;
+
+		private boolean closed = false;
+
+		protected TransferInputStream(InputStream decoded, CountingInputStream received, boolean compressed,
+				RESTRequestPlan plan) {
+			super(decoded);
+			this.received = received;
+			this.compressed = compressed;
+			this.plan = plan;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed)
+				return;
+			closed = true;
+			try {
+				super.close();
+			} finally {
+				recordTransfer(plan, received.count, count, compressed);
+			}
+		}
+	}
+
+	/**
+	 * Stream of response body read by parser returned from {@link SourceClientREST#readSysinfoParser(SysinfoRequestPlan)}.
+	 * Call is recorded into statistics of endpoint when stream is closed, so latency covers whole body and failure while
+	 * body is read counts as failure of endpoint.
+	 */
+	protected class StreamedCallInputStream extends FilterInputStream {
+
+		protected final Endpoint endpoint;
+
+		protected final HttpGet method;
+
+		protected final long startTime;
+
+		private IOException failure;
+
+		protected StreamedCallInputStream(InputStream in, Endpoint endpoint, HttpGet method, long startTime) {
+			super(in);
+			this.endpoint = endpoint;
+			this.method = method;
+			this.startTime = startTime;
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				return super.read();
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				return super.read(b, off, len);
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			try {
+				return super.skip(n);
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (activeRequests.remove(method) && endpoint != null) {
+					if (failure == null)
+						endpoint.requestSucceeded(startTime);
+					else if (!method.isAborted())
+						endpoint.requestFailed(failure.getMessage());
+					endpoint.requestFinished();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Request plan with complete URIs and target hosts of REST call for all endpoints.
+	 */
+	public static class RESTRequestPlan extends SysinfoRequestPlan {
+
+		/**
+		 * URI of call to the first endpoint.
+		 */
+		protected final URI uri;
+
+		/**
+		 * Target host of the first endpoint.
+		 */
+		protected final HttpHost targetHost;
+
+		/**
+		 * URIs of call for each endpoint, index is index of {@link Endpoint}.
+		 */
+		protected final URI[] uris;
+
+		protected final HttpHost[] targetHosts;
+
+		/**
+		 * Message of URI build failure, reported on each call to not break river configuration by malformed params.
+		 */
+		protected final String uriError;
+
+		protected RESTRequestPlan(SysinfoType infoType, Map<String, String> params, String url,
+				NameValuePair[] requestParams) {
+			this(infoType, params, Collections.singletonList(url), "", requestParams);
+		}
+
+		protected RESTRequestPlan(SysinfoType infoType, Map<String, String> params, List<String> urlBases, String op,
+				NameValuePair[] requestParams) {
+			super(infoType, params);
+			uris = new URI[urlBases.size()];
+			targetHosts = new HttpHost[urlBases.size()];
+			String error = null;
+			for (int i = 0; i < uris.length && error == null; i++) {
+				try {
+					URIBuilder builder = new URIBuilder(urlBases.get(i) + op);
+					if (requestParams != null) {
+						for (NameValuePair param : requestParams) {
+							builder.addParameter(param.getName(), param.getValue());
+						}
+					}
+					uris[i] = builder.build();
+					targetHosts[i] = new HttpHost(uris[i].getHost(), uris[i].getPort(), uris[i].getScheme());
+				} catch (URISyntaxException e) {
+					error = e.getMessage();
+				}
+			}
+			this.uriError = error;
+			this.uri = error == null ? uris[0] : null;
+			this.targetHost = error == null ? targetHosts[0] : null;
+		}
+
+		/**
+		 * @param endpoint to call, first endpoint if null
+		 * @return URI of call to the endpoint
+		 */
+		protected URI getURI(Endpoint endpoint) {
+			return endpoint != null && endpoint.getIndex() < uris.length ? uris[endpoint.getIndex()] : uri;
+		}
+
+		/**
+		 * @param endpoint to call, first endpoint if null
+		 * @return target host of the endpoint
+		 */
+		protected HttpHost getTargetHost(Endpoint endpoint) {
+			return endpoint != null && endpoint.getIndex() < targetHosts.length ? targetHosts[endpoint.getIndex()]
+					: targetHost;
+		}
+
+	}
+
 }
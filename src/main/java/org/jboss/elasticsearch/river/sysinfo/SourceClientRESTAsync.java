@@ -0,0 +1,379 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.http.Consts;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.jboss.elasticsearch.river.sysinfo.SysinfoEndpointBalancer.Endpoint;
+
+/**
+ * {@link SourceClient} implementation using remote ES HTTP REST API calls over non-blocking HTTP client. Few I/O threads
+ * serve calls of all indexers of the river, so no indexer thread waits for response and number of concurrent reads
+ * doesn't depend on number of threads.
+ * <p>
+ * Use next section in river configuration:
+ * 
+ * <pre>
+ * "es_connection" : {
+ *   "type"            : "rest_async",
+ *   "urlBase"         : "http://localhost:9200",
+ *   "timeout"         : "1s",
+ *   "io_threads"      : 2,
+ *   "max_connections" : 100,
+ *   "username"        : "aaaa",
+ *   "pwd"             : "bbb",
+ *   "compression"     : true
+ * }
+ * </pre>
+ * <p>
+ * I/O threads are started by {@link #start()} and stopped by {@link #close()}, which cancels reads in progress.
+ * Blocking reads wait for asynchronous read, so response is never streamed by this client.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SourceClientRESTAsync extends SourceClientREST {
+
+	private static final ESLogger logger = Loggers.getLogger(SourceClientRESTAsync.class);
+
+	protected static final int DEFAULT_IO_THREADS = 2;
+
+	protected static final int DEFAULT_MAX_CONNECTIONS = 100;
+
+	/**
+	 * Number of I/O threads of {@link #httpAsyncClient}.
+	 */
+	protected int ioThreads = DEFAULT_IO_THREADS;
+
+	/**
+	 * Max number of concurrent connections to the monitored cluster.
+	 */
+	protected int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+	/**
+	 * Non-blocking client, exists only while this client is started.
+	 */
+	protected volatile CloseableHttpAsyncClient httpAsyncClient;
+
+	/**
+	 * Asynchronous requests in progress, cancelled when client is closed.
+	 */
+	protected final Set<Future<HttpResponse>> activeAsyncRequests = Collections
+			.newSetFromMap(new ConcurrentHashMap<Future<HttpResponse>, Boolean>());
+
+	protected long requestsCount = 0;
+	protected long failedRequestsCount = 0;
+
+	/**
+	 * Constructor performing configuration.
+	 * 
+	 * @param sourceClientSettings Map of configuration parameters
+	 * @throws SettingsException in case of configuration problem
+	 */
+	public SourceClientRESTAsync(Map<String, Object> sourceClientSettings) throws SettingsException {
+		super(sourceClientSettings, false);
+		ioThreads = configPositiveInteger(sourceClientSettings, "io_threads", DEFAULT_IO_THREADS);
+		maxConnections = configPositiveInteger(sourceClientSettings, "max_connections", DEFAULT_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * Constructor for unit tests, nothing is configured here.
+	 */
+	protected SourceClientRESTAsync() {
+
+	}
+
+	/**
+	 * Create and start non-blocking client with its I/O threads, and probes of ejected endpoints.
+	 */
+	@Override
+	public synchronized void start() {
+		super.start();
+		if (httpAsyncClient != null)
+			return;
+		IOReactorConfig ioReactorConfig = IOReactorConfig.custom().setIoThreadCount(ioThreads)
+				.setConnectTimeout(requestConfig.getConnectTimeout()).setSoTimeout(requestConfig.getSocketTimeout()).build();
+		HttpAsyncClientBuilder clientBuilder = HttpAsyncClients.custom().setDefaultIOReactorConfig(ioReactorConfig)
+				.setDefaultConnectionConfig(ConnectionConfig.custom().setCharset(Consts.UTF_8).build())
+				.setMaxConnTotal(maxConnections).setMaxConnPerRoute(maxConnections).setDefaultRequestConfig(requestConfig);
+		if (credentialsProvider != null)
+			clientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+		httpAsyncClient = clientBuilder.build();
+		httpAsyncClient.start();
+	}
+
+	/**
+	 * Cancel reads in progress and stop I/O threads. Client may be started again.
+	 */
+	@Override
+	public void close() {
+		CloseableHttpAsyncClient client;
+		synchronized (this) {
+			client = httpAsyncClient;
+			httpAsyncClient = null;
+		}
+		for (Future<HttpResponse> request : activeAsyncRequests) {
+			request.cancel(true);
+		}
+		activeAsyncRequests.clear();
+		super.close();
+		if (client != null) {
+			try {
+				client.close();
+			} catch (IOException e) {
+				logger.warn("Failed to close ES REST API client: {}", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Read information using plan prepared by {@link #prepareRequestPlan(SysinfoType, Map)} without waiting for response.
+	 * Listener is called from I/O thread.
+	 */
+	@Override
+	public Future<BytesReference> readSysinfoBytesAsync(SysinfoRequestPlan plan, ActionListener<BytesReference> listener) {
+		if (!(plan instanceof RESTRequestPlan))
+			return super.readSysinfoBytesAsync(plan, listener);
+		synchronized (this) {
+			requestsCount++;
+		}
+		PlainActionFuture<BytesReference> future = PlainActionFuture.newFuture();
+		execute(new ReadCallback((RESTRequestPlan) plan, listener, future, null));
+		return future;
+	}
+
+	/**
+	 * Execute one attempt of asynchronous read on endpoint selected by {@link #balancer}.
+	 * 
+	 * @param callback of the attempt
+	 */
+	protected void execute(ReadCallback callback) {
+		try {
+			CloseableHttpAsyncClient client = httpAsyncClient;
+			if (client == null)
+				throw new IOException("ES REST API client is not started");
+			Endpoint endpoint = selectEndpoint(callback.tried);
+			HttpGet method = prepareRESTMethod(callback.plan, endpoint);
+			logger.debug("Go to perform asynchronous ES REST API call to the {}", method.getURI());
+			callback.started(endpoint);
+			Future<HttpResponse> request = client.execute(callback.plan.getTargetHost(endpoint), method,
+					prepareContext(callback.plan, endpoint), callback);
+			activeAsyncRequests.add(request);
+			callback.request = request;
+			// callback may be called before request is registered
+			if (callback.done)
+				activeAsyncRequests.remove(request);
+		} catch (Exception e) {
+			callback.failed(e);
+		}
+	}
+
+	/**
+	 * Parser over whole read information, response is not streamed.
+	 */
+	@Override
+	public XContentParser readSysinfoParser(SysinfoRequestPlan plan) throws IOException, InterruptedException {
+		BytesReference value = readSysinfoBytes(plan);
+		if (value == null)
+			throw new IOException("Failed ES REST API call: response body is empty");
+		return XContentHelper.createParser(value);
+	}
+
+	/**
+	 * Perform REST call asynchronously and wait for response.
+	 */
+	@Override
+	protected BytesReference performRESTCall(RESTRequestPlan plan) throws IOException {
+		Future<BytesReference> future = readSysinfoBytesAsync(plan, null);
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for ES REST API call");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Failed ES REST API call: " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	protected synchronized void requestFailed() {
+		failedRequestsCount++;
+	}
+
+	/**
+	 * Probe endpoint by asynchronous call of its root URL and wait for response.
+	 */
+	@Override
+	protected void probeEndpoint(Endpoint endpoint) throws IOException {
+		CloseableHttpAsyncClient client = httpAsyncClient;
+		if (client == null)
+			throw new IOException("ES REST API client is not started");
+		RESTRequestPlan plan = new RESTRequestPlan(null, null, endpoint.getUrlBase(), null);
+		try {
+			HttpResponse response = client.execute(plan.targetHost, prepareRESTMethod(plan), prepareContext(plan, null),
+					null).get();
+			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK)
+				throw prepareStatusException(response);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for ES REST API probe");
+		} catch (ExecutionException e) {
+			throw new IOException("Failed ES REST API call: " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * Get statistics of asynchronous requests and transferred responses.
+	 */
+	@Override
+	public synchronized Map<String, Object> getStatistics() {
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		ret.put("io_threads", ioThreads);
+		ret.put("max_connections", maxConnections);
+		ret.put("active_requests", activeAsyncRequests.size());
+		ret.put("requests", requestsCount);
+		ret.put("failed_requests", failedRequestsCount);
+		ret.putAll(super.getStatistics());
+		return ret;
+	}
+
+	/**
+	 * Callback of one attempt of asynchronous read, reads response and completes future of read information. Failed
+	 * attempt is retried on other endpoint by new callback sharing same future.
+	 */
+	protected class ReadCallback implements FutureCallback<HttpResponse> {
+
+		protected final RESTRequestPlan plan;
+
+		protected final ActionListener<BytesReference> listener;
+
+		protected final PlainActionFuture<BytesReference> future;
+
+		/**
+		 * Endpoints already failed for this read, null if no attempt failed yet.
+		 */
+		protected final Set<Endpoint> tried;
+
+		protected Endpoint endpoint;
+
+		protected long startTime = 0;
+
+		protected volatile Future<HttpResponse> request;
+
+		protected volatile boolean done = false;
+
+		private boolean cancelled = false;
+
+		protected ReadCallback(RESTRequestPlan plan, ActionListener<BytesReference> listener,
+				PlainActionFuture<BytesReference> future, Set<Endpoint> tried) {
+			this.plan = plan;
+			this.listener = listener;
+			this.future = future;
+			this.tried = tried;
+		}
+
+		protected void started(Endpoint endpoint) {
+			this.endpoint = endpoint;
+			if (endpoint != null)
+				startTime = endpoint.requestStarted();
+		}
+
+		@Override
+		public void completed(HttpResponse response) {
+			BytesReference value;
+			try {
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK)
+					throw prepareStatusException(response);
+				value = readEntity(response.getEntity(), plan);
+			} catch (Exception e) {
+				failed(e);
+				return;
+			}
+			if (endpoint != null)
+				endpoint.requestSucceeded(startTime);
+			finished();
+			future.onResponse(value);
+			if (listener != null) {
+				try {
+					listener.onResponse(value);
+				} catch (RuntimeException e) {
+					logger.warn("Listener of ES REST API call failed: {}", e, e.getMessage());
+				}
+			}
+		}
+
+		@Override
+		public void failed(Exception ex) {
+			boolean started = endpoint != null && startTime != 0;
+			finished();
+			IOException e = ex instanceof IOException ? (IOException) ex : new IOException("Failed ES REST API call: "
+					+ ex.getMessage(), ex);
+			if (started) {
+				Set<Endpoint> t = tried != null ? tried : new HashSet<Endpoint>();
+				if (endpointFailed(endpoint, startTime, e, cancelled || httpAsyncClient == null, t)) {
+					logger.debug("ES REST API call to the {} failed, going to retry on other endpoint: {}", endpoint,
+							e.getMessage());
+					execute(new ReadCallback(plan, listener, future, t));
+					return;
+				}
+			}
+			requestFailed();
+			future.onFailure(e);
+			if (listener != null) {
+				try {
+					listener.onFailure(e);
+				} catch (RuntimeException re) {
+					logger.warn("Listener of ES REST API call failed: {}", re, re.getMessage());
+				}
+			}
+		}
+
+		@Override
+		public void cancelled() {
+			cancelled = true;
+			failed(new IOException("ES REST API call cancelled"));
+		}
+
+		private void finished() {
+			if (done)
+				return;
+			done = true;
+			if (endpoint != null && startTime != 0)
+				endpoint.requestFinished();
+			Future<HttpResponse> r = request;
+			if (r != null)
+				activeAsyncRequests.remove(r);
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.BigArrays;
+
+/**
+ * Pool of fixed size byte pages used to read responses, shared by all sysinfo rivers on the node and bound as node
+ * level singleton by {@link SysinfoNodeModule}. Response with known length is read directly into exactly sized array.
+ * Response with unknown length (chunked or compressed) is read into pages borrowed from pool and then copied once into
+ * exactly sized array, as read information outlives collection cycle (it is shared by fetch deduplication, response
+ * cache and waits for asynchronous index write). So read information is still copied once per cycle into new array
+ * which is left to garbage collector later, pool only recycles temporary pages used to read responses of unknown
+ * length instead of growing read buffer. Responses of local connection are not read through pool at all. Size of idle
+ * pages kept in pool is limited by {@link #maxSize}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoBufferPool {
+
+  /**
+   * Name of node setting with max size of idle pages kept in pool.
+   */
+  public static final String SETTING_MAX_SIZE = "river.sysinfo.buffer_pool.max_size";
+
+  protected static final ByteSizeValue DEFAULT_MAX_SIZE = new ByteSizeValue(10 * 1024 * 1024);
+
+  /**
+   * Size of page [bytes], same as page size used by ElasticSearch {@link BigArrays}.
+   */
+  public static final int PAGE_SIZE = BigArrays.BYTE_PAGE_SIZE;
+
+  /**
+   * Max size [bytes] of idle pages kept in pool, pages are not pooled if 0.
+   */
+  protected final long maxSize;
+
+  protected final Deque<byte[]> pages = new ArrayDeque<byte[]>();
+
+  protected long pagesBorrowedCount = 0;
+  protected long pagesReusedCount = 0;
+  protected long directReadsCount = 0;
+
+  /**
+   * Constructor used by ElasticSearch.
+   * 
+   * @param settings of node
+   */
+  @Inject
+  public SysinfoBufferPool(Settings settings) {
+    this(settings.getAsBytesSize(SETTING_MAX_SIZE, DEFAULT_MAX_SIZE).bytes());
+  }
+
+  /**
+   * Create pool.
+   * 
+   * @param maxSize max size [bytes] of idle pages kept in pool
+   */
+  public SysinfoBufferPool(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Create pool with default settings, for unit tests.
+   */
+  protected SysinfoBufferPool() {
+    this(ImmutableSettings.Builder.EMPTY_SETTINGS);
+  }
+
+  /**
+   * Read whole stream and return its content. Content of known length is read directly into exactly sized array, pooled
+   * pages are used only if length is unknown. Stream is not closed.
+   * 
+   * @param in stream to read
+   * @param length of content if known, negative if unknown
+   * @return content of stream
+   * @throws IOException if stream can't be read or its content has other length than given
+   */
+  public BytesReference read(InputStream in, long length) throws IOException {
+    if (length > Integer.MAX_VALUE)
+      throw new IOException("Response is too big: " + length + " bytes");
+    if (length >= 0)
+      return readKnownLength(in, (int) length);
+    return readPaged(in);
+  }
+
+  private BytesReference readKnownLength(InputStream in, int length) throws IOException {
+    synchronized (this) {
+      directReadsCount++;
+    }
+    byte[] ret = new byte[length];
+    int size = 0;
+    while (size < length) {
+      int r = in.read(ret, size, length - size);
+      if (r < 0)
+        throw new IOException("Response is truncated, " + size + " bytes read but " + length + " expected");
+      size += r;
+    }
+    if (in.read() >= 0)
+      throw new IOException("Response is longer than " + length + " bytes expected");
+    return new BytesArray(ret);
+  }
+
+  private BytesReference readPaged(InputStream in) throws IOException {
+    List<byte[]> used = new ArrayList<byte[]>();
+    try {
+      byte[] page = null;
+      int pos = PAGE_SIZE;
+      long size = 0;
+      while (true) {
+        if (pos == PAGE_SIZE) {
+          page = borrowPage();
+          used.add(page);
+          pos = 0;
+        }
+        int r = in.read(page, pos, PAGE_SIZE - pos);
+        if (r < 0)
+          break;
+        pos += r;
+        size += r;
+      }
+      if (size > Integer.MAX_VALUE)
+        throw new IOException("Response is too big: " + size + " bytes");
+      byte[] ret = new byte[(int) size];
+      int off = 0;
+      for (byte[] p : used) {
+        int l = (int) Math.min(PAGE_SIZE, size - off);
+        if (l <= 0)
+          break;
+        System.arraycopy(p, 0, ret, off, l);
+        off += l;
+      }
+      return new BytesArray(ret);
+    } finally {
+      for (byte[] p : used) {
+        returnPage(p);
+      }
+    }
+  }
+
+  /**
+   * Borrow page from pool, new page is allocated if pool is empty.
+   * 
+   * @return page of {@link #PAGE_SIZE}
+   */
+  protected byte[] borrowPage() {
+    synchronized (this) {
+      pagesBorrowedCount++;
+      byte[] ret = pages.pollFirst();
+      if (ret != null) {
+        pagesReusedCount++;
+        return ret;
+      }
+    }
+    return new byte[PAGE_SIZE];
+  }
+
+  /**
+   * Return page into pool. Page is left to garbage collector if pool is full.
+   * 
+   * @param page to return
+   */
+  protected synchronized void returnPage(byte[] page) {
+    if ((long) (pages.size() + 1) * PAGE_SIZE <= maxSize)
+      pages.addFirst(page);
+  }
+
+  /**
+   * Get statistics of pool.
+   * 
+   * @return map with statistics
+   */
+  public synchronized Map<String, Object> getStatistics() {
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    ret.put("max_size", maxSize);
+    ret.put("page_size", PAGE_SIZE);
+    ret.put("pooled_bytes", (long) pages.size() * PAGE_SIZE);
+    ret.put("pages_borrowed", pagesBorrowedCount);
+    ret.put("pages_reused", pagesReusedCount);
+    // rate of temporary read pages taken from pool, arrays with read information are always new
+    ret.put("page_reuse_rate", pagesBorrowedCount > 0 ? (double) pagesReusedCount / pagesBorrowedCount : 0d);
+    ret.put("direct_reads", directReadsCount);
+    return ret;
+  }
+
+}
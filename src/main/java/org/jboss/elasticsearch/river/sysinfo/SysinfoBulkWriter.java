@@ -0,0 +1,361 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+
+/**
+ * Buffered writer shared by all indexers of one river. Index requests are collected and sent to the index in bulk
+ * requests. Bulk is flushed when {@link #currentBulkActions} documents or {@link #bulkSize} bytes are buffered, or
+ * {@link #flushInterval} after first document is buffered. Number of documents in bulk is adapted to the observed bulk
+ * latency, see {@link #adaptBulkActions(long)}. At most {@link #maxConcurrentBulks} bulks are sent at once, next bulk
+ * waits in buffer until one of them completes. Writer is full if buffer holds whole bulk and no next bulk can be sent,
+ * then {@link #add(IndexRequest, ActionListener)} rejects documents, so they stay in write queue of originating indexer
+ * and its write queue policy applies. Result of each document write is reported to the listener passed with it, so
+ * originating indexer is informed about per item failures.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoBulkWriter {
+
+  private static final ESLogger logger = Loggers.getLogger(SysinfoBulkWriter.class);
+
+  public static final int DEFAULT_BULK_ACTIONS = 100;
+  public static final long DEFAULT_BULK_SIZE = 5 * 1024 * 1024;
+  public static final long DEFAULT_FLUSH_INTERVAL = 5 * 1000;
+  public static final long DEFAULT_TARGET_LATENCY = 1000;
+  public static final int DEFAULT_MAX_CONCURRENT_BULKS = 1;
+
+  protected Client client;
+
+  /**
+   * Scheduler used to run time based flushes.
+   */
+  protected ScheduledExecutorService scheduler;
+
+  /**
+   * Max number of documents in one bulk.
+   */
+  protected int bulkActions = DEFAULT_BULK_ACTIONS;
+
+  /**
+   * Max size of documents in one bulk [bytes].
+   */
+  protected long bulkSize = DEFAULT_BULK_SIZE;
+
+  /**
+   * Max time [ms] document waits in buffer before bulk is flushed.
+   */
+  protected long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+  /**
+   * Bulk latency [ms] number of documents in bulk is adapted to.
+   */
+  protected long targetLatency = DEFAULT_TARGET_LATENCY;
+
+  /**
+   * Max number of bulks sent and not completed yet.
+   */
+  protected int maxConcurrentBulks = DEFAULT_MAX_CONCURRENT_BULKS;
+
+  /**
+   * Current max number of documents in one bulk, adapted to the observed latency between 1 and {@link #bulkActions}.
+   */
+  protected int currentBulkActions = DEFAULT_BULK_ACTIONS;
+
+  protected List<IndexRequest> requests = new ArrayList<IndexRequest>();
+  protected List<ActionListener<IndexResponse>> listeners = new ArrayList<ActionListener<IndexResponse>>();
+  protected long bufferedBytes = 0;
+
+  /**
+   * Waiting time based flush.
+   */
+  protected ScheduledFuture<?> flushTask;
+
+  /**
+   * Number of bulks sent and not completed yet.
+   */
+  protected int activeBulks = 0;
+
+  /**
+   * True if flush was requested while {@link #maxConcurrentBulks} bulks were active, so buffer is flushed when one of
+   * them completes.
+   */
+  protected boolean flushPending = false;
+
+  /**
+   * Listeners notified once when writer stops being full, see {@link #notifyWhenNotFull(Runnable)}.
+   */
+  protected List<Runnable> notFullListeners = new ArrayList<Runnable>();
+
+  protected boolean closed = false;
+
+  protected long bulksCount = 0;
+  protected long bulkFailuresCount = 0;
+  protected long lastBulkDuration = 0;
+  protected long rejectedCount = 0;
+
+  /**
+   * Create writer.
+   * 
+   * @param client used to write bulks into
+   * @param scheduler used to run time based flushes
+   * @param bulkActions max number of documents in one bulk
+   * @param bulkSize max size of documents in one bulk [bytes]
+   * @param flushInterval max time [ms] document waits in buffer
+   * @param targetLatency bulk latency [ms] number of documents in bulk is adapted to
+   * @param maxConcurrentBulks max number of bulks sent and not completed yet
+   */
+  public SysinfoBulkWriter(Client client, ScheduledExecutorService scheduler, int bulkActions, long bulkSize,
+      long flushInterval, long targetLatency, int maxConcurrentBulks) {
+    this.client = client;
+    this.scheduler = scheduler;
+    this.bulkActions = bulkActions;
+    this.currentBulkActions = bulkActions;
+    this.bulkSize = bulkSize;
+    this.flushInterval = flushInterval;
+    this.targetLatency = targetLatency;
+    this.maxConcurrentBulks = maxConcurrentBulks;
+  }
+
+  /**
+   * Add document into buffer. Bulk is flushed if limits are reached.
+   * 
+   * @param request to write document
+   * @param listener informed about result of document write, not used if document is rejected
+   * @return true if document was accepted, false if it was rejected because writer is full. Use
+   *         {@link #notifyWhenNotFull(Runnable)} to be informed when document can be added again.
+   */
+  public boolean add(IndexRequest request, ActionListener<IndexResponse> listener) {
+    boolean flushNow = false;
+    synchronized (this) {
+      if (!closed) {
+        if (isFull()) {
+          rejectedCount++;
+          return false;
+        }
+        requests.add(request);
+        listeners.add(listener);
+        if (request.source() != null)
+          bufferedBytes += request.source().length();
+        if (requests.size() >= currentBulkActions || bufferedBytes >= bulkSize) {
+          flushNow = true;
+        } else if (requests.size() == 1) {
+          scheduleFlush();
+        }
+        listener = null;
+      }
+    }
+    // listeners are never called with writer lock held, so they can lock originating indexer safely
+    if (listener != null) {
+      listener.onFailure(new ElasticsearchException("Sysinfo bulk writer is closed"));
+    } else if (flushNow) {
+      flush();
+    }
+    return true;
+  }
+
+  /**
+   * @return true if buffer holds whole bulk which can't be sent as {@link #maxConcurrentBulks} bulks are active
+   */
+  protected synchronized boolean isFull() {
+    return activeBulks >= maxConcurrentBulks && (requests.size() >= currentBulkActions || bufferedBytes >= bulkSize);
+  }
+
+  /**
+   * Register listener notified once when writer stops being full. Listener is called without writer lock held.
+   * 
+   * @param listener to notify
+   * @return true if listener was registered, false if writer is not full (anymore) so listener is not registered
+   */
+  public synchronized boolean notifyWhenNotFull(Runnable listener) {
+    if (closed || !isFull())
+      return false;
+    if (!notFullListeners.contains(listener))
+      notFullListeners.add(listener);
+    return true;
+  }
+
+  /**
+   * Send all buffered documents into index in one bulk. Write is asynchronous, results are reported to the listeners
+   * passed with documents. If {@link #maxConcurrentBulks} bulks are active then documents stay in buffer and are sent
+   * when one of them completes.
+   */
+  public void flush() {
+    final List<ActionListener<IndexResponse>> bulkListeners;
+    BulkRequest bulk = new BulkRequest();
+    synchronized (this) {
+      if (flushTask != null) {
+        flushTask.cancel(false);
+        flushTask = null;
+      }
+      if (requests.isEmpty())
+        return;
+      if (activeBulks >= maxConcurrentBulks) {
+        flushPending = true;
+        return;
+      }
+      activeBulks++;
+      flushPending = false;
+      bulkListeners = listeners;
+      for (IndexRequest r : requests) {
+        bulk.add(r);
+      }
+      requests = new ArrayList<IndexRequest>();
+      listeners = new ArrayList<ActionListener<IndexResponse>>();
+      bufferedBytes = 0;
+    }
+    final long start = System.currentTimeMillis();
+    try {
+      client.bulk(bulk, new ActionListener<BulkResponse>() {
+
+        @Override
+        public void onResponse(BulkResponse response) {
+          bulkCompleted(System.currentTimeMillis() - start, false);
+          for (BulkItemResponse item : response.getItems()) {
+            ActionListener<IndexResponse> l = bulkListeners.get(item.getItemId());
+            if (item.isFailed()) {
+              l.onFailure(new ElasticsearchException(item.getFailureMessage()));
+            } else {
+              l.onResponse((IndexResponse) item.getResponse());
+            }
+          }
+          bulkFinished();
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+          bulkCompleted(System.currentTimeMillis() - start, true);
+          notifyFailure(bulkListeners, e);
+          bulkFinished();
+        }
+      });
+    } catch (RuntimeException e) {
+      notifyFailure(bulkListeners, e);
+      bulkFinished();
+    }
+  }
+
+  /**
+   * Release slot of finished bulk, send next bulk if waiting in buffer and notify listeners waiting for writer not
+   * being full.
+   */
+  protected void bulkFinished() {
+    List<Runnable> l;
+    boolean flushNow;
+    synchronized (this) {
+      activeBulks--;
+      flushNow = !requests.isEmpty()
+          && (flushPending || closed || requests.size() >= currentBulkActions || bufferedBytes >= bulkSize);
+      l = notFullListeners;
+      notFullListeners = new ArrayList<Runnable>();
+    }
+    if (flushNow)
+      flush();
+    for (Runnable r : l) {
+      try {
+        r.run();
+      } catch (RuntimeException e) {
+        logger.warn("Sysinfo bulk writer listener failed: {}", e, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Close writer. Buffered documents are flushed, after active bulk completes if {@link #maxConcurrentBulks} is reached.
+   */
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    flush();
+  }
+
+  /**
+   * Get statistics of this writer.
+   * 
+   * @return map with statistics
+   */
+  public synchronized Map<String, Object> getStatistics() {
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    ret.put("bulks", bulksCount);
+    ret.put("bulk_failures", bulkFailuresCount);
+    ret.put("last_bulk_duration", lastBulkDuration);
+    ret.put("bulk_actions", currentBulkActions);
+    ret.put("buffered_actions", requests.size());
+    ret.put("active_bulks", activeBulks);
+    ret.put("rejected_actions", rejectedCount);
+    return ret;
+  }
+
+  protected synchronized void bulkCompleted(long duration, boolean failed) {
+    bulksCount++;
+    if (failed)
+      bulkFailuresCount++;
+    lastBulkDuration = duration;
+    adaptBulkActions(duration);
+  }
+
+  /**
+   * Adapt {@link #currentBulkActions} to the observed bulk latency. Number of documents in bulk is halved if latency is
+   * over {@link #targetLatency}, and slowly increased back if latency is below half of it. Smaller bulks never mean more
+   * requests sent to slow target at once, as bulks are sent one after another within {@link #maxConcurrentBulks}.
+   * Buffer is full sooner with smaller bulks too, so slow target pushes back on indexers earlier.
+   * 
+   * @param duration of last bulk [ms]
+   */
+  protected synchronized void adaptBulkActions(long duration) {
+    if (targetLatency <= 0)
+      return;
+    if (duration > targetLatency) {
+      currentBulkActions = Math.max(1, currentBulkActions / 2);
+    } else if (duration < targetLatency / 2) {
+      currentBulkActions = Math.min(bulkActions, currentBulkActions + Math.max(1, bulkActions / 10));
+    }
+  }
+
+  protected void scheduleFlush() {
+    if (flushInterval <= 0 || scheduler == null)
+      return;
+    try {
+      flushTask = scheduler.schedule(new Runnable() {
+
+        @Override
+        public void run() {
+          flush();
+        }
+      }, flushInterval, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // scheduler is shut down, buffered documents are flushed by close() or next add()
+      logger.debug("Sysinfo bulk writer flush can't be scheduled: {}", e.getMessage());
+    }
+  }
+
+  private void notifyFailure(List<ActionListener<IndexResponse>> bulkListeners, Throwable e) {
+    for (ActionListener<IndexResponse> l : bulkListeners) {
+      l.onFailure(e);
+    }
+  }
+
+}
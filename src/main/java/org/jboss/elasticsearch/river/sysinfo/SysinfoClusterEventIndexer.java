@@ -0,0 +1,192 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.jboss.elasticsearch.river.sysinfo.esclient.SourceClientESClient;
+
+/**
+ * Indexer of {@link SysinfoType#CLUSTER_STATE} or {@link SysinfoType#CLUSTER_HEALTH} information driven by cluster state
+ * changes instead of periodic polling. Used for local connection only. It is registered as {@link ClusterStateListener}
+ * into local node's {@link ClusterService}, and indexes one sample of information for each cluster state change.
+ * <p>
+ * Changed cluster state is only captured in listener, information is read from it and stored in the river's scheduler,
+ * so cluster state update thread is not blocked. Changes coming within {@link #debounce} after first change are
+ * coalesced into one sample of the latest state, and samples are taken at most once per {@link #minInterval}, states
+ * changed meanwhile are coalesced too.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoClusterEventIndexer extends SysinfoIndexer implements ClusterStateListener {
+
+  private static final ESLogger logger = Loggers.getLogger(SysinfoClusterEventIndexer.class);
+
+  protected ClusterService clusterService;
+
+  /**
+   * Local source client used to read information from captured cluster state.
+   */
+  protected SourceClientESClient localClient;
+
+  /**
+   * Time [ms] sample waits after first cluster state change for next changes, which are coalesced into it.
+   */
+  protected long debounce = 0;
+
+  /**
+   * Min time [ms] between starts of two samples.
+   */
+  protected long minInterval = 0;
+
+  /**
+   * Latest captured cluster state not sampled yet, next sample is scheduled or running if not null.
+   */
+  protected ClusterState pendingState;
+
+  /**
+   * Start time of last sample [ms].
+   */
+  protected long lastSampleStart = 0;
+
+  protected long eventsCount = 0;
+  protected long coalescedEventsCount = 0;
+
+  /**
+   * Indexer constructor.
+   * 
+   * @param name name of indexer
+   * @param sourceClient used to prepare request plan
+   * @param localClient used to read information from captured cluster state
+   * @param clusterService of local node to listen for cluster state changes
+   * @param targetClient used to store informations into
+   * @param infoType type of information indexed by this indexer, must be supported by
+   *          {@link SourceClientESClient#supportsClusterState(SysinfoType, Map)}
+   * @param indexName name of index to store information into
+   * @param typeName type of document in index o store information into
+   * @param params additional parameters from info obtaining - possible content depends on infoType
+   */
+  public SysinfoClusterEventIndexer(String name, SourceClient sourceClient, SourceClientESClient localClient,
+      ClusterService clusterService, Client targetClient, SysinfoType infoType, String indexName, String typeName,
+      Map<String, String> params) {
+    super(name, sourceClient, targetClient, infoType, indexName, typeName, 0, params);
+    this.localClient = localClient;
+    this.clusterService = clusterService;
+  }
+
+  /**
+   * For unit test.
+   */
+  protected SysinfoClusterEventIndexer(String name, SourceClientESClient localClient, ClusterService clusterService,
+      Client targetClient) {
+    super(name, localClient, targetClient);
+    this.localClient = localClient;
+    this.clusterService = clusterService;
+  }
+
+  /**
+   * Start indexer. Sample of current cluster state is taken after given delay, next samples are taken on cluster state
+   * changes.
+   * 
+   * @param scheduler to take samples in
+   * @param initialDelay of first sample [ms]
+   */
+  @Override
+  public synchronized void start(ScheduledExecutorService scheduler, long initialDelay) {
+    this.scheduler = scheduler;
+    closed = false;
+    pendingState = clusterService.state();
+    clusterService.add(this);
+    logger.info("Sysinfo river {} indexer started for cluster state changes", name);
+    scheduleNextRun(initialDelay);
+  }
+
+  @Override
+  public void clusterChanged(ClusterChangedEvent event) {
+    synchronized (this) {
+      if (closed)
+        return;
+      eventsCount++;
+      if (pendingState != null) {
+        // sample of previous state not taken yet, so it is replaced
+        coalescedEventsCount++;
+        pendingState = event.state();
+        return;
+      }
+      pendingState = event.state();
+      if (!running) {
+        scheduleNextRun(nextSampleDelay());
+      }
+    }
+  }
+
+  /**
+   * @return delay [ms] of next sample based on {@link #debounce} and {@link #minInterval}
+   */
+  protected synchronized long nextSampleDelay() {
+    long delay = Math.max(debounce, lastSampleStart + minInterval - System.currentTimeMillis());
+    return delay > 0 ? delay : 0;
+  }
+
+  /**
+   * Take sample of captured cluster state.
+   */
+  @Override
+  protected void processLoopTask() throws Exception, InterruptedException {
+    ClusterState state;
+    synchronized (this) {
+      state = pendingState;
+      pendingState = null;
+      lastSampleStart = System.currentTimeMillis();
+    }
+    if (state == null)
+      return;
+    store(localClient.readSysinfoBytes(requestPlan, state));
+  }
+
+  /**
+   * Next sample is scheduled only if cluster state changed during last one.
+   */
+  @Override
+  protected synchronized void scheduleNextCycle() {
+    if (pendingState != null)
+      scheduleNextRun(nextSampleDelay());
+  }
+
+  /**
+   * Nothing to reschedule, samples are not taken periodically.
+   */
+  @Override
+  public synchronized void reschedule() {
+  }
+
+  @Override
+  public synchronized void close() {
+    clusterService.remove(this);
+    pendingState = null;
+    super.close();
+  }
+
+  @Override
+  public synchronized Map<String, Object> getStatistics() {
+    Map<String, Object> ret = super.getStatistics();
+    ret.put("mode", "events");
+    ret.put("debounce", debounce);
+    ret.put("min_interval", minInterval);
+    ret.put("events", eventsCount);
+    ret.put("coalesced_events", coalescedEventsCount);
+    return ret;
+  }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+
+/**
+ * Converts consecutive {@link SysinfoType#CLUSTER_STATE} reads into compact documents of
+ * {@link SysinfoType#CLUSTER_STATE_CHANGES} type, containing only what changed since previous read: master node, nodes
+ * added/removed, indices created/deleted, indices with changed metadata, changed cluster blocks, and shard copies which
+ * became started, initializing, relocating or unassigned. Only sections present in read cluster state (see
+ * <code>metric</code> param) are compared. Full cluster state is still returned for the first read and then once per
+ * {@link #fullSnapshotInterval}, with <code>full_snapshot</code> field set to <code>true</code>. Nothing is returned if
+ * cluster state is not changed.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoClusterStateDiffer {
+
+  /**
+   * Default value for {@link #fullSnapshotInterval} - 1 hour.
+   */
+  public static final long DEFAULT_FULL_SNAPSHOT_INTERVAL = 60 * 60 * 1000;
+
+  /**
+   * Time [ms] between two full snapshots of cluster state. Only first read is returned as full snapshot if 0.
+   */
+  protected long fullSnapshotInterval = DEFAULT_FULL_SNAPSHOT_INTERVAL;
+
+  /**
+   * Cluster state from previous read, null before first read.
+   */
+  protected Map<String, Object> previous;
+
+  /**
+   * Time [ms] of last full snapshot.
+   */
+  protected long lastFullSnapshot = 0;
+
+  protected long fullSnapshotsCount = 0;
+  protected long diffsCount = 0;
+  protected long unchangedCount = 0;
+
+  /**
+   * Process next cluster state read.
+   * 
+   * @param content of cluster state JSON
+   * @return document to be stored, full snapshot or changes, null if cluster state is not changed
+   * @throws IOException
+   */
+  public BytesReference process(BytesReference content) throws IOException {
+    return process(content, System.currentTimeMillis());
+  }
+
+  protected synchronized BytesReference process(BytesReference content, long now) throws IOException {
+    Map<String, Object> current = XContentHelper.convertToMap(content, true).v2();
+    Map<String, Object> prev = previous;
+    previous = current;
+    if (prev == null || (fullSnapshotInterval > 0 && now - lastFullSnapshot >= fullSnapshotInterval)) {
+      lastFullSnapshot = now;
+      fullSnapshotsCount++;
+      Map<String, Object> ret = new LinkedHashMap<String, Object>();
+      ret.put("full_snapshot", true);
+      ret.putAll(current);
+      return XContentFactory.jsonBuilder().map(ret).bytes();
+    }
+    if (current.equals(prev)) {
+      unchangedCount++;
+      return null;
+    }
+    diffsCount++;
+    return XContentFactory.jsonBuilder().map(diff(prev, current)).bytes();
+  }
+
+  /**
+   * Prepare document with changes between two cluster states.
+   * 
+   * @param prev previous cluster state
+   * @param current cluster state
+   * @return document with changes
+   */
+  protected static Map<String, Object> diff(Map<String, Object> prev, Map<String, Object> current) {
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    putIfNotNull(ret, "cluster_name", current.get("cluster_name"));
+    ret.put("full_snapshot", false);
+    putIfNotNull(ret, "version", current.get("version"));
+    putIfNotNull(ret, "previous_version", prev.get("version"));
+    if (!equals(prev.get("master_node"), current.get("master_node"))) {
+      ret.put("master_node", current.get("master_node"));
+      ret.put("previous_master_node", prev.get("master_node"));
+    }
+    if (!equals(prev.get("blocks"), current.get("blocks"))) {
+      ret.put("blocks", current.get("blocks"));
+    }
+
+    Map<String, Object> nodes = getMap(current, "nodes");
+    Map<String, Object> prevNodes = getMap(prev, "nodes");
+    putIfNotEmpty(ret, "nodes_added", missingNodes(nodes, prevNodes));
+    putIfNotEmpty(ret, "nodes_removed", missingNodes(prevNodes, nodes));
+
+    Map<String, Object> indices = getIndices(current);
+    Map<String, Object> prevIndices = getIndices(prev);
+    putIfNotEmpty(ret, "indices_created", missingKeys(indices, prevIndices));
+    putIfNotEmpty(ret, "indices_deleted", missingKeys(prevIndices, indices));
+    List<Object> metadataChanged = new ArrayList<Object>();
+    Map<String, Object> metadata = getMap(getMap(current, "metadata"), "indices");
+    Map<String, Object> prevMetadata = getMap(getMap(prev, "metadata"), "indices");
+    if (metadata != null && prevMetadata != null) {
+      for (Map.Entry<String, Object> e : metadata.entrySet()) {
+        if (prevMetadata.containsKey(e.getKey()) && !equals(e.getValue(), prevMetadata.get(e.getKey())))
+          metadataChanged.add(e.getKey());
+      }
+    }
+    putIfNotEmpty(ret, "indices_metadata_changed", metadataChanged);
+
+    Map<String, List<Object>> shards = new LinkedHashMap<String, List<Object>>();
+    for (String state : new String[] { "STARTED", "INITIALIZING", "RELOCATING", "UNASSIGNED" }) {
+      shards.put(state, new ArrayList<Object>());
+    }
+    for (Map<String, Object> shard : changedShards(getShards(prev), getShards(current))) {
+      List<Object> l = shards.get(shard.get("state"));
+      if (l != null)
+        l.add(shard);
+    }
+    for (Map.Entry<String, List<Object>> e : shards.entrySet()) {
+      putIfNotEmpty(ret, "shards_" + e.getKey().toLowerCase(Locale.ROOT), e.getValue());
+    }
+    return ret;
+  }
+
+  /**
+   * Get shard copies which are in current cluster state but not in previous one (new copies, or copies with changed
+   * state or node). Shard copies have no identity in cluster state, so equal copies (eg. unassigned replicas) are
+   * counted.
+   */
+  private static List<Map<String, Object>> changedShards(List<Map<String, Object>> prev,
+      List<Map<String, Object>> current) {
+    Map<Map<String, Object>, Integer> counts = new HashMap<Map<String, Object>, Integer>();
+    for (Map<String, Object> shard : prev) {
+      Integer c = counts.get(shard);
+      counts.put(shard, c != null ? c + 1 : 1);
+    }
+    List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>();
+    for (Map<String, Object> shard : current) {
+      Integer c = counts.get(shard);
+      if (c != null && c > 0) {
+        counts.put(shard, c - 1);
+      } else {
+        ret.add(shard);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Get all shard copies from <code>routing_table</code> of cluster state.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<Map<String, Object>> getShards(Map<String, Object> state) {
+    List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>();
+    Map<String, Object> indices = getMap(getMap(state, "routing_table"), "indices");
+    if (indices != null) {
+      for (Object index : indices.values()) {
+        Map<String, Object> shards = getMap((Map<String, Object>) index, "shards");
+        if (shards == null)
+          continue;
+        for (Object copies : shards.values()) {
+          if (copies instanceof List) {
+            for (Object copy : (List<Object>) copies) {
+              if (copy instanceof Map)
+                ret.add((Map<String, Object>) copy);
+            }
+          }
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Get indices of cluster state from <code>metadata</code>, or from <code>routing_table</code> if metadata are not
+   * available.
+   */
+  private static Map<String, Object> getIndices(Map<String, Object> state) {
+    Map<String, Object> ret = getMap(getMap(state, "metadata"), "indices");
+    if (ret == null)
+      ret = getMap(getMap(state, "routing_table"), "indices");
+    return ret;
+  }
+
+  private static List<Object> missingNodes(Map<String, Object> nodes, Map<String, Object> from) {
+    List<Object> ret = new ArrayList<Object>();
+    for (Object id : missingKeys(nodes, from)) {
+      Map<String, Object> node = new LinkedHashMap<String, Object>();
+      node.put("id", id);
+      Object o = nodes.get(id);
+      if (o instanceof Map) {
+        putIfNotNull(node, "name", ((Map<?, ?>) o).get("name"));
+        putIfNotNull(node, "transport_address", ((Map<?, ?>) o).get("transport_address"));
+      }
+      ret.add(node);
+    }
+    return ret;
+  }
+
+  /**
+   * Get keys of map missing in other map. Nothing is missing if any map is null, as section is not present in cluster
+   * state then.
+   */
+  private static List<Object> missingKeys(Map<String, Object> map, Map<String, Object> from) {
+    List<Object> ret = new ArrayList<Object>();
+    if (map != null && from != null) {
+      for (String key : map.keySet()) {
+        if (!from.containsKey(key))
+          ret.add(key);
+      }
+    }
+    return ret;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> getMap(Map<String, Object> map, String key) {
+    if (map == null)
+      return null;
+    Object o = map.get(key);
+    return o instanceof Map ? (Map<String, Object>) o : null;
+  }
+
+  private static void putIfNotNull(Map<String, Object> map, String key, Object value) {
+    if (value != null)
+      map.put(key, value);
+  }
+
+  private static void putIfNotEmpty(Map<String, Object> map, String key, List<?> value) {
+    if (!value.isEmpty())
+      map.put(key, value);
+  }
+
+  private static boolean equals(Object o1, Object o2) {
+    return o1 == null ? o2 == null : o1.equals(o2);
+  }
+
+  /**
+   * Get statistics of differ.
+   * 
+   * @return map with statistics
+   */
+  public synchronized Map<String, Object> getStatistics() {
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    ret.put("full_snapshot_interval", fullSnapshotInterval);
+    ret.put("full_snapshots", fullSnapshotsCount);
+    ret.put("diffs", diffsCount);
+    ret.put("unchanged", unchangedCount);
+    return ret;
+  }
+
+}
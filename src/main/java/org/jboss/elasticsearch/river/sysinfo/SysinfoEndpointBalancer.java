@@ -0,0 +1,258 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Balancer of requests over more endpoints (nodes) of monitored cluster, used by {@link SourceClientREST}. Request is
+ * sent to healthy endpoint with least requests in flight, endpoint with lower observed latency wins if more endpoints
+ * have same count of requests in flight. Endpoint is ejected after {@link #failureThreshold} consecutive failures, so
+ * it gets no requests until it's reinstated by successful probe (see {@link #getEjectedEndpoints()}). If all endpoints
+ * are ejected then requests are still sent to them, so collecting recovers even before next probe.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoEndpointBalancer {
+
+  protected static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+  /**
+   * Weight of last request in exponentially weighted moving average of endpoint latency.
+   */
+  protected static final double LATENCY_WEIGHT = 0.3d;
+
+  protected final List<Endpoint> endpoints;
+
+  /**
+   * Count of consecutive failures after which endpoint is ejected.
+   */
+  protected final int failureThreshold;
+
+  /**
+   * Create balancer.
+   * 
+   * @param urlBases base URLs of endpoints, with trailing <code>/</code>
+   * @param failureThreshold count of consecutive failures after which endpoint is ejected
+   */
+  public SysinfoEndpointBalancer(List<String> urlBases, int failureThreshold) {
+    if (urlBases == null || urlBases.isEmpty())
+      throw new IllegalArgumentException("urlBases must be defined");
+    List<Endpoint> l = new ArrayList<Endpoint>(urlBases.size());
+    for (String urlBase : urlBases) {
+      l.add(new Endpoint(l.size(), urlBase));
+    }
+    this.endpoints = Collections.unmodifiableList(l);
+    this.failureThreshold = failureThreshold;
+  }
+
+  /**
+   * @return all endpoints in configured order, index of endpoint is its position in list
+   */
+  public List<Endpoint> getEndpoints() {
+    return endpoints;
+  }
+
+  /**
+   * Select endpoint for next request.
+   * 
+   * @param excluded endpoints not to select, eg. already failed for this request, can be null
+   * @return selected endpoint, null if all endpoints are excluded
+   */
+  public Endpoint select(Collection<Endpoint> excluded) {
+    Endpoint ret = null;
+    boolean retHealthy = false;
+    for (Endpoint e : endpoints) {
+      if (excluded != null && excluded.contains(e))
+        continue;
+      boolean healthy = e.isHealthy();
+      if (ret == null || (healthy && !retHealthy) || (healthy == retHealthy && e.isBetterThan(ret))) {
+        ret = e;
+        retHealthy = healthy;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return endpoints ejected due to failures, to be probed
+   */
+  public List<Endpoint> getEjectedEndpoints() {
+    List<Endpoint> ret = new ArrayList<Endpoint>();
+    for (Endpoint e : endpoints) {
+      if (!e.isHealthy())
+        ret.add(e);
+    }
+    return ret;
+  }
+
+  /**
+   * Get statistics of endpoints.
+   * 
+   * @return map with statistics, key is base URL of endpoint
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    for (Endpoint e : endpoints) {
+      ret.put(e.urlBase, e.getStatistics());
+    }
+    return ret;
+  }
+
+  /**
+   * One endpoint of monitored cluster with its health and statistics.
+   */
+  public class Endpoint {
+
+    protected final int index;
+
+    protected final String urlBase;
+
+    protected final AtomicInteger inFlight = new AtomicInteger();
+
+    protected boolean healthy = true;
+
+    protected int consecutiveFailures = 0;
+
+    /**
+     * Exponentially weighted moving average of latency [ms] of successful requests.
+     */
+    protected double latency = 0;
+
+    protected long requestsCount = 0;
+    protected long failuresCount = 0;
+    protected long ejectionsCount = 0;
+    protected String lastError;
+
+    protected Endpoint(int index, String urlBase) {
+      this.index = index;
+      this.urlBase = urlBase;
+    }
+
+    /**
+     * @return index of endpoint in {@link SysinfoEndpointBalancer#getEndpoints()}
+     */
+    public int getIndex() {
+      return index;
+    }
+
+    /**
+     * @return base URL of endpoint
+     */
+    public String getUrlBase() {
+      return urlBase;
+    }
+
+    public synchronized boolean isHealthy() {
+      return healthy;
+    }
+
+    private boolean isBetterThan(Endpoint other) {
+      int c = inFlight.get() - other.inFlight.get();
+      if (c != 0)
+        return c < 0;
+      return getLatency() < other.getLatency();
+    }
+
+    protected synchronized double getLatency() {
+      return latency;
+    }
+
+    /**
+     * Record start of request sent to this endpoint. {@link #requestFinished()} must be called when request finishes.
+     * 
+     * @return start time of request [ns]
+     */
+    public long requestStarted() {
+      inFlight.incrementAndGet();
+      return System.nanoTime();
+    }
+
+    /**
+     * Record end of request sent to this endpoint.
+     */
+    public void requestFinished() {
+      inFlight.decrementAndGet();
+    }
+
+    /**
+     * Record successful request, endpoint is reinstated if ejected.
+     * 
+     * @param startTime of request returned by {@link #requestStarted()}
+     */
+    public synchronized void requestSucceeded(long startTime) {
+      requestsCount++;
+      double l = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime) / 1000d;
+      latency = requestsCount - failuresCount == 1 ? l : LATENCY_WEIGHT * l + (1 - LATENCY_WEIGHT) * latency;
+      reinstated();
+    }
+
+    /**
+     * Record failed request, endpoint is ejected after {@link SysinfoEndpointBalancer#failureThreshold} consecutive
+     * failures.
+     * 
+     * @param error message of failure
+     */
+    public synchronized void requestFailed(String error) {
+      requestsCount++;
+      failuresCount++;
+      lastError = error;
+      consecutiveFailures++;
+      if (healthy && consecutiveFailures >= failureThreshold) {
+        healthy = false;
+        ejectionsCount++;
+      }
+    }
+
+    /**
+     * Record result of probe of ejected endpoint.
+     * 
+     * @param error message of probe failure, null if probe was successful so endpoint is reinstated
+     */
+    public synchronized void probed(String error) {
+      if (error == null)
+        reinstated();
+      else
+        lastError = error;
+    }
+
+    private void reinstated() {
+      healthy = true;
+      consecutiveFailures = 0;
+    }
+
+    /**
+     * Get statistics of endpoint.
+     * 
+     * @return map with statistics
+     */
+    public synchronized Map<String, Object> getStatistics() {
+      Map<String, Object> ret = new LinkedHashMap<String, Object>();
+      ret.put("healthy", healthy);
+      ret.put("in_flight", inFlight.get());
+      ret.put("requests", requestsCount);
+      ret.put("failures", failuresCount);
+      ret.put("latency", Math.round(latency * 100) / 100d);
+      ret.put("ejections", ejectionsCount);
+      if (lastError != null)
+        ret.put("last_error", lastError);
+      return ret;
+    }
+
+    @Override
+    public String toString() {
+      return urlBase;
+    }
+  }
+
+}
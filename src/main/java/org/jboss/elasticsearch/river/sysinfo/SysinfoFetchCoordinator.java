@@ -0,0 +1,252 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+/**
+ * {@link SourceClient} shared by all indexers of one river which deduplicates reads of same information. Read of
+ * information with same type and params as read in progress waits for it and shares its result, instead of calling
+ * monitored cluster again. Result is shared also with reads started up to {@link #window} after it is completed. Reads
+ * are delegated to the river's real {@link SourceClient}, which is started and closed by river, or to node level
+ * {@link SysinfoResponseCache} if configured.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoFetchCoordinator implements SourceClient {
+
+  protected SourceClient sourceClient;
+
+  /**
+   * Time [ms] completed read result is shared with next reads of same information.
+   */
+  protected long window = 0;
+
+  /**
+   * Reads in progress or completed within {@link #window}, key is request plan, equal for same info type and params.
+   */
+  protected Map<SysinfoRequestPlan, SysinfoSharedRead> fetches = new HashMap<SysinfoRequestPlan, SysinfoSharedRead>();
+
+  /**
+   * Node level cache reads are delegated to, if not null and {@link #cacheTtl} is positive.
+   */
+  protected SysinfoResponseCache responseCache;
+
+  /**
+   * Key of connection to monitored cluster used in {@link #responseCache}.
+   */
+  protected Object cacheConnection;
+
+  /**
+   * Max age [ms] of information read from {@link #responseCache}.
+   */
+  protected long cacheTtl = 0;
+
+  protected long fetchesCount = 0;
+  protected long deduplicatedCount = 0;
+
+  /**
+   * Create coordinator.
+   * 
+   * @param sourceClient to delegate reads to
+   * @param window time [ms] completed read result is shared with next reads of same information
+   */
+  public SysinfoFetchCoordinator(SourceClient sourceClient, long window) {
+    this.sourceClient = sourceClient;
+    this.window = window;
+  }
+
+  /**
+   * Delegate reads to node level cache. Connection and TTL are registered in cache until {@link #close()}.
+   * 
+   * @param responseCache node level cache, can be null
+   * @param connection key of connection to monitored cluster, equal for all rivers reading same cluster
+   * @param ttl max age [ms] of cached information used, cache is not used if 0
+   */
+  public synchronized void setResponseCache(SysinfoResponseCache responseCache, Object connection, long ttl) {
+    unregisterResponseCache();
+    this.responseCache = responseCache;
+    this.cacheConnection = connection;
+    this.cacheTtl = ttl;
+    if (responseCache != null && ttl > 0)
+      responseCache.register(connection, ttl);
+  }
+
+  private void unregisterResponseCache() {
+    if (responseCache != null && cacheTtl > 0)
+      responseCache.unregister(cacheConnection, cacheTtl);
+    responseCache = null;
+  }
+
+  @Override
+  public String readSysinfoValue(SysinfoType infoType, Map<String, String> params) throws IOException,
+      InterruptedException {
+    BytesReference value = readSysinfoBytes(prepareRequestPlan(infoType, params));
+    return value != null ? value.toUtf8() : null;
+  }
+
+  /**
+   * Plan is prepared by real {@link SourceClient}.
+   */
+  @Override
+  public SysinfoRequestPlan prepareRequestPlan(SysinfoType infoType, Map<String, String> params) {
+    return sourceClient.prepareRequestPlan(infoType, params);
+  }
+
+  /**
+   * Streamed reads are neither deduplicated nor cached, as stream can be consumed once only. They go directly to real
+   * {@link SourceClient}.
+   */
+  @Override
+  public XContentParser readSysinfoParser(SysinfoRequestPlan plan) throws IOException, InterruptedException {
+    return sourceClient.readSysinfoParser(plan);
+  }
+
+  @Override
+  public BytesReference readSysinfoBytes(SysinfoRequestPlan plan) throws IOException, InterruptedException {
+    SysinfoRequestPlan key = plan;
+    SysinfoSharedRead fetch;
+    boolean shared;
+    synchronized (this) {
+      fetch = fetches.get(key);
+      shared = fetch != null && fetch.isReusable(System.currentTimeMillis() - window);
+      if (shared) {
+        deduplicatedCount++;
+      } else {
+        fetch = new SysinfoSharedRead();
+        fetches.put(key, fetch);
+        fetchesCount++;
+      }
+    }
+    if (shared) {
+      return fetch.get();
+    }
+
+    try {
+      BytesReference value = (responseCache != null && cacheTtl > 0) ? responseCache.read(cacheConnection, plan,
+          cacheTtl, sourceClient) : sourceClient.readSysinfoBytes(plan);
+      fetch.complete(value, null);
+      return value;
+    } catch (IOException e) {
+      fetch.complete(null, e);
+      throw e;
+    } catch (InterruptedException e) {
+      fetch.complete(null, e);
+      throw e;
+    } catch (RuntimeException e) {
+      fetch.complete(null, e);
+      throw e;
+    } catch (Error e) {
+      fetch.complete(null, new IOException(e));
+      throw e;
+    } finally {
+      fetchFinished(key, fetch);
+    }
+  }
+
+  /**
+   * Asynchronous reads are deduplicated same way as {@link #readSysinfoBytes(SysinfoRequestPlan)}, shared read notifies
+   * all listeners. Reads from {@link #responseCache} are asynchronous too, so calling thread is never blocked.
+   */
+  @Override
+  public Future<BytesReference> readSysinfoBytesAsync(final SysinfoRequestPlan plan,
+      ActionListener<BytesReference> listener) {
+    final SysinfoSharedRead fetch;
+    boolean shared;
+    synchronized (this) {
+      SysinfoSharedRead f = fetches.get(plan);
+      shared = f != null && f.isReusable(System.currentTimeMillis() - window);
+      if (shared) {
+        deduplicatedCount++;
+      } else {
+        f = new SysinfoSharedRead();
+        fetches.put(plan, f);
+        fetchesCount++;
+      }
+      fetch = f;
+    }
+    PlainActionFuture<BytesReference> ret = PlainActionFuture.newFuture();
+    fetch.addListener(ret);
+    if (listener != null)
+      fetch.addListener(listener);
+    if (shared)
+      return ret;
+
+    ActionListener<BytesReference> fetchListener = new ActionListener<BytesReference>() {
+
+      @Override
+      public void onResponse(BytesReference value) {
+        fetch.complete(value, null);
+        fetchFinished(plan, fetch);
+      }
+
+      @Override
+      public void onFailure(Throwable e) {
+        fetch.complete(null, e instanceof Exception ? (Exception) e : new IOException(e));
+        fetchFinished(plan, fetch);
+      }
+    };
+    try {
+      if (responseCache != null && cacheTtl > 0) {
+        responseCache.readAsync(cacheConnection, plan, cacheTtl, sourceClient, fetchListener);
+      } else {
+        sourceClient.readSysinfoBytesAsync(plan, fetchListener);
+      }
+    } catch (RuntimeException e) {
+      fetch.complete(null, e);
+      fetchFinished(plan, fetch);
+    }
+    return ret;
+  }
+
+  /**
+   * Forget finished read if its result is not shared with next reads.
+   */
+  private void fetchFinished(SysinfoRequestPlan key, SysinfoSharedRead fetch) {
+    if (window <= 0) {
+      synchronized (this) {
+        if (fetches.get(key) == fetch)
+          fetches.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Nothing to do, real {@link SourceClient} is started by river.
+   */
+  @Override
+  public void start() {
+  }
+
+  /**
+   * Forget all read results and unregister from {@link #responseCache}, so entries of connection are dropped if no other
+   * river uses it. Real {@link SourceClient} is closed by river.
+   */
+  @Override
+  public synchronized void close() {
+    fetches.clear();
+    unregisterResponseCache();
+  }
+
+  @Override
+  public synchronized Map<String, Object> getStatistics() {
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    ret.put("dedup_window", window);
+    ret.put("fetches", fetchesCount);
+    ret.put("deduplicated", deduplicatedCount);
+    return ret;
+  }
+
+}
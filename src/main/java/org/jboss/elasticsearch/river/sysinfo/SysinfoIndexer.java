@@ -5,14 +5,33 @@
  */
 package org.jboss.elasticsearch.river.sysinfo;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 /**
- * Thread used to index one type of system information.
+ * Task used to index one type of system information. One {@link #run()} call performs one indexing cycle, next cycle is
+ * scheduled into the scheduler passed to {@link #start(ScheduledExecutorService)} at the end of each run, so no thread
+ * is occupied by indexer between cycles.
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  */
@@ -20,7 +39,7 @@ public class SysinfoIndexer implements Runnable {
 
   private static final ESLogger logger = Loggers.getLogger(SysinfoIndexer.class);
 
-  protected boolean closed = true;
+  protected volatile boolean closed = true;
 
   protected String name;
   protected SourceClient sourceClient;
@@ -28,9 +47,217 @@ public class SysinfoIndexer implements Runnable {
   protected SysinfoType infoType;
   protected String indexName;
   protected String typeName;
-  protected long indexingPeriod = 0;
+  protected volatile long indexingPeriod = 0;
   protected Map<String, String> params;
 
+  /**
+   * Plan of request reading information, prepared by {@link #sourceClient} once in constructor and reused for each
+   * indexing cycle.
+   */
+  protected SysinfoRequestPlan requestPlan;
+
+  /**
+   * Outputs of composite indexer. Information is read once and stored by each output into its own index and type, see
+   * {@link SysinfoIndexerOutput}. If null then whole information is stored into {@link #indexName} and
+   * {@link #typeName}.
+   */
+  protected List<SysinfoIndexerOutput> outputs;
+
+  /**
+   * Differ converting read cluster states into documents with changes, used for
+   * {@link SysinfoType#CLUSTER_STATE_CHANGES} indexer only.
+   */
+  protected SysinfoClusterStateDiffer stateDiffer;
+
+  /**
+   * Splitter of big information into separate documents, information is stored as one document if null. Information is
+   * read from {@link #sourceClient} as stream and split while parsed in this case, so it is never held in memory whole.
+   */
+  protected SysinfoResponseSplitter splitter;
+
+  /**
+   * If true then information is read asynchronously, so no scheduler thread waits for response, see
+   * {@link #processLoopTaskAsync()}. Not used with {@link #splitter}, which reads information as stream.
+   */
+  protected boolean asyncRead = false;
+
+  /**
+   * If true then indexing cycles are aligned to the wall clock period boundaries (slots), see
+   * {@link #nextAlignedSlot(long, long)}. Slot time is stored as document <code>_timestamp</code> in this case.
+   */
+  protected boolean aligned = false;
+
+  /**
+   * Fixed offset [ms] of indexing cycles. Shifts cycles from slots in {@link #aligned} mode, or first cycle after start
+   * in not aligned mode.
+   */
+  protected long phase = 0;
+
+  /**
+   * Max random delay [ms] added to each indexing cycle start. Jitter is not accumulated over cycles.
+   */
+  protected long jitter = 0;
+
+  /**
+   * Random delay [ms] used for last started indexing cycle.
+   */
+  protected long lastJitter = 0;
+
+  /**
+   * Random delay [ms] used for next scheduled indexing cycle.
+   */
+  protected long nextJitter = 0;
+
+  /**
+   * Slot [ms] of last started indexing cycle, used in {@link #aligned} mode only.
+   */
+  protected long lastSlot = 0;
+
+  /**
+   * Slot [ms] of next scheduled indexing cycle, used in {@link #aligned} mode only.
+   */
+  protected long nextSlot = 0;
+
+  /**
+   * Policy applied when indexing cycle takes longer than {@link #indexingPeriod}.
+   */
+  protected OverrunPolicy overrunPolicy = OverrunPolicy.SKIP;
+
+  /**
+   * Period [ms] stretched by {@link OverrunPolicy#STRETCH} to fit duration of overrunning cycles, always multiple of
+   * {@link #indexingPeriod}. 0 if period is not stretched.
+   */
+  protected long stretchedPeriod = 0;
+
+  /**
+   * Number of finished indexing cycles.
+   */
+  protected long cyclesCount = 0;
+
+  /**
+   * Number of indexing cycles which took longer than {@link #indexingPeriod}.
+   */
+  protected long overrunsCount = 0;
+
+  /**
+   * Number of regular cycle start times passed while previous cycle was still running.
+   */
+  protected long missedCyclesCount = 0;
+
+  /**
+   * Duration [ms] of last finished indexing cycle.
+   */
+  protected long lastDuration = 0;
+
+  /**
+   * Default value for {@link #maxInflightWrites}.
+   */
+  public static final int DEFAULT_MAX_INFLIGHT_WRITES = 2;
+
+  /**
+   * Max number of index writes issued by this indexer and not completed yet. Next writes wait in {@link #writeQueue}.
+   * Writes accepted by {@link #bulkWriter} are not counted while they wait for bulk flush, writer limits them itself by
+   * rejecting next writes when it is full (see {@link #writerFull}).
+   */
+  protected int maxInflightWrites = DEFAULT_MAX_INFLIGHT_WRITES;
+
+  /**
+   * Number of index writes issued by this indexer and not completed yet.
+   */
+  protected int inflightWrites = 0;
+
+  /**
+   * True if last write was rejected by full {@link #bulkWriter}. Queued writes wait until writer notifies it is not full
+   * anymore, so write queue fills up and {@link #writeQueuePolicy} applies.
+   */
+  protected boolean writerFull = false;
+
+  /**
+   * Listener registered into full {@link #bulkWriter}, issues queued writes when writer is not full anymore.
+   */
+  protected final Runnable writerNotFullListener = new Runnable() {
+
+    @Override
+    public void run() {
+      synchronized (SysinfoIndexer.this) {
+        writerFull = false;
+        SysinfoIndexer.this.notifyAll();
+      }
+      drainWriteQueue();
+    }
+  };
+
+  /**
+   * Default value for {@link #writeQueueSize}.
+   */
+  public static final int DEFAULT_WRITE_QUEUE_SIZE = 10;
+
+  /**
+   * Max number of informations waiting in {@link #writeQueue}. {@link #writeQueuePolicy} is applied if queue is full.
+   */
+  protected int writeQueueSize = DEFAULT_WRITE_QUEUE_SIZE;
+
+  /**
+   * Policy applied when collected information can't be put into full {@link #writeQueue}.
+   */
+  protected WriteQueuePolicy writeQueuePolicy = WriteQueuePolicy.DROP_OLDEST;
+
+  /**
+   * Informations collected but not written yet because {@link #maxInflightWrites} limit is reached.
+   */
+  protected Deque<IndexRequest> writeQueue = new ArrayDeque<IndexRequest>();
+
+  /**
+   * Writer shared by indexers of the river to store information in bulks. Information is written by separate index
+   * requests if null.
+   */
+  protected SysinfoBulkWriter bulkWriter;
+
+  /**
+   * Number of successfully completed index writes.
+   */
+  protected long writesCount = 0;
+
+  /**
+   * Number of failed index writes.
+   */
+  protected long writeFailuresCount = 0;
+
+  /**
+   * Number of informations dropped from full {@link #writeQueue}.
+   */
+  protected long writesDroppedCount = 0;
+
+  /**
+   * Total time [ms] indexing cycles were blocked by full {@link #writeQueue}.
+   */
+  protected long writeBlockedTime = 0;
+
+  /**
+   * Duration [ms] of last completed index write.
+   */
+  protected long lastWriteDuration = 0;
+
+  /**
+   * Scheduler used to run indexing cycles.
+   */
+  protected ScheduledExecutorService scheduler;
+
+  /**
+   * Next indexing cycle waiting in {@link #scheduler}.
+   */
+  protected ScheduledFuture<?> scheduledTask;
+
+  /**
+   * True while indexing cycle is processed.
+   */
+  protected boolean running = false;
+
+  /**
+   * Start time of last indexing cycle [ms].
+   */
+  protected long lastRunStart = 0;
+
   /**
    * Indexer constructor.
    * 
@@ -53,6 +280,9 @@ public class SysinfoIndexer implements Runnable {
     this.typeName = typeName;
     this.indexingPeriod = indexingPeriod;
     this.params = params;
+    this.requestPlan = sourceClient.prepareRequestPlan(infoType.getReadType(), params);
+    if (infoType == SysinfoType.CLUSTER_STATE_CHANGES)
+      this.stateDiffer = new SysinfoClusterStateDiffer();
   }
 
   /**
@@ -64,65 +294,627 @@ public class SysinfoIndexer implements Runnable {
     this.targetClient = targetClient;
   }
 
+  /**
+   * Start indexer. First indexing cycle is scheduled immediately, or to the next slot in {@link #aligned} mode.
+   * 
+   * @param scheduler to run indexing cycles in
+   */
+  public void start(ScheduledExecutorService scheduler) {
+    start(scheduler, 0);
+  }
+
+  /**
+   * Start indexer. First indexing cycle is scheduled after given delay shifted by {@link #phase} and {@link #jitter},
+   * or to the next slot in {@link #aligned} mode.
+   * 
+   * @param scheduler to run indexing cycles in
+   * @param initialDelay of first indexing cycle [ms], not used in {@link #aligned} mode
+   */
+  public synchronized void start(ScheduledExecutorService scheduler, long initialDelay) {
+    this.scheduler = scheduler;
+    closed = false;
+    stretchedPeriod = 0;
+    logger.info("Sysinfo river {} indexer started", name);
+    nextJitter = randomJitter();
+    long delay;
+    if (aligned) {
+      lastSlot = 0;
+      long now = System.currentTimeMillis();
+      long p = currentPhase();
+      nextSlot = nextAlignedSlot(now - p, indexingPeriod);
+      delay = nextSlot + p - now;
+    } else {
+      delay = initialDelay + phase;
+    }
+    scheduleNextRun(delay + nextJitter);
+  }
+
   @Override
   public void run() {
-    logger.info("Sysinfo river {} indexer started", name);
-    closed = false;
+    synchronized (this) {
+      if (closed)
+        return;
+      running = true;
+      lastRunStart = System.currentTimeMillis();
+      lastSlot = nextSlot;
+      lastJitter = nextJitter;
+    }
+    if (asyncRead && splitter == null) {
+      processLoopTaskAsync();
+      return;
+    }
     try {
-      while (true) {
-        if (closed) {
-          return;
+      processLoopTask();
+    } catch (InterruptedException e1) {
+      close();
+      return;
+    } catch (Exception e) {
+      if (closed)
+        return;
+      logger.error("Failed to process Sysinfo {} indexer due: {}", e, name, e.getMessage());
+    } finally {
+      synchronized (this) {
+        running = false;
+      }
+    }
+    cycleFinished();
+  }
+
+  /**
+   * Update statistics at the end of indexing cycle and schedule next one.
+   */
+  protected void cycleFinished() {
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      cyclesCount++;
+      lastDuration = now - lastRunStart;
+      long missed = countMissedCycles(now);
+      if (missed > 0) {
+        overrunsCount++;
+        missedCyclesCount += missed;
+        logger.debug("Sysinfo river {} indexer cycle overrun, took {} ms and missed {} cycles, {} policy applied", name,
+            lastDuration, missed, overrunPolicy);
+      }
+      if (overrunPolicy == OverrunPolicy.STRETCH)
+        stretchPeriod(now);
+      scheduleNextCycle();
+    }
+  }
+
+  /**
+   * Schedule next indexing cycle at the end of cycle, based on current {@link #effectivePeriod()}.
+   */
+  protected synchronized void scheduleNextCycle() {
+    long waitFor = prepareNextRunDelay();
+    logger.debug("Sysinfo river {} indexer is going to sleep for {} ms", name, waitFor);
+    scheduleNextRun(waitFor);
+  }
+
+  /**
+   * Count regular start times of next cycles passed since start of last cycle, based on {@link #effectivePeriod()}.
+   * 
+   * @param now current time [ms]
+   * @return number of missed cycles, 0 if last cycle was not overrun
+   */
+  protected long countMissedCycles(long now) {
+    if (indexingPeriod <= 0 || lastRunStart == 0)
+      return 0;
+    long missed = sinceRegularStart(now) / effectivePeriod();
+    return missed > 0 ? missed : 0;
+  }
+
+  /**
+   * @param now current time [ms]
+   * @return time [ms] passed since regular start time (without jitter) of last cycle
+   */
+  protected long sinceRegularStart(long now) {
+    if (aligned)
+      return now - currentPhase() - lastSlot;
+    return now - (lastRunStart - lastJitter);
+  }
+
+  /**
+   * @return period [ms] next cycle is scheduled with - {@link #stretchedPeriod} if period is stretched, else
+   *         {@link #indexingPeriod}
+   */
+  protected long effectivePeriod() {
+    return stretchedPeriod > indexingPeriod ? stretchedPeriod : indexingPeriod;
+  }
+
+  /**
+   * Adapt {@link #stretchedPeriod} to duration of finished cycle for {@link OverrunPolicy#STRETCH}. Period is stretched
+   * to the shortest multiple of {@link #indexingPeriod} the cycle fits into, and shrinks back by one
+   * {@link #indexingPeriod} after each cycle fitting into shorter period.
+   * 
+   * @param now current time [ms]
+   */
+  protected void stretchPeriod(long now) {
+    if (indexingPeriod <= 0 || lastRunStart == 0)
+      return;
+    long needed = nextAlignedSlot(Math.max(sinceRegularStart(now), 0), indexingPeriod);
+    long current = effectivePeriod();
+    if (needed > current) {
+      stretchedPeriod = needed;
+      logger.debug("Sysinfo river {} indexer period stretched to {} ms", name, stretchedPeriod);
+    } else if (needed < current) {
+      stretchedPeriod = current - indexingPeriod;
+    }
+    if (stretchedPeriod <= indexingPeriod)
+      stretchedPeriod = 0;
+  }
+
+  /**
+   * Count delay of next indexing cycle based on current {@link #effectivePeriod()}. {@link #nextSlot} is set in
+   * {@link #aligned} mode. {@link #overrunPolicy} is applied if last cycle was overrun.
+   * 
+   * @return delay of next cycle [ms], never negative
+   */
+  protected synchronized long prepareNextRunDelay() {
+    long now = System.currentTimeMillis();
+    nextJitter = randomJitter();
+    long missed = countMissedCycles(now);
+    long period = effectivePeriod();
+    long nextStart;
+    if (aligned) {
+      long p = currentPhase();
+      if (missed == 0 || overrunPolicy == OverrunPolicy.SKIP) {
+        nextSlot = nextAlignedSlot(Math.max(now - p, lastSlot + period - indexingPeriod), indexingPeriod);
+      } else if (overrunPolicy == OverrunPolicy.COALESCE) {
+        // latest slot already passed
+        nextSlot = nextAlignedSlot(now - p, indexingPeriod) - indexingPeriod;
+      } else {
+        nextSlot = nextAlignedSlot(now - p, indexingPeriod) + indexingPeriod;
+      }
+      nextStart = nextSlot + p;
+    } else {
+      // jitter of last cycle is subtracted so it is not accumulated
+      long lastStart = lastRunStart - lastJitter;
+      if (missed == 0) {
+        nextStart = lastStart + period;
+      } else if (overrunPolicy == OverrunPolicy.SKIP) {
+        nextStart = lastStart + (missed + 1) * period;
+      } else if (overrunPolicy == OverrunPolicy.COALESCE) {
+        nextStart = now;
+      } else {
+        nextStart = now + indexingPeriod;
+      }
+    }
+    long waitFor = nextStart - now + nextJitter;
+    return waitFor > 0 ? waitFor : 0;
+  }
+
+  /**
+   * @return {@link #phase} used in {@link #aligned} mode - always shorter than {@link #indexingPeriod}
+   */
+  protected long currentPhase() {
+    if (indexingPeriod <= 0)
+      return 0;
+    return phase % indexingPeriod;
+  }
+
+  /**
+   * @return random delay for next cycle, from 0 (inclusive) to {@link #jitter} (exclusive)
+   */
+  protected long randomJitter() {
+    if (jitter <= 0)
+      return 0;
+    return ThreadLocalRandom.current().nextLong(jitter);
+  }
+
+  /**
+   * Get next wall clock aligned slot strictly after given time. Slots are multiples of period counted from epoch, so
+   * eg. for 10s period slots are at :00, :10, :20 etc. of each minute, for 1h period slots are on each full UTC hour.
+   * 
+   * @param time to get next slot after [ms]
+   * @param period of slots [ms]
+   * @return next slot time [ms]
+   */
+  protected static long nextAlignedSlot(long time, long period) {
+    if (period <= 0)
+      return time;
+    return (time / period + 1) * period;
+  }
+
+  /**
+   * Schedule next indexing cycle into {@link #scheduler}. Nothing is scheduled if indexer is closed.
+   * 
+   * @param delay of next cycle [ms]
+   */
+  protected synchronized void scheduleNextRun(long delay) {
+    if (closed || scheduler == null)
+      return;
+    try {
+      scheduledTask = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      if (!closed)
+        logger.warn("Sysinfo river {} indexer next run can't be scheduled: {}", name, e.getMessage());
+    }
+  }
+
+  /**
+   * Reschedule waiting indexing cycle based on current {@link #indexingPeriod}. Nothing is done if cycle is running
+   * just now, it schedules next run based on current period at the end itself.
+   */
+  public synchronized void reschedule() {
+    if (closed || running || scheduledTask == null || lastRunStart == 0)
+      return;
+    if (scheduledTask.cancel(false)) {
+      scheduleNextRun(prepareNextRunDelay());
+    }
+  }
+
+  /**
+   * Change indexing period. Waiting indexing cycle is rescheduled based on new period, so change (shortening or
+   * lengthening) takes effect immediately. If cycle is running just now then new period is used to schedule next one.
+   * 
+   * @param indexingPeriod new indexing period [ms]
+   */
+  public synchronized void changePeriod(long indexingPeriod) {
+    this.indexingPeriod = indexingPeriod;
+    stretchedPeriod = 0;
+    reschedule();
+  }
+
+  /**
+   * Close indexer at the end of use. Waiting indexing cycle is cancelled.
+   */
+  public synchronized void close() {
+    closed = true;
+    if (scheduledTask != null) {
+      scheduledTask.cancel(false);
+      scheduledTask = null;
+    }
+    // release indexing cycle blocked by full write queue
+    notifyAll();
+    logger.info("Sysinfo river {} indexer stopped", name);
+  }
+
+  /**
+   * Get statistics of this indexer.
+   * 
+   * @return map with statistics
+   */
+  public synchronized Map<String, Object> getStatistics() {
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    ret.put("info_type", infoType != null ? infoType.getName() : null);
+    ret.put("period", indexingPeriod);
+    ret.put("effective_period", effectivePeriod());
+    ret.put("running", !closed);
+    ret.put("overrun_policy", overrunPolicy.getName());
+    ret.put("cycles", cyclesCount);
+    ret.put("last_duration", lastDuration);
+    ret.put("overruns", overrunsCount);
+    ret.put("missed_cycles", missedCyclesCount);
+    ret.put("inflight_writes", inflightWrites);
+    ret.put("write_queue_depth", writeQueue.size());
+    ret.put("write_queue_policy", writeQueuePolicy.getName());
+    ret.put("writes", writesCount);
+    ret.put("write_failures", writeFailuresCount);
+    ret.put("writes_dropped", writesDroppedCount);
+    ret.put("write_blocked_time", writeBlockedTime);
+    ret.put("last_write_duration", lastWriteDuration);
+    if (stateDiffer != null)
+      ret.put("state_changes", stateDiffer.getStatistics());
+    if (splitter != null)
+      ret.put("split", splitter.getStatistics());
+    Map<String, Object> transfer = requestPlan != null ? requestPlan.getTransferStatistics() : null;
+    if (transfer != null)
+      ret.put("transfer", transfer);
+    return ret;
+  }
+
+  /**
+   * Process indexing tasks. Information is read synchronously, but written into index asynchronously (using
+   * {@link #bulkWriter} if available), so indexing cycle do not wait for write completion. Number of writes in flight
+   * is limited by {@link #maxInflightWrites}, next informations wait in bounded {@link #writeQueue}.
+   * 
+   * @throws Exception
+   * @throws InterruptedException id interrupted
+   */
+  protected void processLoopTask() throws Exception, InterruptedException {
+    if (splitter != null) {
+      XContentParser parser = sourceClient.readSysinfoParser(requestPlan);
+      try {
+        split(parser);
+      } finally {
+        parser.close();
+      }
+    } else {
+      // bytes flow from source client into index request without decoding
+      store(sourceClient.readSysinfoBytes(requestPlan));
+    }
+  }
+
+  /**
+   * Start asynchronous read of information, so no scheduler thread waits for response. When read completes, information
+   * is stored and next cycle is scheduled by task submitted into {@link #scheduler}, as read listener may be called from
+   * I/O thread and store may block on full write queue.
+   */
+  protected void processLoopTaskAsync() {
+    try {
+      sourceClient.readSysinfoBytesAsync(requestPlan, new ActionListener<BytesReference>() {
+
+        @Override
+        public void onResponse(BytesReference response) {
+          readCompleted(response, null);
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+          readCompleted(null, e);
         }
-        long start = System.currentTimeMillis();
+      });
+    } catch (RuntimeException e) {
+      readCompleted(null, e);
+    }
+  }
+
+  /**
+   * Called when asynchronous read started by {@link #processLoopTaskAsync()} is completed. Indexing cycle is finished in
+   * {@link #scheduler}.
+   * 
+   * @param content read information, null if read failed
+   * @param failure of read, null if read was successful
+   */
+  protected void readCompleted(final BytesReference content, final Throwable failure) {
+    Runnable task = new Runnable() {
+
+      @Override
+      public void run() {
         try {
-          processLoopTask();
+          if (failure != null) {
+            if (closed)
+              return;
+            logger.error("Failed to process Sysinfo {} indexer due: {}", failure, name, failure.getMessage());
+          } else {
+            store(content);
+          }
         } catch (InterruptedException e1) {
+          close();
           return;
         } catch (Exception e) {
           if (closed)
             return;
           logger.error("Failed to process Sysinfo {} indexer due: {}", e, name, e.getMessage());
+        } finally {
+          synchronized (SysinfoIndexer.this) {
+            running = false;
+          }
         }
-        try {
+        cycleFinished();
+      }
+    };
+    ScheduledExecutorService s = scheduler;
+    if (s == null) {
+      task.run();
+      return;
+    }
+    try {
+      s.execute(task);
+    } catch (RejectedExecutionException e) {
+      // scheduler is shut down on river stop
+      synchronized (this) {
+        running = false;
+      }
+    }
+  }
+
+  /**
+   * Store read information into index, or into index of each output of composite indexer. Read cluster state is
+   * converted by {@link #stateDiffer} first if used, nothing is stored if it is not changed.
+   * 
+   * @param content read information JSON bytes
+   * @throws IOException if cluster state changes can't be prepared
+   * @throws InterruptedException if interrupted while blocked by full write queue
+   */
+  protected void store(BytesReference content) throws IOException, InterruptedException {
+    if (stateDiffer != null) {
+      content = stateDiffer.process(content);
+      if (content == null)
+        return;
+    }
+    if (splitter != null) {
+      XContentParser parser = XContentHelper.createParser(content);
+      try {
+        split(parser);
+      } finally {
+        parser.close();
+      }
+    } else {
+      storeDocument(content, writeQueuePolicy);
+    }
+  }
+
+  /**
+   * Split information by {@link #splitter} and store each document. Documents are never dropped from full write queue
+   * as information would be incomplete, cycle is blocked until there is space in queue instead. Full
+   * {@link #bulkWriter} keeps queue full, so documents held in memory stay bounded with bulk writing too.
+   * 
+   * @param parser of information
+   * @throws IOException if information can't be parsed
+   * @throws InterruptedException if interrupted while blocked by full write queue
+   */
+  protected void split(XContentParser parser) throws IOException, InterruptedException {
+    splitter.split(parser, new SysinfoResponseSplitter.DocumentHandler() {
+
+      @Override
+      public void document(BytesReference document) throws IOException, InterruptedException {
+        storeDocument(document, WriteQueuePolicy.BLOCK);
+      }
+    });
+  }
+
+  /**
+   * Store document into index, or into index of each output of composite indexer.
+   * 
+   * @param content document JSON bytes
+   * @param policy applied if write queue is full
+   * @throws InterruptedException if interrupted while blocked by full write queue
+   */
+  protected void storeDocument(BytesReference content, WriteQueuePolicy policy) throws InterruptedException {
+    if (outputs == null) {
+      enqueueWrite(prepareIndexRequest(targetClient.prepareIndex(indexName, typeName).setSource(content)), policy);
+    } else {
+      Map<String, Object> source = XContentHelper.convertToMap(content, true).v2();
+      for (SysinfoIndexerOutput output : outputs) {
+        enqueueWrite(prepareIndexRequest(targetClient.prepareIndex(output.indexName, output.typeName).setSource(
+            output.project(source))), policy);
+      }
+    }
+  }
+
+  private IndexRequest prepareIndexRequest(IndexRequestBuilder irb) {
+    if (aligned) {
+      irb.setTimestamp(Long.toString(lastSlot));
+    }
+    return irb.request();
+  }
+
+  /**
+   * Put information into {@link #writeQueue} and issue writes if {@link #maxInflightWrites} limit allows it.
+   * {@link #writeQueuePolicy} is applied if queue is full.
+   * 
+   * @param request to write information
+   * @throws InterruptedException if interrupted while blocked by full queue
+   */
+  protected void enqueueWrite(IndexRequest request) throws InterruptedException {
+    enqueueWrite(request, writeQueuePolicy);
+  }
+
+  /**
+   * Put information into {@link #writeQueue} and issue writes if {@link #maxInflightWrites} limit allows it.
+   * 
+   * @param request to write information
+   * @param policy applied if queue is full
+   * @throws InterruptedException if interrupted while blocked by full queue
+   */
+  protected void enqueueWrite(IndexRequest request, WriteQueuePolicy policy) throws InterruptedException {
+    synchronized (this) {
+      if (writeQueue.size() >= writeQueueSize && (inflightWrites >= maxInflightWrites || writerFull)) {
+        if (policy == WriteQueuePolicy.BLOCK) {
+          long blockStart = System.currentTimeMillis();
+          try {
+            while (!closed && writeQueue.size() >= writeQueueSize && (inflightWrites >= maxInflightWrites || writerFull)) {
+              wait();
+            }
+          } finally {
+            writeBlockedTime += System.currentTimeMillis() - blockStart;
+          }
           if (closed)
             return;
-          long waitFor = indexingPeriod - (System.currentTimeMillis() - start);
-          logger.debug("Sysinfo river {} indexer is going to sleep for {} ms", name, waitFor);
-          if (waitFor > 0) {
-            Thread.sleep(waitFor);
-          }
-        } catch (InterruptedException e1) {
-          return;
+        } else {
+          writesDroppedCount++;
+          logger.warn("Sysinfo river {} indexer write queue is full, {} information dropped", name,
+              policy == WriteQueuePolicy.DROP_OLDEST ? "oldest" : "newest");
+          if (policy == WriteQueuePolicy.DROP_NEWEST)
+            return;
+          writeQueue.pollFirst();
         }
       }
-    } finally {
-      logger.info("Sysinfo river {} indexer stopped", name);
-      closed = true;
+      writeQueue.addLast(request);
     }
+    drainWriteQueue();
   }
 
   /**
-   * Close indexer at the end of use.
+   * Issue writes of queued informations while {@link #maxInflightWrites} limit allows it. Writes are issued without
+   * indexer lock held, as listener may be called synchronously from the write call. Write handed over to
+   * {@link #bulkWriter} releases its slot as soon as the writer accepts it, so informations buffered until next bulk
+   * flush do not block next writes. Write rejected by full writer is returned to the head of {@link #writeQueue} and
+   * queued writes wait until writer is not full.
    */
-  public void close() {
-    closed = true;
+  protected void drainWriteQueue() {
+    while (true) {
+      IndexRequest request;
+      synchronized (this) {
+        if (inflightWrites >= maxInflightWrites || writerFull || writeQueue.isEmpty())
+          return;
+        request = writeQueue.pollFirst();
+        inflightWrites++;
+        notifyAll();
+      }
+      final long writeStart = System.currentTimeMillis();
+      final SysinfoBulkWriter bw = bulkWriter;
+      ActionListener<IndexResponse> listener = new ActionListener<IndexResponse>() {
+
+        @Override
+        public void onResponse(IndexResponse response) {
+          writeCompleted(writeStart, null, bw == null);
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+          writeCompleted(writeStart, e, bw == null);
+        }
+      };
+      if (bw == null) {
+        try {
+          targetClient.index(request, listener);
+        } catch (RuntimeException e) {
+          listener.onFailure(e);
+        }
+        continue;
+      }
+      boolean accepted = true;
+      try {
+        accepted = bw.add(request, listener);
+      } catch (RuntimeException e) {
+        listener.onFailure(e);
+      } finally {
+        synchronized (this) {
+          inflightWrites--;
+          if (!accepted) {
+            writeQueue.addFirst(request);
+            writerFull = true;
+          }
+          notifyAll();
+        }
+      }
+      if (!accepted && bw.notifyWhenNotFull(writerNotFullListener))
+        return;
+      if (!accepted) {
+        // writer is not full anymore, so listener was not registered
+        synchronized (this) {
+          writerFull = false;
+        }
+      }
+    }
   }
 
   /**
-   * Process indexing tasks.
+   * Called when asynchronous index write issued by {@link #drainWriteQueue()} is completed.
    * 
-   * @throws Exception
-   * @throws InterruptedException id interrupted
+   * @param writeStart time when write was issued [ms]
+   * @param failure of write, null if write was successful
+   * @param releaseSlot if true then write still holds its {@link #inflightWrites} slot, so it is released and next
+   *          queued write is issued
    */
-  protected void processLoopTask() throws Exception, InterruptedException {
-    String content = sourceClient.readSysinfoValue(infoType, params);
-    targetClient.prepareIndex(indexName, typeName).setSource(content).execute().actionGet();
+  protected void writeCompleted(long writeStart, Throwable failure, boolean releaseSlot) {
+    synchronized (this) {
+      if (releaseSlot)
+        inflightWrites--;
+      lastWriteDuration = System.currentTimeMillis() - writeStart;
+      if (failure == null) {
+        writesCount++;
+      } else {
+        writeFailuresCount++;
+      }
+      notifyAll();
+    }
+    if (failure != null && !closed) {
+      logger.error("Failed to store Sysinfo {} indexer information due: {}", failure, name, failure.getMessage());
+    }
+    if (releaseSlot)
+      drainWriteQueue();
   }
 
   @Override
   public String toString() {
     return "SysinfoIndexer [name=" + name + " infoType=" + infoType + ", indexName=" + indexName + ", typeName="
-        + typeName + ", indexingPeriod=" + indexingPeriod + ", params=" + params + ", closed=" + closed + "]";
+        + typeName + ", indexingPeriod=" + indexingPeriod + ", params=" + params + ", outputs=" + outputs
+        + ", splitter=" + (splitter != null) + ", aligned=" + aligned + ", phase=" + phase + ", jitter=" + jitter
+        + ", overrunPolicy=" + overrunPolicy + ", maxInflightWrites=" + maxInflightWrites + ", writeQueueSize="
+        + writeQueueSize + ", writeQueuePolicy=" + writeQueuePolicy + ", closed=" + closed + "]";
   }
 
 }
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.regex.Regex;
+
+/**
+ * One output of composite {@link SysinfoIndexer}. Defines index and type to store information into, and projection
+ * selecting sub-trees of read information stored by this output.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoIndexerOutput {
+
+  protected String indexName;
+  protected String typeName;
+
+  /**
+   * Paths of JSON sub-trees stored by this output, simple wildcards are supported in each path element (eg.
+   * <code>nodes.*.jvm</code>). Whole information is stored if empty.
+   */
+  protected String[] includes;
+
+  /**
+   * Paths of JSON sub-trees removed from stored information, simple wildcards are supported in each path element.
+   */
+  protected String[] excludes;
+
+  private List<String[]> includePaths;
+  private List<String[]> excludePaths;
+
+  /**
+   * Create output.
+   * 
+   * @param indexName name of index to store information into
+   * @param typeName type of document in index to store information into
+   * @param includes paths of JSON sub-trees stored by this output, can be null
+   * @param excludes paths of JSON sub-trees removed from stored information, can be null
+   */
+  public SysinfoIndexerOutput(String indexName, String typeName, String[] includes, String[] excludes) {
+    this.indexName = indexName;
+    this.typeName = typeName;
+    this.includes = includes != null ? includes : new String[0];
+    this.excludes = excludes != null ? excludes : new String[0];
+    this.includePaths = splitPaths(this.includes);
+    this.excludePaths = splitPaths(this.excludes);
+  }
+
+  /**
+   * Select parts of information stored by this output.
+   * 
+   * @param source whole read information
+   * @return projected information
+   */
+  public Map<String, Object> project(Map<String, Object> source) {
+    Map<String, Object> ret = includePaths.isEmpty() ? source : include(source, includePaths, 0);
+    if (!excludePaths.isEmpty())
+      ret = exclude(ret, excludePaths, 0);
+    return ret;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> include(Map<String, Object> source, List<String[]> paths, int level) {
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    for (Map.Entry<String, Object> e : source.entrySet()) {
+      List<String[]> matching = new ArrayList<String[]>();
+      boolean whole = false;
+      for (String[] path : paths) {
+        if (Regex.simpleMatch(path[level], e.getKey())) {
+          if (path.length == level + 1) {
+            whole = true;
+            break;
+          }
+          matching.add(path);
+        }
+      }
+      if (whole) {
+        ret.put(e.getKey(), e.getValue());
+      } else if (!matching.isEmpty() && e.getValue() instanceof Map) {
+        Map<String, Object> sub = include((Map<String, Object>) e.getValue(), matching, level + 1);
+        if (!sub.isEmpty())
+          ret.put(e.getKey(), sub);
+      }
+    }
+    return ret;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> exclude(Map<String, Object> source, List<String[]> paths, int level) {
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    for (Map.Entry<String, Object> e : source.entrySet()) {
+      List<String[]> matching = new ArrayList<String[]>();
+      boolean whole = false;
+      for (String[] path : paths) {
+        if (Regex.simpleMatch(path[level], e.getKey())) {
+          if (path.length == level + 1) {
+            whole = true;
+            break;
+          }
+          matching.add(path);
+        }
+      }
+      if (whole)
+        continue;
+      if (!matching.isEmpty() && e.getValue() instanceof Map) {
+        ret.put(e.getKey(), exclude((Map<String, Object>) e.getValue(), matching, level + 1));
+      } else {
+        ret.put(e.getKey(), e.getValue());
+      }
+    }
+    return ret;
+  }
+
+  private static List<String[]> splitPaths(String[] paths) {
+    List<String[]> ret = new ArrayList<String[]>();
+    for (String path : paths) {
+      if (!Utils.isEmpty(path))
+        ret.add(path.trim().split("\\."));
+    }
+    return ret;
+  }
+
+  @Override
+  public String toString() {
+    return "SysinfoIndexerOutput [indexName=" + indexName + ", typeName=" + typeName + ", includes="
+        + Arrays.toString(includes) + ", excludes=" + Arrays.toString(excludes) + "]";
+  }
+
+}
@@ -0,0 +1,22 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import org.elasticsearch.common.inject.AbstractModule;
+
+/**
+ * System Info River ElasticSearch node level Module class, binds components shared by all rivers on the node.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoNodeModule extends AbstractModule {
+
+	@Override
+	protected void configure() {
+		bind(SysinfoResponseCache.class).asEagerSingleton();
+		bind(SysinfoBufferPool.class).asEagerSingleton();
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request to read information of given type with given params. Plan is prepared by
+ * {@link SourceClient#prepareRequestPlan(SysinfoType, Map)} once when indexer is configured, and reused for each read,
+ * so {@link SourceClient} implementations may precompute everything what doesn't depend on the response (URLs, request
+ * objects etc.) in own subclasses. Plans of same information type and params are equal, regardless of the client which
+ * prepared them and their {@link #getTimeout()}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoRequestPlan {
+
+  protected final SysinfoType infoType;
+
+  protected final Map<String, String> params;
+
+  private final int hash;
+
+  /**
+   * Timeout [ms] of one read, default timeout of {@link SourceClient} is used if 0. Not part of plan identity, so reads
+   * of same information with distinct timeouts are still deduplicated.
+   */
+  protected volatile long timeout = 0;
+
+  /**
+   * Count of reads whose response was transferred over network, and its bytes as received (compressed if response was
+   * compressed) and decompressed. Recorded by {@link SourceClient} implementations reading over network, plan is owned
+   * by one indexer so these are statistics of the indexer.
+   */
+  protected final AtomicLong transfersCount = new AtomicLong();
+  protected final AtomicLong receivedBytes = new AtomicLong();
+  protected final AtomicLong contentBytes = new AtomicLong();
+
+  /**
+   * Create plan.
+   * 
+   * @param infoType type of information to read
+   * @param params to narrow down information, copied, can be null
+   */
+  public SysinfoRequestPlan(SysinfoType infoType, Map<String, String> params) {
+    this.infoType = infoType;
+    this.params = params != null ? Collections.unmodifiableMap(new LinkedHashMap<String, String>(params)) : null;
+    this.hash = 31 * (infoType != null ? infoType.hashCode() : 0) + (this.params != null ? this.params.hashCode() : 0);
+  }
+
+  /**
+   * @return type of information to read
+   */
+  public SysinfoType getInfoType() {
+    return infoType;
+  }
+
+  /**
+   * @return unmodifiable params to narrow down information, null if not defined
+   */
+  public Map<String, String> getParams() {
+    return params;
+  }
+
+  /**
+   * @return timeout [ms] of one read, 0 if default timeout of {@link SourceClient} is used
+   */
+  public long getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Set timeout of one read. Called once when indexer is configured.
+   * 
+   * @param timeout [ms] of one read, 0 to use default timeout of {@link SourceClient}
+   */
+  public void setTimeout(long timeout) {
+    this.timeout = timeout;
+  }
+
+  /**
+   * Record bytes transferred by one read of this plan.
+   * 
+   * @param received count of bytes received over network
+   * @param content count of bytes of decompressed response
+   */
+  public void recordTransfer(long received, long content) {
+    transfersCount.incrementAndGet();
+    receivedBytes.addAndGet(received);
+    contentBytes.addAndGet(content);
+  }
+
+  /**
+   * Get statistics of bytes transferred by reads of this plan.
+   * 
+   * @return map with statistics, null if no read was transferred over network
+   */
+  public Map<String, Object> getTransferStatistics() {
+    long transfers = transfersCount.get();
+    if (transfers == 0)
+      return null;
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    ret.put("responses", transfers);
+    long received = receivedBytes.get();
+    long content = contentBytes.get();
+    ret.put("received_bytes", received);
+    ret.put("content_bytes", content);
+    ret.put("compression_ratio", content > 0 ? (double) received / content : 1d);
+    return ret;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof SysinfoRequestPlan))
+      return false;
+    SysinfoRequestPlan other = (SysinfoRequestPlan) obj;
+    return hash == other.hash && infoType == other.infoType
+        && (params == null ? other.params == null : params.equals(other.params));
+  }
+
+  @Override
+  public String toString() {
+    return "SysinfoRequestPlan [infoType=" + infoType + ", params=" + params + ", timeout=" + timeout + "]";
+  }
+
+}
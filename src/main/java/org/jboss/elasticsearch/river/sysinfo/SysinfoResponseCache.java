@@ -0,0 +1,364 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+/**
+ * Cache of read information shared by all sysinfo rivers on the node, bound as node level singleton by
+ * {@link SysinfoNodeModule}. Entries are keyed by connection to monitored cluster and request plan (information type
+ * and params). Each river reads cached information only if it is not older than river's TTL, and concurrent reads of
+ * same information by more rivers share one call to monitored cluster. Failed reads are not cached. Number of entries is
+ * limited by {@link #maxEntries} and their total length by {@link #maxSize}, least recently used entries are evicted.
+ * Rivers register TTL they use for connection, entries older than the largest registered TTL of their connection are
+ * dropped whenever new entry is put, and entries of connection are dropped when last river using it unregisters.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoResponseCache {
+
+  /**
+   * Name of node setting with max number of cached entries.
+   */
+  public static final String SETTING_MAX_ENTRIES = "river.sysinfo.response_cache.max_entries";
+
+  /**
+   * Name of node setting with max total length of cached information.
+   */
+  public static final String SETTING_MAX_SIZE = "river.sysinfo.response_cache.max_size";
+
+  protected static final int DEFAULT_MAX_ENTRIES = 100;
+
+  protected static final ByteSizeValue DEFAULT_MAX_SIZE = new ByteSizeValue(50 * 1024 * 1024);
+
+  protected final int maxEntries;
+
+  protected final long maxSize;
+
+  protected final Map<List<Object>, CacheEntry> entries;
+
+  /**
+   * TTLs [ms] registered by rivers for each connection.
+   */
+  protected final Map<Object, List<Long>> ttls = new HashMap<Object, List<Long>>();
+
+  /**
+   * Total length [bytes] of cached information.
+   */
+  protected long size = 0;
+
+  protected long hitsCount = 0;
+  protected long missesCount = 0;
+  protected long evictionsCount = 0;
+  protected long expirationsCount = 0;
+
+  /**
+   * Constructor used by ElasticSearch.
+   * 
+   * @param settings of node
+   */
+  @Inject
+  public SysinfoResponseCache(Settings settings) {
+    this(settings.getAsInt(SETTING_MAX_ENTRIES, DEFAULT_MAX_ENTRIES), settings.getAsBytesSize(SETTING_MAX_SIZE,
+        DEFAULT_MAX_SIZE).bytes());
+  }
+
+  /**
+   * Create cache with default max total length.
+   * 
+   * @param maxEntries max number of cached entries
+   */
+  public SysinfoResponseCache(int maxEntries) {
+    this(maxEntries, DEFAULT_MAX_SIZE.bytes());
+  }
+
+  /**
+   * Create cache.
+   * 
+   * @param maxEntries max number of cached entries
+   * @param maxSize max total length [bytes] of cached information
+   */
+  public SysinfoResponseCache(int maxEntries, long maxSize) {
+    this.maxEntries = maxEntries;
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<List<Object>, CacheEntry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<List<Object>, CacheEntry> eldest) {
+        if (size() > SysinfoResponseCache.this.maxEntries) {
+          size -= eldest.getValue().size;
+          evictionsCount++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Create cache with default settings, for unit tests.
+   */
+  protected SysinfoResponseCache() {
+    this(ImmutableSettings.Builder.EMPTY_SETTINGS);
+  }
+
+  /**
+   * Cached read with length of its information accounted in {@link SysinfoResponseCache#size}.
+   */
+  protected static class CacheEntry {
+    protected final SysinfoSharedRead read = new SysinfoSharedRead();
+    protected long size = 0;
+  }
+
+  /**
+   * Register river using cache for connection.
+   * 
+   * @param connection key of connection to monitored cluster
+   * @param ttl max age [ms] of cached information used by river
+   */
+  public synchronized void register(Object connection, long ttl) {
+    List<Long> l = ttls.get(connection);
+    if (l == null) {
+      l = new ArrayList<Long>();
+      ttls.put(connection, l);
+    }
+    l.add(ttl);
+  }
+
+  /**
+   * Unregister river stopped using cache for connection. Entries of connection are dropped if no other river uses it.
+   * 
+   * @param connection key of connection to monitored cluster
+   * @param ttl registered by river by {@link #register(Object, long)}
+   */
+  public synchronized void unregister(Object connection, long ttl) {
+    List<Long> l = ttls.get(connection);
+    if (l == null)
+      return;
+    l.remove(Long.valueOf(ttl));
+    if (l.isEmpty()) {
+      ttls.remove(connection);
+      for (Iterator<Map.Entry<List<Object>, CacheEntry>> i = entries.entrySet().iterator(); i.hasNext();) {
+        Map.Entry<List<Object>, CacheEntry> e = i.next();
+        if (e.getKey().get(0).equals(connection)) {
+          size -= e.getValue().size;
+          i.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Read information from cache, or from given source client if not cached yet or cached information is older than
+   * given TTL.
+   * 
+   * @param connection key of connection to monitored cluster, equal for all rivers reading same cluster over same
+   *          protocol
+   * @param plan of request
+   * @param ttl max age [ms] of cached information to be used
+   * @param sourceClient to read information from if not cached
+   * @return read information
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public BytesReference read(Object connection, SysinfoRequestPlan plan, long ttl, SourceClient sourceClient)
+      throws IOException, InterruptedException {
+    List<Object> key = Arrays.asList(connection, plan);
+    CacheEntry entry;
+    boolean hit;
+    synchronized (this) {
+      entry = entries.get(key);
+      hit = entry != null && entry.read.isReusable(System.currentTimeMillis() - ttl);
+      if (hit) {
+        hitsCount++;
+      } else {
+        entry = put(key);
+      }
+    }
+    if (hit) {
+      return entry.read.get();
+    }
+
+    BytesReference value = null;
+    try {
+      value = sourceClient.readSysinfoBytes(plan);
+      entry.read.complete(value, null);
+      return value;
+    } catch (IOException e) {
+      entry.read.complete(null, e);
+      throw e;
+    } catch (InterruptedException e) {
+      entry.read.complete(null, e);
+      throw e;
+    } catch (RuntimeException e) {
+      entry.read.complete(null, e);
+      throw e;
+    } catch (Error e) {
+      entry.read.complete(null, new IOException(e));
+      throw e;
+    } finally {
+      readFinished(key, entry, value);
+    }
+  }
+
+  /**
+   * Read information from cache asynchronously, or from given source client by
+   * {@link SourceClient#readSysinfoBytesAsync(SysinfoRequestPlan, ActionListener)} if not cached yet or cached
+   * information is older than given TTL. Calling thread is never blocked by read in progress, listener is notified when
+   * shared read is completed.
+   * 
+   * @param connection key of connection to monitored cluster, equal for all rivers reading same cluster over same
+   *          protocol
+   * @param plan of request
+   * @param ttl max age [ms] of cached information to be used
+   * @param sourceClient to read information from if not cached
+   * @param listener notified with read information
+   */
+  public void readAsync(Object connection, SysinfoRequestPlan plan, long ttl, SourceClient sourceClient,
+      ActionListener<BytesReference> listener) {
+    final List<Object> key = Arrays.asList(connection, plan);
+    final CacheEntry entry;
+    boolean hit;
+    synchronized (this) {
+      CacheEntry e = entries.get(key);
+      hit = e != null && e.read.isReusable(System.currentTimeMillis() - ttl);
+      if (hit) {
+        hitsCount++;
+      } else {
+        e = put(key);
+      }
+      entry = e;
+    }
+    entry.read.addListener(listener);
+    if (hit)
+      return;
+
+    try {
+      sourceClient.readSysinfoBytesAsync(plan, new ActionListener<BytesReference>() {
+
+        @Override
+        public void onResponse(BytesReference value) {
+          entry.read.complete(value, null);
+          readFinished(key, entry, value);
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+          entry.read.complete(null, e instanceof Exception ? (Exception) e : new IOException(e));
+          readFinished(key, entry, null);
+        }
+      });
+    } catch (RuntimeException e) {
+      entry.read.complete(null, e);
+      readFinished(key, entry, null);
+    }
+  }
+
+  /**
+   * Put new entry for read in progress, drop expired entries first.
+   * 
+   * @param key of entry
+   * @return new entry
+   */
+  private CacheEntry put(List<Object> key) {
+    missesCount++;
+    long now = System.currentTimeMillis();
+    for (Iterator<Map.Entry<List<Object>, CacheEntry>> i = entries.entrySet().iterator(); i.hasNext();) {
+      Map.Entry<List<Object>, CacheEntry> e = i.next();
+      Long maxTtl = getMaxTtl(e.getKey().get(0));
+      if (e.getKey().equals(key) || (maxTtl != null && !e.getValue().read.isReusable(now - maxTtl))) {
+        size -= e.getValue().size;
+        i.remove();
+        if (!e.getKey().equals(key))
+          expirationsCount++;
+      }
+    }
+    CacheEntry entry = new CacheEntry();
+    entries.put(key, entry);
+    return entry;
+  }
+
+  /**
+   * Account length of successfully read information and evict least recently used entries if max total length is
+   * exceeded, or drop failed read.
+   * 
+   * @param key of entry
+   * @param entry completed
+   * @param value read, null if read failed
+   */
+  private synchronized void readFinished(List<Object> key, CacheEntry entry, BytesReference value) {
+    if (entries.get(key) != entry)
+      return;
+    if (value == null) {
+      entries.remove(key);
+      return;
+    }
+    entry.size = value.length();
+    size += entry.size;
+    for (Iterator<CacheEntry> i = entries.values().iterator(); i.hasNext() && size > maxSize;) {
+      CacheEntry e = i.next();
+      if (e.size > 0) {
+        size -= e.size;
+        i.remove();
+        evictionsCount++;
+      }
+    }
+  }
+
+  /**
+   * @param connection to get TTL for
+   * @return largest TTL [ms] registered for connection, null if no river is registered for it
+   */
+  private Long getMaxTtl(Object connection) {
+    List<Long> l = ttls.get(connection);
+    if (l == null || l.isEmpty())
+      return null;
+    return Collections.max(l);
+  }
+
+  /**
+   * Remove all cached entries.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    size = 0;
+  }
+
+  /**
+   * Get statistics of cache.
+   * 
+   * @return map with statistics
+   */
+  public synchronized Map<String, Object> getStatistics() {
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    ret.put("entries", entries.size());
+    ret.put("max_entries", maxEntries);
+    ret.put("size", size);
+    ret.put("max_size", maxSize);
+    ret.put("hits", hitsCount);
+    ret.put("misses", missesCount);
+    ret.put("evictions", evictionsCount);
+    ret.put("expirations", expirationsCount);
+    return ret;
+  }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
+
+/**
+ * Splits big information (eg. {@link SysinfoType#CLUSTER_STATE} or {@link SysinfoType#INDICES_SEGMENTS} of big
+ * cluster) into separate documents while it is parsed, so whole information is never held in memory. Each entry of
+ * object matching one of split paths is emitted as separate document as soon as it is parsed. Path is dot separated
+ * list of field names, <code>*</code> matches any name, eg. <code>indices</code> splits information per index,
+ * <code>indices.*.shards</code> per shard.
+ * <p>
+ * Document keeps original structure of information narrowed down to one entry, eg.
+ * <code>{"cluster_name":"es","indices":{"idx1":{...}}}</code>, and contains top level simple fields (eg.
+ * <code>cluster_name</code>) which precede split object in information. Rest of information, without split entries, is
+ * emitted as last document.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoResponseSplitter {
+
+  /**
+   * Handler of documents emitted by splitter.
+   */
+  public static interface DocumentHandler {
+
+    /**
+     * Handle next document.
+     * 
+     * @param document JSON bytes
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    void document(BytesReference document) throws IOException, InterruptedException;
+  }
+
+  protected List<String[]> paths = new ArrayList<String[]>();
+
+  protected long splitsCount = 0;
+  protected long documentsCount = 0;
+
+  /**
+   * Create splitter.
+   * 
+   * @param paths comma separated list of split paths
+   * @throws IllegalArgumentException if no valid path is defined
+   */
+  public SysinfoResponseSplitter(String paths) {
+    if (paths != null) {
+      for (String path : paths.split(",")) {
+        path = path.trim();
+        if (path.isEmpty())
+          continue;
+        String[] p = path.split("\\.", -1);
+        for (String e : p) {
+          if (e.isEmpty())
+            throw new IllegalArgumentException("Invalid split path '" + path + "'");
+        }
+        this.paths.add(p);
+      }
+    }
+    if (this.paths.isEmpty())
+      throw new IllegalArgumentException("At least one split path must be defined");
+  }
+
+  /**
+   * Split information.
+   * 
+   * @param parser of information JSON, not closed by this method
+   * @param handler to emit documents into
+   * @throws IOException if information can't be parsed
+   * @throws InterruptedException if interrupted by handler
+   */
+  public void split(XContentParser parser, DocumentHandler handler) throws IOException, InterruptedException {
+    Token token = parser.nextToken();
+    if (token != Token.START_OBJECT)
+      throw new IOException("Information must be JSON object, " + token + " found");
+    Map<String, Object> topFields = new LinkedHashMap<String, Object>();
+    XContentBuilder rest = XContentFactory.jsonBuilder().startObject();
+    long docs = splitObject(parser, new ArrayList<String>(), rest, topFields, handler);
+    rest.endObject();
+    handler.document(rest.bytes());
+    synchronized (this) {
+      splitsCount++;
+      documentsCount += docs + 1;
+    }
+  }
+
+  /**
+   * Process object parser is positioned at start of. Content not split is copied into rest builder.
+   * 
+   * @return number of emitted documents
+   */
+  private long splitObject(XContentParser parser, List<String> path, XContentBuilder rest,
+      Map<String, Object> topFields, DocumentHandler handler) throws IOException, InterruptedException {
+    long docs = 0;
+    Token token;
+    while ((token = parser.nextToken()) != Token.END_OBJECT) {
+      if (token != Token.FIELD_NAME)
+        throw new IOException("Invalid information JSON, field name expected but " + token + " found");
+      String name = parser.currentName();
+      token = parser.nextToken();
+      path.add(name);
+      if (token == Token.START_OBJECT && matches(path, true)) {
+        rest.startObject(name);
+        while ((token = parser.nextToken()) != Token.END_OBJECT) {
+          String entryName = parser.currentName();
+          parser.nextToken();
+          handler.document(prepareDocument(parser, path, entryName, topFields));
+          docs++;
+        }
+        rest.endObject();
+      } else if (token == Token.START_OBJECT && matches(path, false)) {
+        rest.startObject(name);
+        docs += splitObject(parser, path, rest, topFields, handler);
+        rest.endObject();
+      } else {
+        if (path.size() == 1 && token.isValue()) {
+          topFields.put(name, parser.objectText());
+        } else if (path.size() == 1 && token == Token.VALUE_NULL) {
+          topFields.put(name, null);
+        }
+        rest.field(name);
+        rest.copyCurrentStructure(parser);
+      }
+      path.remove(path.size() - 1);
+    }
+    return docs;
+  }
+
+  private static BytesReference prepareDocument(XContentParser parser, List<String> path, String entryName,
+      Map<String, Object> topFields) throws IOException {
+    XContentBuilder doc = XContentFactory.jsonBuilder().startObject();
+    for (Map.Entry<String, Object> e : topFields.entrySet()) {
+      doc.field(e.getKey(), e.getValue());
+    }
+    for (String name : path) {
+      doc.startObject(name);
+    }
+    doc.field(entryName);
+    doc.copyCurrentStructure(parser);
+    for (int i = 0; i < path.size(); i++) {
+      doc.endObject();
+    }
+    return doc.endObject().bytes();
+  }
+
+  /**
+   * Check if path matches any of split paths.
+   * 
+   * @param path to check
+   * @param full true to match whole split path, false to match its strict prefix
+   * @return true if matches
+   */
+  protected boolean matches(List<String> path, boolean full) {
+    for (String[] p : paths) {
+      if (full ? path.size() != p.length : path.size() >= p.length)
+        continue;
+      boolean m = true;
+      for (int i = 0; i < path.size() && m; i++) {
+        m = "*".equals(p[i]) || p[i].equals(path.get(i));
+      }
+      if (m)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Get statistics of splitter.
+   * 
+   * @return map with statistics
+   */
+  public synchronized Map<String, Object> getStatistics() {
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    ret.put("splits", splitsCount);
+    ret.put("documents", documentsCount);
+    return ret;
+  }
+
+}
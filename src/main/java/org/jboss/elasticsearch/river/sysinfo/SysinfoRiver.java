@@ -6,19 +6,29 @@
 package org.jboss.elasticsearch.river.sysinfo;
 
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.elasticsearch.ElasticsearchParseException;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.node.service.NodeService;
 import org.elasticsearch.river.AbstractRiverComponent;
 import org.elasticsearch.river.River;
 import org.elasticsearch.river.RiverName;
@@ -37,12 +47,39 @@ import org.jboss.elasticsearch.river.sysinfo.esclient.SourceClientESTransportCli
  *     "es_connection" : {
  *         "type" : "local"
  *     },
+ *     "scheduler" : {
+ *         "threads"        : 2,
+ *         "startup_spread" : "10s",
+ *         "stop_timeout"   : "5s"
+ *     },
+ *     "fetch_dedup_window" : "1s",
+ *     "timeouts" : {
+ *         "default"          : "30s",
+ *         "indices_segments" : "2m"
+ *     },
+ *     "response_cache" : {
+ *         "ttl" : "30s"
+ *     },
+ *     "bulk" : {
+ *         "actions"        : 100,
+ *         "size"           : "5mb",
+ *         "flush_interval" : "5s",
+ *         "target_latency" : "1s",
+ *         "max_concurrent_bulks" : 1
+ *     },
  *     "indexers" : {
  *       "cluster_health" : {
  *           "info_type"   : "cluster_health",
  *           "index_name"  : "my_index_1",
  *           "index_type"  : "my_type_1",
  *           "period"      : "1m",
+ *           "aligned"     : true,
+ *           "phase"       : "5s",
+ *           "jitter"      : "1s",
+ *           "overrun_policy" : "skip",
+ *           "max_inflight_writes" : 2,
+ *           "write_queue_size" : 10,
+ *           "write_queue_policy" : "drop_oldest",
  *           "params" : {
  *               "level" : "shards"
  *           }
@@ -52,6 +89,46 @@ import org.jboss.elasticsearch.river.sysinfo.esclient.SourceClientESTransportCli
  *           "index_name"  : "my_index_1",
  *           "index_type"  : "my_type_1",
  *           "period"      : "1m"
+ *       },
+ *       "health_changes" : {
+ *           "info_type"    : "cluster_health",
+ *           "index_name"   : "my_index_1",
+ *           "index_type"   : "my_type_2",
+ *           "mode"         : "events",
+ *           "debounce"     : "500ms",
+ *           "min_interval" : "5s"
+ *       },
+ *       "node_jvm" : {
+ *           "info_type"   : "local_node_stats",
+ *           "index_name"  : "my_index_1",
+ *           "index_type"  : "my_type_4",
+ *           "period"      : "1s",
+ *           "params"      : {
+ *               "metric" : "jvm,thread_pool"
+ *           }
+ *       },
+ *       "state_changes" : {
+ *           "info_type"              : "cluster_state_changes",
+ *           "index_name"             : "my_index_1",
+ *           "index_type"             : "my_type_3",
+ *           "period"                 : "10s",
+ *           "full_snapshot_interval" : "1h"
+ *       },
+ *       "segments" : {
+ *           "info_type"   : "indices_segments",
+ *           "index_name"  : "my_index_1",
+ *           "index_type"  : "my_type_5",
+ *           "period"      : "1h",
+ *           "timeout"     : "5m",
+ *           "split"       : "indices.*.shards"
+ *       },
+ *       "nodes_stats" : {
+ *           "info_type"   : "cluster_nodes_stats",
+ *           "period"      : "1m",
+ *           "outputs" : [
+ *               { "index_name" : "my_index_jvm", "index_type" : "jvm", "includes" : ["cluster_name", "nodes.*.jvm"] },
+ *               { "index_name" : "my_index_fs", "index_type" : "fs", "includes" : ["cluster_name", "nodes.*.fs"] }
+ *           ]
  *       }
  *     }
  * }
@@ -72,6 +149,16 @@ public class SysinfoRiver extends AbstractRiverComponent implements River, IRive
 	 */
 	protected Client client;
 
+	/**
+	 * Cluster service of local node, used by indexers driven by cluster state changes.
+	 */
+	protected ClusterService clusterService;
+
+	/**
+	 * Node service of local node, used to read {@link SysinfoType#LOCAL_NODE_STATS} information.
+	 */
+	protected NodeService nodeService;
+
 	/**
 	 * Flag set to true if this river is stopped from ElasticSearch server.
 	 */
@@ -85,12 +172,89 @@ public class SysinfoRiver extends AbstractRiverComponent implements River, IRive
 	/**
 	 * Map of configured indexers.
 	 */
-	protected Map<String, SysinfoIndexer> indexers = new LinkedHashMap<String, SysinfoIndexer>();
+	protected Map<String, SysinfoIndexer> indexers = Collections
+			.synchronizedMap(new LinkedHashMap<String, SysinfoIndexer>());
+
+	/**
+	 * Number of threads in {@link #scheduler}.
+	 */
+	protected int schedulerThreads = DEFAULT_SCHEDULER_THREADS;
+
+	protected static final int DEFAULT_SCHEDULER_THREADS = 2;
+
+	/**
+	 * Time interval [ms] first runs of not aligned indexers are spread over after river start.
+	 */
+	protected long startupSpread = 0;
+
+	/**
+	 * Max time [ms] {@link #stop()} waits for indexing cycles running in {@link #scheduler} to finish.
+	 */
+	protected long stopTimeout = DEFAULT_STOP_TIMEOUT;
+
+	protected static final long DEFAULT_STOP_TIMEOUT = 5000;
+
+	/**
+	 * Scheduler running indexing cycles of all indexers of this river. Exists only while river is running.
+	 */
+	protected ScheduledExecutorService scheduler;
+
+	/**
+	 * Coordinator deduplicating reads of same information by indexers, wraps {@link #sourceClient}.
+	 */
+	protected SysinfoFetchCoordinator fetchCoordinator;
+
+	/**
+	 * Time [ms] read information is shared with indexers reading same information, see {@link SysinfoFetchCoordinator}.
+	 */
+	protected long fetchDedupWindow = 0;
+
+	/**
+	 * Node level cache of read information shared by all rivers on the node, injected by ElasticSearch.
+	 */
+	protected SysinfoResponseCache responseCache;
 
 	/**
-	 * Map of running indexer threads.
+	 * Max age [ms] of information read from {@link #responseCache}, cache is not used if 0.
 	 */
-	protected Map<String, Thread> indexerThreads = new LinkedHashMap<String, Thread>();
+	protected long responseCacheTtl = 0;
+
+	/**
+	 * Node level pool of buffers shared by all rivers on the node, injected by ElasticSearch. Used to read responses of
+	 * rest connection.
+	 */
+	protected SysinfoBufferPool bufferPool;
+
+	/**
+	 * Max number of documents in one bulk written by {@link #bulkWriter}. Bulk writing is disabled if 0.
+	 */
+	protected int bulkActions = 0;
+
+	/**
+	 * Max size of documents in one bulk [bytes].
+	 */
+	protected long bulkSize = SysinfoBulkWriter.DEFAULT_BULK_SIZE;
+
+	/**
+	 * Max time [ms] document waits for bulk write.
+	 */
+	protected long bulkFlushInterval = SysinfoBulkWriter.DEFAULT_FLUSH_INTERVAL;
+
+	/**
+	 * Bulk latency [ms] number of documents in bulk is adapted to.
+	 */
+	protected long bulkTargetLatency = SysinfoBulkWriter.DEFAULT_TARGET_LATENCY;
+
+	/**
+	 * Max number of bulks sent by {@link #bulkWriter} and not completed yet.
+	 */
+	protected int bulkMaxConcurrent = SysinfoBulkWriter.DEFAULT_MAX_CONCURRENT_BULKS;
+
+	/**
+	 * Writer shared by all indexers of this river to store information in bulks. Exists only while river is running and
+	 * bulk writing is configured.
+	 */
+	protected SysinfoBulkWriter bulkWriter;
 
 	/**
 	 * Public constructor used by ElasticSearch.
@@ -98,12 +262,22 @@ public class SysinfoRiver extends AbstractRiverComponent implements River, IRive
 	 * @param riverName
 	 * @param settings
 	 * @param client
+	 * @param clusterService of local node
+	 * @param nodeService of local node
+	 * @param responseCache node level cache shared by all rivers on the node
+	 * @param bufferPool node level pool of buffers shared by all rivers on the node
 	 * @throws MalformedURLException
 	 */
 	@Inject
-	public SysinfoRiver(RiverName riverName, RiverSettings settings, Client client) throws MalformedURLException {
+	public SysinfoRiver(RiverName riverName, RiverSettings settings, Client client, ClusterService clusterService,
+			NodeService nodeService, SysinfoResponseCache responseCache, SysinfoBufferPool bufferPool)
+			throws MalformedURLException {
 		super(riverName, settings);
 		this.client = client;
+		this.clusterService = clusterService;
+		this.nodeService = nodeService;
+		this.responseCache = responseCache;
+		this.bufferPool = bufferPool;
 		configure(settings.settings());
 	}
 
@@ -135,18 +309,103 @@ public class SysinfoRiver extends AbstractRiverComponent implements River, IRive
 				throw new SettingsException("es_connection/type element of configuration structure not found or empty");
 			}
 			if ("local".equalsIgnoreCase(type)) {
-				sourceClient = new SourceClientESClient(client);
+				sourceClient = new SourceClientESClient(client, nodeService);
 			} else if ("remote".equalsIgnoreCase(type)) {
 				sourceClient = new SourceClientESTransportClient(sourceClientSettings);
-			} else if ("rest".equalsIgnoreCase(type)) {
-				sourceClient = new SourceClientREST(sourceClientSettings);
+			} else if ("rest".equalsIgnoreCase(type) || "rest_async".equalsIgnoreCase(type)) {
+				SourceClientREST restClient = "rest".equalsIgnoreCase(type) ? new SourceClientREST(sourceClientSettings)
+						: new SourceClientRESTAsync(sourceClientSettings);
+				restClient.setBufferPool(bufferPool);
+				sourceClient = restClient;
 			} else {
 				throw new SettingsException("es_connection/type value '" + type
-						+ "' is invalid. Use one of local, remote, rest");
+						+ "' is invalid. Use one of local, remote, rest, rest_async");
+			}
+			if (sourceClient instanceof SourceClientESClient) {
+				((SourceClientESClient) sourceClient).setDirect(XContentMapValues.nodeBooleanValue(
+						sourceClientSettings.get("direct"), true));
 			}
 		} else {
 			throw new SettingsException("'es_connection' element of river configuration structure not found");
 		}
+		fetchDedupWindow = Utils.parseTimeValue(settings, "fetch_dedup_window", 0, null);
+		fetchCoordinator = new SysinfoFetchCoordinator(sourceClient, fetchDedupWindow);
+		responseCacheTtl = 0;
+		if (settings.containsKey("response_cache")) {
+			Map<String, Object> cacheSettings = (Map<String, Object>) settings.get("response_cache");
+			if (cacheSettings != null)
+				responseCacheTtl = Utils.parseTimeValue(cacheSettings, "ttl", 0, null);
+		}
+		if (responseCacheTtl > 0) {
+			if (responseCache == null) {
+				throw new SettingsException("response_cache is not available on this node");
+			}
+			fetchCoordinator.setResponseCache(responseCache,
+					prepareCacheConnection(type, (Map<String, Object>) settings.get("es_connection")), responseCacheTtl);
+		}
+
+		schedulerThreads = DEFAULT_SCHEDULER_THREADS;
+		startupSpread = 0;
+		stopTimeout = DEFAULT_STOP_TIMEOUT;
+		if (settings.containsKey("scheduler")) {
+			Map<String, Object> schedulerSettings = (Map<String, Object>) settings.get("scheduler");
+			Integer t = Utils.nodeIntegerValue(schedulerSettings.get("threads"));
+			if (t != null) {
+				if (t < 1) {
+					throw new SettingsException("scheduler/threads value must be positive number");
+				}
+				schedulerThreads = t;
+			}
+			startupSpread = Utils.parseTimeValue(schedulerSettings, "startup_spread", 0, null);
+			stopTimeout = Utils.parseTimeValue(schedulerSettings, "stop_timeout", DEFAULT_STOP_TIMEOUT,
+					TimeUnit.MILLISECONDS);
+		}
+
+		bulkActions = 0;
+		if (settings.containsKey("bulk")) {
+			Map<String, Object> bulkSettings = (Map<String, Object>) settings.get("bulk");
+			if (bulkSettings == null)
+				bulkSettings = new HashMap<String, Object>();
+			Integer a = Utils.nodeIntegerValue(bulkSettings.get("actions"));
+			bulkActions = a != null ? a : SysinfoBulkWriter.DEFAULT_BULK_ACTIONS;
+			if (bulkActions < 1) {
+				throw new SettingsException("bulk/actions value must be positive number");
+			}
+			try {
+				bulkSize = ByteSizeValue.parseBytesSizeValue(
+						XContentMapValues.nodeStringValue(bulkSettings.get("size"), null),
+						new ByteSizeValue(SysinfoBulkWriter.DEFAULT_BULK_SIZE)).bytes();
+			} catch (ElasticsearchParseException e) {
+				throw new SettingsException("bulk/size is invalid: " + e.getMessage());
+			}
+			bulkFlushInterval = Utils.parseTimeValue(bulkSettings, "flush_interval",
+					SysinfoBulkWriter.DEFAULT_FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+			bulkTargetLatency = Utils.parseTimeValue(bulkSettings, "target_latency",
+					SysinfoBulkWriter.DEFAULT_TARGET_LATENCY, TimeUnit.MILLISECONDS);
+			Integer c = Utils.nodeIntegerValue(bulkSettings.get("max_concurrent_bulks"));
+			bulkMaxConcurrent = c != null ? c : SysinfoBulkWriter.DEFAULT_MAX_CONCURRENT_BULKS;
+			if (bulkMaxConcurrent < 1) {
+				throw new SettingsException("bulk/max_concurrent_bulks value must be positive number");
+			}
+		}
+
+		long defaultTimeout = 0;
+		Map<SysinfoType, Long> typeTimeouts = new EnumMap<SysinfoType, Long>(SysinfoType.class);
+		Map<String, Object> timeoutsSettings = (Map<String, Object>) settings.get("timeouts");
+		if (timeoutsSettings != null) {
+			for (String key : timeoutsSettings.keySet()) {
+				long t = Utils.parseTimeValue(timeoutsSettings, key, 0, null);
+				if ("default".equalsIgnoreCase(key.trim())) {
+					defaultTimeout = t;
+				} else {
+					try {
+						typeTimeouts.put(SysinfoType.parseConfiguration(key.trim()), t);
+					} catch (SettingsException e) {
+						throw new SettingsException("timeouts/" + key + " is invalid. Use info_type name or 'default'");
+					}
+				}
+			}
+		}
 
 		Map<String, Map<String, Object>> indexersMap = (Map<String, Map<String, Object>>) settings.get("indexers");
 		if (indexersMap != null && !indexersMap.isEmpty()) {
@@ -157,18 +416,167 @@ public class SysinfoRiver extends AbstractRiverComponent implements River, IRive
 				}
 				Map<String, Object> ic = indexersMap.get(name);
 				SysinfoType infoType = SysinfoType.parseConfiguration((String) ic.get("info_type"));
-				String indexName = configMandatoryString(ic, "index_name", name);
-				String typeName = configMandatoryString(ic, "index_type", name);
+				List<SysinfoIndexerOutput> outputs = configOutputs(ic, name);
+				String indexName = outputs == null ? configMandatoryString(ic, "index_name", name) : null;
+				String typeName = outputs == null ? configMandatoryString(ic, "index_type", name) : null;
 				long indexingPeriod = Utils.parseTimeValue(ic, "period", 30, TimeUnit.SECONDS);
 				Map<String, String> params = (Map<String, String>) ic.get("params");
-				indexers.put(name, new SysinfoIndexer(name, sourceClient, client, infoType, indexName, typeName,
-						indexingPeriod, params));
+				if (infoType == SysinfoType.LOCAL_NODE_STATS
+						&& !(sourceClient instanceof SourceClientESClient && ((SourceClientESClient) sourceClient)
+								.supportsLocalNodeStats(params))) {
+					throw new SettingsException("indexers/" + name
+							+ "/info_type local_node_stats can be used for local es_connection only, with supported metric param");
+				}
+				SysinfoIndexer indexer;
+				String mode = Utils.trimToNull((String) ic.get("mode"));
+				if (mode == null || "poll".equalsIgnoreCase(mode)) {
+					indexer = new SysinfoIndexer(name, fetchCoordinator, client, infoType, indexName, typeName, indexingPeriod,
+							params);
+				} else if ("events".equalsIgnoreCase(mode)) {
+					indexer = configEventIndexer(ic, name, type, infoType, indexName, typeName, params);
+				} else {
+					throw new SettingsException("indexers/" + name + "/mode value '" + mode + "' is invalid. Use one of poll, events");
+				}
+				indexer.outputs = outputs;
+				indexer.asyncRead = sourceClient instanceof SourceClientRESTAsync;
+				indexer.aligned = XContentMapValues.nodeBooleanValue(ic.get("aligned"), false);
+				indexer.phase = Utils.parseTimeValue(ic, "phase", 0, null);
+				indexer.jitter = Utils.parseTimeValue(ic, "jitter", 0, null);
+				indexer.overrunPolicy = OverrunPolicy.parseConfiguration((String) ic.get("overrun_policy"),
+						OverrunPolicy.SKIP);
+				Integer mw = Utils.nodeIntegerValue(ic.get("max_inflight_writes"));
+				if (mw != null) {
+					if (mw < 1) {
+						throw new SettingsException("indexers/" + name + "/max_inflight_writes value must be positive number");
+					}
+					indexer.maxInflightWrites = mw;
+				}
+				Integer qs = Utils.nodeIntegerValue(ic.get("write_queue_size"));
+				if (qs != null) {
+					if (qs < 0) {
+						throw new SettingsException("indexers/" + name + "/write_queue_size value must not be negative number");
+					}
+					indexer.writeQueueSize = qs;
+				}
+				indexer.writeQueuePolicy = WriteQueuePolicy.parseConfiguration((String) ic.get("write_queue_policy"),
+						WriteQueuePolicy.DROP_OLDEST);
+				Long typeTimeout = typeTimeouts.get(infoType);
+				indexer.requestPlan.setTimeout(Utils.parseTimeValue(ic, "timeout", typeTimeout != null ? typeTimeout
+						: defaultTimeout, TimeUnit.MILLISECONDS));
+				if (indexer.stateDiffer != null) {
+					indexer.stateDiffer.fullSnapshotInterval = Utils.parseTimeValue(ic, "full_snapshot_interval",
+							SysinfoClusterStateDiffer.DEFAULT_FULL_SNAPSHOT_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+				String split = Utils.trimToNull((String) ic.get("split"));
+				if (split != null) {
+					if (indexer.stateDiffer != null) {
+						throw new SettingsException("indexers/" + name
+								+ "/split can't be used for cluster_state_changes info_type");
+					}
+					try {
+						indexer.splitter = new SysinfoResponseSplitter(split);
+					} catch (IllegalArgumentException e) {
+						throw new SettingsException("indexers/" + name + "/split value '" + split + "' is invalid: "
+								+ e.getMessage());
+					}
+				}
+				indexers.put(name, indexer);
 			}
 		} else {
 			throw new SettingsException("'indexers' element of river configuration structure not found or is empty");
 		}
 
-		logger.info("Sysinfo River configured for connection type '{}' and {} indexers.", type, indexers.size());
+		logger.info("Sysinfo River configured for connection type '{}' and {} indexers running in {} threads.", type,
+				indexers.size(), schedulerThreads);
+	}
+
+	/**
+	 * Prepare key of connection used in {@link #responseCache}. All local connections are same as cache is node level,
+	 * remote connections are same if configured same way.
+	 * 
+	 * @param type of connection
+	 * @param sourceClientSettings configuration of connection
+	 * @return connection key
+	 */
+	protected static Object prepareCacheConnection(String type, Map<String, Object> sourceClientSettings) {
+		type = type.toLowerCase();
+		if ("local".equals(type))
+			return type;
+		Map<String, Object> conn = new HashMap<String, Object>(sourceClientSettings);
+		conn.remove("type");
+		conn.remove("direct");
+		// compression and balancing over endpoints don't change content of responses
+		conn.remove("compression");
+		conn.remove("failure_threshold");
+		conn.remove("probe_interval");
+		if ("rest_async".equals(type)) {
+			// same cluster as read over blocking rest connection
+			type = "rest";
+			conn.remove("io_threads");
+			conn.remove("max_connections");
+		}
+		return Arrays.asList(type, conn);
+	}
+
+	/**
+	 * Create indexer driven by cluster state changes from its configuration.
+	 * 
+	 * @param ic indexer configuration
+	 * @param indexerName name of indexer
+	 * @param connectionType type of river's connection, must be local
+	 * @param infoType type of information indexed by indexer
+	 * @param indexName name of index to store information into
+	 * @param typeName type of document to store information into
+	 * @param params to narrow down information
+	 * @return indexer
+	 * @throws SettingsException if indexer can't be driven by cluster state changes
+	 */
+	protected SysinfoClusterEventIndexer configEventIndexer(Map<String, Object> ic, String indexerName,
+			String connectionType, SysinfoType infoType, String indexName, String typeName, Map<String, String> params) {
+		if (!"local".equalsIgnoreCase(connectionType) || clusterService == null) {
+			throw new SettingsException("indexers/" + indexerName + "/mode 'events' can be used for local es_connection only");
+		}
+		SourceClientESClient localClient = (SourceClientESClient) sourceClient;
+		if (!localClient.supportsClusterState(infoType.getReadType(), params)) {
+			throw new SettingsException("indexers/" + indexerName
+					+ "/mode 'events' supports only cluster_state info_type with metric param and cluster_health info_type with index and level params");
+		}
+		SysinfoClusterEventIndexer ret = new SysinfoClusterEventIndexer(indexerName, fetchCoordinator, localClient,
+				clusterService, client, infoType, indexName, typeName, params);
+		ret.debounce = Utils.parseTimeValue(ic, "debounce", 0, null);
+		ret.minInterval = Utils.parseTimeValue(ic, "min_interval", 0, null);
+		return ret;
+	}
+
+	/**
+	 * Read outputs of composite indexer from its configuration.
+	 * 
+	 * @param ic indexer configuration
+	 * @param indexerName name of indexer
+	 * @return list of outputs or null if indexer is not composite
+	 */
+	@SuppressWarnings("unchecked")
+	private List<SysinfoIndexerOutput> configOutputs(Map<String, Object> ic, String indexerName) {
+		if (!ic.containsKey("outputs"))
+			return null;
+		Object o = ic.get("outputs");
+		if (!(o instanceof List) || ((List<?>) o).isEmpty()) {
+			throw new SettingsException("'indexers/" + indexerName
+					+ "/outputs' river configuration element must be non empty list");
+		}
+		List<SysinfoIndexerOutput> ret = new ArrayList<SysinfoIndexerOutput>();
+		int i = 0;
+		for (Object oc : (List<Object>) o) {
+			String parentName = indexerName + "/outputs[" + i++ + "]";
+			if (!(oc instanceof Map)) {
+				throw new SettingsException("'indexers/" + parentName + "' river configuration element must be object");
+			}
+			Map<String, Object> ocm = (Map<String, Object>) oc;
+			ret.add(new SysinfoIndexerOutput(configMandatoryString(ocm, "index_name", parentName), configMandatoryString(
+					ocm, "index_type", parentName), Utils.nodeStringArrayValue(ocm.get("includes")),
+					Utils.nodeStringArrayValue(ocm.get("excludes"))));
+		}
+		return ret;
 	}
 
 	private String configMandatoryString(Map<String, Object> settings, String key, String parentName) {
@@ -190,21 +598,21 @@ public class SysinfoRiver extends AbstractRiverComponent implements River, IRive
 		}
 		sourceClient.start();
 		closed = false;
+		scheduler = acquireScheduler("sysinfo_river_" + riverName().getName(), schedulerThreads);
+		if (bulkActions > 0) {
+			bulkWriter = new SysinfoBulkWriter(client, scheduler, bulkActions, bulkSize, bulkFlushInterval,
+					bulkTargetLatency, bulkMaxConcurrent);
+		}
+		// spread first runs of indexers over configured interval so monitored cluster is not hit by all calls at once
+		long spreadStep = indexers.isEmpty() ? 0 : startupSpread / indexers.size();
+		int i = 0;
 		for (SysinfoIndexer indexer : indexers.values()) {
-			runIndexer(indexer);
+			indexer.bulkWriter = bulkWriter;
+			indexer.start(scheduler, spreadStep * i++);
 		}
 		logger.info("Sysinfo River started");
 	}
 
-	/**
-	 * @param indexer
-	 */
-	protected void runIndexer(SysinfoIndexer indexer) {
-		Thread t = acquireThread("sysinfo_river_" + indexer.name, indexer);
-		indexerThreads.put(indexer.name, t);
-		t.start();
-	}
-
 	@Override
 	public synchronized void close() {
 		logger.info("closing Sysinfo River on this node");
@@ -231,20 +639,32 @@ public class SysinfoRiver extends AbstractRiverComponent implements River, IRive
 					logger.warn("Exception during {} indexer closing: {}", indexer.name, t.getMessage());
 				}
 			}
-			// let threads some time to finish
-			try {
-				Thread.sleep(500);
-			} catch (InterruptedException e) {
-				// nothing to do
-			}
-			// and interrupt them if not finished yet
-			for (Thread pi : indexerThreads.values()) {
-				pi.interrupt();
+			// interrupt running indexing cycles
+			if (scheduler != null) {
+				scheduler.shutdownNow();
 			}
-			indexerThreads.clear();
 		} finally {
+			// close source client to cancel information reads in progress
+			if (fetchCoordinator != null)
+				fetchCoordinator.close();
 			sourceClient.close();
 		}
+		// and wait for indexing cycles to finish, then store collected informations
+		if (scheduler != null) {
+			try {
+				if (!scheduler.awaitTermination(stopTimeout, TimeUnit.MILLISECONDS)) {
+					logger.warn("Some Sysinfo River indexers not finished in {} ms", stopTimeout);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				scheduler = null;
+			}
+		}
+		if (bulkWriter != null) {
+			bulkWriter.close();
+			bulkWriter = null;
+		}
 	}
 
 	/**
@@ -255,12 +675,6 @@ public class SysinfoRiver extends AbstractRiverComponent implements River, IRive
 		logger.info("restarting Sysinfo River");
 		if (!closed) {
 			stop();
-			// wait a while to allow currently running indexers to finish??
-			try {
-				Thread.sleep(2000);
-			} catch (InterruptedException e) {
-				return;
-			}
 		} else {
 			logger.debug("stopped already");
 		}
@@ -347,12 +761,53 @@ public class SysinfoRiver extends AbstractRiverComponent implements River, IRive
 		return Collections.unmodifiableSet((riverInstances.keySet()));
 	}
 
-	protected Thread acquireThread(String threadName, Runnable runnable) {
-		return EsExecutors.daemonThreadFactory(settings.globalSettings(), threadName).newThread(runnable);
+	/**
+	 * Create scheduler used to run indexers.
+	 * 
+	 * @param threadName prefix of scheduler thread names
+	 * @param threads number of threads in scheduler
+	 * @return scheduler
+	 */
+	protected ScheduledExecutorService acquireScheduler(String threadName, int threads) {
+		ScheduledThreadPoolExecutor ret = new ScheduledThreadPoolExecutor(threads, EsExecutors.daemonThreadFactory(
+				settings.globalSettings(), threadName));
+		ret.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		ret.setRemoveOnCancelPolicy(true);
+		return ret;
+	}
+
+	@Override
+	public synchronized Map<String, Object> getStatistics() {
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		ret.put("running", !closed);
+		ret.put("scheduler_threads", schedulerThreads);
+		Map<String, Object> is = new LinkedHashMap<String, Object>();
+		for (SysinfoIndexer indexer : indexers.values()) {
+			is.put(indexer.name, indexer.getStatistics());
+		}
+		ret.put("indexers", is);
+		if (bulkWriter != null)
+			ret.put("bulk", bulkWriter.getStatistics());
+		if (fetchCoordinator != null)
+			ret.put("fetch", fetchCoordinator.getStatistics());
+		if (responseCache != null && responseCacheTtl > 0) {
+			Map<String, Object> cs = new LinkedHashMap<String, Object>();
+			cs.put("ttl", responseCacheTtl);
+			cs.putAll(responseCache.getStatistics());
+			ret.put("response_cache", cs);
+		}
+		if (bufferPool != null && sourceClient instanceof SourceClientREST)
+			ret.put("buffer_pool", bufferPool.getStatistics());
+		if (sourceClient != null) {
+			Map<String, Object> ss = sourceClient.getStatistics();
+			if (ss != null && !ss.isEmpty())
+				ret.put("source", ss);
+		}
+		return ret;
 	}
 
 	@Override
-	public synchronized boolean changeIndexerPeriod(String[] indexerNames, long indexingPeriod) {
+	public boolean changeIndexerPeriod(String[] indexerNames, long indexingPeriod) {
 
 		logger.debug("Go to change period to {}[ms] for indexers {}", indexingPeriod, indexerNames);
 
@@ -363,24 +818,11 @@ public class SysinfoRiver extends AbstractRiverComponent implements River, IRive
 		for (String in : indexerNames) {
 			in = in.trim();
 			try {
-				if (indexers.containsKey(in)) {
+				// river lock is not used here, so period is changed even if river is busy (eg. stopping)
+				SysinfoIndexer si = indexers.get(in);
+				if (si != null) {
 					ret = true;
-					SysinfoIndexer si = indexers.get(in);
-					long old = si.indexingPeriod;
-					si.indexingPeriod = indexingPeriod;
-					if (old > 3000 && old > indexingPeriod && !si.closed) {
-						// restart thread when we shorten period and old period is longer than some reasonable limit to start
-						// shorter period nearly immediately
-						si.close();
-						Thread t = indexerThreads.get(in);
-						if (t != null) {
-							t.interrupt();
-							while (t.getState() != Thread.State.TERMINATED) {
-								Thread.sleep(50);
-							}
-							runIndexer(si);
-						}
-					}
+					si.changePeriod(indexingPeriod);
 				}
 			} catch (Exception e) {
 				// nothing to do
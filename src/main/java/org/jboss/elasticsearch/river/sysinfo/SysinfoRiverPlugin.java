@@ -5,8 +5,12 @@
  */
 package org.jboss.elasticsearch.river.sysinfo;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
 import org.elasticsearch.action.ActionModule;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Module;
 import org.elasticsearch.plugins.AbstractPlugin;
 import org.elasticsearch.rest.RestModule;
 import org.elasticsearch.river.RiversModule;
@@ -19,6 +23,9 @@ import org.jboss.elasticsearch.river.sysinfo.mgm.period.TransportJRPeriodAction;
 import org.jboss.elasticsearch.river.sysinfo.mgm.riverslist.ListRiversAction;
 import org.jboss.elasticsearch.river.sysinfo.mgm.riverslist.RestListRiversAction;
 import org.jboss.elasticsearch.river.sysinfo.mgm.riverslist.TransportListRiversAction;
+import org.jboss.elasticsearch.river.sysinfo.mgm.stats.JRStatsAction;
+import org.jboss.elasticsearch.river.sysinfo.mgm.stats.RestJRStatsAction;
+import org.jboss.elasticsearch.river.sysinfo.mgm.stats.TransportJRStatsAction;
 
 /**
  * System Info River ElasticSearch Plugin class.
@@ -41,6 +48,13 @@ public class SysinfoRiverPlugin extends AbstractPlugin {
     return "River Sysinfo Plugin";
   }
 
+  @Override
+  public Collection<Class<? extends Module>> modules() {
+    Collection<Class<? extends Module>> modules = new ArrayList<Class<? extends Module>>();
+    modules.add(SysinfoNodeModule.class);
+    return modules;
+  }
+
   public void onModule(RiversModule module) {
     module.registerRiver("sysinfo", SysinfoRiverModule.class);
   }
@@ -49,11 +63,13 @@ public class SysinfoRiverPlugin extends AbstractPlugin {
     module.addRestAction(RestListRiversAction.class);
     module.addRestAction(RestJRLifecycleAction.class);
     module.addRestAction(RestJRPeriodAction.class);
+    module.addRestAction(RestJRStatsAction.class);
   }
 
   public void onModule(ActionModule module) {
     module.registerAction(ListRiversAction.INSTANCE, TransportListRiversAction.class);
     module.registerAction(JRLifecycleAction.INSTANCE, TransportJRLifecycleAction.class);
     module.registerAction(JRPeriodAction.INSTANCE, TransportJRPeriodAction.class);
+    module.registerAction(JRStatsAction.INSTANCE, TransportJRStatsAction.class);
   }
 }
@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.bytes.BytesReference;
+
+/**
+ * One read of information whose result is shared by all waiting reads and listeners of asynchronous reads. Used by
+ * {@link SysinfoFetchCoordinator} to deduplicate reads of one river and by {@link SysinfoResponseCache} to share reads
+ * of all rivers on the node.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+class SysinfoSharedRead {
+
+  protected boolean done = false;
+  protected long completedAt;
+  protected BytesReference value;
+  protected Exception failure;
+  protected List<ActionListener<BytesReference>> listeners;
+
+  /**
+   * Complete read, wake up all waiting reads and notify listeners.
+   * 
+   * @param value read information, null if read failed
+   * @param failure of read, null if read was successful
+   */
+  protected void complete(BytesReference value, Exception failure) {
+    List<ActionListener<BytesReference>> l;
+    synchronized (this) {
+      this.value = value;
+      this.failure = failure;
+      this.completedAt = System.currentTimeMillis();
+      this.done = true;
+      notifyAll();
+      l = listeners;
+      listeners = null;
+    }
+    if (l != null) {
+      for (ActionListener<BytesReference> listener : l) {
+        notifyListener(listener);
+      }
+    }
+  }
+
+  /**
+   * Add listener notified when read is completed, immediately if it is completed already.
+   * 
+   * @param listener to add
+   */
+  protected void addListener(ActionListener<BytesReference> listener) {
+    synchronized (this) {
+      if (!done) {
+        if (listeners == null)
+          listeners = new ArrayList<ActionListener<BytesReference>>();
+        listeners.add(listener);
+        return;
+      }
+    }
+    notifyListener(listener);
+  }
+
+  private void notifyListener(ActionListener<BytesReference> listener) {
+    if (failure != null)
+      listener.onFailure(failure);
+    else
+      listener.onResponse(value);
+  }
+
+  /**
+   * @param validFrom time [ms] result must be completed after to be reused
+   * @return true if read is in progress, or completed successfully after given time
+   */
+  protected synchronized boolean isReusable(long validFrom) {
+    return !done || (failure == null && completedAt >= validFrom);
+  }
+
+  /**
+   * Wait for read to be completed.
+   * 
+   * @return read information
+   * @throws IOException if read failed
+   * @throws InterruptedException if waiting is interrupted
+   */
+  protected synchronized BytesReference get() throws IOException, InterruptedException {
+    while (!done) {
+      wait();
+    }
+    if (failure instanceof IOException)
+      throw (IOException) failure;
+    if (failure instanceof InterruptedException)
+      throw new IOException("Shared read of information interrupted");
+    if (failure != null)
+      throw new IOException("Shared read of information failed: " + failure.getMessage(), failure);
+    return value;
+  }
+
+}
@@ -11,7 +11,7 @@ import org.elasticsearch.common.settings.SettingsException;
  * Enum with names of distinct ElasticSearch system info types which can be stored into ES index using this river.
  * <p>
  * After new type is added here do not forget to add necessary implementation into
- * {@link SourceClientBase#readSysinfoValue(SysinfoType, java.util.Map)}.
+ * {@link SourceClientBase#readSysinfoValue(SysinfoType, java.util.Map)}, or define type it is derived from.
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  */
@@ -56,12 +56,30 @@ public enum SysinfoType {
   /**
    * https://www.elastic.co/guide/en/elasticsearch/reference/current/indices-recovery.html
    */
-  INDICES_RECOVERY("indices_recovery");
+  INDICES_RECOVERY("indices_recovery"),
+
+  /**
+   * Changes of {@link #CLUSTER_STATE} between consecutive reads, see {@link SysinfoClusterStateDiffer}.
+   */
+  CLUSTER_STATE_CHANGES("cluster_state_changes", CLUSTER_STATE),
+
+  /**
+   * Statistics of the node river runs on, read in-process without any call to cluster. Available for local connection
+   * only.
+   */
+  LOCAL_NODE_STATS("local_node_stats");
 
   private String name;
 
+  private SysinfoType readType;
+
   private SysinfoType(String name) {
+    this(name, null);
+  }
+
+  private SysinfoType(String name, SysinfoType readType) {
     this.name = name;
+    this.readType = readType;
   }
 
   /**
@@ -73,6 +91,16 @@ public enum SysinfoType {
     return name;
   }
 
+  /**
+   * Get type of information read from monitored cluster to obtain information of this type. Differs for types derived
+   * from other information by the river.
+   * 
+   * @return type of read information
+   */
+  public SysinfoType getReadType() {
+    return readType != null ? readType : this;
+  }
+
   /**
    * Get enum value based on String value read from configuration file.
    * 
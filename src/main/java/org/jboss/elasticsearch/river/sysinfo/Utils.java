@@ -6,6 +6,7 @@
 package org.jboss.elasticsearch.river.sysinfo;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -118,6 +119,28 @@ public class Utils {
 		return Integer.parseInt(node.toString());
 	}
 
+	/**
+	 * Get node value as array of Strings. Node can be list of values or one value.
+	 * 
+	 * @param node to get value from
+	 * @return array of String values or null if node is null.
+	 */
+	public static String[] nodeStringArrayValue(Object node) {
+		if (node == null) {
+			return null;
+		}
+		if (node instanceof Collection) {
+			Collection<?> c = (Collection<?>) node;
+			String[] ret = new String[c.size()];
+			int i = 0;
+			for (Object o : c) {
+				ret[i++] = o != null ? o.toString() : null;
+			}
+			return ret;
+		}
+		return new String[] { node.toString() };
+	}
+
 	/**
 	 * Read JSON file from classpath into Map of Map structure.
 	 * 
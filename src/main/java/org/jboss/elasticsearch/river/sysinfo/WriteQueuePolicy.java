@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import org.elasticsearch.common.settings.SettingsException;
+
+/**
+ * Enum with policies applied by {@link SysinfoIndexer} when collected information can't be put into full write queue
+ * because target index is slow.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public enum WriteQueuePolicy {
+
+  /**
+   * Indexing cycle is blocked until information can be put into queue.
+   */
+  BLOCK("block"),
+  /**
+   * Oldest information waiting in queue is dropped.
+   */
+  DROP_OLDEST("drop_oldest"),
+  /**
+   * Newly collected information is dropped.
+   */
+  DROP_NEWEST("drop_newest");
+
+  private String name;
+
+  private WriteQueuePolicy(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Get name of this policy. Used in config files also.
+   * 
+   * @return name of policy
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get enum value based on String value read from configuration file.
+   * 
+   * @param value to be parsed (values stored in {@link #name} are supported here)
+   * @param defaultValue returned if value is empty
+   * @return Enum value
+   * @throws SettingsException for bad value
+   */
+  public static WriteQueuePolicy parseConfiguration(String value, WriteQueuePolicy defaultValue)
+      throws SettingsException {
+    if (Utils.isEmpty(value)) {
+      return defaultValue;
+    }
+    for (WriteQueuePolicy t : values()) {
+      if (t.getName().equalsIgnoreCase(value.trim()))
+        return t;
+    }
+    throw new SettingsException("indexers/write_queue_policy contains unsupported name: " + value);
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.esclient;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.action.admin.indices.stats.CommonStatsFlags;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.collect.Sets;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.node.service.NodeService;
+import org.jboss.elasticsearch.river.sysinfo.SysinfoType;
+
+/**
+ * Reader of {@link SysinfoType#LOCAL_NODE_STATS} information. Statistics of the node river runs on are read in-process
+ * from {@link NodeService} (which takes them from node's monitor services and thread pool), without any transport call
+ * and nodes stats request fan-out. Information has same structure as {@link SysinfoType#CLUSTER_NODES_STATS} with
+ * local node only.
+ * <p>
+ * <code>metric</code> param narrows down statistics to comma separated list of metrics from {@link #METRICS}, or
+ * <code>_all</code>. {@link #DEFAULT_METRICS} are read if not defined.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class LocalNodeStatsReader {
+
+	/**
+	 * All supported metrics.
+	 */
+	public static final Set<String> METRICS = Collections.unmodifiableSet(Sets.newHashSet("indices", "os", "process",
+			"jvm", "thread_pool", "network", "fs", "transport", "http", "breaker"));
+
+	/**
+	 * Metrics read if <code>metric</code> param is not defined.
+	 */
+	public static final Set<String> DEFAULT_METRICS = Collections.unmodifiableSet(Sets.newHashSet("os", "process",
+			"jvm", "thread_pool"));
+
+	private static final Set<String> PARAMS = Collections.unmodifiableSet(Sets.newHashSet("metric", "pretty", "human"));
+
+	protected NodeService nodeService;
+
+	protected String clusterName;
+
+	/**
+	 * @param nodeService of local node
+	 * @param settings of local node
+	 */
+	public LocalNodeStatsReader(NodeService nodeService, Settings settings) {
+		this.nodeService = nodeService;
+		this.clusterName = ClusterName.clusterNameFromSettings(settings).value();
+	}
+
+	/**
+	 * Check if params are supported.
+	 * 
+	 * @param params to check, may be null
+	 * @return true if all params and metrics are supported
+	 */
+	public static boolean supports(Map<String, String> params) {
+		if (params == null)
+			return true;
+		if (!PARAMS.containsAll(params.keySet()))
+			return false;
+		return parseMetrics(params) != null;
+	}
+
+	/**
+	 * Parse metrics from params.
+	 * 
+	 * @param params to read metrics from, may be null
+	 * @return set of metrics, null if unsupported metric is requested
+	 */
+	protected static Set<String> parseMetrics(Map<String, String> params) {
+		String value = params != null ? params.get("metric") : null;
+		if (value == null || value.trim().isEmpty())
+			return DEFAULT_METRICS;
+		Set<String> ret = Sets.newHashSet();
+		for (String m : value.split(",")) {
+			m = m.trim();
+			if ("_all".equals(m)) {
+				ret.addAll(METRICS);
+			} else if (METRICS.contains(m)) {
+				ret.add(m);
+			} else if (!m.isEmpty()) {
+				return null;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Read statistics of local node.
+	 * 
+	 * @param request with params
+	 * @return information JSON bytes
+	 * @throws IOException
+	 */
+	public BytesReference read(LocalRestRequest request) throws IOException {
+		Set<String> metrics = parseMetrics(request.params());
+		if (metrics == null)
+			throw new IllegalArgumentException("Unsupported metric for " + SysinfoType.LOCAL_NODE_STATS.getName() + ": "
+					+ request.param("metric"));
+		CommonStatsFlags indices = metrics.contains("indices") ? new CommonStatsFlags().all() : new CommonStatsFlags()
+				.clear();
+		NodeStats stats = nodeService.stats(indices, metrics.contains("os"), metrics.contains("process"),
+				metrics.contains("jvm"), metrics.contains("thread_pool"), metrics.contains("network"), metrics.contains("fs"),
+				metrics.contains("transport"), metrics.contains("http"), metrics.contains("breaker"));
+		XContentBuilder builder = XContentFactory.jsonBuilder();
+		if (request.paramAsBoolean("pretty", false))
+			builder.prettyPrint().lfAtEnd();
+		builder.humanReadable(request.paramAsBoolean("human", builder.humanReadable()));
+		builder.startObject();
+		builder.field("cluster_name", clusterName);
+		builder.startObject("nodes");
+		builder.startObject(stats.getNode().id(), XContentBuilder.FieldCaseConversion.NONE);
+		stats.toXContent(builder, request);
+		builder.endObject();
+		builder.endObject();
+		builder.endObject();
+		return builder.bytes();
+	}
+
+}
@@ -0,0 +1,39 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.esclient;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * Exception thrown when local request is abandoned after timeout. ElasticSearch actions can't be cancelled, so request
+ * may be still processed by cluster until {@link #getRequest()} is done.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class LocalRequestTimeoutException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Future<?> request;
+
+	/**
+	 * @param message of exception
+	 * @param request abandoned request, done when cluster finishes its processing
+	 */
+	public LocalRequestTimeoutException(String message, Future<?> request) {
+		super(message);
+		this.request = request;
+	}
+
+	/**
+	 * @return abandoned request, done when cluster finishes its processing
+	 */
+	public Future<?> getRequest() {
+		return request;
+	}
+
+}
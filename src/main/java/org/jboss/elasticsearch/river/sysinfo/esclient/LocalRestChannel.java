@@ -6,30 +6,86 @@
 package org.jboss.elasticsearch.river.sysinfo.esclient;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestResponse;
 import org.elasticsearch.rest.RestStatus;
 
 /**
- * Implementation of {@link RestChannel} used for {@link SourceClientESClient}.
+ * Implementation of {@link RestChannel} used for {@link SourceClientESClient}. Thread waiting for response is woken up
+ * as soon as response is sent by REST handler. Channel is closed on timeout, so response sent by handler later is
+ * discarded, but {@link #getResponseFuture()} is done then so caller knows request is not processed by cluster anymore.
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  */
 public class LocalRestChannel extends RestChannel {
 
-	protected long TIMEOUT = 60 * 1000;
+	private static final ESLogger logger = Loggers.getLogger(LocalRestChannel.class);
+
+	/**
+	 * Default value for {@link #timeout}.
+	 */
+	public static final long DEFAULT_TIMEOUT = 60 * 1000;
+
+	/**
+	 * Time [ms] to wait for response.
+	 */
+	protected long timeout = DEFAULT_TIMEOUT;
+
+	/**
+	 * Done when response is sent by REST handler, even after timeout.
+	 */
+	protected final PlainActionFuture<RestResponse> responseFuture = PlainActionFuture.newFuture();
 
 	protected RestResponse response;
 
+	protected boolean timedOut = false;
+
+	/**
+	 * Time [ms] spent waiting for response in {@link #getResponseContent()}.
+	 */
+	protected long waitTime = 0;
+
 	protected LocalRestChannel(RestRequest request) {
 		super(request);
 	}
 
+	/**
+	 * @param request to send response for
+	 * @param timeout [ms] to wait for response, {@link #DEFAULT_TIMEOUT} is used if 0
+	 */
+	protected LocalRestChannel(RestRequest request, long timeout) {
+		super(request);
+		if (timeout > 0)
+			this.timeout = timeout;
+	}
+
 	@Override
 	public void sendResponse(RestResponse response) {
-		this.response = response;
+		synchronized (this) {
+			if (timedOut) {
+				logger.debug("Response {} sent after timeout is discarded", response.status());
+			} else if (this.response == null) {
+				this.response = response;
+			}
+		}
+		responseFuture.onResponse(response);
+	}
+
+	/**
+	 * @return future done when response is sent by REST handler, also if it is discarded after timeout
+	 */
+	public Future<?> getResponseFuture() {
+		return responseFuture;
 	}
 
 	/**
@@ -40,24 +96,72 @@ public class LocalRestChannel extends RestChannel {
 	 * @throws InterruptedException
 	 */
 	public String getResponseContent() throws IOException, InterruptedException {
-		long start = System.currentTimeMillis();
-		while (response == null) {
-			if ((System.currentTimeMillis() - start) > TIMEOUT)
-				throw new IOException("Request time out after " + TIMEOUT + "ms");
-			Thread.sleep(50);
-		}
+		return getResponseBytes().toUtf8().trim();
+	}
+
+	/**
+	 * Wait until response is set or timeout, and then return response content bytes without any copy or decoding, or
+	 * throw exception in case of error.
+	 * 
+	 * @return content of response in success case.
+	 * @throws IOException in case of error response, {@link LocalRequestTimeoutException} in case of timeout.
+	 * @throws InterruptedException
+	 */
+	public BytesReference getResponseBytes() throws IOException, InterruptedException {
+		RestResponse response = waitForResponse();
 		if (response.status() != RestStatus.OK) {
 			String c = "";
 			if (response.content() != null)
-				c = new String(response.content().toBytes(), "UTF-8");
+				c = response.content().toUtf8();
 			throw new IOException("response status is " + response.status() + " with content " + c.trim());
 		}
-		return (new String(response.content().toBytes(), "UTF-8")).trim();
+		return response.content();
+	}
+
+	private RestResponse waitForResponse() throws IOException, InterruptedException {
+		long start = System.currentTimeMillis();
+		try {
+			responseFuture.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			synchronized (this) {
+				if (response == null) {
+					timedOut = true;
+					throw new LocalRequestTimeoutException("Request time out after " + timeout + "ms", responseFuture);
+				}
+			}
+		} catch (ExecutionException e) {
+			// never happens, response is always set
+			throw new IOException(e.getMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			synchronized (this) {
+				timedOut = true;
+			}
+			throw e;
+		} finally {
+			waitTime = System.currentTimeMillis() - start;
+		}
+		synchronized (this) {
+			return response;
+		}
+	}
+
+	/**
+	 * @return time [ms] spent waiting for response
+	 */
+	public long getWaitTime() {
+		return waitTime;
+	}
+
+	/**
+	 * @return true if channel was closed by timeout or interruption of waiting thread before response was sent
+	 */
+	public synchronized boolean isTimedOut() {
+		return timedOut;
 	}
 
 	@Override
-	public String toString() {
-		return "LocalRestChannel [TIMEOUT=" + TIMEOUT + "ms, response=" + response + "]";
+	public synchronized String toString() {
+		return "LocalRestChannel [timeout=" + timeout + "ms, response=" + response + "]";
 	}
 
 }
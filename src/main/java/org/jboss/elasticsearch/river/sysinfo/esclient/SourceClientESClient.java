@@ -6,14 +6,20 @@
 package org.jboss.elasticsearch.river.sysinfo.esclient;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.node.service.NodeService;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestHandler;
 import org.elasticsearch.rest.action.admin.cluster.health.RestClusterHealthAction;
@@ -28,6 +34,8 @@ import org.elasticsearch.rest.action.admin.indices.stats.RestIndicesStatsAction;
 import org.elasticsearch.rest.action.admin.indices.status.RestIndicesStatusAction;
 import org.jboss.elasticsearch.river.sysinfo.SourceClient;
 import org.jboss.elasticsearch.river.sysinfo.SourceClientBase;
+import org.jboss.elasticsearch.river.sysinfo.SysinfoRequestPlan;
+import org.jboss.elasticsearch.river.sysinfo.SysinfoType;
 
 /**
  * {@link SourceClient} implementation using passed in {@link Client} instance.
@@ -39,6 +47,13 @@ import org.jboss.elasticsearch.river.sysinfo.SourceClientBase;
  *   "type" : "local"
  * }
  * </pre>
+ * <p>
+ * Information is read by {@link TypedRequestReader} calling admin client actions directly if information type and params
+ * are supported by it, emulation of ES REST handlers is used otherwise or if {@link #direct} is false.
+ * <p>
+ * Time to wait for response is taken from {@link SysinfoRequestPlan#getTimeout()}. ElasticSearch actions can't be
+ * cancelled, so request timed out is abandoned and next read with same plan is skipped until cluster finishes its
+ * processing, to prevent concurrent duplicate requests piling up on cluster.
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  * @author Lukas Vlcek
@@ -60,6 +75,34 @@ public class SourceClientESClient extends SourceClientBase {
 	private RestIndicesSegmentsAction indicesSegmentsAction;
 	private RestRecoveryAction indicesRecoveryAction;
 
+	/**
+	 * Reader used for direct reads over typed requests.
+	 */
+	protected TypedRequestReader typedRequestReader;
+
+	/**
+	 * Reader of {@link SysinfoType#LOCAL_NODE_STATS} information, null if not available.
+	 */
+	protected LocalNodeStatsReader localNodeStatsReader;
+
+	/**
+	 * If true then supported information is read over typed requests, emulation of REST handlers is used for all
+	 * information otherwise.
+	 */
+	protected boolean direct = true;
+
+	/**
+	 * Requests abandoned after timeout and maybe still processed by cluster, per plan.
+	 */
+	protected final Map<SysinfoRequestPlan, Future<?>> abandonedRequests = new HashMap<SysinfoRequestPlan, Future<?>>();
+
+	protected long requestsCount = 0;
+	protected long directRequestsCount = 0;
+	protected long timeoutsCount = 0;
+	protected long skippedRequestsCount = 0;
+	protected long responseWaitTime = 0;
+	protected long lastResponseWaitTime = 0;
+
 	/**
 	 * @param client ES cluster to be used for calls
 	 */
@@ -78,82 +121,277 @@ public class SourceClientESClient extends SourceClientBase {
 		indicesStatsAction = new RestIndicesStatsAction(settings, controller, client);
 		indicesSegmentsAction = new RestIndicesSegmentsAction(settings, controller, client);
 		indicesRecoveryAction = new RestRecoveryAction(settings, controller, client);
+		typedRequestReader = new TypedRequestReader(settingsFilter);
+	}
+
+	/**
+	 * @param client ES cluster to be used for calls, client of local node
+	 * @param nodeService of local node used to read {@link SysinfoType#LOCAL_NODE_STATS} information, may be null
+	 */
+	public SourceClientESClient(Client client, NodeService nodeService) {
+		this(client);
+		if (nodeService != null)
+			localNodeStatsReader = new LocalNodeStatsReader(nodeService, client.settings());
 	}
 
 	@Override
-	protected String readClusterStateInfo(Map<String, String> params) throws IOException, InterruptedException {
+	protected BytesReference readClusterStateInfo(Map<String, String> params) throws IOException, InterruptedException {
 		logger.debug("readClusterStateInfo with params {}", params);
-		return performRestRequestLocally(clusterStateAction, params);
+		return performRequest(prepareRequestPlan(SysinfoType.CLUSTER_STATE, params));
 	}
 
 	@Override
-	protected String readClusterHealthInfo(Map<String, String> params) throws IOException, InterruptedException {
+	protected BytesReference readClusterHealthInfo(Map<String, String> params) throws IOException, InterruptedException {
 		logger.debug("readClusterHealthInfo with params {}", params);
-		return performRestRequestLocally(clusterHealthAction, params);
+		return performRequest(prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, params));
 	}
 
 	@Override
-	protected String readClusterStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
+	protected BytesReference readClusterStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
 		logger.debug("readClusterStatsInfo with params {}", params);
-		return performRestRequestLocally(clusterStatsAction, params);
+		return performRequest(prepareRequestPlan(SysinfoType.CLUSTER_STATS, params));
 	}
 
 	@Override
-	protected String readPendingClusterTasksInfo(Map<String, String> params) throws IOException, InterruptedException {
+	protected BytesReference readPendingClusterTasksInfo(Map<String, String> params) throws IOException, InterruptedException {
 		logger.debug("readPendingClusterTasksInfo with params {}", params);
-		return performRestRequestLocally(pendingClusterTasksAction, params);
+		return performRequest(prepareRequestPlan(SysinfoType.PENDING_CLUSTER_TASKS, params));
 	}
 
 	@Override
-	protected String readClusterNodesInfoInfo(Map<String, String> params) throws IOException, InterruptedException {
+	protected BytesReference readClusterNodesInfoInfo(Map<String, String> params) throws IOException, InterruptedException {
 		logger.debug("readClusterNodesInfoInfo with params {}", params);
-		return performRestRequestLocally(nodesInfoAction, params);
+		return performRequest(prepareRequestPlan(SysinfoType.CLUSTER_NODES_INFO, params));
 	}
 
 	@Override
-	protected String readClusterNodesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
+	protected BytesReference readClusterNodesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
 		logger.debug("readClusterNodesStatsInfo with params {}", params);
-		return performRestRequestLocally(nodesStatsAction, params);
+		return performRequest(prepareRequestPlan(SysinfoType.CLUSTER_NODES_STATS, params));
 	}
 
 	@Override
-	protected String readIndicesStatusInfo(Map<String, String> params) throws IOException, InterruptedException {
+	protected BytesReference readIndicesStatusInfo(Map<String, String> params) throws IOException, InterruptedException {
 		logger.debug("readIndicesStatusInfo with params {}", params);
-		return performRestRequestLocally(indicesStatusAction, params);
+		return performRequest(prepareRequestPlan(SysinfoType.INDICES_STATUS, params));
 	}
 
 	@Override
-	protected String readIndicesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
+	protected BytesReference readIndicesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
 		logger.debug("readIndicesStatsInfo with params {}", params);
-		return performRestRequestLocally(indicesStatsAction, params);
+		return performRequest(prepareRequestPlan(SysinfoType.INDICES_STATS, params));
 	}
 
 	@Override
-	protected String readIndicesSegmentsInfo(Map<String, String> params) throws IOException, InterruptedException {
+	protected BytesReference readIndicesSegmentsInfo(Map<String, String> params) throws IOException, InterruptedException {
 		logger.debug("readIndicesSegmentsInfo with params {}", params);
-		return performRestRequestLocally(indicesSegmentsAction, params);
+		return performRequest(prepareRequestPlan(SysinfoType.INDICES_SEGMENTS, params));
 	}
 
 	@Override
-	protected String readIndicesRecoveryInfo(Map<String, String> params) throws IOException, InterruptedException {
+	protected BytesReference readIndicesRecoveryInfo(Map<String, String> params) throws IOException, InterruptedException {
 		logger.debug("readIndicesRecoveryInfo with params {}", params);
-		return performRestRequestLocally(indicesRecoveryAction, params);
+		return performRequest(prepareRequestPlan(SysinfoType.INDICES_RECOVERY, params));
+	}
+
+	@Override
+	protected BytesReference readLocalNodeStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
+		logger.debug("readLocalNodeStatsInfo with params {}", params);
+		return performRequest(prepareRequestPlan(SysinfoType.LOCAL_NODE_STATS, params));
+	}
+
+	/**
+	 * Check if {@link SysinfoType#LOCAL_NODE_STATS} information may be read.
+	 * 
+	 * @param params to narrow down information, may be null
+	 * @return true if local node is available and all params are supported
+	 */
+	public boolean supportsLocalNodeStats(Map<String, String> params) {
+		return localNodeStatsReader != null && LocalNodeStatsReader.supports(params);
+	}
+
+	/**
+	 * Prepare plan with request and handler reused for each read.
+	 */
+	@Override
+	public LocalRequestPlan prepareRequestPlan(SysinfoType infoType, Map<String, String> params) {
+		if (infoType == null)
+			throw new IllegalArgumentException("infoType parameter must be defined");
+		return new LocalRequestPlan(infoType, params, handler(infoType), typedRequestReader.supports(infoType, params));
+	}
+
+	/**
+	 * Read information using plan prepared by {@link #prepareRequestPlan(SysinfoType, Map)}.
+	 */
+	@Override
+	public BytesReference readSysinfoBytes(SysinfoRequestPlan plan) throws IOException, InterruptedException {
+		if (plan instanceof LocalRequestPlan)
+			return performRequest((LocalRequestPlan) plan);
+		return super.readSysinfoBytes(plan);
+	}
+
+	/**
+	 * Check if information may be read from cluster state known by local node, see
+	 * {@link #readSysinfoBytes(SysinfoRequestPlan, ClusterState)}.
+	 * 
+	 * @param infoType type of information
+	 * @param params to narrow down information, may be null
+	 * @return true if information type and all params are supported
+	 */
+	public boolean supportsClusterState(SysinfoType infoType, Map<String, String> params) {
+		return typedRequestReader.supportsClusterState(infoType, params);
 	}
 
-	private String performRestRequestLocally(RestHandler handler, Map<String, String> params) throws IOException,
-			InterruptedException {
-		LocalRestRequest request = new LocalRestRequest(params);
-		LocalRestChannel channel = new LocalRestChannel(request);
+	/**
+	 * Read information from given cluster state known by local node, without any call to cluster.
+	 * 
+	 * @param plan of request, information type and params must be supported, see
+	 *          {@link #supportsClusterState(SysinfoType, Map)}
+	 * @param state to read information from
+	 * @return information JSON bytes, same as read by {@link #readSysinfoBytes(SysinfoRequestPlan)} with
+	 *         <code>local</code> param
+	 * @throws IOException
+	 */
+	public BytesReference readSysinfoBytes(SysinfoRequestPlan plan, ClusterState state) throws IOException {
+		LocalRestRequest request = plan instanceof LocalRequestPlan ? ((LocalRequestPlan) plan).request
+				: new LocalRestRequest(plan.getParams());
+		return typedRequestReader.read(plan.getInfoType(), state, request);
+	}
+
+	private RestHandler handler(SysinfoType infoType) {
+		switch (infoType) {
+		case CLUSTER_HEALTH:
+			return clusterHealthAction;
+		case CLUSTER_STATE:
+			return clusterStateAction;
+		case CLUSTER_STATS:
+			return clusterStatsAction;
+		case PENDING_CLUSTER_TASKS:
+			return pendingClusterTasksAction;
+		case CLUSTER_NODES_INFO:
+			return nodesInfoAction;
+		case CLUSTER_NODES_STATS:
+			return nodesStatsAction;
+		case INDICES_STATUS:
+			return indicesStatusAction;
+		case INDICES_STATS:
+			return indicesStatsAction;
+		case INDICES_SEGMENTS:
+			return indicesSegmentsAction;
+		case INDICES_RECOVERY:
+			return indicesRecoveryAction;
+		case LOCAL_NODE_STATS:
+			// read in-process by localNodeStatsReader, no REST handler
+			return null;
+		default:
+			throw new UnsupportedOperationException("Unsupported information type: " + infoType);
+		}
+	}
+
+	private BytesReference performRequest(LocalRequestPlan plan) throws IOException, InterruptedException {
+		if (plan.getInfoType() == SysinfoType.LOCAL_NODE_STATS) {
+			if (localNodeStatsReader == null)
+				return super.readLocalNodeStatsInfo(plan.getParams());
+			synchronized (this) {
+				directRequestsCount++;
+			}
+			return localNodeStatsReader.read(plan.request);
+		}
+		checkAbandonedRequest(plan);
+		try {
+			if (direct && plan.typedRequestSupported) {
+				synchronized (this) {
+					directRequestsCount++;
+				}
+				BytesReference res;
+				try {
+					res = typedRequestReader.read(client, plan.getInfoType(), plan.request, plan.getTimeout());
+				} catch (LocalRequestTimeoutException e) {
+					synchronized (this) {
+						timeoutsCount++;
+					}
+					throw e;
+				}
+				if (logger.isDebugEnabled())
+					logger.debug("performRequest direct response {}", res.toUtf8());
+				return res;
+			}
+			return performRestRequestLocally(plan.handler, plan.request, plan.getTimeout());
+		} catch (LocalRequestTimeoutException e) {
+			synchronized (this) {
+				abandonedRequests.put(plan, e.getRequest());
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Check if request abandoned after timeout for same plan is still processed by cluster.
+	 * 
+	 * @param plan to check
+	 * @throws IOException if abandoned request is still processed, so read must be skipped
+	 */
+	protected synchronized void checkAbandonedRequest(SysinfoRequestPlan plan) throws IOException {
+		Future<?> abandoned = abandonedRequests.get(plan);
+		if (abandoned == null)
+			return;
+		if (!abandoned.isDone()) {
+			skippedRequestsCount++;
+			throw new IOException("Previous request abandoned after timeout is still processed by cluster, read skipped");
+		}
+		abandonedRequests.remove(plan);
+	}
+
+	private BytesReference performRestRequestLocally(RestHandler handler, LocalRestRequest request, long timeout)
+			throws IOException, InterruptedException {
+		LocalRestChannel channel = new LocalRestChannel(request, timeout);
 		try {
 			handler.handleRequest(request, channel);
 		} catch (Exception e) {
 			throw new IOException(e.getMessage(), e.getCause());
 		}
-		String res = channel.getResponseContent();
-		logger.debug("performRestRequestLocally response {}", res);
+		BytesReference res;
+		try {
+			res = channel.getResponseBytes();
+		} finally {
+			responseWaited(channel);
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("performRestRequestLocally response {}", res.toUtf8());
 		return res;
 	}
 
+	protected synchronized void responseWaited(LocalRestChannel channel) {
+		requestsCount++;
+		if (channel.isTimedOut())
+			timeoutsCount++;
+		responseWaitTime += channel.getWaitTime();
+		lastResponseWaitTime = channel.getWaitTime();
+	}
+
+	/**
+	 * Get statistics of local requests, contains total and last time [ms] spent waiting for responses.
+	 */
+	@Override
+	public synchronized Map<String, Object> getStatistics() {
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		ret.put("direct_requests", directRequestsCount);
+		ret.put("requests", requestsCount);
+		ret.put("timeouts", timeoutsCount);
+		ret.put("abandoned_requests", abandonedRequests.size());
+		ret.put("skipped_requests", skippedRequestsCount);
+		ret.put("response_wait_time", responseWaitTime);
+		ret.put("last_response_wait_time", lastResponseWaitTime);
+		return ret;
+	}
+
+	/**
+	 * @param direct if true then supported information is read over typed requests instead of REST handlers emulation
+	 */
+	public void setDirect(boolean direct) {
+		this.direct = direct;
+	}
+
 	@Override
 	public void start() {
 	}
@@ -162,4 +400,29 @@ public class SourceClientESClient extends SourceClientBase {
 	public void close() {
 	}
 
+	/**
+	 * Request plan with request and REST handler reused for each read. Request is used read-only by handlers and
+	 * {@link TypedRequestReader}, only channel receiving response is created for each read.
+	 */
+	public static class LocalRequestPlan extends SysinfoRequestPlan {
+
+		protected final LocalRestRequest request;
+
+		protected final RestHandler handler;
+
+		/**
+		 * True if information may be read over typed requests, see {@link TypedRequestReader#supports(SysinfoType, Map)}.
+		 */
+		protected final boolean typedRequestSupported;
+
+		protected LocalRequestPlan(SysinfoType infoType, Map<String, String> params, RestHandler handler,
+				boolean typedRequestSupported) {
+			super(infoType, params);
+			this.request = new LocalRestRequest(getParams());
+			this.handler = handler;
+			this.typedRequestSupported = typedRequestSupported;
+		}
+
+	}
+
 }
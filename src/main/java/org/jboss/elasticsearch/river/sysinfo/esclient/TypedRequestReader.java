@@ -0,0 +1,508 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.esclient;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoRequest;
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoResponse;
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsRequest;
+import org.elasticsearch.action.admin.cluster.state.ClusterStateRequest;
+import org.elasticsearch.action.admin.cluster.state.ClusterStateResponse;
+import org.elasticsearch.action.admin.cluster.stats.ClusterStatsRequest;
+import org.elasticsearch.action.admin.cluster.tasks.PendingClusterTasksRequest;
+import org.elasticsearch.action.admin.indices.recovery.RecoveryRequest;
+import org.elasticsearch.action.admin.indices.recovery.RecoveryResponse;
+import org.elasticsearch.action.admin.indices.segments.IndicesSegmentResponse;
+import org.elasticsearch.action.admin.indices.segments.IndicesSegmentsRequest;
+import org.elasticsearch.action.admin.indices.stats.CommonStatsFlags;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsRequest;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.indices.IndexMissingException;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.action.support.RestActions;
+import org.jboss.elasticsearch.river.sysinfo.SysinfoType;
+
+/**
+ * Reader calling admin client actions directly with typed requests, used by {@link SourceClientESClient} instead of
+ * emulation of REST handlers. Params are mapped onto typed requests same way as REST handlers of ES do it, and typed
+ * responses are serialized into same JSON as REST API returns. Only information types and params listed in
+ * {@link #SUPPORTED_PARAMS} are supported, others must be read over REST handler emulation.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class TypedRequestReader {
+
+	private static final Set<String> COMMON_PARAMS = set("pretty", "human");
+	private static final Set<String> INDICES_OPTIONS_PARAMS = set("ignore_unavailable", "allow_no_indices",
+			"expand_wildcards");
+	private static final Set<String> NODES_INFO_METRICS = set("settings", "os", "process", "jvm", "thread_pool",
+			"network", "transport", "http", "plugins");
+	private static final String ALL = "_all";
+
+	/**
+	 * Params supported for each information type read directly.
+	 */
+	protected static final Map<SysinfoType, Set<String>> SUPPORTED_PARAMS = new EnumMap<SysinfoType, Set<String>>(
+			SysinfoType.class);
+	static {
+		SUPPORTED_PARAMS.put(SysinfoType.CLUSTER_HEALTH, set("index", "local", "master_timeout", "timeout",
+				"wait_for_status", "wait_for_relocating_shards", "wait_for_active_shards", "wait_for_nodes", "level"));
+		SUPPORTED_PARAMS.put(SysinfoType.CLUSTER_STATE, set("local", "master_timeout", "indices", "metric"));
+		SUPPORTED_PARAMS.put(SysinfoType.CLUSTER_STATS, set("nodeId"));
+		SUPPORTED_PARAMS.put(SysinfoType.PENDING_CLUSTER_TASKS, set("local", "master_timeout"));
+		SUPPORTED_PARAMS.put(SysinfoType.CLUSTER_NODES_INFO, set("nodeId", "metrics"));
+		SUPPORTED_PARAMS.put(SysinfoType.CLUSTER_NODES_STATS, set("nodeId", "metric", "indexMetric", "fields",
+				"fielddata_fields", "completion_fields", "groups", "types", "level"));
+		SUPPORTED_PARAMS.put(SysinfoType.INDICES_STATS, union(INDICES_OPTIONS_PARAMS, "index", "types", "metric", "groups",
+				"fields", "completion_fields", "fielddata_fields", "level"));
+		SUPPORTED_PARAMS.put(SysinfoType.INDICES_SEGMENTS, union(INDICES_OPTIONS_PARAMS, "index"));
+		SUPPORTED_PARAMS.put(SysinfoType.INDICES_RECOVERY, union(INDICES_OPTIONS_PARAMS, "index", "detailed",
+				"active_only"));
+	}
+
+	/**
+	 * Params supported for each information type read from cluster state known by local node, see
+	 * {@link #read(SysinfoType, ClusterState, LocalRestRequest)}.
+	 */
+	protected static final Map<SysinfoType, Set<String>> CLUSTER_STATE_SUPPORTED_PARAMS = new EnumMap<SysinfoType, Set<String>>(
+			SysinfoType.class);
+	static {
+		CLUSTER_STATE_SUPPORTED_PARAMS.put(SysinfoType.CLUSTER_HEALTH, set("index", "level"));
+		CLUSTER_STATE_SUPPORTED_PARAMS.put(SysinfoType.CLUSTER_STATE, set("metric"));
+	}
+
+	protected SettingsFilter settingsFilter;
+
+	/**
+	 * Timeout [ms] for one read.
+	 */
+	protected long timeout = 60 * 1000;
+
+	/**
+	 * @param settingsFilter used to filter settings in cluster state and nodes info
+	 */
+	public TypedRequestReader(SettingsFilter settingsFilter) {
+		this.settingsFilter = settingsFilter;
+	}
+
+	/**
+	 * Check if information may be read directly.
+	 * 
+	 * @param infoType type of information
+	 * @param params to narrow down information, may be null
+	 * @return true if information type and all params are supported
+	 */
+	public boolean supports(SysinfoType infoType, Map<String, String> params) {
+		return supports(SUPPORTED_PARAMS, infoType, params);
+	}
+
+	/**
+	 * Check if information may be read from cluster state, see {@link #read(SysinfoType, ClusterState, LocalRestRequest)}.
+	 * 
+	 * @param infoType type of information
+	 * @param params to narrow down information, may be null
+	 * @return true if information type and all params are supported
+	 */
+	public boolean supportsClusterState(SysinfoType infoType, Map<String, String> params) {
+		return supports(CLUSTER_STATE_SUPPORTED_PARAMS, infoType, params);
+	}
+
+	private static boolean supports(Map<SysinfoType, Set<String>> supportedParams, SysinfoType infoType,
+			Map<String, String> params) {
+		Set<String> supported = supportedParams.get(infoType);
+		if (supported == null)
+			return false;
+		if (params != null) {
+			for (String key : params.keySet()) {
+				if (!supported.contains(key) && !COMMON_PARAMS.contains(key))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Read information over typed request.
+	 * 
+	 * @param client to call actions on
+	 * @param infoType type of information, must be supported, see {@link #supports(SysinfoType, Map)}
+	 * @param params to narrow down information, may be null
+	 * @return information JSON bytes, serialized directly by {@link XContentBuilder}
+	 * @throws IOException in case of error response
+	 * @throws InterruptedException
+	 */
+	public BytesReference read(Client client, SysinfoType infoType, Map<String, String> params) throws IOException,
+			InterruptedException {
+		return read(client, infoType, new LocalRestRequest(params));
+	}
+
+	/**
+	 * Read information over typed request.
+	 * 
+	 * @param client to call actions on
+	 * @param infoType type of information, must be supported, see {@link #supports(SysinfoType, Map)}
+	 * @param request used only as holder of params to narrow down information, so params are parsed same way as by REST
+	 *          handlers. Not modified so may be reused.
+	 * @return information JSON bytes, serialized directly by {@link XContentBuilder}
+	 * @throws IOException in case of error response
+	 * @throws InterruptedException
+	 */
+	public BytesReference read(Client client, SysinfoType infoType, LocalRestRequest request) throws IOException,
+			InterruptedException {
+		return read(client, infoType, request, timeout);
+	}
+
+	/**
+	 * Read information over typed request.
+	 * 
+	 * @param client to call actions on
+	 * @param infoType type of information, must be supported, see {@link #supports(SysinfoType, Map)}
+	 * @param request used only as holder of params to narrow down information, so params are parsed same way as by REST
+	 *          handlers. Not modified so may be reused.
+	 * @param timeout [ms] to wait for response, default {@link #timeout} is used if 0
+	 * @return information JSON bytes, serialized directly by {@link XContentBuilder}
+	 * @throws IOException in case of error response, {@link LocalRequestTimeoutException} in case of timeout
+	 * @throws InterruptedException
+	 */
+	public BytesReference read(Client client, SysinfoType infoType, LocalRestRequest request, long timeout)
+			throws IOException, InterruptedException {
+		if (timeout <= 0)
+			timeout = this.timeout;
+		XContentBuilder builder = newBuilder(request);
+		builder.startObject();
+		switch (infoType) {
+		case CLUSTER_HEALTH:
+			get(client.admin().cluster().health(clusterHealthRequest(request)), timeout).toXContent(builder, request);
+			break;
+		case CLUSTER_STATE:
+			ClusterStateResponse csr = get(client.admin().cluster().state(clusterStateRequest(request)), timeout);
+			builder.field("cluster_name", csr.getClusterName().value());
+			csr.getState().settingsFilter(settingsFilter).toXContent(builder, request);
+			break;
+		case CLUSTER_STATS:
+			ClusterStatsRequest clusterStatsRequest = new ClusterStatsRequest().nodesIds(request.paramAsStringArray("nodeId",
+					null));
+			get(client.admin().cluster().clusterStats(clusterStatsRequest), timeout).toXContent(builder, request);
+			break;
+		case PENDING_CLUSTER_TASKS:
+			PendingClusterTasksRequest pendingClusterTasksRequest = new PendingClusterTasksRequest();
+			pendingClusterTasksRequest.masterNodeTimeout(request.paramAsTime("master_timeout",
+					pendingClusterTasksRequest.masterNodeTimeout()));
+			pendingClusterTasksRequest.local(request.paramAsBoolean("local", pendingClusterTasksRequest.local()));
+			get(client.admin().cluster().pendingClusterTasks(pendingClusterTasksRequest), timeout).toXContent(builder, request);
+			break;
+		case CLUSTER_NODES_INFO:
+			NodesInfoResponse nir = get(client.admin().cluster().nodesInfo(nodesInfoRequest(request)), timeout);
+			nir.settingsFilter(settingsFilter).toXContent(builder, request);
+			break;
+		case CLUSTER_NODES_STATS:
+			get(client.admin().cluster().nodesStats(nodesStatsRequest(request)), timeout).toXContent(builder, request);
+			break;
+		case INDICES_STATS:
+			IndicesStatsResponse isr = get(client.admin().indices().stats(indicesStatsRequest(request)), timeout);
+			RestActions.buildBroadcastShardsHeader(builder, isr);
+			isr.toXContent(builder, request);
+			break;
+		case INDICES_SEGMENTS:
+			IndicesSegmentsRequest indicesSegmentsRequest = new IndicesSegmentsRequest(
+					Strings.splitStringByCommaToArray(request.param("index")));
+			indicesSegmentsRequest.indicesOptions(IndicesOptions.fromRequest(request, indicesSegmentsRequest.indicesOptions()));
+			IndicesSegmentResponse segr = get(client.admin().indices().segments(indicesSegmentsRequest), timeout);
+			RestActions.buildBroadcastShardsHeader(builder, segr);
+			segr.toXContent(builder, request);
+			break;
+		case INDICES_RECOVERY:
+			RecoveryRequest recoveryRequest = new RecoveryRequest(Strings.splitStringByCommaToArray(request.param("index")));
+			recoveryRequest.detailed(request.paramAsBoolean("detailed", false));
+			recoveryRequest.activeOnly(request.paramAsBoolean("active_only", false));
+			recoveryRequest.indicesOptions(IndicesOptions.fromRequest(request, recoveryRequest.indicesOptions()));
+			RecoveryResponse rr = get(client.admin().indices().recoveries(recoveryRequest), timeout);
+			rr.detailed(recoveryRequest.detailed());
+			rr.toXContent(builder, request);
+			break;
+		default:
+			throw new UnsupportedOperationException("Unsupported information type for direct read: " + infoType);
+		}
+		builder.endObject();
+		return builder.bytes();
+	}
+
+	/**
+	 * Read information from given cluster state, without any call to cluster. Used to capture information of each
+	 * cluster state known by local node, so output is same as from {@link #read(Client, SysinfoType, LocalRestRequest)}
+	 * with <code>local</code> param.
+	 * 
+	 * @param infoType type of information, must be supported, see {@link #supportsClusterState(SysinfoType, Map)}
+	 * @param state to read information from
+	 * @param request used only as holder of params to narrow down information. Not modified so may be reused.
+	 * @return information JSON bytes
+	 * @throws IOException
+	 */
+	public BytesReference read(SysinfoType infoType, ClusterState state, LocalRestRequest request) throws IOException {
+		XContentBuilder builder = newBuilder(request);
+		builder.startObject();
+		switch (infoType) {
+		case CLUSTER_HEALTH:
+			ClusterHealthRequest healthRequest = clusterHealthRequest(request);
+			String clusterName = state.getClusterName().value();
+			try {
+				// health action waits for requested indices to exist, sample of state can't wait so reports red immediately
+				if (healthRequest.indices().length > 0)
+					state.metaData().concreteIndices(IndicesOptions.strictExpandOpen(), healthRequest.indices());
+			} catch (IndexMissingException e) {
+				// status of response can't be set from outside of ES so it is replaced in serialized response
+				XContentBuilder chb = XContentFactory.jsonBuilder().startObject();
+				new ClusterHealthResponse(clusterName, Strings.EMPTY_ARRAY, state).toXContent(chb, request);
+				Map<String, Object> chm = XContentHelper.convertToMap(chb.endObject().bytes(), true).v2();
+				chm.put("status", ClusterHealthStatus.RED.name().toLowerCase(Locale.ROOT));
+				for (Map.Entry<String, Object> e1 : chm.entrySet()) {
+					builder.field(e1.getKey(), e1.getValue());
+				}
+				break;
+			}
+			String[] concreteIndices = state.metaData().concreteIndices(healthRequest.indicesOptions(),
+					healthRequest.indices());
+			new ClusterHealthResponse(clusterName, concreteIndices, state).toXContent(builder, request);
+			break;
+		case CLUSTER_STATE:
+			builder.field("cluster_name", state.getClusterName().value());
+			state.settingsFilter(settingsFilter).toXContent(builder, request);
+			break;
+		default:
+			throw new UnsupportedOperationException("Unsupported information type for read from cluster state: "
+					+ infoType);
+		}
+		builder.endObject();
+		return builder.bytes();
+	}
+
+	protected ClusterHealthRequest clusterHealthRequest(LocalRestRequest request) {
+		ClusterHealthRequest ret = Requests.clusterHealthRequest(Strings.splitStringByCommaToArray(request.param("index")));
+		ret.local(request.paramAsBoolean("local", ret.local()));
+		ret.masterNodeTimeout(request.paramAsTime("master_timeout", ret.masterNodeTimeout()));
+		ret.timeout(request.paramAsTime("timeout", ret.timeout()));
+		String waitForStatus = request.param("wait_for_status");
+		if (waitForStatus != null)
+			ret.waitForStatus(ClusterHealthStatus.valueOf(waitForStatus.toUpperCase(Locale.ROOT)));
+		ret.waitForRelocatingShards(request.paramAsInt("wait_for_relocating_shards", ret.waitForRelocatingShards()));
+		ret.waitForActiveShards(request.paramAsInt("wait_for_active_shards", ret.waitForActiveShards()));
+		ret.waitForNodes(request.param("wait_for_nodes", ret.waitForNodes()));
+		return ret;
+	}
+
+	protected ClusterStateRequest clusterStateRequest(LocalRestRequest request) {
+		ClusterStateRequest ret = Requests.clusterStateRequest();
+		ret.local(request.paramAsBoolean("local", ret.local()));
+		ret.masterNodeTimeout(request.paramAsTime("master_timeout", ret.masterNodeTimeout()));
+		String[] indices = Strings.splitStringByCommaToArray(request.param("indices", ALL));
+		if (!(indices.length == 1 && ALL.equals(indices[0])))
+			ret.indices(indices);
+		if (request.hasParam("metric")) {
+			Set<ClusterState.Metric> metrics = ClusterState.Metric.parseString(request.param("metric"), true);
+			ret.nodes(metrics.contains(ClusterState.Metric.NODES) || metrics.contains(ClusterState.Metric.MASTER_NODE));
+			ret.routingTable(metrics.contains(ClusterState.Metric.ROUTING_TABLE));
+			ret.metaData(metrics.contains(ClusterState.Metric.METADATA));
+			ret.blocks(metrics.contains(ClusterState.Metric.BLOCKS));
+		}
+		return ret;
+	}
+
+	protected NodesInfoRequest nodesInfoRequest(LocalRestRequest request) {
+		String[] nodeIds;
+		Set<String> metrics;
+		// nodeId alone may contain metrics, as in '/_nodes/jvm'
+		if (request.hasParam("nodeId") && !request.hasParam("metrics")) {
+			Set<String> nodeIdsOrMetrics = Strings.splitStringByCommaToSet(request.param("nodeId", ALL));
+			if (NODES_INFO_METRICS.containsAll(nodeIdsOrMetrics)) {
+				nodeIds = new String[] { ALL };
+				metrics = nodeIdsOrMetrics;
+			} else {
+				nodeIds = nodeIdsOrMetrics.toArray(new String[nodeIdsOrMetrics.size()]);
+				metrics = set(ALL);
+			}
+		} else {
+			nodeIds = Strings.splitStringByCommaToArray(request.param("nodeId", ALL));
+			metrics = Strings.splitStringByCommaToSet(request.param("metrics", ALL));
+		}
+		NodesInfoRequest ret = new NodesInfoRequest(nodeIds);
+		if (metrics.size() == 1 && metrics.contains(ALL)) {
+			ret.all();
+		} else {
+			ret.clear();
+			ret.settings(metrics.contains("settings"));
+			ret.os(metrics.contains("os"));
+			ret.process(metrics.contains("process"));
+			ret.jvm(metrics.contains("jvm"));
+			ret.threadPool(metrics.contains("thread_pool"));
+			ret.network(metrics.contains("network"));
+			ret.transport(metrics.contains("transport"));
+			ret.http(metrics.contains("http"));
+			ret.plugins(metrics.contains("plugins"));
+		}
+		return ret;
+	}
+
+	protected NodesStatsRequest nodesStatsRequest(LocalRestRequest request) {
+		Set<String> metrics = Strings.splitStringByCommaToSet(request.param("metric", ALL));
+		NodesStatsRequest ret = new NodesStatsRequest(Strings.splitStringByCommaToArray(request.param("nodeId")));
+		if (metrics.size() == 1 && metrics.contains(ALL)) {
+			ret.all();
+			ret.indices(CommonStatsFlags.ALL);
+		} else {
+			ret.clear();
+			ret.os(metrics.contains("os"));
+			ret.jvm(metrics.contains("jvm"));
+			ret.threadPool(metrics.contains("thread_pool"));
+			ret.network(metrics.contains("network"));
+			ret.fs(metrics.contains("fs"));
+			ret.transport(metrics.contains("transport"));
+			ret.http(metrics.contains("http"));
+			ret.indices(metrics.contains("indices"));
+			ret.process(metrics.contains("process"));
+			ret.breaker(metrics.contains("breaker"));
+			if (metrics.contains("indices")) {
+				Set<String> indexMetrics = Strings.splitStringByCommaToSet(request.param("indexMetric", ALL));
+				if (indexMetrics.size() == 1 && indexMetrics.contains(ALL)) {
+					ret.indices(CommonStatsFlags.ALL);
+				} else {
+					CommonStatsFlags flags = new CommonStatsFlags();
+					for (CommonStatsFlags.Flag flag : CommonStatsFlags.Flag.values()) {
+						flags.set(flag, indexMetrics.contains(flag.getRestName()));
+					}
+					ret.indices(flags);
+				}
+			}
+		}
+		CommonStatsFlags flags = ret.indices();
+		if (flags.isSet(CommonStatsFlags.Flag.FieldData)
+				&& (request.hasParam("fields") || request.hasParam("fielddata_fields"))) {
+			flags.fieldDataFields(request.paramAsStringArray("fielddata_fields", request.paramAsStringArray("fields", null)));
+		}
+		if (flags.isSet(CommonStatsFlags.Flag.Completion)
+				&& (request.hasParam("fields") || request.hasParam("completion_fields"))) {
+			flags.completionDataFields(request.paramAsStringArray("completion_fields",
+					request.paramAsStringArray("fields", null)));
+		}
+		if (flags.isSet(CommonStatsFlags.Flag.Search) && request.hasParam("groups")) {
+			flags.groups(request.paramAsStringArray("groups", null));
+		}
+		if (flags.isSet(CommonStatsFlags.Flag.Indexing) && request.hasParam("types")) {
+			flags.types(request.paramAsStringArray("types", null));
+		}
+		return ret;
+	}
+
+	protected IndicesStatsRequest indicesStatsRequest(LocalRestRequest request) {
+		IndicesStatsRequest ret = new IndicesStatsRequest();
+		ret.indicesOptions(IndicesOptions.fromRequest(request, ret.indicesOptions()));
+		ret.indices(Strings.splitStringByCommaToArray(request.param("index")));
+		ret.types(Strings.splitStringByCommaToArray(request.param("types")));
+		Set<String> metrics = Strings.splitStringByCommaToSet(request.param("metric", ALL));
+		if (metrics.size() == 1 && metrics.contains(ALL)) {
+			ret.all();
+		} else {
+			ret.clear();
+			ret.docs(metrics.contains("docs"));
+			ret.store(metrics.contains("store"));
+			ret.indexing(metrics.contains("indexing"));
+			ret.search(metrics.contains("search"));
+			ret.get(metrics.contains("get"));
+			ret.merge(metrics.contains("merge"));
+			ret.refresh(metrics.contains("refresh"));
+			ret.flush(metrics.contains("flush"));
+			ret.warmer(metrics.contains("warmer"));
+			ret.filterCache(metrics.contains("filter_cache"));
+			ret.idCache(metrics.contains("id_cache"));
+			ret.percolate(metrics.contains("percolate"));
+			ret.segments(metrics.contains("segments"));
+			ret.fieldData(metrics.contains("fielddata"));
+			ret.completion(metrics.contains("completion"));
+			ret.suggest(metrics.contains("suggest"));
+			ret.queryCache(metrics.contains("query_cache"));
+		}
+		if (request.hasParam("groups"))
+			ret.groups(Strings.splitStringByCommaToArray(request.param("groups")));
+		if (request.hasParam("types"))
+			ret.types(Strings.splitStringByCommaToArray(request.param("types")));
+		if (ret.completion() && (request.hasParam("fields") || request.hasParam("completion_fields"))) {
+			ret.completionFields(request.paramAsStringArray("completion_fields",
+					request.paramAsStringArray("fields", Strings.EMPTY_ARRAY)));
+		}
+		if (ret.fieldData() && (request.hasParam("fields") || request.hasParam("fielddata_fields"))) {
+			ret.fieldDataFields(request.paramAsStringArray("fielddata_fields",
+					request.paramAsStringArray("fields", Strings.EMPTY_ARRAY)));
+		}
+		return ret;
+	}
+
+	/**
+	 * Wait for action response. Failure is converted to the {@link IOException} with same message as
+	 * {@link LocalRestChannel#getResponseContent()} uses for error response.
+	 */
+	protected <T> T get(ActionFuture<T> future, long timeout) throws IOException, InterruptedException {
+		try {
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// not cancelled, so caller may wait until cluster finishes request processing
+			throw new LocalRequestTimeoutException("Request time out after " + timeout + "ms", future);
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			Throwable t = e.getCause() != null ? e.getCause() : e;
+			RestStatus status = ExceptionsHelper.status(t);
+			XContentBuilder error = XContentFactory.jsonBuilder().startObject()
+					.field("error", ExceptionsHelper.detailedMessage(t)).field("status", status.getStatus()).endObject();
+			throw new IOException("response status is " + status + " with content " + error.string(), t);
+		}
+	}
+
+	protected XContentBuilder newBuilder(ToXContent.Params params) throws IOException {
+		XContentBuilder builder = XContentFactory.jsonBuilder();
+		if (params.paramAsBoolean("pretty", false))
+			builder.prettyPrint().lfAtEnd();
+		builder.humanReadable(params.paramAsBoolean("human", builder.humanReadable()));
+		return builder;
+	}
+
+	private static Set<String> set(String... values) {
+		return Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(values)));
+	}
+
+	private static Set<String> union(Set<String> base, String... values) {
+		Set<String> ret = new HashSet<String>(base);
+		ret.addAll(Arrays.asList(values));
+		return Collections.unmodifiableSet(ret);
+	}
+
+}
@@ -0,0 +1,35 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import org.elasticsearch.action.admin.cluster.ClusterAction;
+import org.elasticsearch.client.ClusterAdminClient;
+
+/**
+ * Sysinfo River statistics action implementation.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class JRStatsAction extends ClusterAction<JRStatsRequest, JRStatsResponse, JRStatsRequestBuilder> {
+
+	public static final JRStatsAction INSTANCE = new JRStatsAction();
+	public static final String NAME = "sysinfo_river/stats";
+
+	protected JRStatsAction() {
+		super(NAME);
+	}
+
+	@Override
+	public JRStatsRequestBuilder newRequestBuilder(ClusterAdminClient client) {
+		return new JRStatsRequestBuilder(client);
+	}
+
+	@Override
+	public JRStatsResponse newResponse() {
+		return new JRStatsResponse();
+	}
+
+}
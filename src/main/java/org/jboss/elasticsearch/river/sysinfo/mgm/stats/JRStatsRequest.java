@@ -0,0 +1,35 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import org.jboss.elasticsearch.river.sysinfo.mgm.JRMgmBaseRequest;
+
+/**
+ * Request for SysinfoRiver statistics.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class JRStatsRequest extends JRMgmBaseRequest<JRStatsRequest> {
+
+	JRStatsRequest() {
+
+	}
+
+	/**
+	 * Construct request.
+	 * 
+	 * @param riverName for request
+	 */
+	public JRStatsRequest(String riverName) {
+		super(riverName);
+	}
+
+	@Override
+	public String toString() {
+		return "JRStatsRequest [riverName=" + riverName + "]";
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.nodes.NodesOperationRequestBuilder;
+import org.elasticsearch.client.ClusterAdminClient;
+
+/**
+ * Request builder to get statistics of some sysinfo river.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class JRStatsRequestBuilder extends
+		NodesOperationRequestBuilder<JRStatsRequest, JRStatsResponse, JRStatsRequestBuilder> {
+
+	public JRStatsRequestBuilder(ClusterAdminClient client) {
+		super(client, new JRStatsRequest());
+	}
+
+	/**
+	 * Set name of river to get statistics for.
+	 * 
+	 * @param riverName name of river
+	 * @return builder for chaining
+	 */
+	public JRStatsRequestBuilder setRiverName(String riverName) {
+		this.request.setRiverName(riverName);
+		return this;
+	}
+
+	@Override
+	protected void doExecute(ActionListener<JRStatsResponse> listener) {
+		if (request.getRiverName() == null)
+			throw new IllegalArgumentException("riverName must be provided for request");
+		client.execute(JRStatsAction.INSTANCE, request, listener);
+	}
+
+}
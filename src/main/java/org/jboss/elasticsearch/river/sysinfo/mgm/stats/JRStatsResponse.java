@@ -0,0 +1,36 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import org.elasticsearch.cluster.ClusterName;
+import org.jboss.elasticsearch.river.sysinfo.mgm.JRMgmBaseResponse;
+
+/**
+ * Response for SysinfoRiver statistics command. All node responses are aggregated here.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class JRStatsResponse extends JRMgmBaseResponse<NodeJRStatsResponse> {
+
+	public JRStatsResponse() {
+
+	}
+
+	public JRStatsResponse(ClusterName clusterName, NodeJRStatsResponse[] nodes) {
+		super(clusterName, nodes);
+	}
+
+	@Override
+	protected NodeJRStatsResponse[] newNodeResponsesArray(int len) {
+		return new NodeJRStatsResponse[len];
+	}
+
+	@Override
+	protected NodeJRStatsResponse newNodeResponse() {
+		return new NodeJRStatsResponse();
+	}
+
+}
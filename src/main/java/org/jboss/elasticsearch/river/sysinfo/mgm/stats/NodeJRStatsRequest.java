@@ -0,0 +1,36 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import org.jboss.elasticsearch.river.sysinfo.mgm.NodeJRMgmBaseRequest;
+
+/**
+ * Node request for SysinfoRiver statistics command.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class NodeJRStatsRequest extends NodeJRMgmBaseRequest<JRStatsRequest> {
+
+	NodeJRStatsRequest() {
+		super();
+	}
+
+	/**
+	 * Construct node request with data.
+	 * 
+	 * @param nodeId this request is for
+	 * @param request to be send to the node
+	 */
+	public NodeJRStatsRequest(String nodeId, JRStatsRequest request) {
+		super(nodeId, request);
+	}
+
+	@Override
+	protected JRStatsRequest newRequest() {
+		return new JRStatsRequest();
+	}
+
+}
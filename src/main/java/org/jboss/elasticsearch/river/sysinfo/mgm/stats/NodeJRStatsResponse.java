@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.jboss.elasticsearch.river.sysinfo.mgm.NodeJRMgmBaseResponse;
+
+/**
+ * SysinfoRiver statistics command node response.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class NodeJRStatsResponse extends NodeJRMgmBaseResponse {
+
+	protected Map<String, Object> statistics;
+
+	protected NodeJRStatsResponse() {
+	}
+
+	/**
+	 * Create response with values to be send back to requestor. <code>riverFound</code> is set to <code>false</code>.
+	 * 
+	 * @param node this response is for.
+	 */
+	public NodeJRStatsResponse(DiscoveryNode node) {
+		super(node);
+	}
+
+	/**
+	 * Create response with values to be send back to requestor.
+	 * 
+	 * @param node this response is for.
+	 * @param riverFound set to true if you found river on this node
+	 * @param statistics of river
+	 */
+	public NodeJRStatsResponse(DiscoveryNode node, boolean riverFound, Map<String, Object> statistics) {
+		super(node, riverFound);
+		this.statistics = statistics;
+	}
+
+	@Override
+	public void readFrom(StreamInput in) throws IOException {
+		super.readFrom(in);
+		if (in.readBoolean()) {
+			statistics = in.readMap();
+		}
+	}
+
+	@Override
+	public void writeTo(StreamOutput out) throws IOException {
+		super.writeTo(out);
+		out.writeBoolean(statistics != null);
+		if (statistics != null) {
+			out.writeMap(statistics);
+		}
+	}
+
+	public Map<String, Object> getStatistics() {
+		return statistics;
+	}
+
+}
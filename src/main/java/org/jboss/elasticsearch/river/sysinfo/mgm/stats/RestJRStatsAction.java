@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.jboss.elasticsearch.river.sysinfo.mgm.JRMgmBaseActionListener;
+import org.jboss.elasticsearch.river.sysinfo.mgm.RestJRMgmBaseAction;
+import org.jboss.elasticsearch.river.sysinfo.mgm.RestXContentBuilder;
+
+import static org.elasticsearch.rest.RestStatus.OK;
+
+/**
+ * REST action handler for Sysinfo river get statistics operation.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class RestJRStatsAction extends RestJRMgmBaseAction {
+
+	@Inject
+	protected RestJRStatsAction(Settings settings, Client client, RestController controller) {
+		super(settings, client, controller);
+		String baseUrl = baseRestMgmUrl();
+		controller.registerHandler(org.elasticsearch.rest.RestRequest.Method.GET, baseUrl + "stats", this);
+	}
+
+	@Override
+	public void handleRequest(final RestRequest restRequest, final RestChannel restChannel, Client client) {
+
+		JRStatsRequest actionRequest = new JRStatsRequest(restRequest.param("riverName"));
+
+		client
+				.admin()
+				.cluster()
+				.execute(
+						JRStatsAction.INSTANCE,
+						actionRequest,
+						new JRMgmBaseActionListener<JRStatsRequest, JRStatsResponse, NodeJRStatsResponse>(actionRequest,
+								restRequest, restChannel) {
+
+							@Override
+							protected void handleRiverResponse(NodeJRStatsResponse nodeInfo) throws Exception {
+								XContentBuilder builder = RestXContentBuilder.restContentBuilder(restRequest);
+								builder.startObject();
+								builder.field("river_name", actionRequest.getRiverName());
+								builder.field("node_id", nodeInfo.getNode().getId());
+								if (nodeInfo.getStatistics() != null) {
+									builder.field("statistics", nodeInfo.getStatistics());
+								}
+								builder.endObject();
+								restChannel.sendResponse(new BytesRestResponse(OK, builder));
+							}
+
+						});
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+import org.jboss.elasticsearch.river.sysinfo.IRiverMgm;
+import org.jboss.elasticsearch.river.sysinfo.mgm.TransportJRMgmBaseAction;
+
+/**
+ * SysinfoRiver statistics method transport action.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class TransportJRStatsAction extends
+		TransportJRMgmBaseAction<JRStatsRequest, JRStatsResponse, NodeJRStatsRequest, NodeJRStatsResponse> {
+
+	@Inject
+	public TransportJRStatsAction(Settings settings, ClusterName clusterName, ThreadPool threadPool,
+			ClusterService clusterService, TransportService transportService, ActionFilters actionFilters) {
+		super(settings, JRStatsAction.NAME, clusterName, threadPool, clusterService, transportService, actionFilters);
+	}
+
+	@Override
+	protected NodeJRStatsResponse performOperationOnRiver(IRiverMgm river, JRStatsRequest req, DiscoveryNode node)
+			throws Exception {
+		logger.debug("Go to get statistics of river '{}'", req.getRiverName());
+		return new NodeJRStatsResponse(node, true, river.getStatistics());
+	}
+
+	@Override
+	protected JRStatsRequest newRequest() {
+		return new JRStatsRequest();
+	}
+
+	@Override
+	protected NodeJRStatsRequest newNodeRequest() {
+		return new NodeJRStatsRequest();
+	}
+
+	@Override
+	protected NodeJRStatsRequest newNodeRequest(String nodeId, JRStatsRequest request) {
+		return new NodeJRStatsRequest(nodeId, request);
+	}
+
+	@Override
+	protected NodeJRStatsResponse newNodeResponse() {
+		return new NodeJRStatsResponse(clusterService.localNode());
+	}
+
+	@Override
+	protected NodeJRStatsResponse[] newNodeResponseArray(int len) {
+		return new NodeJRStatsResponse[len];
+	}
+
+	@Override
+	protected JRStatsResponse newResponse(ClusterName clusterName, NodeJRStatsResponse[] array) {
+		return new JRStatsResponse(clusterName, array);
+	}
+
+}
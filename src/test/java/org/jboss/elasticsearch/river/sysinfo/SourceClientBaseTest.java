@@ -8,10 +8,16 @@ package org.jboss.elasticsearch.river.sysinfo;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import junit.framework.Assert;
 
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 /**
  * Unit test for {@link SourceClientBase}.
@@ -36,6 +42,9 @@ public class SourceClientBaseTest {
     Assert.assertEquals("IST", tested.readSysinfoValue(SysinfoType.INDICES_STATS, params));
     Assert.assertEquals("ISEG", tested.readSysinfoValue(SysinfoType.INDICES_SEGMENTS, params));
     Assert.assertEquals("IREC", tested.readSysinfoValue(SysinfoType.INDICES_RECOVERY, params));
+    Assert.assertEquals(new BytesArray("IREC"), tested.readSysinfoBytes(tested.prepareRequestPlan(SysinfoType.INDICES_RECOVERY, params)));
+    Assert.assertEquals(new BytesArray("HI_noparams"),
+        tested.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null)));
 
     try {
       tested.readSysinfoValue(null, null);
@@ -44,35 +53,70 @@ public class SourceClientBaseTest {
       // OK
     }
 
+    try {
+      tested.readSysinfoBytes(null);
+      Assert.fail("IllegalArgumentException must be thrown");
+    } catch (IllegalArgumentException e) {
+      // OK
+    }
+
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void readSysinfoBytesAsync() throws Exception {
+    Tested tested = new Tested();
+
+    // case - read in calling thread
+    ActionListener<BytesReference> listener = Mockito.mock(ActionListener.class);
+    Future<BytesReference> future = tested.readSysinfoBytesAsync(
+        tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, null), listener);
+    Assert.assertTrue(future.isDone());
+    Assert.assertEquals(new BytesArray("HI_noparams"), future.get());
+    Mockito.verify(listener).onResponse(new BytesArray("HI_noparams"));
+
+    // case - failure
+    future = tested.readSysinfoBytesAsync(tested.prepareRequestPlan(SysinfoType.LOCAL_NODE_STATS, null), listener);
+    Mockito.verify(listener).onFailure(Mockito.any(UnsupportedOperationException.class));
+    try {
+      future.get();
+      Assert.fail("ExecutionException must be thrown");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof UnsupportedOperationException);
+    }
+
+    // case - no listener
+    Assert.assertEquals(new BytesArray("CS_noparams"),
+        tested.readSysinfoBytesAsync(tested.prepareRequestPlan(SysinfoType.CLUSTER_STATS, null), null).get());
   }
 
   private class Tested extends SourceClientBase {
 
     @Override
-    protected String readClusterStateInfo(Map<String, String> params) throws IOException {
+    protected BytesReference readClusterStateInfo(Map<String, String> params) throws IOException {
       return ret("SI", params);
     }
 
     @Override
-    protected String readClusterHealthInfo(Map<String, String> params) throws IOException {
+    protected BytesReference readClusterHealthInfo(Map<String, String> params) throws IOException {
       return ret("HI", params);
     }
 
     @Override
-    protected String readClusterStatsInfo(Map<String, String> params) throws IOException {
+    protected BytesReference readClusterStatsInfo(Map<String, String> params) throws IOException {
       return ret("CS", params);
     }
 
     @Override
-    protected String readPendingClusterTasksInfo(Map<String, String> params) throws IOException, InterruptedException {
+    protected BytesReference readPendingClusterTasksInfo(Map<String, String> params) throws IOException, InterruptedException {
       return ret("PCT", params);
     }
 
-    private String ret(String name, Map<String, String> params) {
+    private BytesReference ret(String name, Map<String, String> params) {
       if (params == null) {
         name = name + "_noparams";
       }
-      return name;
+      return new BytesArray(name);
     }
 
     @Override
@@ -84,32 +128,32 @@ public class SourceClientBaseTest {
     }
 
     @Override
-    protected String readClusterNodesInfoInfo(Map<String, String> params) throws IOException, InterruptedException {
+    protected BytesReference readClusterNodesInfoInfo(Map<String, String> params) throws IOException, InterruptedException {
       return ret("NI", params);
     }
 
     @Override
-    protected String readClusterNodesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
+    protected BytesReference readClusterNodesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
       return ret("NS", params);
     }
 
     @Override
-    protected String readIndicesStatusInfo(Map<String, String> params) throws IOException, InterruptedException {
+    protected BytesReference readIndicesStatusInfo(Map<String, String> params) throws IOException, InterruptedException {
       return ret("IS", params);
     }
 
     @Override
-    protected String readIndicesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
+    protected BytesReference readIndicesStatsInfo(Map<String, String> params) throws IOException, InterruptedException {
       return ret("IST", params);
     }
 
     @Override
-    protected String readIndicesSegmentsInfo(Map<String, String> params) throws IOException, InterruptedException {
+    protected BytesReference readIndicesSegmentsInfo(Map<String, String> params) throws IOException, InterruptedException {
       return ret("ISEG", params);
     }
 
     @Override
-    protected String readIndicesRecoveryInfo(Map<String, String> params) throws IOException, InterruptedException {
+    protected BytesReference readIndicesRecoveryInfo(Map<String, String> params) throws IOException, InterruptedException {
       return ret("IREC", params);
     }
   }
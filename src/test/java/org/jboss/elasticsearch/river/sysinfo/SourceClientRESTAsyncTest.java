@@ -0,0 +1,286 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.SettingsException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit test for {@link SourceClientRESTAsync}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SourceClientRESTAsyncTest {
+
+	@Test
+	public void constructor_configure() {
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put("urlBase", "http://test.org");
+		SourceClientRESTAsync tested = new SourceClientRESTAsync(settings);
+		Assert.assertEquals("http://test.org/", tested.restAPIUrlBase);
+		Assert.assertEquals(SourceClientRESTAsync.DEFAULT_IO_THREADS, tested.ioThreads);
+		Assert.assertEquals(SourceClientRESTAsync.DEFAULT_MAX_CONNECTIONS, tested.maxConnections);
+		// no blocking client, non-blocking one is created on start
+		Assert.assertNull(tested.httpclient);
+		Assert.assertNull(tested.httpAsyncClient);
+
+		settings.put("io_threads", "4");
+		settings.put("max_connections", 50);
+		tested = new SourceClientRESTAsync(settings);
+		Assert.assertEquals(4, tested.ioThreads);
+		Assert.assertEquals(50, tested.maxConnections);
+
+		settings.put("io_threads", 0);
+		try {
+			new SourceClientRESTAsync(settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void startAndClose() {
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put("urlBase", "http://test.org");
+		SourceClientRESTAsync tested = new SourceClientRESTAsync(settings);
+		tested.start();
+		CloseableHttpAsyncClient client = tested.httpAsyncClient;
+		Assert.assertTrue(client.isRunning());
+		// case - started already
+		tested.start();
+		Assert.assertSame(client, tested.httpAsyncClient);
+
+		tested.close();
+		Assert.assertNull(tested.httpAsyncClient);
+		Assert.assertFalse(client.isRunning());
+
+		// case - client may be started again
+		tested.start();
+		Assert.assertTrue(tested.httpAsyncClient.isRunning());
+		tested.close();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void readSysinfoBytesAsync() throws Exception {
+		SourceClientRESTAsync tested = prepareTestedInstance();
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+
+		// case - successful response
+		mockResponse(tested, HttpStatus.SC_OK, "{\"status\":\"green\"}");
+		ActionListener<BytesReference> listener = Mockito.mock(ActionListener.class);
+		Future<BytesReference> future = tested.readSysinfoBytesAsync(plan, listener);
+		Assert.assertEquals("{\"status\":\"green\"}", future.get().toUtf8());
+		Mockito.verify(listener).onResponse(new BytesArray("{\"status\":\"green\"}"));
+		Assert.assertTrue(tested.activeAsyncRequests.isEmpty());
+
+		// case - error response
+		mockResponse(tested, HttpStatus.SC_NOT_FOUND, "{\"error\":\"missing\"}");
+		future = tested.readSysinfoBytesAsync(plan, listener);
+		try {
+			future.get();
+			Assert.fail("ExecutionException must be thrown");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+			Assert.assertTrue(e.getCause().getMessage().contains("404"));
+		}
+		Mockito.verify(listener).onFailure(Mockito.any(IOException.class));
+
+		// case - blocking read waits for asynchronous one
+		mockResponse(tested, HttpStatus.SC_OK, "{\"status\":\"red\"}");
+		Assert.assertEquals("{\"status\":\"red\"}", tested.readSysinfoBytes(plan).toUtf8());
+		Assert.assertEquals("{\"status\":\"red\"}", tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null));
+
+		Map<String, Object> stats = tested.getStatistics();
+		Assert.assertEquals(4l, stats.get("requests"));
+		Assert.assertEquals(1l, stats.get("failed_requests"));
+		Assert.assertEquals(0, stats.get("active_requests"));
+
+		// case - client not started
+		tested.httpAsyncClient = null;
+		try {
+			tested.readSysinfoBytes(plan);
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			// OK
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void readSysinfoBytesAsync_failover() throws Exception {
+		SourceClientRESTAsync tested = prepareTestedInstance();
+		tested.balancer = new SysinfoEndpointBalancer(Arrays.asList("http://node1/", "http://node2/"), 3);
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+		Mockito.when(
+				tested.httpAsyncClient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpRequest.class),
+						Mockito.any(HttpContext.class), Mockito.any(FutureCallback.class))).thenAnswer(
+				new Answer<Future<HttpResponse>>() {
+
+					@Override
+					public Future<HttpResponse> answer(InvocationOnMock invocation) throws Throwable {
+						HttpHost host = (HttpHost) invocation.getArguments()[0];
+						FutureCallback<HttpResponse> callback = (FutureCallback<HttpResponse>) invocation.getArguments()[3];
+						if ("node1".equals(host.getHostName())) {
+							callback.failed(new ConnectException("Connection refused"));
+						} else {
+							HttpResponse response = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_OK,
+									"reason");
+							response.setEntity(new StringEntity("{\"status\":\"green\"}", ContentType.APPLICATION_JSON));
+							callback.completed(response);
+						}
+						return Mockito.mock(Future.class);
+					}
+				});
+
+		// case - failed attempt is retried on other endpoint
+		ActionListener<BytesReference> listener = Mockito.mock(ActionListener.class);
+		Assert.assertEquals("{\"status\":\"green\"}", tested.readSysinfoBytesAsync(plan, listener).get().toUtf8());
+		Mockito.verify(listener).onResponse(Mockito.any(BytesReference.class));
+		Mockito.verify(listener, Mockito.never()).onFailure(Mockito.any(Throwable.class));
+
+		// case - blocking read
+		Assert.assertEquals("{\"status\":\"green\"}", tested.readSysinfoBytes(plan).toUtf8());
+
+		Map<String, Object> stats = tested.getStatistics();
+		Assert.assertEquals(2l, stats.get("requests"));
+		Assert.assertEquals(0l, stats.get("failed_requests"));
+		@SuppressWarnings("rawtypes")
+		Map<String, Map> endpoints = (Map<String, Map>) stats.get("endpoints");
+		Assert.assertEquals(2l, endpoints.get("http://node1/").get("failures"));
+		Assert.assertEquals(0, endpoints.get("http://node1/").get("in_flight"));
+		Assert.assertEquals(2l, endpoints.get("http://node2/").get("requests"));
+		Assert.assertEquals(0, endpoints.get("http://node2/").get("in_flight"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void readSysinfoBytesAsync_responseCache() throws Exception {
+		SourceClientRESTAsync tested = prepareTestedInstance();
+		final FutureCallback<HttpResponse>[] callback = new FutureCallback[1];
+		Mockito.when(
+				tested.httpAsyncClient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpRequest.class),
+						Mockito.any(HttpContext.class), Mockito.any(FutureCallback.class))).thenAnswer(
+				new Answer<Future<HttpResponse>>() {
+
+					@Override
+					public Future<HttpResponse> answer(InvocationOnMock invocation) throws Throwable {
+						// response is not completed before execute returns
+						callback[0] = (FutureCallback<HttpResponse>) invocation.getArguments()[3];
+						return Mockito.mock(Future.class);
+					}
+				});
+		SysinfoResponseCache cache = new SysinfoResponseCache();
+		SysinfoFetchCoordinator river1 = new SysinfoFetchCoordinator(tested, 0);
+		river1.setResponseCache(cache, "rest", 1000);
+		SysinfoFetchCoordinator river2 = new SysinfoFetchCoordinator(tested, 0);
+		river2.setResponseCache(cache, "rest", 1000);
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+
+		// case - neither cache miss nor cache hit on read in progress block calling thread
+		ActionListener<BytesReference> listener = Mockito.mock(ActionListener.class);
+		Future<BytesReference> future1 = river1.readSysinfoBytesAsync(plan, listener);
+		Future<BytesReference> future2 = river2.readSysinfoBytesAsync(plan, listener);
+		Assert.assertFalse(future1.isDone());
+		Assert.assertFalse(future2.isDone());
+		Assert.assertEquals(1l, cache.getStatistics().get("hits"));
+		Assert.assertEquals(1l, cache.getStatistics().get("misses"));
+
+		// case - both reads completed by one response
+		HttpResponse response = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_OK, "reason");
+		response.setEntity(new StringEntity("{\"status\":\"green\"}", ContentType.APPLICATION_JSON));
+		callback[0].completed(response);
+		Assert.assertEquals("{\"status\":\"green\"}", future1.get().toUtf8());
+		Assert.assertEquals("{\"status\":\"green\"}", future2.get().toUtf8());
+		Mockito.verify(listener, Mockito.times(2)).onResponse(Mockito.any(BytesReference.class));
+		Mockito.verify(tested.httpAsyncClient, Mockito.times(1)).execute(Mockito.any(HttpHost.class),
+				Mockito.any(HttpRequest.class), Mockito.any(HttpContext.class), Mockito.any(FutureCallback.class));
+
+		// case - cached information is read without request
+		Assert.assertTrue(river1.readSysinfoBytesAsync(plan, null).isDone());
+		Assert.assertEquals(2l, cache.getStatistics().get("hits"));
+		Assert.assertEquals(1, cache.getStatistics().get("entries"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void close_cancelsActiveRequests() throws Exception {
+		SourceClientRESTAsync tested = prepareTestedInstance();
+		CloseableHttpAsyncClient clientMock = tested.httpAsyncClient;
+		final Future<HttpResponse> requestMock = Mockito.mock(Future.class);
+		Mockito.when(
+				clientMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpRequest.class), Mockito.any(HttpContext.class),
+						Mockito.any(FutureCallback.class))).thenReturn(requestMock);
+
+		Future<BytesReference> future = tested.readSysinfoBytesAsync(
+				tested.prepareRequestPlan(SysinfoType.INDICES_SEGMENTS, null), null);
+		Assert.assertFalse(future.isDone());
+		Assert.assertEquals(1, tested.activeAsyncRequests.size());
+
+		tested.close();
+		Mockito.verify(requestMock).cancel(true);
+		Mockito.verify(clientMock).close();
+		Assert.assertTrue(tested.activeAsyncRequests.isEmpty());
+		Assert.assertNull(tested.httpAsyncClient);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void mockResponse(SourceClientRESTAsync tested, final int status, final String content) {
+		CloseableHttpAsyncClient clientMock = tested.httpAsyncClient;
+		Mockito.reset(clientMock);
+		Mockito.when(
+				clientMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpRequest.class), Mockito.any(HttpContext.class),
+						Mockito.any(FutureCallback.class))).thenAnswer(new Answer<Future<HttpResponse>>() {
+
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) throws Throwable {
+				HttpGet method = (HttpGet) invocation.getArguments()[1];
+				Assert.assertEquals("http://test.org/_cluster/health", method.getURI().toString());
+				HttpResponse response = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), status, "reason");
+				response.setEntity(new StringEntity(content, ContentType.APPLICATION_JSON));
+				// response completed by I/O thread before execute returns
+				((FutureCallback<HttpResponse>) invocation.getArguments()[3]).completed(response);
+				return Mockito.mock(Future.class);
+			}
+		});
+	}
+
+	protected SourceClientRESTAsync prepareTestedInstance() {
+		SourceClientRESTAsync tested = new SourceClientRESTAsync();
+		tested.httpAsyncClient = Mockito.mock(CloseableHttpAsyncClient.class);
+		tested.restAPIUrlBase = "http://test.org/";
+		return tested;
+	}
+
+}
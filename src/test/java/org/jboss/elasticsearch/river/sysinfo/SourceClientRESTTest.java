@@ -5,10 +5,19 @@
  */
 package org.jboss.elasticsearch.river.sysinfo;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
@@ -16,14 +25,20 @@ import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.message.BasicStatusLine;
 import org.apache.http.protocol.HttpContext;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.http.HttpException;
 import org.junit.Assert;
 import org.junit.Test;
@@ -76,6 +91,35 @@ public class SourceClientRESTTest {
 			SourceClientREST tested = new SourceClientREST(settings);
 			Assert.assertEquals("http://test.org/", tested.restAPIUrlBase);
 			Assert.assertFalse(tested.isAuthConfigured);
+			Assert.assertTrue(tested.compression);
+			Assert.assertNull(tested.balancer);
+		}
+
+		// case - more endpoints
+		{
+			Map<String, Object> settings = new HashMap<String, Object>();
+			settings.put("urlBase", Arrays.asList("http://node1:9200", " http://node2:9200/ "));
+			settings.put("failure_threshold", 5);
+			settings.put("probe_interval", "1m");
+			SourceClientREST tested = new SourceClientREST(settings);
+			Assert.assertEquals("http://node1:9200/", tested.restAPIUrlBase);
+			Assert.assertEquals(Arrays.asList("http://node1:9200/", "http://node2:9200/"), tested.getUrlBases());
+			Assert.assertEquals(5, tested.balancer.failureThreshold);
+			Assert.assertEquals(60000, tested.probeInterval);
+
+			settings.put("urlBase", "http://node1:9200,http://node2:9200,");
+			settings.remove("failure_threshold");
+			tested = new SourceClientREST(settings);
+			Assert.assertEquals(Arrays.asList("http://node1:9200/", "http://node2:9200/"), tested.getUrlBases());
+			Assert.assertEquals(SysinfoEndpointBalancer.DEFAULT_FAILURE_THRESHOLD, tested.balancer.failureThreshold);
+
+			settings.put("urlBase", Arrays.asList("http://node1:9200", "node2"));
+			try {
+				new SourceClientREST(settings);
+				Assert.fail("SettingsException expected");
+			} catch (SettingsException e) {
+				// OK
+			}
 		}
 
 		// case - url ok, all configured
@@ -85,9 +129,11 @@ public class SourceClientRESTTest {
 			settings.put("timeout", "8s");
 			settings.put("username", "usr");
 			settings.put("pwd", "pw");
+			settings.put("compression", false);
 			SourceClientREST tested = new SourceClientREST(settings);
 			Assert.assertEquals("http://test.org/", tested.restAPIUrlBase);
 			Assert.assertTrue(tested.isAuthConfigured);
+			Assert.assertFalse(tested.compression);
 		}
 
 		// case - username and password settings
@@ -201,6 +247,426 @@ public class SourceClientRESTTest {
 		}
 	}
 
+	@Test
+	public void performRESTCall_bufferPool() throws IOException {
+		SourceClientREST tested = prepareTestedInstance();
+		HttpClient hcMock = tested.httpclient;
+		tested.setBufferPool(new SysinfoBufferPool());
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+
+		CloseableHttpResponse response = Mockito.mock(CloseableHttpResponse.class);
+		Mockito.when(response.getStatusLine()).thenReturn(
+				new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_OK, "reason"));
+		Mockito.when(response.getEntity()).thenReturn(new StringEntity("{\"status\":\"green\"}", ContentType.APPLICATION_JSON),
+				new StringEntity("{\"status\":\"red\"}", ContentType.APPLICATION_JSON));
+		Mockito.when(
+				hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenReturn(response);
+		Assert.assertEquals("{\"status\":\"green\"}", tested.performRESTCall(plan).toUtf8());
+		Assert.assertEquals("{\"status\":\"red\"}", tested.performRESTCall(plan).toUtf8());
+		Mockito.verify(response, Mockito.times(2)).close();
+		// length of responses is known, so they are read directly without pooled pages
+		Assert.assertEquals(2l, tested.bufferPool.getStatistics().get("direct_reads"));
+		Assert.assertEquals(0l, tested.bufferPool.getStatistics().get("pages_borrowed"));
+	}
+
+	@Test
+	public void performRESTCall_failover() throws IOException, InterruptedException {
+		SourceClientREST tested = prepareTestedInstance();
+		tested.balancer = new SysinfoEndpointBalancer(Arrays.asList("http://node1/", "http://node2/"), 2);
+		HttpClient hcMock = tested.httpclient;
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+		Assert.assertEquals("http://node1/_cluster/health", plan.uri.toString());
+		Assert.assertEquals("http://node2/_cluster/health", plan.getURI(tested.balancer.getEndpoints().get(1)).toString());
+		HttpHost node1 = new HttpHost("node1", -1, "http");
+		HttpHost node2 = new HttpHost("node2", -1, "http");
+
+		// case - failed call is retried on other endpoint
+		Mockito.when(hcMock.execute(Mockito.eq(node1), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenThrow(new ConnectException("Connection refused"));
+		Mockito.when(hcMock.execute(Mockito.eq(node2), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenAnswer(prepareOKAnswerWithAssertions("http://node2/_cluster/health", false));
+		Assert.assertNull(tested.readSysinfoBytes(plan));
+		Mockito.verify(hcMock).execute(Mockito.eq(node1), Mockito.any(HttpUriRequest.class),
+				Mockito.any(HttpContext.class));
+		Mockito.verify(hcMock).execute(Mockito.eq(node2), Mockito.any(HttpUriRequest.class),
+				Mockito.any(HttpContext.class));
+
+		// case - endpoint is ejected after consecutive failures, so it gets no next calls
+		Assert.assertNull(tested.readSysinfoBytes(plan));
+		Assert.assertNull(tested.readSysinfoBytes(plan));
+		Mockito.verify(hcMock, Mockito.times(2)).execute(Mockito.eq(node1), Mockito.any(HttpUriRequest.class),
+				Mockito.any(HttpContext.class));
+		Mockito.verify(hcMock, Mockito.times(3)).execute(Mockito.eq(node2), Mockito.any(HttpUriRequest.class),
+				Mockito.any(HttpContext.class));
+		Assert.assertFalse(tested.balancer.getEndpoints().get(0).isHealthy());
+		Assert.assertTrue(tested.activeRequests.isEmpty());
+
+		@SuppressWarnings("unchecked")
+		Map<String, Map<String, Object>> stats = (Map<String, Map<String, Object>>) tested.getStatistics().get(
+				"endpoints");
+		Assert.assertEquals(2l, stats.get("http://node1/").get("failures"));
+		Assert.assertEquals("Connection refused", stats.get("http://node1/").get("last_error"));
+		Assert.assertEquals(3l, stats.get("http://node2/").get("requests"));
+		Assert.assertEquals(0, stats.get("http://node2/").get("in_flight"));
+
+		// case - client error is not retried nor failure of endpoint
+		Mockito.reset(hcMock);
+		Mockito.when(hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenAnswer(new Answer<HttpResponse>() {
+					@Override
+					public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+						CloseableHttpResponse ret = Mockito.mock(CloseableHttpResponse.class);
+						Mockito.when(ret.getStatusLine()).thenReturn(
+								new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_NOT_FOUND, "reason"));
+						return ret;
+					}
+				});
+		try {
+			tested.readSysinfoBytes(plan);
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			Mockito.verify(hcMock, Mockito.times(1)).execute(Mockito.any(HttpHost.class),
+					Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class));
+		}
+		Assert.assertEquals(4l, tested.balancer.getEndpoints().get(1).getStatistics().get("requests"));
+		Assert.assertEquals(0l, tested.balancer.getEndpoints().get(1).getStatistics().get("failures"));
+
+		// case - all endpoints fail
+		Mockito.reset(hcMock);
+		Mockito.when(hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenThrow(new ConnectException("Connection refused"));
+		try {
+			tested.readSysinfoBytes(plan);
+			Assert.fail("IOException must be thrown");
+		} catch (ConnectException e) {
+			Mockito.verify(hcMock, Mockito.times(2)).execute(Mockito.any(HttpHost.class),
+					Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class));
+		}
+	}
+
+	@Test
+	public void probeEjectedEndpoints() throws IOException {
+		SourceClientREST tested = prepareTestedInstance();
+		tested.balancer = new SysinfoEndpointBalancer(Arrays.asList("http://node1/", "http://node2/"), 1);
+		HttpClient hcMock = tested.httpclient;
+		tested.balancer.getEndpoints().get(0).requestFailed("Connection refused");
+
+		// case - failed probe
+		Mockito.when(hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenThrow(new ConnectException("Still refused"));
+		tested.probeEjectedEndpoints();
+		Assert.assertFalse(tested.balancer.getEndpoints().get(0).isHealthy());
+		Assert.assertEquals("Still refused", tested.balancer.getEndpoints().get(0).getStatistics().get("last_error"));
+
+		// case - successful probe reinstates endpoint, healthy endpoint is not probed
+		Mockito.reset(hcMock);
+		Mockito.when(hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenAnswer(prepareOKAnswerWithAssertions("http://node1/", false));
+		tested.probeEjectedEndpoints();
+		Assert.assertTrue(tested.balancer.getEndpoints().get(0).isHealthy());
+		Mockito.verify(hcMock).execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class),
+				Mockito.any(HttpContext.class));
+	}
+
+	@Test
+	public void startAndClose_prober() {
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put("urlBase", "http://node1:9200,http://node2:9200");
+		SourceClientREST tested = new SourceClientREST(settings);
+		tested.start();
+		Assert.assertNotNull(tested.prober);
+		tested.close();
+		Assert.assertNull(tested.prober);
+
+		// case - no probes for one endpoint
+		settings.put("urlBase", "http://node1:9200");
+		tested = new SourceClientREST(settings);
+		tested.start();
+		Assert.assertNull(tested.prober);
+		tested.close();
+	}
+
+	@Test
+	public void performRESTCall_compressed() throws IOException {
+		SourceClientREST tested = prepareTestedInstance();
+		HttpClient hcMock = tested.httpclient;
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.CLUSTER_STATE, null);
+		String content = "{\"cluster_name\":\"test\",\"metadata\":{\"indices\":{\"idx\":{\"state\":\"open\"},\"idx2\":{\"state\":\"open\"}}}}";
+		byte[] gzip = gzip(content);
+
+		CloseableHttpResponse response = Mockito.mock(CloseableHttpResponse.class);
+		Mockito.when(response.getStatusLine()).thenReturn(
+				new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_OK, "reason"));
+		Mockito.when(response.getEntity()).thenReturn(compressedEntity(gzip, "gzip"),
+				compressedEntity(deflate(content), "deflate"), compressedEntity(gzip, "gzip"),
+				new StringEntity(content, ContentType.APPLICATION_JSON), compressedEntity(gzip, "br"));
+		Mockito.when(
+				hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenReturn(response);
+
+		// case - gzip and deflate responses are decompressed
+		Assert.assertEquals(content, tested.performRESTCall(plan).toUtf8());
+		Assert.assertEquals(content, tested.performRESTCall(plan).toUtf8());
+
+		// case - decompressed into buffer pool pages
+		tested.setBufferPool(new SysinfoBufferPool());
+		Assert.assertEquals(content, tested.performRESTCall(plan).toUtf8());
+
+		// case - uncompressed response
+		Assert.assertEquals(content, tested.performRESTCall(plan).toUtf8());
+
+		Map<String, Object> stats = tested.getStatistics();
+		Assert.assertEquals(4l, stats.get("responses"));
+		Assert.assertEquals(3l, stats.get("compressed_responses"));
+		Assert.assertEquals(4l * content.length(), stats.get("content_bytes"));
+		long received = (Long) stats.get("received_bytes");
+		Assert.assertTrue(received < 4l * content.length());
+		Map<String, Object> planStats = plan.getTransferStatistics();
+		Assert.assertEquals(4l, planStats.get("responses"));
+		Assert.assertEquals(received, planStats.get("received_bytes"));
+		Assert.assertEquals(4l * content.length(), planStats.get("content_bytes"));
+
+		// case - unsupported encoding
+		try {
+			tested.performRESTCall(plan);
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().contains("br"));
+		}
+		Mockito.verify(response, Mockito.times(5)).close();
+
+		// case - compressed error response is decompressed into exception message
+		Mockito.reset(response);
+		Mockito.when(response.getStatusLine()).thenReturn(
+				new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_NOT_FOUND, "reason"));
+		Mockito.when(response.getEntity()).thenReturn(compressedEntity(gzip("{\"error\":\"missing\"}"), "gzip"));
+		try {
+			tested.performRESTCall(plan);
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().contains("{\"error\":\"missing\"}"));
+		}
+	}
+
+	@Test
+	public void readSysinfoParser_compressed() throws IOException, InterruptedException {
+		SourceClientREST tested = prepareTestedInstance();
+		HttpClient hcMock = tested.httpclient;
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.INDICES_SEGMENTS, null);
+
+		CloseableHttpResponse response = Mockito.mock(CloseableHttpResponse.class);
+		Mockito.when(response.getStatusLine()).thenReturn(
+				new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_OK, "reason"));
+		Mockito.when(response.getEntity()).thenReturn(compressedEntity(gzip("{\"indices\":{}}"), "gzip"));
+		Mockito.when(
+				hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenReturn(response);
+		XContentParser parser = tested.readSysinfoParser(plan);
+		try {
+			Assert.assertEquals(XContentParser.Token.START_OBJECT, parser.nextToken());
+			Assert.assertEquals(XContentParser.Token.FIELD_NAME, parser.nextToken());
+			Assert.assertEquals("indices", parser.currentName());
+		} finally {
+			parser.close();
+		}
+		// transfer is recorded when stream is closed
+		Assert.assertEquals(1l, tested.getStatistics().get("compressed_responses"));
+		Assert.assertEquals(1l, plan.getTransferStatistics().get("responses"));
+		Assert.assertTrue(tested.activeRequests.isEmpty());
+	}
+
+	private static ByteArrayEntity compressedEntity(byte[] content, String encoding) {
+		ByteArrayEntity entity = new ByteArrayEntity(content, ContentType.APPLICATION_JSON);
+		entity.setContentEncoding(encoding);
+		return entity;
+	}
+
+	private static byte[] gzip(String content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gz = new GZIPOutputStream(out);
+		gz.write(content.getBytes("UTF-8"));
+		gz.close();
+		return out.toByteArray();
+	}
+
+	private static byte[] deflate(String content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DeflaterOutputStream df = new DeflaterOutputStream(out);
+		df.write(content.getBytes("UTF-8"));
+		df.close();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void prepareRESTMethod() throws IOException {
+		SourceClientREST tested = prepareTestedInstance();
+		tested.requestConfig = RequestConfig.custom().setSocketTimeout(5000).setConnectTimeout(5000).build();
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.INDICES_SEGMENTS, null);
+
+		// case - default request config of client is used
+		HttpGet method = tested.prepareRESTMethod(plan);
+		Assert.assertEquals("http://test.org/_segments", method.getURI().toString());
+		Assert.assertEquals("application/json", method.getFirstHeader("Accept").getValue());
+		Assert.assertEquals("gzip,deflate", method.getFirstHeader("Accept-Encoding").getValue());
+		Assert.assertNull(method.getConfig());
+
+		// case - compression disabled
+		tested.compression = false;
+		Assert.assertNull(tested.prepareRESTMethod(plan).getFirstHeader("Accept-Encoding"));
+
+		// case - timeout from plan
+		plan.setTimeout(120000);
+		method = tested.prepareRESTMethod(plan);
+		Assert.assertEquals(120000, method.getConfig().getSocketTimeout());
+		Assert.assertEquals(120000, method.getConfig().getConnectTimeout());
+		Assert.assertEquals(120000, method.getConfig().getConnectionRequestTimeout());
+	}
+
+	@Test
+	public void close_abortsActiveRequests() throws IOException, InterruptedException {
+		final SourceClientREST tested = prepareTestedInstance();
+		HttpClient hcMock = tested.httpclient;
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+
+		// case - request aborted by close while executed
+		Mockito.when(
+				hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenAnswer(new Answer<HttpResponse>() {
+
+					@Override
+					public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+						HttpGet method = (HttpGet) invocation.getArguments()[1];
+						Assert.assertTrue(tested.activeRequests.contains(method));
+						tested.close();
+						Assert.assertTrue(method.isAborted());
+						throw new IOException("aborted");
+					}
+				});
+		try {
+			tested.performRESTCall(plan);
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			// OK
+		}
+		Assert.assertTrue(tested.activeRequests.isEmpty());
+
+		// case - streamed request is active until parser is closed
+		CloseableHttpResponse response = Mockito.mock(CloseableHttpResponse.class);
+		Mockito.when(response.getStatusLine()).thenReturn(
+				new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_OK, "reason"));
+		Mockito.when(response.getEntity()).thenReturn(new StringEntity("{\"indices\":{}}", ContentType.APPLICATION_JSON));
+		Mockito.reset(hcMock);
+		Mockito.when(
+				hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenReturn(response);
+		XContentParser parser = tested.readSysinfoParser(plan);
+		Assert.assertEquals(1, tested.activeRequests.size());
+		parser.close();
+		Assert.assertTrue(tested.activeRequests.isEmpty());
+	}
+
+	@Test
+	public void readSysinfoParser() throws IOException, InterruptedException {
+		SourceClientREST tested = prepareTestedInstance();
+		HttpClient hcMock = tested.httpclient;
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.INDICES_SEGMENTS, null);
+
+		// case - parser reads response stream
+		final CloseableHttpResponse response = Mockito.mock(CloseableHttpResponse.class);
+		Mockito.when(response.getStatusLine()).thenReturn(
+				new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_OK, "reason"));
+		Mockito.when(response.getEntity()).thenReturn(new StringEntity("{\"indices\":{}}", ContentType.APPLICATION_JSON));
+		Mockito.when(
+				hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenReturn(response);
+		XContentParser parser = tested.readSysinfoParser(plan);
+		try {
+			Assert.assertEquals(XContentParser.Token.START_OBJECT, parser.nextToken());
+			Assert.assertEquals(XContentParser.Token.FIELD_NAME, parser.nextToken());
+			Assert.assertEquals("indices", parser.currentName());
+		} finally {
+			parser.close();
+		}
+		Mockito.verify(response, Mockito.never()).close();
+
+		// case - http error response is closed
+		Mockito.reset(response);
+		Mockito.when(response.getStatusLine()).thenReturn(
+				new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_NOT_FOUND, "reason"));
+		try {
+			tested.readSysinfoParser(plan);
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			Mockito.verify(response).close();
+		}
+
+		// case - empty response is closed
+		Mockito.reset(response);
+		Mockito.when(response.getStatusLine()).thenReturn(
+				new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_OK, "reason"));
+		try {
+			tested.readSysinfoParser(plan);
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			Mockito.verify(response).close();
+		}
+	}
+
+	@Test
+	public void readSysinfoParser_endpointStatistics() throws IOException, InterruptedException {
+		SourceClientREST tested = prepareTestedInstance();
+		tested.balancer = new SysinfoEndpointBalancer(Arrays.asList("http://node1/"), 3);
+		HttpClient hcMock = tested.httpclient;
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.INDICES_SEGMENTS, null);
+
+		// case - call is recorded as successful when whole body is read and parser closed
+		CloseableHttpResponse response = Mockito.mock(CloseableHttpResponse.class);
+		Mockito.when(response.getStatusLine()).thenReturn(
+				new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_OK, "reason"));
+		Mockito.when(response.getEntity()).thenReturn(new StringEntity("{\"indices\":{}}", ContentType.APPLICATION_JSON));
+		Mockito.when(
+				hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class), Mockito.any(HttpContext.class)))
+				.thenReturn(response);
+		XContentParser parser = tested.readSysinfoParser(plan);
+		Assert.assertEquals(0l, tested.balancer.getEndpoints().get(0).getStatistics().get("requests"));
+		Assert.assertEquals("{indices={}}", parser.map().toString());
+		parser.close();
+		Map<String, Object> stats = tested.balancer.getEndpoints().get(0).getStatistics();
+		Assert.assertEquals(1l, stats.get("requests"));
+		Assert.assertEquals(0l, stats.get("failures"));
+		Assert.assertEquals(0, stats.get("in_flight"));
+
+		// case - connection reset while body is read is failure of endpoint
+		Mockito.when(response.getEntity()).thenReturn(
+				new InputStreamEntity(new InputStream() {
+					private final InputStream in = new ByteArrayInputStream("{\"indices\":{".getBytes());
+
+					@Override
+					public int read() throws IOException {
+						int b = in.read();
+						if (b < 0)
+							throw new SocketException("Connection reset");
+						return b;
+					}
+				}, -1, ContentType.APPLICATION_JSON));
+		parser = tested.readSysinfoParser(plan);
+		try {
+			parser.map();
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			// OK
+		} finally {
+			parser.close();
+		}
+		stats = tested.balancer.getEndpoints().get(0).getStatistics();
+		Assert.assertEquals(2l, stats.get("requests"));
+		Assert.assertEquals(1l, stats.get("failures"));
+		Assert.assertEquals("Connection reset", stats.get("last_error"));
+		Assert.assertEquals(0, stats.get("in_flight"));
+		Assert.assertTrue(tested.activeRequests.isEmpty());
+	}
+
 	@Test
 	public void readClusterStateInfo() throws IOException, InterruptedException {
 		SourceClientREST tested = prepareTestedInstance();
@@ -510,6 +976,57 @@ public class SourceClientRESTTest {
 		}
 	}
 
+	@Test
+	public void prepareRequestPlan() throws IOException, InterruptedException {
+		SourceClientREST tested = prepareTestedInstance();
+		HttpClient hcMock = tested.httpclient;
+
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		params.put("param", "myparam");
+		params.put("index", "idx1,idx2");
+		SourceClientREST.RESTRequestPlan plan = tested.prepareRequestPlan(SysinfoType.INDICES_STATS, params);
+		Assert.assertEquals(SysinfoType.INDICES_STATS, plan.getInfoType());
+		Assert.assertEquals("http://test.org/idx1,idx2/_stats?param=myparam", plan.uri.toString());
+		Assert.assertEquals(new HttpHost("test.org", -1, "http"), plan.targetHost);
+
+		// case - plan is reused for more reads
+		Mockito
+				.when(
+						hcMock.execute(Mockito.eq(plan.targetHost), Mockito.any(HttpUriRequest.class),
+								Mockito.any(HttpContext.class))).thenAnswer(
+						prepareOKAnswerWithAssertions("http://test.org/idx1,idx2/_stats?param=myparam", false));
+		Assert.assertEquals(null, tested.readSysinfoBytes(plan));
+		Assert.assertEquals(null, tested.readSysinfoBytes(plan));
+		Mockito.verify(hcMock, Mockito.times(2)).execute(Mockito.eq(plan.targetHost), Mockito.any(HttpUriRequest.class),
+				Mockito.any(HttpContext.class));
+
+		// case - plain plan is read over type specific method
+		Mockito.reset(hcMock);
+		Mockito
+				.when(
+						hcMock.execute(Mockito.any(HttpHost.class), Mockito.any(HttpUriRequest.class),
+								Mockito.any(HttpContext.class))).thenAnswer(
+						prepareOKAnswerWithAssertions("http://test.org/_nodes/stats", false));
+		Assert.assertEquals(null, tested.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_NODES_STATS, null)));
+
+		// case - malformed URI reported on read
+		plan = tested.prepareRequestPlan(SysinfoType.INDICES_STATS, Collections.singletonMap("index", "a b"));
+		Assert.assertNull(plan.uri);
+		try {
+			tested.readSysinfoBytes(plan);
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			// OK
+		}
+
+		try {
+			tested.prepareRequestPlan(null, params);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
 	protected SourceClientREST prepareTestedInstance() {
 		SourceClientREST tested = new SourceClientREST();
 		CloseableHttpClient hcMock = Mockito.mock(CloseableHttpClient.class);
@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SysinfoBufferPool}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoBufferPoolTest {
+
+  @Test
+  public void constructor() {
+    Assert.assertEquals(SysinfoBufferPool.DEFAULT_MAX_SIZE.bytes(), new SysinfoBufferPool().maxSize);
+    Assert.assertEquals(1024 * 1024, new SysinfoBufferPool(ImmutableSettings.settingsBuilder()
+        .put(SysinfoBufferPool.SETTING_MAX_SIZE, "1mb").build()).maxSize);
+  }
+
+  @Test
+  public void read() throws IOException {
+    SysinfoBufferPool tested = new SysinfoBufferPool(2 * SysinfoBufferPool.PAGE_SIZE);
+
+    // case - empty stream
+    Assert.assertEquals(0, tested.read(new ByteArrayInputStream(new byte[0]), -1).length());
+
+    // case - content spanning more pages, read in small chunks
+    byte[] content = new byte[SysinfoBufferPool.PAGE_SIZE * 2 + 10];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+    Assert.assertTrue(Arrays.equals(content, tested.read(new ChunkedInputStream(content), -1).toBytes()));
+
+    // case - known length is read directly, no page is borrowed
+    Assert.assertTrue(Arrays.equals(content, tested.read(new ChunkedInputStream(content), content.length).toBytes()));
+    Assert.assertEquals(4l, tested.getStatistics().get("pages_borrowed"));
+
+    // case - exactly one page
+    byte[] page = Arrays.copyOf(content, SysinfoBufferPool.PAGE_SIZE);
+    Assert.assertTrue(Arrays.equals(page, tested.read(new ByteArrayInputStream(page), -1).toBytes()));
+
+    // case - truncated content
+    try {
+      tested.read(new ByteArrayInputStream(page), SysinfoBufferPool.PAGE_SIZE + 1);
+      Assert.fail("IOException must be thrown");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("truncated"));
+    }
+
+    // case - content longer than expected
+    try {
+      tested.read(new ByteArrayInputStream(page), SysinfoBufferPool.PAGE_SIZE - 1);
+      Assert.fail("IOException must be thrown");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("longer"));
+    }
+
+    Map<String, Object> stats = tested.getStatistics();
+    Assert.assertEquals(2l * SysinfoBufferPool.PAGE_SIZE, stats.get("max_size"));
+    Assert.assertEquals(SysinfoBufferPool.PAGE_SIZE, stats.get("page_size"));
+    // pool keeps max two pages
+    Assert.assertEquals(2l * SysinfoBufferPool.PAGE_SIZE, stats.get("pooled_bytes"));
+    Assert.assertEquals(6l, stats.get("pages_borrowed"));
+    Assert.assertEquals(3l, stats.get("pages_reused"));
+    Assert.assertEquals(3d / 6d, stats.get("page_reuse_rate"));
+    Assert.assertEquals(3l, stats.get("direct_reads"));
+  }
+
+  @Test
+  public void read_noPooling() throws IOException {
+    SysinfoBufferPool tested = new SysinfoBufferPool(0);
+    Assert.assertEquals("abc", tested.read(new ByteArrayInputStream("abc".getBytes()), -1).toUtf8());
+    Assert.assertEquals("abc", tested.read(new ByteArrayInputStream("abc".getBytes()), -1).toUtf8());
+    Map<String, Object> stats = tested.getStatistics();
+    Assert.assertEquals(0l, stats.get("pooled_bytes"));
+    Assert.assertEquals(2l, stats.get("pages_borrowed"));
+    Assert.assertEquals(0l, stats.get("pages_reused"));
+  }
+
+  /**
+   * Stream returning content in small chunks, as network stream does.
+   */
+  private static class ChunkedInputStream extends InputStream {
+
+    private final ByteArrayInputStream in;
+
+    ChunkedInputStream(byte[] content) {
+      in = new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public int read() throws IOException {
+      return in.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return in.read(b, off, Math.min(len, 1000));
+    }
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link SysinfoBulkWriter}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class SysinfoBulkWriterTest {
+
+  @Test
+  public void flushByActions() {
+    Client clientMock = Mockito.mock(Client.class);
+    SysinfoBulkWriter tested = new SysinfoBulkWriter(clientMock, null, 2, 1000, 0, 0, 1);
+
+    tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class));
+    Mockito.verifyZeroInteractions(clientMock);
+    Assert.assertEquals(1, tested.getStatistics().get("buffered_actions"));
+
+    tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class));
+    ArgumentCaptor<BulkRequest> bulk = ArgumentCaptor.forClass(BulkRequest.class);
+    Mockito.verify(clientMock).bulk(bulk.capture(), Mockito.any(ActionListener.class));
+    Assert.assertEquals(2, bulk.getValue().numberOfActions());
+    Assert.assertEquals(0, tested.getStatistics().get("buffered_actions"));
+  }
+
+  @Test
+  public void flushBySize() {
+    Client clientMock = Mockito.mock(Client.class);
+    SysinfoBulkWriter tested = new SysinfoBulkWriter(clientMock, null, 100, 20, 0, 0, 1);
+
+    tested.add(indexRequest("{\"a\":\"b\"}"), Mockito.mock(ActionListener.class));
+    Mockito.verifyZeroInteractions(clientMock);
+    tested.add(indexRequest("{\"a\":\"bbbbbbbbbbbbb\"}"), Mockito.mock(ActionListener.class));
+    Mockito.verify(clientMock).bulk(Mockito.any(BulkRequest.class), Mockito.any(ActionListener.class));
+  }
+
+  @Test
+  public void flushByInterval() throws InterruptedException {
+    Client clientMock = Mockito.mock(Client.class);
+    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    try {
+      SysinfoBulkWriter tested = new SysinfoBulkWriter(clientMock, scheduler, 100, 1000, 50, 0, 1);
+      tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class));
+      Mockito.verifyZeroInteractions(clientMock);
+      Thread.sleep(200);
+      Mockito.verify(clientMock).bulk(Mockito.any(BulkRequest.class), Mockito.any(ActionListener.class));
+      Assert.assertNull(tested.flushTask);
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public void itemResultsReportedToListeners() {
+    Client clientMock = Mockito.mock(Client.class);
+    SysinfoBulkWriter tested = new SysinfoBulkWriter(clientMock, null, 100, 1000, 0, 0, 1);
+
+    ActionListener l1 = Mockito.mock(ActionListener.class);
+    ActionListener l2 = Mockito.mock(ActionListener.class);
+    tested.add(indexRequest("{}"), l1);
+    tested.add(indexRequest("{}"), l2);
+    tested.flush();
+
+    ArgumentCaptor<ActionListener> bulkListener = ArgumentCaptor.forClass(ActionListener.class);
+    Mockito.verify(clientMock).bulk(Mockito.any(BulkRequest.class), bulkListener.capture());
+
+    // case - item failure reported to its listener only
+    IndexResponse ir = new IndexResponse("i", "t", "1", 1, true);
+    BulkItemResponse[] items = new BulkItemResponse[] { new BulkItemResponse(0, "index", ir),
+        new BulkItemResponse(1, "index", new BulkItemResponse.Failure("i", "t", "2", "mocked failure",
+            RestStatus.BAD_REQUEST)) };
+    bulkListener.getValue().onResponse(new BulkResponse(items, 10));
+    Mockito.verify(l1).onResponse(ir);
+    Mockito.verify(l2).onFailure(Mockito.any(Throwable.class));
+    Mockito.verifyNoMoreInteractions(l1, l2);
+    Assert.assertEquals(1l, tested.getStatistics().get("bulks"));
+
+    // case - whole bulk failure reported to all listeners
+    Mockito.reset(clientMock, l1, l2);
+    tested.add(indexRequest("{}"), l1);
+    tested.add(indexRequest("{}"), l2);
+    tested.flush();
+    Mockito.verify(clientMock).bulk(Mockito.any(BulkRequest.class), bulkListener.capture());
+    bulkListener.getValue().onFailure(new Exception("mocked"));
+    Mockito.verify(l1).onFailure(Mockito.any(Throwable.class));
+    Mockito.verify(l2).onFailure(Mockito.any(Throwable.class));
+    Assert.assertEquals(2l, tested.getStatistics().get("bulks"));
+    Assert.assertEquals(1l, tested.getStatistics().get("bulk_failures"));
+  }
+
+  @Test
+  public void maxConcurrentBulks() {
+    Client clientMock = Mockito.mock(Client.class);
+    SysinfoBulkWriter tested = new SysinfoBulkWriter(clientMock, null, 2, 1000, 0, 0, 1);
+
+    Assert.assertTrue(tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class)));
+    Assert.assertTrue(tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class)));
+    ArgumentCaptor<ActionListener> bulkListener = ArgumentCaptor.forClass(ActionListener.class);
+    Mockito.verify(clientMock).bulk(Mockito.any(BulkRequest.class), bulkListener.capture());
+    Assert.assertEquals(1, tested.getStatistics().get("active_bulks"));
+
+    // case - next bulk waits in buffer while max number of bulks is active
+    Assert.assertTrue(tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class)));
+    Assert.assertTrue(tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class)));
+    Mockito.verify(clientMock, Mockito.times(1)).bulk(Mockito.any(BulkRequest.class), Mockito.any(ActionListener.class));
+    Assert.assertEquals(2, tested.getStatistics().get("buffered_actions"));
+
+    // case - full writer rejects documents
+    Runnable notFullListener = Mockito.mock(Runnable.class);
+    Assert.assertTrue(tested.notifyWhenNotFull(notFullListener));
+    ActionListener rejectedListener = Mockito.mock(ActionListener.class);
+    Assert.assertFalse(tested.add(indexRequest("{}"), rejectedListener));
+    Mockito.verifyZeroInteractions(rejectedListener);
+    Assert.assertEquals(1l, tested.getStatistics().get("rejected_actions"));
+    Assert.assertEquals(2, tested.getStatistics().get("buffered_actions"));
+
+    // case - completed bulk sends buffered one and notifies listener
+    bulkListener.getValue().onFailure(new Exception("mocked"));
+    Mockito.verify(clientMock, Mockito.times(2)).bulk(Mockito.any(BulkRequest.class), Mockito.any(ActionListener.class));
+    Mockito.verify(notFullListener).run();
+    Assert.assertEquals(0, tested.getStatistics().get("buffered_actions"));
+    Assert.assertEquals(1, tested.getStatistics().get("active_bulks"));
+    Assert.assertFalse(tested.notifyWhenNotFull(notFullListener));
+    Assert.assertTrue(tested.add(indexRequest("{}"), rejectedListener));
+  }
+
+  @Test
+  public void adaptBulkActions() {
+    SysinfoBulkWriter tested = new SysinfoBulkWriter(null, null, 100, 1000, 0, 1000, 1);
+
+    // case - latency in range, no change
+    tested.adaptBulkActions(700);
+    Assert.assertEquals(100, tested.currentBulkActions);
+
+    // case - slow bulk halves number of actions
+    tested.adaptBulkActions(1500);
+    Assert.assertEquals(50, tested.currentBulkActions);
+    for (int i = 0; i < 10; i++)
+      tested.adaptBulkActions(1500);
+    Assert.assertEquals(1, tested.currentBulkActions);
+
+    // case - fast bulks increase number of actions up to max
+    tested.adaptBulkActions(100);
+    Assert.assertEquals(11, tested.currentBulkActions);
+    for (int i = 0; i < 20; i++)
+      tested.adaptBulkActions(100);
+    Assert.assertEquals(100, tested.currentBulkActions);
+
+    // case - adaptation disabled
+    tested.targetLatency = 0;
+    tested.adaptBulkActions(1500);
+    Assert.assertEquals(100, tested.currentBulkActions);
+  }
+
+  @Test
+  public void adaptBulkActions_slowTarget() throws InterruptedException {
+    Client clientMock = Mockito.mock(Client.class);
+    SysinfoBulkWriter tested = new SysinfoBulkWriter(clientMock, null, 4, 1000, 0, 1, 1);
+    for (int i = 0; i < 8; i++) {
+      Assert.assertTrue(tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class)));
+    }
+    Assert.assertFalse(tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class)));
+
+    // case - slow bulk halves next bulks, but they are still sent one at a time
+    ArgumentCaptor<ActionListener> bulkListener = ArgumentCaptor.forClass(ActionListener.class);
+    Mockito.verify(clientMock).bulk(Mockito.any(BulkRequest.class), bulkListener.capture());
+    Thread.sleep(10);
+    bulkListener.getValue().onFailure(new Exception("mocked"));
+    Assert.assertEquals(2, tested.currentBulkActions);
+    Mockito.verify(clientMock, Mockito.times(2)).bulk(Mockito.any(BulkRequest.class), Mockito.any(ActionListener.class));
+    Assert.assertEquals(1, tested.getStatistics().get("active_bulks"));
+
+    // case - smaller bulks make writer full sooner
+    Assert.assertTrue(tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class)));
+    Assert.assertTrue(tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class)));
+    Assert.assertFalse(tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class)));
+    Mockito.verify(clientMock, Mockito.times(2)).bulk(Mockito.any(BulkRequest.class), Mockito.any(ActionListener.class));
+  }
+
+  @Test
+  public void close() {
+    Client clientMock = Mockito.mock(Client.class);
+    SysinfoBulkWriter tested = new SysinfoBulkWriter(clientMock, null, 100, 1000, 0, 0, 1);
+
+    tested.add(indexRequest("{}"), Mockito.mock(ActionListener.class));
+    tested.close();
+    Mockito.verify(clientMock).bulk(Mockito.any(BulkRequest.class), Mockito.any(ActionListener.class));
+
+    // case - document added after close is rejected
+    ActionListener l = Mockito.mock(ActionListener.class);
+    tested.add(indexRequest("{}"), l);
+    Mockito.verify(l).onFailure(Mockito.any(Throwable.class));
+  }
+
+  private IndexRequest indexRequest(String source) {
+    return new IndexRequest("i", "t").source(source);
+  }
+
+}
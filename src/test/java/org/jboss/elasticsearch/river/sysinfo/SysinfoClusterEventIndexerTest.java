@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.jboss.elasticsearch.river.sysinfo.esclient.SourceClientESClient;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link SysinfoClusterEventIndexer}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoClusterEventIndexerTest {
+
+  @Test
+  public void samplesOfClusterStateChanges() throws Exception {
+    ClusterService csMock = Mockito.mock(ClusterService.class);
+    SourceClientESClient lcMock = Mockito.mock(SourceClientESClient.class);
+    ScheduledExecutorService schedulerMock = Mockito.mock(ScheduledExecutorService.class);
+    ClusterState state0 = Mockito.mock(ClusterState.class);
+    ClusterState state1 = Mockito.mock(ClusterState.class);
+    ClusterState state2 = Mockito.mock(ClusterState.class);
+    ClusterState state3 = Mockito.mock(ClusterState.class);
+    Mockito.when(csMock.state()).thenReturn(state0);
+    SysinfoRequestPlan plan = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+    Mockito.when(lcMock.readSysinfoBytes(plan, state0)).thenReturn(new BytesArray("{s0}"));
+    Mockito.when(lcMock.readSysinfoBytes(plan, state2)).thenReturn(new BytesArray("{s2}"));
+    Mockito.when(lcMock.readSysinfoBytes(plan, state3)).thenReturn(new BytesArray("{s3}"));
+
+    Tested tested = new Tested(lcMock, csMock);
+    tested.requestPlan = plan;
+    tested.debounce = 100;
+
+    // case - start registers listener and takes sample of current state
+    tested.start(schedulerMock, 10);
+    Mockito.verify(csMock).add(tested);
+    Mockito.verify(schedulerMock).schedule(tested, 10, TimeUnit.MILLISECONDS);
+    tested.run();
+    Assert.assertEquals("{s0}", tested.stored.get(0));
+    Mockito.verifyNoMoreInteractions(schedulerMock);
+
+    // case - changes within debounce are coalesced into one sample of latest state
+    tested.clusterChanged(event(state1));
+    tested.clusterChanged(event(state2));
+    Mockito.verify(schedulerMock).schedule(tested, 100, TimeUnit.MILLISECONDS);
+    tested.run();
+    Assert.assertEquals(2, tested.stored.size());
+    Assert.assertEquals("{s2}", tested.stored.get(1));
+    Mockito.verify(lcMock, Mockito.never()).readSysinfoBytes(plan, state1);
+    Assert.assertEquals(2l, tested.getStatistics().get("events"));
+    Assert.assertEquals(1l, tested.getStatistics().get("coalesced_events"));
+    Assert.assertEquals(2l, tested.getStatistics().get("cycles"));
+
+    // case - min interval between samples
+    Mockito.reset(schedulerMock);
+    tested.debounce = 0;
+    tested.minInterval = 10000;
+    tested.clusterChanged(event(state3));
+    long delay = tested.nextSampleDelay();
+    Assert.assertTrue(delay > 9000 && delay <= 10000);
+    ArgumentCaptor<Long> delayCaptor = ArgumentCaptor.forClass(Long.class);
+    Mockito.verify(schedulerMock).schedule(Mockito.eq(tested), delayCaptor.capture(), Mockito.eq(TimeUnit.MILLISECONDS));
+    Assert.assertTrue(delayCaptor.getValue() > 9000);
+
+    // case - close unregisters listener and forgets pending state
+    tested.close();
+    Mockito.verify(csMock).remove(tested);
+    Assert.assertNull(tested.pendingState);
+    tested.clusterChanged(event(state2));
+    Assert.assertNull(tested.pendingState);
+    tested.run();
+    Assert.assertEquals(2, tested.stored.size());
+  }
+
+  @Test
+  public void clusterChanged_duringSample() throws Exception {
+    ClusterService csMock = Mockito.mock(ClusterService.class);
+    SourceClientESClient lcMock = Mockito.mock(SourceClientESClient.class);
+    ScheduledExecutorService schedulerMock = Mockito.mock(ScheduledExecutorService.class);
+    final ClusterState state1 = Mockito.mock(ClusterState.class);
+    ClusterState state0 = Mockito.mock(ClusterState.class);
+    Mockito.when(csMock.state()).thenReturn(state0);
+    SysinfoRequestPlan plan = new SysinfoRequestPlan(SysinfoType.CLUSTER_STATE, null);
+    Mockito.when(lcMock.readSysinfoBytes(Mockito.eq(plan), Mockito.any(ClusterState.class))).thenReturn(
+        new BytesArray("{s}"));
+
+    final Tested tested = new Tested(lcMock, csMock) {
+      @Override
+      protected void store(BytesReference content) throws InterruptedException {
+        super.store(content);
+        if (stored.size() == 1) {
+          // change comes while sample is stored, so it is not scheduled by listener
+          clusterChanged(event(state1));
+        }
+      }
+    };
+    tested.requestPlan = plan;
+    tested.start(schedulerMock, 0);
+    tested.run();
+    Mockito.verify(schedulerMock, Mockito.times(2)).schedule(tested, 0, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(state1, tested.pendingState);
+
+    // case - nothing scheduled after sample if state is not changed
+    tested.run();
+    Mockito.verify(schedulerMock, Mockito.times(2)).schedule(tested, 0, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(2, tested.stored.size());
+  }
+
+  private static ClusterChangedEvent event(ClusterState state) {
+    ClusterChangedEvent event = Mockito.mock(ClusterChangedEvent.class);
+    Mockito.when(event.state()).thenReturn(state);
+    return event;
+  }
+
+  private static class Tested extends SysinfoClusterEventIndexer {
+
+    List<String> stored = new ArrayList<String>();
+
+    Tested(SourceClientESClient localClient, ClusterService clusterService) {
+      super("testindexer", localClient, clusterService, null);
+    }
+
+    @Override
+    protected void store(BytesReference content) throws InterruptedException {
+      stored.add(content.toUtf8());
+    }
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SysinfoClusterStateDiffer}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoClusterStateDifferTest {
+
+  private static final String STATE_1 = "{'cluster_name':'es','version':1,'master_node':'n1',"
+      + "'nodes':{'n1':{'name':'node1','transport_address':'inet[/10.0.0.1:9300]'},'n2':{'name':'node2','transport_address':'inet[/10.0.0.2:9300]'}},"
+      + "'metadata':{'indices':{'i1':{'state':'open','settings':{'index.number_of_replicas':'1'}}}},"
+      + "'routing_table':{'indices':{'i1':{'shards':{'0':["
+      + "{'state':'STARTED','primary':true,'node':'n1','relocating_node':null,'shard':0,'index':'i1'},"
+      + "{'state':'STARTED','primary':false,'node':'n2','relocating_node':null,'shard':0,'index':'i1'}]}}}}}";
+
+  private static final String STATE_2 = "{'cluster_name':'es','version':5,'master_node':'n1',"
+      + "'nodes':{'n1':{'name':'node1','transport_address':'inet[/10.0.0.1:9300]'},'n3':{'name':'node3','transport_address':'inet[/10.0.0.3:9300]'}},"
+      + "'metadata':{'indices':{'i1':{'state':'open','settings':{'index.number_of_replicas':'2'}},'i2':{'state':'open','settings':{}}}},"
+      + "'routing_table':{'indices':{'i1':{'shards':{'0':["
+      + "{'state':'RELOCATING','primary':true,'node':'n1','relocating_node':'n3','shard':0,'index':'i1'},"
+      + "{'state':'UNASSIGNED','primary':false,'node':null,'relocating_node':null,'shard':0,'index':'i1'},"
+      + "{'state':'UNASSIGNED','primary':false,'node':null,'relocating_node':null,'shard':0,'index':'i1'}]}},"
+      + "'i2':{'shards':{'0':[{'state':'STARTED','primary':true,'node':'n3','relocating_node':null,'shard':0,'index':'i2'}]}}}}}";
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void process() throws Exception {
+    SysinfoClusterStateDiffer tested = new SysinfoClusterStateDiffer();
+    tested.fullSnapshotInterval = 1000;
+
+    // case - first read is full snapshot
+    Map<String, Object> doc = toMap(tested.process(json(STATE_1), 100));
+    Assert.assertEquals(true, doc.get("full_snapshot"));
+    Assert.assertEquals(1, doc.get("version"));
+    Assert.assertNotNull(doc.get("routing_table"));
+
+    // case - unchanged state is not stored
+    Assert.assertNull(tested.process(json(STATE_1), 200));
+
+    // case - changes only
+    doc = toMap(tested.process(json(STATE_2), 300));
+    Assert.assertEquals(false, doc.get("full_snapshot"));
+    Assert.assertEquals("es", doc.get("cluster_name"));
+    Assert.assertEquals(5, doc.get("version"));
+    Assert.assertEquals(1, doc.get("previous_version"));
+    Assert.assertFalse(doc.containsKey("master_node"));
+    Assert.assertFalse(doc.containsKey("routing_table"));
+    Assert.assertFalse(doc.containsKey("nodes"));
+    List<Map<String, Object>> nodes = (List<Map<String, Object>>) doc.get("nodes_added");
+    Assert.assertEquals(1, nodes.size());
+    Assert.assertEquals("n3", nodes.get(0).get("id"));
+    Assert.assertEquals("node3", nodes.get(0).get("name"));
+    Assert.assertEquals("inet[/10.0.0.3:9300]", nodes.get(0).get("transport_address"));
+    nodes = (List<Map<String, Object>>) doc.get("nodes_removed");
+    Assert.assertEquals(1, nodes.size());
+    Assert.assertEquals("n2", nodes.get(0).get("id"));
+    Assert.assertEquals("[i2]", doc.get("indices_created").toString());
+    Assert.assertFalse(doc.containsKey("indices_deleted"));
+    Assert.assertEquals("[i1]", doc.get("indices_metadata_changed").toString());
+    List<Map<String, Object>> shards = (List<Map<String, Object>>) doc.get("shards_started");
+    Assert.assertEquals(1, shards.size());
+    Assert.assertEquals("i2", shards.get(0).get("index"));
+    shards = (List<Map<String, Object>>) doc.get("shards_relocating");
+    Assert.assertEquals(1, shards.size());
+    Assert.assertEquals("n3", shards.get(0).get("relocating_node"));
+    Assert.assertEquals(2, ((List<Object>) doc.get("shards_unassigned")).size());
+    Assert.assertFalse(doc.containsKey("shards_initializing"));
+
+    // case - changes back, index deleted, master changed, only one of equal unassigned replicas started
+    String state3 = STATE_1.replace("'version':1", "'version':6").replace("'master_node':'n1'", "'master_node':'n2'")
+        .replace("{'state':'STARTED','primary':false,'node':'n2'",
+            "{'state':'UNASSIGNED','primary':false,'node':null,'relocating_node':null,'shard':0,'index':'i1'},"
+                + "{'state':'STARTED','primary':false,'node':'n2'");
+    doc = toMap(tested.process(json(state3), 400));
+    Assert.assertEquals("n2", doc.get("master_node"));
+    Assert.assertEquals("n1", doc.get("previous_master_node"));
+    Assert.assertEquals("[i2]", doc.get("indices_deleted").toString());
+    Assert.assertFalse(doc.containsKey("indices_created"));
+    Assert.assertFalse(doc.containsKey("shards_unassigned"));
+    Assert.assertEquals(2, ((List<Object>) doc.get("shards_started")).size());
+
+    // case - full snapshot after interval
+    doc = toMap(tested.process(json(STATE_2), 1100));
+    Assert.assertEquals(true, doc.get("full_snapshot"));
+    Assert.assertNotNull(doc.get("routing_table"));
+    doc = toMap(tested.process(json(STATE_1), 1200));
+    Assert.assertEquals(false, doc.get("full_snapshot"));
+
+    Map<String, Object> stats = tested.getStatistics();
+    Assert.assertEquals(1000l, stats.get("full_snapshot_interval"));
+    Assert.assertEquals(2l, stats.get("full_snapshots"));
+    Assert.assertEquals(3l, stats.get("diffs"));
+    Assert.assertEquals(1l, stats.get("unchanged"));
+  }
+
+  @Test
+  public void process_noFullSnapshotInterval() throws Exception {
+    SysinfoClusterStateDiffer tested = new SysinfoClusterStateDiffer();
+    tested.fullSnapshotInterval = 0;
+    Assert.assertEquals(true, toMap(tested.process(json(STATE_1), 100)).get("full_snapshot"));
+    Assert.assertEquals(false, toMap(tested.process(json(STATE_2), Long.MAX_VALUE)).get("full_snapshot"));
+  }
+
+  @Test
+  public void process_sectionsNotRead() throws Exception {
+    SysinfoClusterStateDiffer tested = new SysinfoClusterStateDiffer();
+    // only routing table read, so indices are taken from it
+    tested.process(json("{'cluster_name':'es','routing_table':{'indices':{'i1':{'shards':{}}}}}"), 100);
+    Map<String, Object> doc = toMap(tested.process(
+        json("{'cluster_name':'es','routing_table':{'indices':{'i2':{'shards':{}}}}}"), 200));
+    Assert.assertEquals("[i2]", doc.get("indices_created").toString());
+    Assert.assertEquals("[i1]", doc.get("indices_deleted").toString());
+    Assert.assertFalse(doc.containsKey("version"));
+    Assert.assertFalse(doc.containsKey("nodes_added"));
+    Assert.assertFalse(doc.containsKey("indices_metadata_changed"));
+    Assert.assertEquals(4, doc.size());
+  }
+
+  private static BytesReference json(String value) {
+    return new BytesArray(value.replace('\'', '"'));
+  }
+
+  private static Map<String, Object> toMap(BytesReference content) {
+    return XContentHelper.convertToMap(content, true).v2();
+  }
+
+}
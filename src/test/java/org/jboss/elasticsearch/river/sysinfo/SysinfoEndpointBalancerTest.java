@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.jboss.elasticsearch.river.sysinfo.SysinfoEndpointBalancer.Endpoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SysinfoEndpointBalancer}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoEndpointBalancerTest {
+
+  @Test
+  public void constructor() {
+    SysinfoEndpointBalancer tested = new SysinfoEndpointBalancer(Arrays.asList("http://n1/", "http://n2/"), 3);
+    Assert.assertEquals(2, tested.getEndpoints().size());
+    Assert.assertEquals(0, tested.getEndpoints().get(0).getIndex());
+    Assert.assertEquals("http://n2/", tested.getEndpoints().get(1).getUrlBase());
+    Assert.assertEquals(1, tested.getEndpoints().get(1).getIndex());
+
+    try {
+      new SysinfoEndpointBalancer(Collections.<String> emptyList(), 3);
+      Assert.fail("IllegalArgumentException must be thrown");
+    } catch (IllegalArgumentException e) {
+      // OK
+    }
+  }
+
+  @Test
+  public void select() {
+    SysinfoEndpointBalancer tested = new SysinfoEndpointBalancer(Arrays.asList("http://n1/", "http://n2/",
+        "http://n3/"), 2);
+    Endpoint e1 = tested.getEndpoints().get(0);
+    Endpoint e2 = tested.getEndpoints().get(1);
+    Endpoint e3 = tested.getEndpoints().get(2);
+
+    // case - least requests in flight wins
+    Assert.assertSame(e1, tested.select(null));
+    e1.requestStarted();
+    Assert.assertSame(e2, tested.select(null));
+    e2.requestStarted();
+    e3.requestStarted();
+    e3.requestStarted();
+    Assert.assertSame(e1, tested.select(null));
+    e1.requestFinished();
+    e2.requestFinished();
+    e3.requestFinished();
+    e3.requestFinished();
+
+    // case - lower latency wins for same requests in flight
+    e1.latency = 50;
+    e2.latency = 10;
+    e3.latency = 20;
+    Assert.assertSame(e2, tested.select(null));
+
+    // case - excluded endpoints
+    Assert.assertSame(e3, tested.select(Arrays.asList(e2)));
+    Assert.assertNull(tested.select(Arrays.asList(e1, e2, e3)));
+
+    // case - endpoint is ejected after consecutive failures
+    e2.requestFailed("failure 1");
+    Assert.assertTrue(e2.isHealthy());
+    Assert.assertSame(e2, tested.select(null));
+    e2.requestFailed("failure 2");
+    Assert.assertFalse(e2.isHealthy());
+    Assert.assertSame(e3, tested.select(null));
+    Assert.assertEquals(Arrays.asList(e2), tested.getEjectedEndpoints());
+
+    // case - ejected endpoint is selected only if no healthy one is available
+    Assert.assertSame(e2, tested.select(Arrays.asList(e1, e3)));
+
+    // case - failed probe keeps endpoint ejected, successful reinstates it
+    e2.probed("still down");
+    Assert.assertFalse(e2.isHealthy());
+    e2.probed(null);
+    Assert.assertTrue(e2.isHealthy());
+    Assert.assertTrue(tested.getEjectedEndpoints().isEmpty());
+
+    // case - successful request reinstates endpoint and resets failures
+    e3.requestFailed("failure");
+    e3.requestFailed("failure");
+    Assert.assertFalse(e3.isHealthy());
+    e3.requestSucceeded(e3.requestStarted());
+    e3.requestFinished();
+    Assert.assertTrue(e3.isHealthy());
+    e3.requestFailed("failure");
+    Assert.assertTrue(e3.isHealthy());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void getStatistics() {
+    SysinfoEndpointBalancer tested = new SysinfoEndpointBalancer(Arrays.asList("http://n1/", "http://n2/"), 1);
+    Endpoint e1 = tested.getEndpoints().get(0);
+    e1.requestSucceeded(e1.requestStarted() - 5000000);
+    e1.requestFinished();
+    tested.getEndpoints().get(1).requestStarted();
+    tested.getEndpoints().get(1).requestFailed("Connection refused");
+
+    Map<String, Object> stats = tested.getStatistics();
+    Map<String, Object> s1 = (Map<String, Object>) stats.get("http://n1/");
+    Assert.assertEquals(true, s1.get("healthy"));
+    Assert.assertEquals(0, s1.get("in_flight"));
+    Assert.assertEquals(1l, s1.get("requests"));
+    Assert.assertEquals(0l, s1.get("failures"));
+    Assert.assertTrue((Double) s1.get("latency") >= 5d);
+    Assert.assertNull(s1.get("last_error"));
+    Map<String, Object> s2 = (Map<String, Object>) stats.get("http://n2/");
+    Assert.assertEquals(false, s2.get("healthy"));
+    Assert.assertEquals(1, s2.get("in_flight"));
+    Assert.assertEquals(1l, s2.get("failures"));
+    Assert.assertEquals(1l, s2.get("ejections"));
+    Assert.assertEquals("Connection refused", s2.get("last_error"));
+  }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit test for {@link SysinfoFetchCoordinator}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoFetchCoordinatorTest {
+
+  @Test
+  public void readSysinfoValue_noWindow() throws Exception {
+    SourceClient scMock = mockSourceClient();
+    SysinfoFetchCoordinator tested = new SysinfoFetchCoordinator(scMock, 0);
+    Mockito.when(scMock.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null))).thenReturn(new BytesArray("{a}"),
+        new BytesArray("{b}"));
+
+    // case - sequential reads are not deduplicated
+    Assert.assertEquals("{a}", tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null));
+    Assert.assertEquals("{b}", tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null));
+    Mockito.verify(scMock, Mockito.times(2)).readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null));
+    Assert.assertTrue(tested.fetches.isEmpty());
+    Assert.assertEquals(2l, tested.getStatistics().get("fetches"));
+    Assert.assertEquals(0l, tested.getStatistics().get("deduplicated"));
+  }
+
+  @Test
+  public void readSysinfoValue_window() throws Exception {
+    SourceClient scMock = mockSourceClient();
+    SysinfoFetchCoordinator tested = new SysinfoFetchCoordinator(scMock, 100);
+    Map<String, String> params1 = new HashMap<String, String>();
+    params1.put("level", "shards");
+    Map<String, String> params2 = new HashMap<String, String>();
+    params2.put("level", "shards");
+    Mockito.when(scMock.readSysinfoBytes(Mockito.any(SysinfoRequestPlan.class))).thenReturn(
+        new BytesArray("{a}"), new BytesArray("{b}"), new BytesArray("{c}"), new BytesArray("{d}"));
+
+    // case - same type and equal params shared within window
+    Assert.assertEquals("{a}", tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, params1));
+    Assert.assertEquals("{a}", tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, params2));
+    Assert.assertEquals(1l, tested.getStatistics().get("deduplicated"));
+
+    // case - distinct type or params are not shared
+    Assert.assertEquals("{b}", tested.readSysinfoValue(SysinfoType.CLUSTER_STATE, params1));
+    Assert.assertEquals("{c}", tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, new HashMap<String, String>()));
+
+    // case - not shared after window
+    Thread.sleep(150);
+    Assert.assertEquals("{d}", tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, params1));
+    Assert.assertEquals(4l, tested.getStatistics().get("fetches"));
+
+    // case - close forgets results
+    tested.close();
+    Assert.assertTrue(tested.fetches.isEmpty());
+  }
+
+  @Test
+  public void readSysinfoValue_failureNotShared() throws Exception {
+    SourceClient scMock = mockSourceClient();
+    SysinfoFetchCoordinator tested = new SysinfoFetchCoordinator(scMock, 1000);
+    Mockito.when(scMock.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null))).thenThrow(new IOException("mocked"))
+        .thenReturn(new BytesArray("{a}"));
+
+    try {
+      tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null);
+      Assert.fail("IOException must be thrown");
+    } catch (IOException e) {
+      // OK
+    }
+    Assert.assertEquals("{a}", tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null));
+    Assert.assertEquals(0l, tested.getStatistics().get("deduplicated"));
+  }
+
+  @Test
+  public void readSysinfoValue_concurrent() throws Exception {
+    SourceClient scMock = mockSourceClient();
+    final SysinfoFetchCoordinator tested = new SysinfoFetchCoordinator(scMock, 0);
+    final CountDownLatch readStarted = new CountDownLatch(1);
+    Mockito.when(scMock.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null))).thenAnswer(new Answer<BytesReference>() {
+
+      @Override
+      public BytesReference answer(InvocationOnMock invocation) throws Throwable {
+        readStarted.countDown();
+        Thread.sleep(100);
+        return new BytesArray("{a}");
+      }
+    });
+
+    final String[] result = new String[1];
+    Thread t = new Thread() {
+      public void run() {
+        try {
+          result[0] = tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null);
+        } catch (Exception e) {
+          // nothing to do
+        }
+      }
+    };
+    t.start();
+    readStarted.await();
+
+    // case - read in progress is shared
+    Assert.assertEquals("{a}", tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null));
+    t.join();
+    Assert.assertEquals("{a}", result[0]);
+    Mockito.verify(scMock, Mockito.times(1)).readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null));
+    Assert.assertEquals(1l, tested.getStatistics().get("deduplicated"));
+  }
+
+  @Test
+  public void readSysinfoValue_responseCache() throws Exception {
+    SourceClient scMock = mockSourceClient();
+    Mockito.when(scMock.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null))).thenReturn(
+        new BytesArray("{a}"), new BytesArray("{b}"));
+    SysinfoResponseCache cache = new SysinfoResponseCache();
+    SysinfoFetchCoordinator tested = new SysinfoFetchCoordinator(scMock, 0);
+    SysinfoFetchCoordinator other = new SysinfoFetchCoordinator(scMock, 0);
+
+    // case - cache not used if TTL is 0
+    tested.setResponseCache(cache, "local", 0);
+    Assert.assertEquals("{a}", tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null));
+    Assert.assertEquals(0l, cache.getStatistics().get("misses"));
+
+    // case - cached information shared by coordinators of more rivers
+    tested.setResponseCache(cache, "local", 1000);
+    other.setResponseCache(cache, "local", 1000);
+    Assert.assertEquals("{b}", tested.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null));
+    Assert.assertEquals("{b}", other.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null));
+    Assert.assertEquals(1l, cache.getStatistics().get("hits"));
+    Mockito.verify(scMock, Mockito.times(2)).readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null));
+
+    // case - entries are kept while other river uses connection, dropped when last one is closed
+    tested.close();
+    Assert.assertEquals(1, cache.getStatistics().get("entries"));
+    other.close();
+    Assert.assertEquals(0, cache.getStatistics().get("entries"));
+    Assert.assertEquals(0l, cache.getStatistics().get("size"));
+  }
+
+  @SuppressWarnings("unchecked")
+  protected static SourceClient mockSourceClient() {
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Mockito.when(scMock.prepareRequestPlan(Mockito.any(SysinfoType.class), Mockito.anyMap())).thenAnswer(
+        new Answer<SysinfoRequestPlan>() {
+
+          @Override
+          public SysinfoRequestPlan answer(InvocationOnMock invocation) throws Throwable {
+            return new SysinfoRequestPlan((SysinfoType) invocation.getArguments()[0],
+                (Map<String, String>) invocation.getArguments()[1]);
+          }
+        });
+    return scMock;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void readSysinfoBytesAsync() throws Exception {
+    SourceClient scMock = mockSourceClient();
+    SysinfoFetchCoordinator tested = new SysinfoFetchCoordinator(scMock, 0);
+    SysinfoRequestPlan plan = tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+
+    // case - concurrent asynchronous reads share one read
+    ActionListener<BytesReference> listener1 = Mockito.mock(ActionListener.class);
+    ActionListener<BytesReference> listener2 = Mockito.mock(ActionListener.class);
+    Future<BytesReference> future1 = tested.readSysinfoBytesAsync(plan, listener1);
+    Future<BytesReference> future2 = tested.readSysinfoBytesAsync(plan, listener2);
+    ArgumentCaptor<ActionListener> captor = ArgumentCaptor.forClass(ActionListener.class);
+    Mockito.verify(scMock, Mockito.times(1)).readSysinfoBytesAsync(Mockito.eq(plan), captor.capture());
+    Assert.assertFalse(future1.isDone());
+    Assert.assertFalse(future2.isDone());
+
+    BytesReference value = new BytesArray("{a}");
+    captor.getValue().onResponse(value);
+    Assert.assertSame(value, future1.get());
+    Assert.assertSame(value, future2.get());
+    Mockito.verify(listener1).onResponse(value);
+    Mockito.verify(listener2).onResponse(value);
+    Assert.assertTrue(tested.fetches.isEmpty());
+    Assert.assertEquals(1l, tested.getStatistics().get("deduplicated"));
+
+    // case - failure is passed to all listeners
+    Future<BytesReference> future3 = tested.readSysinfoBytesAsync(plan, null);
+    Future<BytesReference> future4 = tested.readSysinfoBytesAsync(plan, listener2);
+    Mockito.verify(scMock, Mockito.times(2)).readSysinfoBytesAsync(Mockito.eq(plan), captor.capture());
+    IOException failure = new IOException("failed");
+    captor.getValue().onFailure(failure);
+    Mockito.verify(listener2).onFailure(failure);
+    try {
+      future3.get();
+      Assert.fail("ExecutionException must be thrown");
+    } catch (ExecutionException e) {
+      Assert.assertSame(failure, e.getCause());
+    }
+    Assert.assertTrue(future4.isDone());
+    Assert.assertTrue(tested.fetches.isEmpty());
+  }
+
+  @Test
+  public void prepareRequestPlan() {
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    SysinfoFetchCoordinator tested = new SysinfoFetchCoordinator(scMock, 0);
+    SysinfoRequestPlan plan = new SysinfoRequestPlan(SysinfoType.CLUSTER_STATE, null);
+    Mockito.when(scMock.prepareRequestPlan(SysinfoType.CLUSTER_STATE, null)).thenReturn(plan);
+    Assert.assertSame(plan, tested.prepareRequestPlan(SysinfoType.CLUSTER_STATE, null));
+  }
+
+}
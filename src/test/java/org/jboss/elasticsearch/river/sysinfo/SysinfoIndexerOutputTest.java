@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SysinfoIndexerOutput}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoIndexerOutputTest {
+
+  private static final String NODES_STATS = "{\"cluster_name\":\"c\",\"nodes\":{\"n1\":{\"name\":\"a\",\"jvm\":{\"uptime\":1},\"fs\":{\"total\":2}},\"n2\":{\"name\":\"b\",\"jvm\":{\"uptime\":3},\"fs\":{\"total\":4}}}}";
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void project() {
+    Map<String, Object> source = XContentHelper.convertToMap(new BytesArray(NODES_STATS), true).v2();
+
+    // case - no projection
+    {
+      SysinfoIndexerOutput tested = new SysinfoIndexerOutput("i", "t", null, null);
+      Assert.assertEquals(source, tested.project(source));
+    }
+
+    // case - includes with wildcard
+    {
+      SysinfoIndexerOutput tested = new SysinfoIndexerOutput("i", "t", new String[] { "cluster_name", "nodes.*.jvm" },
+          null);
+      Map<String, Object> ret = tested.project(source);
+      Assert.assertEquals("c", ret.get("cluster_name"));
+      Map<String, Object> n1 = (Map<String, Object>) ((Map<String, Object>) ret.get("nodes")).get("n1");
+      Assert.assertEquals(1, n1.size());
+      Assert.assertNotNull(n1.get("jvm"));
+      Map<String, Object> n2 = (Map<String, Object>) ((Map<String, Object>) ret.get("nodes")).get("n2");
+      Assert.assertEquals(1, n2.size());
+      Assert.assertNotNull(n2.get("jvm"));
+    }
+
+    // case - excludes
+    {
+      SysinfoIndexerOutput tested = new SysinfoIndexerOutput("i", "t", null, new String[] { "nodes.*.fs" });
+      Map<String, Object> ret = tested.project(source);
+      Map<String, Object> n1 = (Map<String, Object>) ((Map<String, Object>) ret.get("nodes")).get("n1");
+      Assert.assertEquals(2, n1.size());
+      Assert.assertNull(n1.get("fs"));
+    }
+  }
+
+}
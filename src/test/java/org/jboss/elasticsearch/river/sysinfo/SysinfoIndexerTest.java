@@ -5,16 +5,32 @@
  */
 package org.jboss.elasticsearch.river.sysinfo;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
 
-import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * Unit test {@link SysinfoIndexer}.
@@ -28,6 +44,8 @@ public class SysinfoIndexerTest {
     SourceClient scMock = Mockito.mock(SourceClient.class);
     Client tcMock = Mockito.mock(Client.class);
     Map<String, String> settings = new HashMap<String, String>();
+    SysinfoRequestPlan plan = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, settings);
+    Mockito.when(scMock.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, settings)).thenReturn(plan);
     SysinfoIndexer tested = new SysinfoIndexer("my name", scMock, tcMock, SysinfoType.CLUSTER_HEALTH, "my index",
         "my type", 125, settings);
 
@@ -39,6 +57,7 @@ public class SysinfoIndexerTest {
     Assert.assertEquals("my type", tested.typeName);
     Assert.assertEquals(125, tested.indexingPeriod);
     Assert.assertEquals(settings, tested.params);
+    Assert.assertSame(plan, tested.requestPlan);
     Assert.assertEquals(true, tested.closed);
 
   }
@@ -54,21 +73,717 @@ public class SysinfoIndexerTest {
     SysinfoIndexer tested = new SysinfoIndexer("testindexer", scMock, tcMock);
     tested.infoType = SysinfoType.CLUSTER_HEALTH;
     tested.params = paramsMock;
-    Mockito.when(scMock.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, paramsMock)).thenReturn("{test : test 2}");
+    tested.requestPlan = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, paramsMock);
+    BytesReference content = new BytesArray("{test : test 2}");
+    Mockito.when(scMock.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, paramsMock))).thenReturn(content);
 
     IndexRequestBuilder irbMock = Mockito.mock(IndexRequestBuilder.class);
     Mockito.when(tcMock.prepareIndex(tested.indexName, tested.typeName)).thenReturn(irbMock);
-    Mockito.when(irbMock.setSource("{test : test 2}")).thenReturn(irbMock);
-    ListenableActionFuture lafMock = Mockito.mock(ListenableActionFuture.class);
-    Mockito.when(irbMock.execute()).thenReturn(lafMock);
+    Mockito.when(irbMock.setSource(content)).thenReturn(irbMock);
+    IndexRequest ir = new IndexRequest();
+    Mockito.when(irbMock.request()).thenReturn(ir);
+    ArgumentCaptor<ActionListener> listener = ArgumentCaptor.forClass(ActionListener.class);
 
     tested.processLoopTask();
 
-    Mockito.verify(scMock).readSysinfoValue(SysinfoType.CLUSTER_HEALTH, paramsMock);
+    Mockito.verify(scMock).readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, paramsMock));
     Mockito.verify(tcMock).prepareIndex(tested.indexName, tested.typeName);
-    Mockito.verify(irbMock).setSource("{test : test 2}");
-    Mockito.verify(irbMock).execute();
-    Mockito.verify(lafMock).actionGet();
+    Mockito.verify(irbMock).setSource(content);
+    Mockito.verify(tcMock).index(Mockito.eq(ir), listener.capture());
+    Mockito.verify(irbMock, Mockito.never()).setTimestamp(Mockito.anyString());
+    Assert.assertEquals(1, tested.inflightWrites);
+    listener.getValue().onResponse(null);
+    Assert.assertEquals(0, tested.inflightWrites);
+    Assert.assertEquals(1, tested.writesCount);
+
+    // case - slot timestamp used in aligned mode
+    Mockito.reset(irbMock, tcMock);
+    Mockito.when(tcMock.prepareIndex(tested.indexName, tested.typeName)).thenReturn(irbMock);
+    Mockito.when(irbMock.setSource(content)).thenReturn(irbMock);
+    Mockito.when(irbMock.request()).thenReturn(ir);
+    tested.aligned = true;
+    tested.lastSlot = 20000;
+    tested.processLoopTask();
+    Mockito.verify(irbMock).setTimestamp("20000");
+    Mockito.verify(tcMock).index(Mockito.eq(ir), listener.capture());
+    listener.getValue().onFailure(new Exception("mocked failure"));
+    Assert.assertEquals(0, tested.inflightWrites);
+    Assert.assertEquals(1, tested.writesCount);
+    Assert.assertEquals(1, tested.writeFailuresCount);
+
+    // case - exception from write call is counted as failure
+    Mockito.reset(tcMock);
+    Mockito.when(tcMock.prepareIndex(tested.indexName, tested.typeName)).thenReturn(irbMock);
+    Mockito.doThrow(new RuntimeException("mocked exception")).when(tcMock)
+        .index(Mockito.any(IndexRequest.class), Mockito.any(ActionListener.class));
+    tested.processLoopTask();
+    Assert.assertEquals(0, tested.inflightWrites);
+    Assert.assertEquals(2, tested.writeFailuresCount);
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test
+  public void processLoopTask_clusterStateChanges() throws InterruptedException, Exception {
+
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Client tcMock = Mockito.mock(Client.class);
+    SysinfoRequestPlan plan = new SysinfoRequestPlan(SysinfoType.CLUSTER_STATE, null);
+    Mockito.when(scMock.prepareRequestPlan(SysinfoType.CLUSTER_STATE, null)).thenReturn(plan);
+
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", scMock, tcMock, SysinfoType.CLUSTER_STATE_CHANGES, "i1",
+        "t1", 1000, null);
+    Assert.assertSame(plan, tested.requestPlan);
+    Assert.assertNotNull(tested.stateDiffer);
+    Mockito.when(scMock.readSysinfoBytes(plan)).thenReturn(new BytesArray("{\"version\":1}"),
+        new BytesArray("{\"version\":1}"), new BytesArray("{\"version\":2}"));
+    IndexRequestBuilder irb1 = new IndexRequestBuilder(tcMock, "i1").setType("t1");
+    IndexRequestBuilder irb2 = new IndexRequestBuilder(tcMock, "i1").setType("t1");
+    Mockito.when(tcMock.prepareIndex("i1", "t1")).thenReturn(irb1, irb2);
+
+    tested.processLoopTask();
+    tested.processLoopTask();
+    tested.processLoopTask();
+
+    // unchanged state is not stored
+    ArgumentCaptor<IndexRequest> request = ArgumentCaptor.forClass(IndexRequest.class);
+    Mockito.verify(tcMock, Mockito.times(2)).index(request.capture(), Mockito.any(ActionListener.class));
+    Assert.assertEquals("{\"full_snapshot\":true,\"version\":1}", request.getAllValues().get(0).source().toUtf8());
+    Assert.assertEquals("{\"full_snapshot\":false,\"version\":2,\"previous_version\":1}", request.getAllValues()
+        .get(1).source().toUtf8());
+    Map<String, Object> stats = (Map<String, Object>) tested.getStatistics().get("state_changes");
+    Assert.assertEquals(1l, stats.get("unchanged"));
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test
+  public void run_asyncRead() throws Exception {
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Client tcMock = Mockito.mock(Client.class);
+    ScheduledExecutorService schedulerMock = Mockito.mock(ScheduledExecutorService.class);
+
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", scMock, tcMock);
+    tested.infoType = SysinfoType.CLUSTER_HEALTH;
+    tested.indexName = "i1";
+    tested.typeName = "t1";
+    tested.indexingPeriod = 1000;
+    tested.requestPlan = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+    tested.asyncRead = true;
+    tested.scheduler = schedulerMock;
+    tested.closed = false;
+    IndexRequestBuilder irb = new IndexRequestBuilder(tcMock, "i1").setType("t1");
+    Mockito.when(tcMock.prepareIndex("i1", "t1")).thenReturn(irb);
+
+    // case - scheduler thread doesn't wait for read
+    tested.run();
+    ArgumentCaptor<ActionListener> listener = ArgumentCaptor.forClass(ActionListener.class);
+    Mockito.verify(scMock).readSysinfoBytesAsync(Mockito.eq(tested.requestPlan), listener.capture());
+    Mockito.verify(scMock, Mockito.never()).readSysinfoBytes(Mockito.any(SysinfoRequestPlan.class));
+    Assert.assertTrue(tested.running);
+    Assert.assertEquals(0, tested.cyclesCount);
+
+    // case - information is stored and next cycle scheduled in scheduler when read completes
+    listener.getValue().onResponse(new BytesArray("{\"status\":\"green\"}"));
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    Mockito.verify(schedulerMock).execute(task.capture());
+    Mockito.verify(tcMock, Mockito.never()).index(Mockito.any(IndexRequest.class), Mockito.any(ActionListener.class));
+    task.getValue().run();
+    Mockito.verify(tcMock).index(Mockito.any(IndexRequest.class), Mockito.any(ActionListener.class));
+    Assert.assertFalse(tested.running);
+    Assert.assertEquals(1, tested.cyclesCount);
+    Mockito.verify(schedulerMock).schedule(Mockito.eq(tested), Mockito.anyLong(), Mockito.eq(TimeUnit.MILLISECONDS));
+
+    // case - failed read finishes cycle
+    Mockito.reset(schedulerMock);
+    tested.run();
+    Mockito.verify(scMock, Mockito.times(2)).readSysinfoBytesAsync(Mockito.eq(tested.requestPlan), listener.capture());
+    listener.getValue().onFailure(new IOException("failed"));
+    Mockito.verify(schedulerMock).execute(task.capture());
+    task.getValue().run();
+    Mockito.verify(tcMock, Mockito.times(1)).index(Mockito.any(IndexRequest.class), Mockito.any(ActionListener.class));
+    Assert.assertFalse(tested.running);
+    Assert.assertEquals(2, tested.cyclesCount);
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test
+  public void processLoopTask_split() throws InterruptedException, Exception {
+
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Client tcMock = Mockito.mock(Client.class);
+
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", scMock, tcMock);
+    tested.infoType = SysinfoType.INDICES_SEGMENTS;
+    tested.indexName = "i1";
+    tested.typeName = "t1";
+    tested.requestPlan = new SysinfoRequestPlan(SysinfoType.INDICES_SEGMENTS, null);
+    tested.splitter = new SysinfoResponseSplitter("indices");
+    tested.closed = false;
+    // documents are never dropped from full queue, cycle waits instead
+    tested.writeQueuePolicy = WriteQueuePolicy.DROP_NEWEST;
+    tested.writeQueueSize = 0;
+    tested.maxInflightWrites = 1;
+    XContentParser parser = Mockito.spy(XContentHelper.createParser(new BytesArray(
+        "{\"cluster_name\":\"es\",\"indices\":{\"a\":{\"shards\":{}},\"b\":{\"shards\":{}}}}")));
+    Mockito.when(scMock.readSysinfoParser(tested.requestPlan)).thenReturn(parser);
+    IndexRequestBuilder irb1 = new IndexRequestBuilder(tcMock, "i1").setType("t1");
+    IndexRequestBuilder irb2 = new IndexRequestBuilder(tcMock, "i1").setType("t1");
+    IndexRequestBuilder irb3 = new IndexRequestBuilder(tcMock, "i1").setType("t1");
+    Mockito.when(tcMock.prepareIndex("i1", "t1")).thenReturn(irb1, irb2, irb3);
+    ArgumentCaptor<IndexRequest> request = ArgumentCaptor.forClass(IndexRequest.class);
+    Mockito.doAnswer(new Answer<Object>() {
+
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        // write completed asynchronously later
+        final ActionListener<IndexResponse> l = (ActionListener<IndexResponse>) invocation.getArguments()[1];
+        new Thread() {
+          public void run() {
+            try {
+              Thread.sleep(20);
+            } catch (InterruptedException e) {
+              return;
+            }
+            l.onResponse(null);
+          };
+        }.start();
+        return null;
+      }
+    }).when(tcMock).index(request.capture(), Mockito.any(ActionListener.class));
+
+    tested.processLoopTask();
+
+    Mockito.verify(scMock, Mockito.never()).readSysinfoBytes(Mockito.any(SysinfoRequestPlan.class));
+    Mockito.verify(parser).close();
+    Mockito.verify(tcMock, Mockito.times(3)).index(Mockito.any(IndexRequest.class), Mockito.any(ActionListener.class));
+    Assert.assertEquals("{\"cluster_name\":\"es\",\"indices\":{\"a\":{\"shards\":{}}}}", request.getAllValues()
+        .get(0).source().toUtf8());
+    Assert.assertEquals("{\"cluster_name\":\"es\",\"indices\":{\"b\":{\"shards\":{}}}}", request.getAllValues()
+        .get(1).source().toUtf8());
+    Assert.assertEquals("{\"cluster_name\":\"es\",\"indices\":{}}", request.getAllValues().get(2).source()
+        .toUtf8());
+    Assert.assertEquals(0l, tested.writesDroppedCount);
+    Assert.assertTrue(tested.writeBlockedTime > 0);
+    Map<String, Object> stats = (Map<String, Object>) tested.getStatistics().get("split");
+    Assert.assertEquals(3l, stats.get("documents"));
+  }
+
+  @Test
+  public void processLoopTask_splitBulkWriterBounded() throws Exception {
+
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    final Client tcMock = Mockito.mock(Client.class);
+    // target never completes bulks
+    SysinfoBulkWriter bw = new SysinfoBulkWriter(tcMock, null, 5, 5 * 1024 * 1024, 0, 0, 1);
+
+    final SysinfoIndexer tested = new SysinfoIndexer("testindexer", scMock, tcMock);
+    tested.infoType = SysinfoType.INDICES_SEGMENTS;
+    tested.indexName = "i1";
+    tested.typeName = "t1";
+    tested.requestPlan = new SysinfoRequestPlan(SysinfoType.INDICES_SEGMENTS, null);
+    tested.splitter = new SysinfoResponseSplitter("indices");
+    tested.closed = false;
+    tested.writeQueueSize = 2;
+    tested.maxInflightWrites = 1;
+    tested.bulkWriter = bw;
+    StringBuilder json = new StringBuilder("{\"indices\":{");
+    for (int i = 0; i < 100; i++) {
+      json.append(i > 0 ? "," : "").append("\"index").append(i).append("\":{\"shards\":{}}");
+    }
+    json.append("}}");
+    Mockito.when(scMock.readSysinfoParser(tested.requestPlan)).thenReturn(
+        XContentHelper.createParser(new BytesArray(json.toString())));
+    Mockito.when(tcMock.prepareIndex("i1", "t1")).thenAnswer(new Answer<IndexRequestBuilder>() {
+
+      @Override
+      public IndexRequestBuilder answer(InvocationOnMock invocation) throws Throwable {
+        return new IndexRequestBuilder(tcMock, "i1").setType("t1");
+      }
+    });
+
+    final Exception[] failure = new Exception[1];
+    Thread cycle = new Thread() {
+      public void run() {
+        try {
+          tested.processLoopTask();
+        } catch (Exception e) {
+          failure[0] = e;
+        }
+      };
+    };
+    cycle.start();
+    cycle.join(500);
+
+    // cycle waits for space in write queue, documents held by indexer and bulk writer are bounded
+    Assert.assertTrue(cycle.isAlive());
+    Mockito.verify(tcMock, Mockito.times(1)).bulk(Mockito.any(BulkRequest.class), Mockito.<ActionListener<BulkResponse>> any());
+    Assert.assertEquals(5, bw.getStatistics().get("buffered_actions"));
+    Assert.assertEquals(2, tested.writeQueue.size());
+    Assert.assertEquals(0, tested.writesDroppedCount);
+    // from 100 indices only documents of running bulk, bulk writer buffer, write queue and the one waiting for space
+    // are built
+    Mockito.verify(tcMock, Mockito.times(5 + 5 + 2 + 1)).prepareIndex("i1", "t1");
+
+    // case - closed indexer releases blocked cycle
+    tested.close();
+    cycle.join(5000);
+    Assert.assertFalse(cycle.isAlive());
+    Assert.assertNull(failure[0]);
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test
+  public void processLoopTask_outputs() throws InterruptedException, Exception {
+
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Client tcMock = Mockito.mock(Client.class);
+
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", scMock, tcMock);
+    tested.infoType = SysinfoType.CLUSTER_NODES_STATS;
+    tested.requestPlan = new SysinfoRequestPlan(SysinfoType.CLUSTER_NODES_STATS, null);
+    tested.outputs = new ArrayList<SysinfoIndexerOutput>();
+    tested.outputs.add(new SysinfoIndexerOutput("i1", "t1", new String[] { "a" }, null));
+    tested.outputs.add(new SysinfoIndexerOutput("i2", "t2", new String[] { "b" }, null));
+    tested.aligned = true;
+    tested.lastSlot = 20000;
+    Mockito.when(scMock.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_NODES_STATS, null))).thenReturn(
+        new BytesArray("{\"a\":1,\"b\":2}"));
+    IndexRequestBuilder irb1 = new IndexRequestBuilder(tcMock, "i1").setType("t1");
+    IndexRequestBuilder irb2 = new IndexRequestBuilder(tcMock, "i2").setType("t2");
+    Mockito.when(tcMock.prepareIndex("i1", "t1")).thenReturn(irb1);
+    Mockito.when(tcMock.prepareIndex("i2", "t2")).thenReturn(irb2);
+
+    tested.processLoopTask();
+
+    Mockito.verify(scMock, Mockito.times(1)).readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_NODES_STATS, null));
+    ArgumentCaptor<IndexRequest> request = ArgumentCaptor.forClass(IndexRequest.class);
+    Mockito.verify(tcMock, Mockito.times(2)).index(request.capture(), Mockito.any(ActionListener.class));
+    IndexRequest r1 = request.getAllValues().get(0);
+    Assert.assertEquals("i1", r1.index());
+    Assert.assertEquals("{\"a\":1}", r1.source().toUtf8());
+    Assert.assertEquals("20000", r1.timestamp());
+    IndexRequest r2 = request.getAllValues().get(1);
+    Assert.assertEquals("i2", r2.index());
+    Assert.assertEquals("{\"b\":2}", r2.source().toUtf8());
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test
+  public void enqueueWrite_dropPolicies() throws Exception {
+    Client tcMock = Mockito.mock(Client.class);
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", null, tcMock);
+    tested.maxInflightWrites = 1;
+    tested.writeQueueSize = 2;
+    IndexRequest ir1 = new IndexRequest();
+    IndexRequest ir2 = new IndexRequest();
+    IndexRequest ir3 = new IndexRequest();
+    IndexRequest ir4 = new IndexRequest();
+    IndexRequest ir5 = new IndexRequest();
+
+    // case - first write issued, next ones queued
+    tested.enqueueWrite(ir1);
+    tested.enqueueWrite(ir2);
+    tested.enqueueWrite(ir3);
+    ArgumentCaptor<ActionListener> listener = ArgumentCaptor.forClass(ActionListener.class);
+    Mockito.verify(tcMock).index(Mockito.eq(ir1), listener.capture());
+    Mockito.verifyNoMoreInteractions(tcMock);
+    Assert.assertEquals(1, tested.inflightWrites);
+    Assert.assertEquals(2, tested.getStatistics().get("write_queue_depth"));
+
+    // case - DROP_OLDEST
+    tested.writeQueuePolicy = WriteQueuePolicy.DROP_OLDEST;
+    tested.enqueueWrite(ir4);
+    Assert.assertEquals(1, tested.writesDroppedCount);
+    Assert.assertEquals(ir3, tested.writeQueue.peekFirst());
+    Assert.assertEquals(ir4, tested.writeQueue.peekLast());
+
+    // case - DROP_NEWEST
+    tested.writeQueuePolicy = WriteQueuePolicy.DROP_NEWEST;
+    tested.enqueueWrite(ir5);
+    Assert.assertEquals(2, tested.writesDroppedCount);
+    Assert.assertEquals(ir3, tested.writeQueue.peekFirst());
+    Assert.assertEquals(ir4, tested.writeQueue.peekLast());
+
+    // case - write completion issues next queued write
+    listener.getValue().onResponse(null);
+    Mockito.verify(tcMock).index(Mockito.eq(ir3), Mockito.any(ActionListener.class));
+    Assert.assertEquals(1, tested.inflightWrites);
+    Assert.assertEquals(1, tested.writeQueue.size());
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test
+  public void enqueueWrite_blockPolicy() throws Exception {
+    Client tcMock = Mockito.mock(Client.class);
+    final SysinfoIndexer tested = new SysinfoIndexer("testindexer", null, tcMock);
+    tested.maxInflightWrites = 1;
+    tested.writeQueueSize = 0;
+    tested.writeQueuePolicy = WriteQueuePolicy.BLOCK;
+    tested.closed = false;
+    IndexRequest ir1 = new IndexRequest();
+    final IndexRequest ir2 = new IndexRequest();
+
+    tested.enqueueWrite(ir1);
+    final ArgumentCaptor<ActionListener> listener = ArgumentCaptor.forClass(ActionListener.class);
+    Mockito.verify(tcMock).index(Mockito.eq(ir1), listener.capture());
+
+    // case - collector blocked until write completes
+    Thread t = new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          // nothing to do
+        }
+        listener.getValue().onResponse(null);
+      }
+    };
+    t.start();
+    tested.enqueueWrite(ir2);
+    Mockito.verify(tcMock).index(Mockito.eq(ir2), Mockito.any(ActionListener.class));
+    Assert.assertTrue(tested.writeBlockedTime >= 90);
+    Assert.assertEquals(0, tested.writesDroppedCount);
+
+    // case - blocked collector released by close
+    t = new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          // nothing to do
+        }
+        tested.close();
+      }
+    };
+    t.start();
+    tested.enqueueWrite(new IndexRequest());
+    Assert.assertTrue(tested.writeQueue.isEmpty());
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test
+  public void processLoopTask_bulkWriter() throws InterruptedException, Exception {
+
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Client tcMock = Mockito.mock(Client.class);
+    SysinfoBulkWriter bwMock = Mockito.mock(SysinfoBulkWriter.class);
+
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", scMock, tcMock);
+    tested.infoType = SysinfoType.CLUSTER_HEALTH;
+    tested.requestPlan = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+    tested.bulkWriter = bwMock;
+    BytesReference content = new BytesArray("{test : test 2}");
+    Mockito.when(scMock.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null))).thenReturn(content);
+    IndexRequestBuilder irbMock = Mockito.mock(IndexRequestBuilder.class);
+    Mockito.when(tcMock.prepareIndex(tested.indexName, tested.typeName)).thenReturn(irbMock);
+    Mockito.when(irbMock.setSource(content)).thenReturn(irbMock);
+    IndexRequest ir = new IndexRequest();
+    Mockito.when(irbMock.request()).thenReturn(ir);
+    Mockito.when(bwMock.add(Mockito.eq(ir), Mockito.any(ActionListener.class))).thenReturn(true);
+
+    tested.processLoopTask();
+    ArgumentCaptor<ActionListener> listener = ArgumentCaptor.forClass(ActionListener.class);
+    Mockito.verify(bwMock).add(Mockito.eq(ir), listener.capture());
+    Mockito.verify(tcMock, Mockito.never()).index(Mockito.any(IndexRequest.class), Mockito.any(ActionListener.class));
+    // write slot is released as soon as bulk writer accepts the document
+    Assert.assertEquals(0, tested.inflightWrites);
+
+    // case - item failure reported by bulk writer is counted
+    listener.getValue().onFailure(new Exception("mocked failure"));
+    Assert.assertEquals(0, tested.inflightWrites);
+    Assert.assertEquals(1, tested.writeFailuresCount);
+  }
+
+  @Test
+  public void enqueueWrite_bulkWriterNoDrops() throws InterruptedException {
+    Client tcMock = Mockito.mock(Client.class);
+    ScheduledExecutorService schedulerMock = Mockito.mock(ScheduledExecutorService.class);
+    // flush interval much longer than indexing period, so documents wait in bulk buffer
+    SysinfoBulkWriter bw = new SysinfoBulkWriter(tcMock, schedulerMock, 100, 5 * 1024 * 1024, 5000, 0, 1);
+
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", null, tcMock);
+    tested.closed = false;
+    tested.indexingPeriod = 1000;
+    tested.maxInflightWrites = 1;
+    tested.writeQueueSize = 1;
+    tested.bulkWriter = bw;
+
+    for (int i = 0; i < 10; i++) {
+      tested.enqueueWrite(new IndexRequest("idx", "type").source("{\"i\":" + i + "}"), WriteQueuePolicy.DROP_OLDEST);
+    }
+    Assert.assertEquals(0, tested.writesDroppedCount);
+    Assert.assertEquals(0, tested.inflightWrites);
+    Assert.assertTrue(tested.writeQueue.isEmpty());
+    Assert.assertEquals(10, bw.getStatistics().get("buffered_actions"));
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test
+  public void enqueueWrite_bulkWriterFull() throws InterruptedException {
+    Client tcMock = Mockito.mock(Client.class);
+    // target never completes bulks on its own, max one bulk of one document in flight
+    SysinfoBulkWriter bw = new SysinfoBulkWriter(tcMock, null, 1, 5 * 1024 * 1024, 0, 0, 1);
+
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", null, tcMock);
+    tested.closed = false;
+    tested.maxInflightWrites = 1;
+    tested.writeQueueSize = 2;
+    tested.bulkWriter = bw;
+
+    // first document is sent, second waits in writer buffer, next wait in indexer write queue
+    for (int i = 0; i < 4; i++) {
+      tested.enqueueWrite(new IndexRequest("idx", "type").source("{\"i\":" + i + "}"), WriteQueuePolicy.DROP_OLDEST);
+    }
+    Assert.assertEquals(0, tested.writesDroppedCount);
+    Assert.assertTrue(tested.writerFull);
+    Assert.assertEquals(2, tested.writeQueue.size());
+    Assert.assertEquals(1, bw.getStatistics().get("buffered_actions"));
+
+    // case - queue policy applies when writer is full
+    tested.enqueueWrite(new IndexRequest("idx", "type").source("{\"i\":4}"), WriteQueuePolicy.DROP_OLDEST);
+    Assert.assertEquals(1, tested.writesDroppedCount);
+    Assert.assertEquals(2, tested.writeQueue.size());
+    Assert.assertEquals("{\"i\":3}", tested.writeQueue.peekFirst().source().toUtf8());
+
+    // case - completed bulk lets queued write into writer
+    ArgumentCaptor<ActionListener> bulkListener = ArgumentCaptor.forClass(ActionListener.class);
+    Mockito.verify(tcMock).bulk(Mockito.any(BulkRequest.class), bulkListener.capture());
+    bulkListener.getValue().onFailure(new Exception("mocked"));
+    Assert.assertEquals(1, tested.writeFailuresCount);
+    Assert.assertEquals(1, tested.writeQueue.size());
+    Assert.assertEquals("{\"i\":4}", tested.writeQueue.peekFirst().source().toUtf8());
+    Assert.assertTrue(tested.writerFull);
+    Assert.assertEquals(0, tested.inflightWrites);
+  }
+
+  @Test
+  public void nextAlignedSlot() {
+    Assert.assertEquals(10000, SysinfoIndexer.nextAlignedSlot(0, 10000));
+    Assert.assertEquals(10000, SysinfoIndexer.nextAlignedSlot(1, 10000));
+    Assert.assertEquals(20000, SysinfoIndexer.nextAlignedSlot(10000, 10000));
+    Assert.assertEquals(20000, SysinfoIndexer.nextAlignedSlot(19999, 10000));
+    Assert.assertEquals(1500, SysinfoIndexer.nextAlignedSlot(1500, 0));
+  }
+
+  @Test
+  public void prepareNextRunDelay_aligned() {
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", null, null);
+    tested.aligned = true;
+    tested.indexingPeriod = 60 * 60 * 1000;
+
+    // case - next slot after current time
+    long now = System.currentTimeMillis();
+    tested.lastSlot = SysinfoIndexer.nextAlignedSlot(now, tested.indexingPeriod) - tested.indexingPeriod;
+    long delay = tested.prepareNextRunDelay();
+    Assert.assertEquals(tested.lastSlot + tested.indexingPeriod, tested.nextSlot);
+    Assert.assertTrue(delay > 0 && delay <= tested.indexingPeriod);
+
+    // case - missed slots are skipped
+    tested.lastSlot = tested.lastSlot - 5 * tested.indexingPeriod;
+    tested.prepareNextRunDelay();
+    Assert.assertEquals(tested.lastSlot + 6 * tested.indexingPeriod, tested.nextSlot);
+
+    // case - no second run in the same slot if started sooner
+    tested.lastSlot = tested.nextSlot;
+    delay = tested.prepareNextRunDelay();
+    Assert.assertEquals(tested.lastSlot + tested.indexingPeriod, tested.nextSlot);
+    Assert.assertTrue(delay > tested.indexingPeriod);
+
+    // case - phase shifts run from slot
+    tested.phase = tested.indexingPeriod + 1000;
+    now = System.currentTimeMillis();
+    tested.lastSlot = SysinfoIndexer.nextAlignedSlot(now - 1000, tested.indexingPeriod) - tested.indexingPeriod;
+    delay = tested.prepareNextRunDelay();
+    Assert.assertEquals(tested.lastSlot + tested.indexingPeriod, tested.nextSlot);
+    long runAt = System.currentTimeMillis() + delay;
+    Assert.assertTrue(Math.abs(tested.nextSlot + 1000 - runAt) < 50);
+  }
+
+  @Test
+  public void prepareNextRunDelay_jitter() {
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", null, null);
+    tested.indexingPeriod = 10000;
+
+    // case - no jitter
+    tested.lastRunStart = System.currentTimeMillis();
+    long delay = tested.prepareNextRunDelay();
+    Assert.assertTrue(delay > 9900 && delay <= 10000);
+    Assert.assertEquals(0, tested.nextJitter);
+
+    // case - jitter in range and not accumulated from last run
+    tested.jitter = 1000;
+    for (int i = 0; i < 20; i++) {
+      tested.lastJitter = 500;
+      tested.lastRunStart = System.currentTimeMillis() + 500;
+      delay = tested.prepareNextRunDelay();
+      Assert.assertTrue(tested.nextJitter >= 0 && tested.nextJitter < 1000);
+      Assert.assertTrue(Math.abs(10000 + tested.nextJitter - delay) < 50);
+    }
+  }
+
+  @Test
+  public void countMissedCycles() {
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", null, null);
+    tested.indexingPeriod = 10000;
+    long now = System.currentTimeMillis();
+
+    // case - not run yet
+    Assert.assertEquals(0, tested.countMissedCycles(now));
+
+    // case - no overrun
+    tested.lastRunStart = now - 9999;
+    Assert.assertEquals(0, tested.countMissedCycles(now));
+
+    // case - overrun
+    tested.lastRunStart = now - 10000;
+    Assert.assertEquals(1, tested.countMissedCycles(now));
+    tested.lastRunStart = now - 35000;
+    Assert.assertEquals(3, tested.countMissedCycles(now));
+
+    // case - jitter of last cycle is not counted
+    tested.lastJitter = 6000;
+    Assert.assertEquals(4, tested.countMissedCycles(now));
+
+    // case - aligned mode counts from last slot
+    tested.aligned = true;
+    tested.lastSlot = now - 25000;
+    Assert.assertEquals(2, tested.countMissedCycles(now));
+    tested.phase = 6000;
+    Assert.assertEquals(1, tested.countMissedCycles(now));
+
+    // case - no period
+    tested.indexingPeriod = 0;
+    Assert.assertEquals(0, tested.countMissedCycles(now));
+  }
+
+  @Test
+  public void prepareNextRunDelay_overrunPolicy() {
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", null, null);
+    tested.indexingPeriod = 10000;
+
+    // case - SKIP waits for next regular start time
+    tested.overrunPolicy = OverrunPolicy.SKIP;
+    tested.lastRunStart = System.currentTimeMillis() - 25000;
+    long delay = tested.prepareNextRunDelay();
+    Assert.assertTrue(delay > 4900 && delay <= 5000);
+
+    // case - COALESCE runs immediately
+    tested.overrunPolicy = OverrunPolicy.COALESCE;
+    Assert.assertEquals(0, tested.prepareNextRunDelay());
+
+    // case - STRETCH waits full period
+    tested.overrunPolicy = OverrunPolicy.STRETCH;
+    delay = tested.prepareNextRunDelay();
+    Assert.assertTrue(delay > 9900 && delay <= 10000);
+
+    // case - policy is not applied if not overrun
+    tested.lastRunStart = System.currentTimeMillis() - 2000;
+    delay = tested.prepareNextRunDelay();
+    Assert.assertTrue(delay > 7900 && delay <= 8000);
+
+    // case - aligned mode
+    tested.aligned = true;
+    tested.indexingPeriod = 60 * 60 * 1000;
+    long now = System.currentTimeMillis();
+    long currentSlot = SysinfoIndexer.nextAlignedSlot(now, tested.indexingPeriod) - tested.indexingPeriod;
+    tested.lastRunStart = now - 3 * tested.indexingPeriod;
+    tested.lastSlot = currentSlot - 3 * tested.indexingPeriod;
+
+    tested.overrunPolicy = OverrunPolicy.SKIP;
+    tested.prepareNextRunDelay();
+    Assert.assertEquals(currentSlot + tested.indexingPeriod, tested.nextSlot);
+
+    tested.overrunPolicy = OverrunPolicy.COALESCE;
+    Assert.assertEquals(0, tested.prepareNextRunDelay());
+    Assert.assertEquals(currentSlot, tested.nextSlot);
+
+    tested.overrunPolicy = OverrunPolicy.STRETCH;
+    tested.prepareNextRunDelay();
+    Assert.assertEquals(currentSlot + 2 * tested.indexingPeriod, tested.nextSlot);
+  }
+
+  @Test
+  public void cycleFinished_stretch() {
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", null, null);
+    tested.indexingPeriod = 10000;
+    tested.overrunPolicy = OverrunPolicy.STRETCH;
+
+    // case - period is stretched to fit overrunning cycle
+    tested.lastRunStart = System.currentTimeMillis() - 25000;
+    tested.cycleFinished();
+    Assert.assertEquals(1, tested.overrunsCount);
+    Assert.assertEquals(30000, tested.effectivePeriod());
+    long delay = tested.prepareNextRunDelay();
+    Assert.assertTrue(delay > 4900 && delay <= 5000);
+
+    // case - cycle fitting into stretched period is not overrun
+    tested.lastRunStart = System.currentTimeMillis() - 25000;
+    tested.cycleFinished();
+    Assert.assertEquals(1, tested.overrunsCount);
+    Assert.assertEquals(30000, tested.effectivePeriod());
+
+    // case - period shrinks back by one period after each shorter cycle
+    tested.lastRunStart = System.currentTimeMillis() - 5000;
+    tested.cycleFinished();
+    Assert.assertEquals(20000, tested.effectivePeriod());
+    delay = tested.prepareNextRunDelay();
+    Assert.assertTrue(delay > 14900 && delay <= 15000);
+    tested.cycleFinished();
+    Assert.assertEquals(10000, tested.effectivePeriod());
+    Assert.assertEquals(0, tested.stretchedPeriod);
+
+    // case - period change resets stretched period
+    tested.lastRunStart = System.currentTimeMillis() - 45000;
+    tested.cycleFinished();
+    Assert.assertEquals(50000, tested.effectivePeriod());
+    tested.changePeriod(20000);
+    Assert.assertEquals(20000, tested.effectivePeriod());
+
+    // case - other policies do not stretch period
+    tested.overrunPolicy = OverrunPolicy.SKIP;
+    tested.cycleFinished();
+    Assert.assertEquals(20000, tested.effectivePeriod());
+
+    // case - aligned mode keeps stretched period aligned
+    tested.overrunPolicy = OverrunPolicy.STRETCH;
+    tested.aligned = true;
+    tested.indexingPeriod = 60 * 60 * 1000;
+    long now = System.currentTimeMillis();
+    long currentSlot = SysinfoIndexer.nextAlignedSlot(now, tested.indexingPeriod) - tested.indexingPeriod;
+    tested.lastSlot = currentSlot - tested.indexingPeriod;
+    tested.cycleFinished();
+    Assert.assertEquals(2 * tested.indexingPeriod, tested.effectivePeriod());
+    Assert.assertEquals(currentSlot + tested.indexingPeriod, tested.nextSlot);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void getStatistics() {
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", null, null);
+    tested.infoType = SysinfoType.CLUSTER_HEALTH;
+    tested.requestPlan = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+    tested.indexingPeriod = 10000;
+    tested.overrunPolicy = OverrunPolicy.COALESCE;
+    tested.cyclesCount = 10;
+    tested.lastDuration = 12000;
+    tested.overrunsCount = 2;
+    tested.missedCyclesCount = 3;
+
+    Map<String, Object> stats = tested.getStatistics();
+    Assert.assertEquals("cluster_health", stats.get("info_type"));
+    Assert.assertEquals(10000l, stats.get("period"));
+    Assert.assertEquals(false, stats.get("running"));
+    Assert.assertEquals("coalesce", stats.get("overrun_policy"));
+    Assert.assertEquals(10l, stats.get("cycles"));
+    Assert.assertEquals(12000l, stats.get("last_duration"));
+    Assert.assertEquals(2l, stats.get("overruns"));
+    Assert.assertEquals(3l, stats.get("missed_cycles"));
+    Assert.assertNull(stats.get("transfer"));
+
+    // case - bytes transferred by reads of the indexer
+    tested.requestPlan.recordTransfer(100, 400);
+    stats = (Map<String, Object>) tested.getStatistics().get("transfer");
+    Assert.assertEquals(100l, stats.get("received_bytes"));
+    Assert.assertEquals(400l, stats.get("content_bytes"));
   }
 
   @Test
@@ -77,36 +792,85 @@ public class SysinfoIndexerTest {
     Client tcMock = Mockito.mock(Client.class);
     SysinfoIndexer tested = new SysinfoIndexer("testindexer", scMock, tcMock);
     tested.infoType = SysinfoType.CLUSTER_HEALTH;
+    tested.requestPlan = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
     tested.indexingPeriod = 50;
+    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    try {
 
-    // case - run changes closed status at begin, exception do not finish it, but finishes correctly when indexer is
-    // stopped
-    {
-      Mockito.when(scMock.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null)).thenThrow(
-          new RuntimeException("mocked exception"));
-      Thread t = new Thread(tested);
-      t.start();
-      while (tested.closed) {
-        Thread.sleep(10);
+      // case - start changes closed status, exception do not finish it and next run is scheduled, but finishes
+      // correctly when indexer is closed
+      {
+        Mockito.when(scMock.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null))).thenThrow(
+            new RuntimeException("mocked exception"));
+        tested.start(scheduler);
+        Assert.assertFalse(tested.closed);
+        Thread.sleep(130);
+        Assert.assertFalse(tested.closed);
+        Mockito.verify(scMock, Mockito.atLeast(2)).readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null));
+        tested.close();
+        Assert.assertTrue(tested.closed);
+        Assert.assertNull(tested.scheduledTask);
+        Thread.sleep(50);
+        Mockito.reset(scMock);
+        Thread.sleep(100);
+        Mockito.verifyZeroInteractions(scMock);
       }
-      Thread.sleep(70);
-      Assert.assertFalse(tested.closed);
-      tested.close();
-      Thread.sleep(50);
-      Assert.assertTrue(tested.closed);
-    }
 
-    // case - InterruptedException finishes indexer correctly
-    {
-      Mockito.reset(scMock, tcMock);
-      Mockito.when(scMock.readSysinfoValue(SysinfoType.CLUSTER_HEALTH, null)).thenThrow(
-          new InterruptedException("mocked exception"));
-      Thread t = new Thread(tested);
-      t.start();
-      Thread.sleep(200);
-      Assert.assertTrue(tested.closed);
+      // case - InterruptedException finishes indexer correctly
+      {
+        Mockito.reset(scMock, tcMock);
+        Mockito.when(scMock.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null))).thenThrow(
+            new InterruptedException("mocked exception"));
+        tested.start(scheduler);
+        Thread.sleep(200);
+        Assert.assertTrue(tested.closed);
+        Mockito.verify(scMock, Mockito.times(1)).readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null));
+      }
+    } finally {
+      scheduler.shutdownNow();
     }
 
   }
 
+  @Test
+  public void reschedule() throws Exception {
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Client tcMock = Mockito.mock(Client.class);
+    SysinfoIndexer tested = new SysinfoIndexer("testindexer", scMock, tcMock);
+    tested.infoType = SysinfoType.CLUSTER_HEALTH;
+    tested.requestPlan = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+    tested.indexingPeriod = 10000;
+    Mockito.when(scMock.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null))).thenThrow(
+        new RuntimeException("mocked exception"));
+    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    try {
+      tested.start(scheduler);
+      Thread.sleep(100);
+      Mockito.verify(scMock, Mockito.times(1)).readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null));
+
+      // case - shorter period is used immediately after reschedule
+      tested.indexingPeriod = 200;
+      tested.reschedule();
+      Thread.sleep(300);
+      Mockito.verify(scMock, Mockito.atLeast(2)).readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null));
+
+      // case - longer period is used immediately after change
+      tested.changePeriod(60000);
+      Assert.assertEquals(60000, tested.indexingPeriod);
+      Mockito.reset(scMock);
+      Thread.sleep(500);
+      Mockito.verifyZeroInteractions(scMock);
+      long delay = tested.scheduledTask.getDelay(TimeUnit.MILLISECONDS);
+      Assert.assertTrue(delay > 58000 && delay <= 60000);
+
+      // case - shorter period is used immediately after change
+      tested.changePeriod(100);
+      Thread.sleep(300);
+      Mockito.verify(scMock, Mockito.atLeast(1)).readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null));
+      tested.close();
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
 }
@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SysinfoRequestPlan}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoRequestPlanTest {
+
+  @Test
+  public void constructor() {
+    SysinfoRequestPlan tested = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+    Assert.assertEquals(SysinfoType.CLUSTER_HEALTH, tested.getInfoType());
+    Assert.assertNull(tested.getParams());
+
+    // case - params are copied and can't be changed
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("level", "shards");
+    tested = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, params);
+    params.put("index", "idx");
+    Assert.assertEquals(1, tested.getParams().size());
+    Assert.assertEquals("shards", tested.getParams().get("level"));
+    try {
+      tested.getParams().put("index", "idx");
+      Assert.fail("UnsupportedOperationException must be thrown");
+    } catch (UnsupportedOperationException e) {
+      // OK
+    }
+  }
+
+  @Test
+  public void equalsAndHashCode() {
+    Map<String, String> params1 = new HashMap<String, String>();
+    params1.put("level", "shards");
+    params1.put("index", "idx");
+    Map<String, String> params2 = new LinkedHashMap<String, String>();
+    params2.put("index", "idx");
+    params2.put("level", "shards");
+
+    SysinfoRequestPlan tested = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, params1);
+    Assert.assertEquals(tested, new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, params2));
+    Assert.assertEquals(tested.hashCode(), new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, params2).hashCode());
+    Assert.assertEquals(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null), new SysinfoRequestPlan(
+        SysinfoType.CLUSTER_HEALTH, null));
+
+    Assert.assertFalse(tested.equals(new SysinfoRequestPlan(SysinfoType.CLUSTER_STATE, params1)));
+    Assert.assertFalse(tested.equals(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null)));
+    Assert.assertFalse(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null).equals(tested));
+    Assert.assertFalse(tested.equals(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH,
+        new HashMap<String, String>())));
+    Assert.assertFalse(tested.equals(null));
+
+    // case - timeout is not part of identity, so reads with distinct timeouts are deduplicated
+    SysinfoRequestPlan withTimeout = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, params2);
+    withTimeout.setTimeout(1000);
+    Assert.assertEquals(1000, withTimeout.getTimeout());
+    Assert.assertEquals(0, tested.getTimeout());
+    Assert.assertEquals(tested, withTimeout);
+    Assert.assertEquals(tested.hashCode(), withTimeout.hashCode());
+  }
+
+  @Test
+  public void recordTransfer() {
+    SysinfoRequestPlan tested = new SysinfoRequestPlan(SysinfoType.CLUSTER_STATE, null);
+    Assert.assertNull(tested.getTransferStatistics());
+
+    tested.recordTransfer(100, 1000);
+    tested.recordTransfer(50, 600);
+    Map<String, Object> stats = tested.getTransferStatistics();
+    Assert.assertEquals(2l, stats.get("responses"));
+    Assert.assertEquals(150l, stats.get("received_bytes"));
+    Assert.assertEquals(1600l, stats.get("content_bytes"));
+    Assert.assertEquals(150d / 1600d, stats.get("compression_ratio"));
+
+    // case - transfers are not part of identity
+    Assert.assertEquals(new SysinfoRequestPlan(SysinfoType.CLUSTER_STATE, null), tested);
+  }
+
+}
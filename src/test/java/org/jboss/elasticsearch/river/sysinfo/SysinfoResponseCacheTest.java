@@ -0,0 +1,249 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit test for {@link SysinfoResponseCache}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoResponseCacheTest {
+
+  private static final SysinfoRequestPlan PLAN_HEALTH = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+  private static final SysinfoRequestPlan PLAN_STATE = new SysinfoRequestPlan(SysinfoType.CLUSTER_STATE, null);
+
+  @Test
+  public void constructor() {
+    Assert.assertEquals(SysinfoResponseCache.DEFAULT_MAX_ENTRIES, new SysinfoResponseCache().maxEntries);
+    Assert.assertEquals(SysinfoResponseCache.DEFAULT_MAX_SIZE.bytes(), new SysinfoResponseCache().maxSize);
+    SysinfoResponseCache tested = new SysinfoResponseCache(ImmutableSettings.settingsBuilder()
+        .put(SysinfoResponseCache.SETTING_MAX_ENTRIES, 10).put(SysinfoResponseCache.SETTING_MAX_SIZE, "1kb").build());
+    Assert.assertEquals(10, tested.maxEntries);
+    Assert.assertEquals(1024l, tested.maxSize);
+  }
+
+  @Test
+  public void read_ttl() throws Exception {
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Mockito.when(scMock.readSysinfoBytes(PLAN_HEALTH)).thenReturn(new BytesArray("{a}"), new BytesArray("{b}"),
+        new BytesArray("{c}"));
+    SysinfoResponseCache tested = new SysinfoResponseCache();
+
+    // case - cached for same connection and plan
+    Assert.assertEquals("{a}", tested.read("local", PLAN_HEALTH, 1000, scMock).toUtf8());
+    Assert.assertEquals("{a}", tested.read("local", new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null), 1000,
+        scMock).toUtf8());
+    Assert.assertEquals(1l, tested.getStatistics().get("hits"));
+    Assert.assertEquals(1l, tested.getStatistics().get("misses"));
+
+    // case - distinct connection is not shared
+    Assert.assertEquals("{b}", tested.read("remote", PLAN_HEALTH, 1000, scMock).toUtf8());
+
+    // case - reader with shorter TTL reads again
+    Thread.sleep(50);
+    Assert.assertEquals("{c}", tested.read("local", PLAN_HEALTH, 10, scMock).toUtf8());
+    Assert.assertEquals("{c}", tested.read("local", PLAN_HEALTH, 1000, scMock).toUtf8());
+    Mockito.verify(scMock, Mockito.times(3)).readSysinfoBytes(PLAN_HEALTH);
+    Assert.assertEquals(2l, tested.getStatistics().get("hits"));
+    Assert.assertEquals(3l, tested.getStatistics().get("misses"));
+    Assert.assertEquals(2, tested.getStatistics().get("entries"));
+
+    tested.clear();
+    Assert.assertEquals(0, tested.getStatistics().get("entries"));
+  }
+
+  @Test
+  public void read_eviction() throws Exception {
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Mockito.when(scMock.readSysinfoBytes(Mockito.any(SysinfoRequestPlan.class))).thenReturn(new BytesArray("{a}"));
+    SysinfoResponseCache tested = new SysinfoResponseCache(2);
+
+    tested.read("local", PLAN_HEALTH, 1000, scMock);
+    tested.read("local", PLAN_STATE, 1000, scMock);
+    // health is most recently used now
+    tested.read("local", PLAN_HEALTH, 1000, scMock);
+    tested.read("remote", PLAN_HEALTH, 1000, scMock);
+    Assert.assertEquals(2, tested.getStatistics().get("entries"));
+    Assert.assertEquals(1l, tested.getStatistics().get("evictions"));
+
+    // case - least recently used state is evicted
+    tested.read("local", PLAN_HEALTH, 1000, scMock);
+    tested.read("local", PLAN_STATE, 1000, scMock);
+    Mockito.verify(scMock, Mockito.times(2)).readSysinfoBytes(PLAN_STATE);
+    Mockito.verify(scMock, Mockito.times(2)).readSysinfoBytes(PLAN_HEALTH);
+  }
+
+  @Test
+  public void read_evictionBySize() throws Exception {
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Mockito.when(scMock.readSysinfoBytes(PLAN_HEALTH)).thenReturn(new BytesArray("{aaaa}"));
+    Mockito.when(scMock.readSysinfoBytes(PLAN_STATE)).thenReturn(new BytesArray("{bbbb}"),
+        new BytesArray("{too big information}"));
+    SysinfoResponseCache tested = new SysinfoResponseCache(100, 10);
+
+    tested.read("local", PLAN_HEALTH, 1000, scMock);
+    Assert.assertEquals(6l, tested.getStatistics().get("size"));
+
+    // case - least recently used entry is evicted when max size is exceeded
+    tested.read("local", PLAN_STATE, 1000, scMock);
+    Assert.assertEquals(1, tested.getStatistics().get("entries"));
+    Assert.assertEquals(6l, tested.getStatistics().get("size"));
+    Assert.assertEquals(1l, tested.getStatistics().get("evictions"));
+    tested.read("local", PLAN_STATE, 1000, scMock);
+    Mockito.verify(scMock, Mockito.times(1)).readSysinfoBytes(PLAN_STATE);
+
+    // case - information bigger than max size is not cached at all
+    tested.clear();
+    Assert.assertEquals(0l, tested.getStatistics().get("size"));
+    tested.read("remote", PLAN_STATE, 1000, scMock);
+    Assert.assertEquals("{too big information}", tested.read("remote", PLAN_STATE, 1000, scMock).toUtf8());
+    Assert.assertEquals(0, tested.getStatistics().get("entries"));
+    Assert.assertEquals(0l, tested.getStatistics().get("size"));
+  }
+
+  @Test
+  public void read_expiration() throws Exception {
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Mockito.when(scMock.readSysinfoBytes(Mockito.any(SysinfoRequestPlan.class))).thenReturn(new BytesArray("{a}"));
+    SysinfoResponseCache tested = new SysinfoResponseCache();
+    tested.register("local", 10);
+    tested.register("local", 20);
+    tested.register("remote", 10000);
+
+    tested.read("local", PLAN_HEALTH, 10, scMock);
+    tested.read("remote", PLAN_HEALTH, 10000, scMock);
+    Thread.sleep(50);
+
+    // case - entries older than largest TTL of their connection are dropped when new entry is put
+    tested.read("local", PLAN_STATE, 20, scMock);
+    Assert.assertEquals(2, tested.getStatistics().get("entries"));
+    Assert.assertEquals(6l, tested.getStatistics().get("size"));
+    Assert.assertEquals(1l, tested.getStatistics().get("expirations"));
+
+    // case - entries of connection are dropped when last river using it unregisters
+    tested.unregister("local", 10);
+    Assert.assertEquals(2, tested.getStatistics().get("entries"));
+    tested.unregister("local", 20);
+    Assert.assertEquals(1, tested.getStatistics().get("entries"));
+    Assert.assertEquals(3l, tested.getStatistics().get("size"));
+    tested.read("remote", PLAN_HEALTH, 10000, scMock);
+    Assert.assertEquals(1l, tested.getStatistics().get("hits"));
+
+    // case - unknown connection is ignored
+    tested.unregister("unknown", 10);
+    Assert.assertEquals(1, tested.getStatistics().get("entries"));
+  }
+
+  @Test
+  public void read_failureNotCached() throws Exception {
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    Mockito.when(scMock.readSysinfoBytes(PLAN_HEALTH)).thenThrow(new IOException("mocked"))
+        .thenReturn(new BytesArray("{a}"));
+    SysinfoResponseCache tested = new SysinfoResponseCache();
+
+    try {
+      tested.read("local", PLAN_HEALTH, 1000, scMock);
+      Assert.fail("IOException must be thrown");
+    } catch (IOException e) {
+      // OK
+    }
+    Assert.assertEquals(0, tested.getStatistics().get("entries"));
+    Assert.assertEquals("{a}", tested.read("local", PLAN_HEALTH, 1000, scMock).toUtf8());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void readAsync() throws Exception {
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    final ArgumentCaptor<ActionListener> sourceListener = ArgumentCaptor.forClass(ActionListener.class);
+    SysinfoResponseCache tested = new SysinfoResponseCache();
+    ActionListener<BytesReference> l1 = Mockito.mock(ActionListener.class);
+    ActionListener<BytesReference> l2 = Mockito.mock(ActionListener.class);
+
+    // case - miss and hit of read in progress return without waiting
+    tested.readAsync("local", PLAN_HEALTH, 1000, scMock, l1);
+    tested.readAsync("local", PLAN_HEALTH, 1000, scMock, l2);
+    Mockito.verify(scMock, Mockito.times(1)).readSysinfoBytesAsync(Mockito.eq(PLAN_HEALTH), sourceListener.capture());
+    Mockito.verifyZeroInteractions(l1, l2);
+
+    BytesReference value = new BytesArray("{a}");
+    sourceListener.getValue().onResponse(value);
+    Mockito.verify(l1).onResponse(value);
+    Mockito.verify(l2).onResponse(value);
+    Assert.assertEquals(3l, tested.getStatistics().get("size"));
+    Assert.assertEquals("{a}", tested.read("local", PLAN_HEALTH, 1000, scMock).toUtf8());
+    Assert.assertEquals(2l, tested.getStatistics().get("hits"));
+
+    // case - failure is not cached
+    ActionListener<BytesReference> l3 = Mockito.mock(ActionListener.class);
+    tested.readAsync("local", PLAN_STATE, 1000, scMock, l3);
+    Mockito.verify(scMock).readSysinfoBytesAsync(Mockito.eq(PLAN_STATE), sourceListener.capture());
+    IOException failure = new IOException("mocked");
+    sourceListener.getValue().onFailure(failure);
+    Mockito.verify(l3).onFailure(failure);
+    Assert.assertEquals(1, tested.getStatistics().get("entries"));
+  }
+
+  @Test
+  public void read_concurrent() throws Exception {
+    SourceClient scMock = Mockito.mock(SourceClient.class);
+    final CountDownLatch readStarted = new CountDownLatch(1);
+    final CountDownLatch readFinish = new CountDownLatch(1);
+    Mockito.when(scMock.readSysinfoBytes(PLAN_HEALTH)).thenAnswer(new Answer<BytesReference>() {
+      @Override
+      public BytesReference answer(InvocationOnMock invocation) throws Throwable {
+        readStarted.countDown();
+        readFinish.await();
+        return new BytesArray("{a}");
+      }
+    });
+    final SysinfoResponseCache tested = new SysinfoResponseCache();
+    final SourceClient sc = scMock;
+
+    final String[] result = new String[1];
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        try {
+          result[0] = tested.read("local", PLAN_HEALTH, 1000, sc).toUtf8();
+        } catch (Exception e) {
+          result[0] = e.getMessage();
+        }
+      }
+    };
+    t.start();
+    readStarted.await();
+
+    // case - second river waits for read in progress
+    Thread t2 = new Thread() {
+      @Override
+      public void run() {
+        readFinish.countDown();
+      }
+    };
+    t2.start();
+    Assert.assertEquals("{a}", tested.read("local", PLAN_HEALTH, 1000, scMock).toUtf8());
+    t.join();
+    Assert.assertEquals("{a}", result[0]);
+    Mockito.verify(scMock, Mockito.times(1)).readSysinfoBytes(PLAN_HEALTH);
+  }
+
+}
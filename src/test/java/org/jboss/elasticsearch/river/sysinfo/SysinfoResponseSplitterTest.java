@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SysinfoResponseSplitter}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoResponseSplitterTest {
+
+  private static final String SEGMENTS = "{'_shards':{'total':3,'successful':3,'failed':0},'indices':{"
+      + "'i1':{'shards':{'0':[{'num_committed_segments':1,'segments':{'_0':{'size_in_bytes':10}}}],'1':[{'num_committed_segments':2}]}},"
+      + "'i2':{'shards':{'0':[{'num_committed_segments':3}]}}}}";
+
+  private static final String STATE = "{'cluster_name':'es','version':5,'master_node':'n1','nodes':{'n1':{'name':'node1'}},"
+      + "'metadata':{'templates':{},'indices':{'i1':{'state':'open'},'i2':{'state':'close'}}},"
+      + "'routing_table':{'indices':{'i1':{'shards':{}}}},'allocations':[],'blocks':null}";
+
+  @Test
+  public void constructor() {
+    Assert.assertEquals(1, new SysinfoResponseSplitter("indices").paths.size());
+    Assert.assertEquals(2, new SysinfoResponseSplitter(" indices.*.shards, ,nodes ").paths.size());
+    Assert.assertArrayEquals(new String[] { "indices", "*", "shards" },
+        new SysinfoResponseSplitter("indices.*.shards").paths.get(0));
+    for (String paths : new String[] { null, "", " , ", "indices..shards", ".indices", "indices." }) {
+      try {
+        new SysinfoResponseSplitter(paths);
+        Assert.fail("IllegalArgumentException must be thrown for " + paths);
+      } catch (IllegalArgumentException e) {
+        // OK
+      }
+    }
+  }
+
+  @Test
+  public void split_perIndex() throws Exception {
+    SysinfoResponseSplitter tested = new SysinfoResponseSplitter("indices");
+    List<String> docs = split(tested, SEGMENTS);
+    Assert.assertEquals(3, docs.size());
+    // top level objects are not copied
+    Assert
+        .assertEquals(
+            json("{'indices':{'i1':{'shards':{'0':[{'num_committed_segments':1,'segments':{'_0':{'size_in_bytes':10}}}],'1':[{'num_committed_segments':2}]}}}}"),
+            docs.get(0));
+    Assert.assertEquals(json("{'indices':{'i2':{'shards':{'0':[{'num_committed_segments':3}]}}}}"), docs.get(1));
+    Assert.assertEquals(json("{'_shards':{'total':3,'successful':3,'failed':0},'indices':{}}"), docs.get(2));
+  }
+
+  @Test
+  public void split_perShard() throws Exception {
+    SysinfoResponseSplitter tested = new SysinfoResponseSplitter("indices.*.shards");
+    List<String> docs = split(tested, SEGMENTS);
+    Assert.assertEquals(4, docs.size());
+    Assert.assertEquals(
+        json("{'indices':{'i1':{'shards':{'0':[{'num_committed_segments':1,'segments':{'_0':{'size_in_bytes':10}}}]}}}}"),
+        docs.get(0));
+    Assert.assertEquals(json("{'indices':{'i1':{'shards':{'1':[{'num_committed_segments':2}]}}}}"), docs.get(1));
+    Assert.assertEquals(json("{'indices':{'i2':{'shards':{'0':[{'num_committed_segments':3}]}}}}"), docs.get(2));
+    Assert.assertEquals(
+        json("{'_shards':{'total':3,'successful':3,'failed':0},'indices':{'i1':{'shards':{}},'i2':{'shards':{}}}}"),
+        docs.get(3));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void split_morePaths() throws Exception {
+    SysinfoResponseSplitter tested = new SysinfoResponseSplitter("metadata.indices,routing_table.indices,unknown");
+    List<String> docs = split(tested, STATE);
+    Assert.assertEquals(4, docs.size());
+    // top level simple fields are copied
+    Assert.assertEquals(
+        json("{'cluster_name':'es','version':5,'master_node':'n1','metadata':{'indices':{'i1':{'state':'open'}}}}"),
+        docs.get(0));
+    Assert.assertEquals(
+        json("{'cluster_name':'es','version':5,'master_node':'n1','metadata':{'indices':{'i2':{'state':'close'}}}}"),
+        docs.get(1));
+    Assert.assertEquals(
+        json("{'cluster_name':'es','version':5,'master_node':'n1','routing_table':{'indices':{'i1':{'shards':{}}}}}"),
+        docs.get(2));
+    Map<String, Object> rest = XContentHelper.convertToMap(new BytesArray(docs.get(3)), true).v2();
+    Assert.assertEquals("es", rest.get("cluster_name"));
+    Assert.assertNotNull(rest.get("nodes"));
+    Assert.assertTrue(((Map<String, Object>) ((Map<String, Object>) rest.get("metadata")).get("indices")).isEmpty());
+    Assert.assertNotNull(((Map<String, Object>) rest.get("metadata")).get("templates"));
+    Assert.assertTrue(rest.containsKey("blocks"));
+    Assert.assertNotNull(rest.get("allocations"));
+
+    Map<String, Object> stats = tested.getStatistics();
+    Assert.assertEquals(1l, stats.get("splits"));
+    Assert.assertEquals(4l, stats.get("documents"));
+  }
+
+  @Test
+  public void split_nothingToSplit() throws Exception {
+    SysinfoResponseSplitter tested = new SysinfoResponseSplitter("indices");
+    List<String> docs = split(tested, "{'cluster_name':'es','indices':[]}");
+    Assert.assertEquals(1, docs.size());
+    Assert.assertEquals(json("{'cluster_name':'es','indices':[]}"), docs.get(0));
+  }
+
+  @Test(expected = IOException.class)
+  public void split_notObject() throws Exception {
+    split(new SysinfoResponseSplitter("indices"), "['a']");
+  }
+
+  private static List<String> split(SysinfoResponseSplitter tested, String content) throws Exception {
+    final List<String> ret = new ArrayList<String>();
+    XContentParser parser = JsonXContent.jsonXContent.createParser(json(content));
+    try {
+      tested.split(parser, new SysinfoResponseSplitter.DocumentHandler() {
+
+        @Override
+        public void document(BytesReference document) {
+          ret.add(document.toUtf8());
+        }
+      });
+    } finally {
+      parser.close();
+    }
+    return ret;
+  }
+
+  private static String json(String value) {
+    return value.replace('\'', '"');
+  }
+
+}
@@ -5,15 +5,23 @@
  */
 package org.jboss.elasticsearch.river.sysinfo;
 
-import java.lang.Thread.State;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.node.service.NodeService;
 import org.elasticsearch.river.RiverName;
 import org.elasticsearch.river.RiverSettings;
 import org.jboss.elasticsearch.river.sysinfo.esclient.SourceClientESClient;
@@ -23,6 +31,8 @@ import org.jboss.elasticsearch.river.sysinfo.testtools.TestUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import static org.mockito.Mockito.mock;
 
@@ -63,6 +73,30 @@ public class SysinfoRiverTest extends ESRealClientTestBase {
 			tested.configure(settings);
 			Assert.assertEquals(SourceClientREST.class, tested.sourceClient.getClass());
 			Assert.assertEquals("http://localhost:9200/", ((SourceClientREST) tested.sourceClient).restAPIUrlBase);
+			Assert.assertNull(((SourceClientREST) tested.sourceClient).bufferPool);
+
+			tested = prepareRiverInstanceForTest(null);
+			tested.bufferPool = new SysinfoBufferPool();
+			tested.configure(settings);
+			Assert.assertEquals(tested.bufferPool, ((SourceClientREST) tested.sourceClient).bufferPool);
+			Assert.assertFalse(tested.indexers.get("cluster_health").asyncRead);
+		}
+
+		// case - asynchronous REST es_connection
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_rest.json");
+			((Map<String, Object>) settings.get("es_connection")).put("type", "rest_async");
+			((Map<String, Object>) settings.get("es_connection")).put("io_threads", 4);
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.bufferPool = new SysinfoBufferPool();
+			tested.configure(settings);
+			Assert.assertEquals(SourceClientRESTAsync.class, tested.sourceClient.getClass());
+			SourceClientRESTAsync client = (SourceClientRESTAsync) tested.sourceClient;
+			Assert.assertEquals("http://localhost:9200/", client.restAPIUrlBase);
+			Assert.assertEquals(4, client.ioThreads);
+			Assert.assertEquals(SourceClientRESTAsync.DEFAULT_MAX_CONNECTIONS, client.maxConnections);
+			Assert.assertEquals(tested.bufferPool, client.bufferPool);
+			Assert.assertTrue(tested.indexers.get("cluster_health").asyncRead);
 		}
 
 		// case - invalid es_connection
@@ -79,6 +113,7 @@ public class SysinfoRiverTest extends ESRealClientTestBase {
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	@Test
 	public void configure_indexers() throws Exception {
 
@@ -116,13 +151,520 @@ public class SysinfoRiverTest extends ESRealClientTestBase {
 			Assert.assertEquals(10, tested.indexers.size());
 			SysinfoIndexer idxr = tested.indexers.get("cluster_health");
 			Assert.assertEquals("cluster_health", idxr.name);
-			Assert.assertEquals(tested.sourceClient, idxr.sourceClient);
+			Assert.assertEquals(tested.fetchCoordinator, idxr.sourceClient);
+			Assert.assertEquals(tested.sourceClient, tested.fetchCoordinator.sourceClient);
+			Assert.assertEquals(0, tested.fetchCoordinator.window);
 			Assert.assertEquals(tested.client, idxr.targetClient);
 			Assert.assertEquals(SysinfoType.CLUSTER_HEALTH, idxr.infoType);
 			Assert.assertEquals("my_sysinfo_index", idxr.indexName);
 			Assert.assertEquals("cluster_health", idxr.typeName);
 			Assert.assertEquals(30 * 1000, idxr.indexingPeriod);
 			Assert.assertNotNull(idxr.params);
+			Assert.assertEquals(SysinfoRiver.DEFAULT_SCHEDULER_THREADS, tested.schedulerThreads);
+			Assert.assertFalse(idxr.aligned);
+			Assert.assertEquals(0, idxr.phase);
+			Assert.assertEquals(0, idxr.jitter);
+			Assert.assertEquals(OverrunPolicy.SKIP, idxr.overrunPolicy);
+			Assert.assertEquals(SysinfoIndexer.DEFAULT_MAX_INFLIGHT_WRITES, idxr.maxInflightWrites);
+		}
+
+		// case - composite indexer
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+			ic.remove("index_name");
+			ic.remove("index_type");
+			List<Object> outputs = new ArrayList<Object>();
+			Map<String, Object> o1 = new HashMap<String, Object>();
+			o1.put("index_name", "i1");
+			o1.put("index_type", "t1");
+			o1.put("includes", Arrays.asList("a", "b.*.c"));
+			outputs.add(o1);
+			Map<String, Object> o2 = new HashMap<String, Object>();
+			o2.put("index_name", "i2");
+			o2.put("index_type", "t2");
+			o2.put("excludes", "d");
+			outputs.add(o2);
+			ic.put("outputs", outputs);
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertNull(tested.indexers.get("cluster_health").outputs);
+			SysinfoIndexer idxr = tested.indexers.get("cluster_state");
+			Assert.assertEquals(2, idxr.outputs.size());
+			Assert.assertEquals("i1", idxr.outputs.get(0).indexName);
+			Assert.assertEquals("t1", idxr.outputs.get(0).typeName);
+			Assert.assertEquals(2, idxr.outputs.get(0).includes.length);
+			Assert.assertEquals(0, idxr.outputs.get(0).excludes.length);
+			Assert.assertEquals("i2", idxr.outputs.get(1).indexName);
+			Assert.assertEquals("d", idxr.outputs.get(1).excludes[0]);
+		}
+
+		// case - invalid composite indexer outputs
+		{
+			try {
+				Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+				Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+				ic.put("outputs", new ArrayList<Object>());
+				SysinfoRiver tested = prepareRiverInstanceForTest(null);
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+			try {
+				Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+				Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+				List<Object> outputs = new ArrayList<Object>();
+				outputs.add(new HashMap<String, Object>());
+				ic.put("outputs", outputs);
+				SysinfoRiver tested = prepareRiverInstanceForTest(null);
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+		}
+
+		// case - fetch deduplication window
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			settings.put("fetch_dedup_window", "2s");
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(2000, tested.fetchDedupWindow);
+			Assert.assertEquals(2000, tested.fetchCoordinator.window);
+			Assert.assertEquals(tested.fetchCoordinator, tested.indexers.get("cluster_state").sourceClient);
+			Assert.assertEquals(0, tested.responseCacheTtl);
+			Assert.assertNull(tested.fetchCoordinator.responseCache);
+		}
+
+		// case - node level response cache
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> cacheSettings = new HashMap<String, Object>();
+			cacheSettings.put("ttl", "30s");
+			settings.put("response_cache", cacheSettings);
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			try {
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK - cache not available
+			}
+
+			tested = prepareRiverInstanceForTest(null);
+			tested.responseCache = new SysinfoResponseCache();
+			tested.configure(settings);
+			Assert.assertEquals(30000, tested.responseCacheTtl);
+			Assert.assertEquals(tested.responseCache, tested.fetchCoordinator.responseCache);
+			Assert.assertEquals(30000, tested.fetchCoordinator.cacheTtl);
+			Assert.assertEquals("local", tested.fetchCoordinator.cacheConnection);
+			Map<String, Object> stats = (Map<String, Object>) tested.getStatistics().get("response_cache");
+			Assert.assertEquals(30000l, stats.get("ttl"));
+			Assert.assertEquals(0l, stats.get("hits"));
+		}
+
+		// case - cluster state change driven indexer
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_health");
+			ic.put("mode", "events");
+			ic.put("debounce", "500");
+			ic.put("min_interval", "5s");
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.clusterService = Mockito.mock(ClusterService.class);
+			tested.configure(settings);
+			Assert.assertTrue(tested.indexers.get("cluster_health") instanceof SysinfoClusterEventIndexer);
+			SysinfoClusterEventIndexer idxr = (SysinfoClusterEventIndexer) tested.indexers.get("cluster_health");
+			Assert.assertEquals(500, idxr.debounce);
+			Assert.assertEquals(5000, idxr.minInterval);
+			Assert.assertEquals(tested.clusterService, idxr.clusterService);
+			Assert.assertEquals(tested.sourceClient, idxr.localClient);
+			Assert.assertEquals(tested.fetchCoordinator, idxr.sourceClient);
+			Assert.assertEquals(SysinfoType.CLUSTER_HEALTH, idxr.requestPlan.getInfoType());
+			Assert.assertFalse(tested.indexers.get("cluster_state") instanceof SysinfoClusterEventIndexer);
+		}
+
+		// case - cluster state changes indexer
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+			ic.put("info_type", "cluster_state_changes");
+			ic.put("full_snapshot_interval", "2h");
+			Map<String, Object> ic2 = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_health");
+			ic2.put("info_type", "cluster_state_changes");
+			ic2.put("mode", "events");
+			ic2.put("params", null);
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.clusterService = Mockito.mock(ClusterService.class);
+			tested.configure(settings);
+			SysinfoIndexer idxr = tested.indexers.get("cluster_state");
+			Assert.assertEquals(SysinfoType.CLUSTER_STATE_CHANGES, idxr.infoType);
+			Assert.assertEquals(SysinfoType.CLUSTER_STATE, idxr.requestPlan.getInfoType());
+			Assert.assertEquals(2 * 60 * 60 * 1000, idxr.stateDiffer.fullSnapshotInterval);
+			idxr = tested.indexers.get("cluster_health");
+			Assert.assertTrue(idxr instanceof SysinfoClusterEventIndexer);
+			Assert.assertEquals(SysinfoClusterStateDiffer.DEFAULT_FULL_SNAPSHOT_INTERVAL, idxr.stateDiffer.fullSnapshotInterval);
+			Assert.assertNull(tested.indexers.get("cluster_stats").stateDiffer);
+		}
+
+		// case - split indexer
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+			ic.put("split", " metadata.indices, routing_table.indices ");
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(2, tested.indexers.get("cluster_state").splitter.paths.size());
+			Assert.assertNull(tested.indexers.get("cluster_health").splitter);
+
+			// case - invalid split path
+			ic.put("split", "indices..shards");
+			tested = prepareRiverInstanceForTest(null);
+			try {
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+
+			// case - split of cluster state changes
+			ic.put("split", "routing_table.indices");
+			ic.put("info_type", "cluster_state_changes");
+			tested = prepareRiverInstanceForTest(null);
+			try {
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+		}
+
+		// case - timeouts
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(0, tested.indexers.get("cluster_state").requestPlan.getTimeout());
+
+			Map<String, Object> timeouts = new HashMap<String, Object>();
+			timeouts.put("default", "30s");
+			timeouts.put("cluster_state", "2m");
+			settings.put("timeouts", timeouts);
+			((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_stats").put("timeout", "5s");
+			tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(120000, tested.indexers.get("cluster_state").requestPlan.getTimeout());
+			Assert.assertEquals(5000, tested.indexers.get("cluster_stats").requestPlan.getTimeout());
+			Assert.assertEquals(30000, tested.indexers.get("cluster_health").requestPlan.getTimeout());
+
+			// case - invalid info type
+			timeouts.put("unknown", "1s");
+			tested = prepareRiverInstanceForTest(null);
+			try {
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+		}
+
+		// case - local node stats indexer
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_health");
+			ic.put("info_type", "local_node_stats");
+			ic.put("period", "1s");
+			Map<String, String> params = new HashMap<String, String>();
+			params.put("metric", "jvm");
+			ic.put("params", params);
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			try {
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK - node service not available
+			}
+
+			tested = prepareRiverInstanceForTest(null);
+			tested.nodeService = Mockito.mock(NodeService.class);
+			Mockito.when(tested.client.settings()).thenReturn(ImmutableSettings.Builder.EMPTY_SETTINGS);
+			tested.configure(settings);
+			SysinfoIndexer idxr = tested.indexers.get("cluster_health");
+			Assert.assertEquals(SysinfoType.LOCAL_NODE_STATS, idxr.infoType);
+			Assert.assertEquals(1000, idxr.indexingPeriod);
+			Assert.assertTrue(((SourceClientESClient) tested.sourceClient).supportsLocalNodeStats(null));
+
+			// case - unsupported metric
+			params.put("metric", "unknown");
+			tested = prepareRiverInstanceForTest(null);
+			tested.nodeService = Mockito.mock(NodeService.class);
+			Mockito.when(tested.client.settings()).thenReturn(ImmutableSettings.Builder.EMPTY_SETTINGS);
+			try {
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+		}
+
+		// case - invalid indexer mode
+		{
+			try {
+				Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+				Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_health");
+				ic.put("mode", "unknown");
+				SysinfoRiver tested = prepareRiverInstanceForTest(null);
+				tested.clusterService = Mockito.mock(ClusterService.class);
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+		}
+
+		// case - events mode for unsupported info type or params, or without cluster service
+		{
+			for (String[] c : new String[][] { { "cluster_stats", "true" }, { "cluster_state", "true" },
+					{ "cluster_health", "false" } }) {
+				try {
+					Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+					Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get(c[0]);
+					ic.put("mode", "events");
+					if ("cluster_state".equals(c[0]))
+						((Map<String, Object>) ic.get("params")).put("local", "true");
+					SysinfoRiver tested = prepareRiverInstanceForTest(null);
+					if (Boolean.parseBoolean(c[1]))
+						tested.clusterService = Mockito.mock(ClusterService.class);
+					tested.configure(settings);
+					Assert.fail("SettingsException must be thrown for " + c[0]);
+				} catch (SettingsException e) {
+					// OK
+				}
+			}
+		}
+
+		// case - aligned indexer
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+			ic.put("aligned", true);
+			ic.put("phase", "5s");
+			ic.put("jitter", "500");
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertFalse(tested.indexers.get("cluster_health").aligned);
+			SysinfoIndexer idxr = tested.indexers.get("cluster_state");
+			Assert.assertTrue(idxr.aligned);
+			Assert.assertEquals(5000, idxr.phase);
+			Assert.assertEquals(500, idxr.jitter);
+		}
+
+		// case - overrun policy
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+			ic.put("overrun_policy", "coalesce");
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(OverrunPolicy.SKIP, tested.indexers.get("cluster_health").overrunPolicy);
+			Assert.assertEquals(OverrunPolicy.COALESCE, tested.indexers.get("cluster_state").overrunPolicy);
+		}
+
+		// case - max inflight writes
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+			ic.put("max_inflight_writes", "5");
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(5, tested.indexers.get("cluster_state").maxInflightWrites);
+		}
+
+		// case - write queue
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+			ic.put("write_queue_size", "0");
+			ic.put("write_queue_policy", "block");
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(SysinfoIndexer.DEFAULT_WRITE_QUEUE_SIZE, tested.indexers.get("cluster_health").writeQueueSize);
+			Assert.assertEquals(WriteQueuePolicy.DROP_OLDEST, tested.indexers.get("cluster_health").writeQueuePolicy);
+			Assert.assertEquals(0, tested.indexers.get("cluster_state").writeQueueSize);
+			Assert.assertEquals(WriteQueuePolicy.BLOCK, tested.indexers.get("cluster_state").writeQueuePolicy);
+		}
+
+		// case - bad write queue size
+		{
+			try {
+				Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+				Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+				ic.put("write_queue_size", -1);
+				SysinfoRiver tested = prepareRiverInstanceForTest(null);
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+		}
+
+		// case - bad max inflight writes
+		{
+			try {
+				Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+				Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+				ic.put("max_inflight_writes", 0);
+				SysinfoRiver tested = prepareRiverInstanceForTest(null);
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+		}
+
+		// case - bad overrun policy
+		{
+			try {
+				Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+				Map<String, Object> ic = ((Map<String, Map<String, Object>>) settings.get("indexers")).get("cluster_state");
+				ic.put("overrun_policy", "unknown");
+				SysinfoRiver tested = prepareRiverInstanceForTest(null);
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+		}
+
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void configure_scheduler() throws Exception {
+
+		// case - threads configured
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> schedulerSettings = new HashMap<String, Object>();
+			schedulerSettings.put("threads", "5");
+			settings.put("scheduler", schedulerSettings);
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(5, tested.schedulerThreads);
+			Assert.assertEquals(0, tested.startupSpread);
+		}
+
+		// case - startup spread configured
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> schedulerSettings = new HashMap<String, Object>();
+			schedulerSettings.put("startup_spread", "10s");
+			settings.put("scheduler", schedulerSettings);
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(SysinfoRiver.DEFAULT_SCHEDULER_THREADS, tested.schedulerThreads);
+			Assert.assertEquals(10000, tested.startupSpread);
+			Assert.assertEquals(SysinfoRiver.DEFAULT_STOP_TIMEOUT, tested.stopTimeout);
+		}
+
+		// case - stop timeout configured
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> schedulerSettings = new HashMap<String, Object>();
+			schedulerSettings.put("stop_timeout", "1s");
+			settings.put("scheduler", schedulerSettings);
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(1000, tested.stopTimeout);
+		}
+
+		// case - invalid threads count
+		{
+			try {
+				Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+				settings.put("scheduler", new HashMap<String, Object>());
+				((Map<String, Object>) settings.get("scheduler")).put("threads", 0);
+				SysinfoRiver tested = prepareRiverInstanceForTest(null);
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+		}
+
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void configure_bulk() throws Exception {
+
+		// case - bulk writing disabled by default
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(0, tested.bulkActions);
+		}
+
+		// case - defaults used for empty bulk section
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			settings.put("bulk", new HashMap<String, Object>());
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(SysinfoBulkWriter.DEFAULT_BULK_ACTIONS, tested.bulkActions);
+			Assert.assertEquals(SysinfoBulkWriter.DEFAULT_BULK_SIZE, tested.bulkSize);
+			Assert.assertEquals(SysinfoBulkWriter.DEFAULT_FLUSH_INTERVAL, tested.bulkFlushInterval);
+			Assert.assertEquals(SysinfoBulkWriter.DEFAULT_TARGET_LATENCY, tested.bulkTargetLatency);
+			Assert.assertEquals(SysinfoBulkWriter.DEFAULT_MAX_CONCURRENT_BULKS, tested.bulkMaxConcurrent);
+		}
+
+		// case - bulk configured
+		{
+			Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+			Map<String, Object> bulkSettings = new HashMap<String, Object>();
+			bulkSettings.put("actions", 50);
+			bulkSettings.put("size", "1kb");
+			bulkSettings.put("flush_interval", "2s");
+			bulkSettings.put("target_latency", "500");
+			bulkSettings.put("max_concurrent_bulks", 3);
+			settings.put("bulk", bulkSettings);
+			SysinfoRiver tested = prepareRiverInstanceForTest(null);
+			tested.configure(settings);
+			Assert.assertEquals(50, tested.bulkActions);
+			Assert.assertEquals(1024, tested.bulkSize);
+			Assert.assertEquals(2000, tested.bulkFlushInterval);
+			Assert.assertEquals(500, tested.bulkTargetLatency);
+			Assert.assertEquals(3, tested.bulkMaxConcurrent);
+		}
+
+		// case - invalid actions count
+		{
+			try {
+				Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+				settings.put("bulk", new HashMap<String, Object>());
+				((Map<String, Object>) settings.get("bulk")).put("actions", 0);
+				SysinfoRiver tested = prepareRiverInstanceForTest(null);
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
+		}
+
+		// case - invalid max concurrent bulks
+		{
+			try {
+				Map<String, Object> settings = Utils.loadJSONFromJarPackagedFile("/river_configuration_test_conn_local.json");
+				settings.put("bulk", new HashMap<String, Object>());
+				((Map<String, Object>) settings.get("bulk")).put("max_concurrent_bulks", 0);
+				SysinfoRiver tested = prepareRiverInstanceForTest(null);
+				tested.configure(settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				// OK
+			}
 		}
 
 	}
@@ -142,7 +684,7 @@ public class SysinfoRiverTest extends ESRealClientTestBase {
 			} catch (IllegalStateException e) {
 				// OK
 				Assert.assertFalse(tested.closed);
-				Assert.assertEquals(0, tested.indexerThreads.size());
+				Assert.assertNull(tested.scheduler);
 				Mockito.verifyZeroInteractions(scMock);
 				Assert.assertEquals(0, SysinfoRiver.getRunningInstances().size());
 			}
@@ -154,30 +696,40 @@ public class SysinfoRiverTest extends ESRealClientTestBase {
 			tested.closed = true;
 			tested.start();
 			Assert.assertFalse(tested.closed);
-			Assert.assertEquals(0, tested.indexerThreads.size());
+			Assert.assertNotNull(tested.scheduler);
 			Mockito.verify(scMock).start();
 			Assert.assertEquals(1, SysinfoRiver.getRunningInstances().size());
+			tested.scheduler.shutdownNow();
 		}
 
-		// case - check threads created and started for indexers
+		// case - check indexers started in scheduler with startup spread
 		{
 			Mockito.reset(scMock);
 			tested.closed = true;
+			tested.startupSpread = 10000;
 			tested.indexers.put("ch", indexerMock("ch", SysinfoType.CLUSTER_HEALTH));
 			tested.indexers.put("cs", indexerMock("cs", SysinfoType.CLUSTER_STATE));
 			tested.start();
 			Assert.assertFalse(tested.closed);
-			Assert.assertEquals(2, tested.indexerThreads.size());
+			Assert.assertNotNull(tested.scheduler);
 			Mockito.verify(scMock).start();
-			// give threads chance to run so we can do next assertion on this method
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {
-				// nothing to do
-			}
-			for (SysinfoIndexer i : tested.indexers.values()) {
-				Mockito.verify(i).run();
-			}
+			Mockito.verify(tested.indexers.get("ch")).start(tested.scheduler, 0);
+			Mockito.verify(tested.indexers.get("cs")).start(tested.scheduler, 5000);
+			Assert.assertNull(tested.bulkWriter);
+			tested.scheduler.shutdownNow();
+		}
+
+		// case - bulk writer shared by indexers
+		{
+			Mockito.reset(scMock);
+			tested.closed = true;
+			tested.bulkActions = 10;
+			tested.start();
+			Assert.assertNotNull(tested.bulkWriter);
+			Assert.assertEquals(tested.bulkWriter, tested.indexers.get("ch").bulkWriter);
+			Assert.assertEquals(tested.bulkWriter, tested.indexers.get("cs").bulkWriter);
+			Assert.assertNotNull(tested.getStatistics().get("bulk"));
+			tested.scheduler.shutdownNow();
 		}
 		SysinfoRiver.clearRunningInstances();
 	}
@@ -204,21 +756,17 @@ public class SysinfoRiverTest extends ESRealClientTestBase {
 				tested.closed = false;
 				tested.indexers.put("ch", indexerMock("ch", SysinfoType.CLUSTER_HEALTH));
 				tested.indexers.put("cs", indexerMock("cs", SysinfoType.CLUSTER_STATE));
-				List<Thread> t = new ArrayList<Thread>();
-				t.add(Mockito.mock(Thread.class));
-				t.add(Mockito.mock(Thread.class));
-				tested.indexerThreads.put("ch", t.get(0));
-				tested.indexerThreads.put("cs", t.get(1));
+				ScheduledExecutorService schedulerMock = Mockito.mock(ScheduledExecutorService.class);
+				tested.scheduler = schedulerMock;
 				tested.close();
 				Assert.assertTrue(tested.closed);
-				Assert.assertEquals(0, tested.indexerThreads.size());
+				Assert.assertNull(tested.scheduler);
 				Mockito.verify(scMock).close();
 				for (SysinfoIndexer i : tested.indexers.values()) {
 					Mockito.verify(i).close();
 				}
-				for (Thread i : t) {
-					Mockito.verify(i).interrupt();
-				}
+				Mockito.verify(schedulerMock).shutdownNow();
+				Mockito.verify(schedulerMock).awaitTermination(tested.stopTimeout, TimeUnit.MILLISECONDS);
 				Assert.assertEquals(0, SysinfoRiver.getRunningInstances().size());
 			}
 		} finally {
@@ -246,22 +794,18 @@ public class SysinfoRiverTest extends ESRealClientTestBase {
 				tested.closed = false;
 				tested.indexers.put("ch", indexerMock("ch", SysinfoType.CLUSTER_HEALTH));
 				tested.indexers.put("cs", indexerMock("cs", SysinfoType.CLUSTER_STATE));
-				List<Thread> t = new ArrayList<Thread>();
-				t.add(Mockito.mock(Thread.class));
-				t.add(Mockito.mock(Thread.class));
-				tested.indexerThreads.put("ch", t.get(0));
-				tested.indexerThreads.put("cs", t.get(1));
+				ScheduledExecutorService schedulerMock = Mockito.mock(ScheduledExecutorService.class);
+				tested.scheduler = schedulerMock;
 
 				tested.stop();
 				Assert.assertTrue(tested.closed);
-				Assert.assertEquals(0, tested.indexerThreads.size());
+				Assert.assertNull(tested.scheduler);
 				Mockito.verify(scMock).close();
 				for (SysinfoIndexer i : tested.indexers.values()) {
 					Mockito.verify(i).close();
 				}
-				for (Thread i : t) {
-					Mockito.verify(i).interrupt();
-				}
+				Mockito.verify(schedulerMock).shutdownNow();
+				Mockito.verify(schedulerMock).awaitTermination(tested.stopTimeout, TimeUnit.MILLISECONDS);
 				Assert.assertEquals(1, SysinfoRiver.getRunningInstances().size());
 			}
 		} finally {
@@ -269,6 +813,41 @@ public class SysinfoRiverTest extends ESRealClientTestBase {
 		}
 	}
 
+	@Test
+	public void stop_interruptsRunningIndexer() throws Exception {
+		SysinfoRiver tested = prepareRiverInstanceForTest(null);
+		SourceClient scMock = tested.sourceClient;
+		SysinfoRiver.clearRunningInstances();
+		try {
+			final CountDownLatch readStarted = new CountDownLatch(1);
+			Mockito.when(scMock.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null))).thenAnswer(new Answer<BytesReference>() {
+
+				@Override
+				public BytesReference answer(InvocationOnMock invocation) throws Throwable {
+					readStarted.countDown();
+					Thread.sleep(10000);
+					return new BytesArray("{}");
+				}
+			});
+			SysinfoIndexer indexer = new SysinfoIndexer("ch", scMock, tested.client);
+			indexer.infoType = SysinfoType.CLUSTER_HEALTH;
+			indexer.requestPlan = new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+			indexer.indexingPeriod = 10000;
+			tested.indexers.put("ch", indexer);
+			tested.start();
+			readStarted.await();
+
+			long start = System.currentTimeMillis();
+			tested.stop();
+			Assert.assertTrue(System.currentTimeMillis() - start < 500);
+			Assert.assertTrue(indexer.closed);
+			Assert.assertFalse(indexer.running);
+			Assert.assertNull(tested.scheduler);
+		} finally {
+			SysinfoRiver.clearRunningInstances();
+		}
+	}
+
 	@Test
 	public void reconfigure() throws Exception {
 
@@ -334,58 +913,106 @@ public class SysinfoRiverTest extends ESRealClientTestBase {
 		tested.indexers.put("ch", chi);
 		SysinfoIndexer csi = indexerMock("cs", SysinfoType.CLUSTER_HEALTH);
 		tested.indexers.put("cs", csi);
-		Thread cht = Mockito.mock(Thread.class);
-		Thread cst = Mockito.mock(Thread.class);
-		tested.indexerThreads.put("ch", cht);
-		tested.indexerThreads.put("cs", cst);
 		Assert.assertFalse(tested.changeIndexerPeriod(new String[] { "myIndexer" }, 1000));
 		Assert.assertFalse(tested.changeIndexerPeriod(new String[] { "myIndexer", "myIndexer2" }, 1000));
 		Mockito.verifyZeroInteractions(chi);
 		Mockito.verifyZeroInteractions(csi);
-		Mockito.verifyZeroInteractions(cht);
-		Mockito.verifyZeroInteractions(cst);
 
-		// case - one indexer found from two, increase, no thread restarted
-		Mockito.reset(chi, csi, cht, cst);
+		// case - one indexer found from two
+		Mockito.reset(chi, csi);
 		Assert.assertTrue(tested.changeIndexerPeriod(new String[] { "myIndexer", "ch" }, 4000));
-		Assert.assertEquals(4000, chi.indexingPeriod);
-		Mockito.verifyZeroInteractions(chi);
+		Mockito.verify(chi).changePeriod(4000);
+		Mockito.verifyNoMoreInteractions(chi);
 		Mockito.verifyZeroInteractions(csi);
-		Mockito.verifyZeroInteractions(cht);
-		Mockito.verifyZeroInteractions(cst);
 
-		// case - two indexers found, increase, no threads restarted
-		Mockito.reset(chi, csi, cht, cst);
+		// case - two indexers found
+		Mockito.reset(chi, csi);
 		Assert.assertTrue(tested.changeIndexerPeriod(new String[] { "cs", "ch" }, 5000));
-		Assert.assertEquals(5000, chi.indexingPeriod);
-		Assert.assertEquals(5000, csi.indexingPeriod);
-		Mockito.verifyZeroInteractions(chi);
-		Mockito.verifyZeroInteractions(csi);
-		Mockito.verifyZeroInteractions(cht);
-		Mockito.verifyZeroInteractions(cst);
-
-		// case - one indexer, decrease, thread restarted if old period is long
-		Mockito.reset(chi, csi, cht, cst);
-		Mockito.when(cht.getState()).thenReturn(State.TERMINATED);
-		Assert.assertTrue(tested.changeIndexerPeriod(new String[] { "ch" }, 2000));
-		Assert.assertEquals(2000, chi.indexingPeriod);
-		Assert.assertNotSame(cht, tested.indexerThreads.get("ch"));
-		Mockito.verify(chi).close();
-		Mockito.verify(cht).interrupt();
-		Mockito.verifyZeroInteractions(csi);
-		Mockito.verifyZeroInteractions(cst);
-		tested.indexerThreads.get("ch").interrupt();
-
-		// case - one indexer, decrease, thread restarted if old period is long
-		Mockito.reset(chi, csi, cht, cst);
-		Mockito.when(cht.getState()).thenReturn(State.TERMINATED);
-		Assert.assertTrue(tested.changeIndexerPeriod(new String[] { "ch" }, 1000));
-		Assert.assertEquals(1000, chi.indexingPeriod);
-		Mockito.verifyZeroInteractions(chi);
-		Mockito.verifyZeroInteractions(csi);
-		Mockito.verifyZeroInteractions(cht);
-		Mockito.verifyZeroInteractions(cst);
+		Mockito.verify(chi).changePeriod(5000);
+		Mockito.verify(csi).changePeriod(5000);
+
+		// case - period changed even if river lock is held by another thread
+		Mockito.reset(chi, csi);
+		final SysinfoRiver lockedRiver = tested;
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread t = new Thread() {
+			public void run() {
+				synchronized (lockedRiver) {
+					locked.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						// nothing to do
+					}
+				}
+			}
+		};
+		t.start();
+		locked.await();
+		try {
+			Assert.assertTrue(tested.changeIndexerPeriod(new String[] { "ch" }, 2000));
+			Mockito.verify(chi).changePeriod(2000);
+		} finally {
+			release.countDown();
+			t.join();
+		}
+
+	}
+
+	@Test
+	public void getStatistics() throws Exception {
+		SysinfoRiver tested = prepareRiverInstanceForTest(null);
+		tested.schedulerThreads = 3;
+		SysinfoIndexer chi = new SysinfoIndexer("ch", null, null);
+		chi.infoType = SysinfoType.CLUSTER_HEALTH;
+		tested.indexers.put("ch", chi);
+
+		Map<String, Object> stats = tested.getStatistics();
+		Assert.assertEquals(false, stats.get("running"));
+		Assert.assertEquals(3, stats.get("scheduler_threads"));
+		Map<?, ?> is = (Map<?, ?>) stats.get("indexers");
+		Assert.assertEquals(1, is.size());
+		Assert.assertEquals(chi.getStatistics(), is.get("ch"));
+		Assert.assertFalse(stats.containsKey("source"));
+
+		// case - statistics of source client
+		Map<String, Object> ss = new HashMap<String, Object>();
+		ss.put("requests", 1l);
+		tested.sourceClient = Mockito.mock(SourceClient.class);
+		Mockito.when(tested.sourceClient.getStatistics()).thenReturn(ss);
+		Assert.assertEquals(ss, tested.getStatistics().get("source"));
+		Assert.assertFalse(tested.getStatistics().containsKey("buffer_pool"));
+
+		// case - buffer pool used by rest connection
+		tested.bufferPool = new SysinfoBufferPool();
+		Assert.assertFalse(tested.getStatistics().containsKey("buffer_pool"));
+		tested.sourceClient = new SourceClientREST();
+		Assert.assertEquals(tested.bufferPool.getStatistics(), tested.getStatistics().get("buffer_pool"));
+	}
+
+	@Test
+	public void prepareCacheConnection() {
+		Map<String, Object> conn1 = new HashMap<String, Object>();
+		conn1.put("type", "rest");
+		conn1.put("urlBase", "http://test.org");
+		Map<String, Object> conn2 = new HashMap<String, Object>();
+		conn2.put("type", "REST");
+		conn2.put("urlBase", "http://test.org");
+
+		Assert.assertEquals("local", SysinfoRiver.prepareCacheConnection("local", conn1));
+		Assert.assertEquals(SysinfoRiver.prepareCacheConnection("rest", conn1),
+				SysinfoRiver.prepareCacheConnection("REST", conn2));
+		conn2.put("urlBase", "http://test2.org");
+		Assert.assertFalse(SysinfoRiver.prepareCacheConnection("rest", conn1).equals(
+				SysinfoRiver.prepareCacheConnection("rest", conn2)));
 
+		// case - asynchronous rest connection reads same cluster
+		conn2.put("urlBase", "http://test.org");
+		conn2.put("type", "rest_async");
+		conn2.put("io_threads", 4);
+		Assert.assertEquals(SysinfoRiver.prepareCacheConnection("rest", conn1),
+				SysinfoRiver.prepareCacheConnection("rest_async", conn2));
 	}
 
 	/**
@@ -418,7 +1045,9 @@ public class SysinfoRiverTest extends ESRealClientTestBase {
 		Client clientMock = mock(Client.class);
 		SysinfoRiver ret;
 		if (toplevelSettings != null) {
-			ret = new SysinfoRiver(new RiverName("sysinfo", RIVER_NAME), rs, clientMock);
+			ret = new SysinfoRiver(new RiverName("sysinfo", RIVER_NAME), rs, clientMock,
+					Mockito.mock(ClusterService.class), Mockito.mock(NodeService.class), new SysinfoResponseCache(),
+					new SysinfoBufferPool());
 		} else {
 			ret = new SysinfoRiver(new RiverName("sysinfo", RIVER_NAME), rs);
 			ret.client = clientMock;
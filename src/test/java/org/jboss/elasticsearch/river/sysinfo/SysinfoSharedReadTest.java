@@ -0,0 +1,84 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo;
+
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link SysinfoSharedRead}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SysinfoSharedReadTest {
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void complete_success() throws Exception {
+    SysinfoSharedRead tested = new SysinfoSharedRead();
+    ActionListener<BytesReference> l1 = Mockito.mock(ActionListener.class);
+    tested.addListener(l1);
+    Assert.assertTrue(tested.isReusable(Long.MAX_VALUE));
+
+    BytesReference value = new BytesArray("{}");
+    tested.complete(value, null);
+    Mockito.verify(l1).onResponse(value);
+    Assert.assertSame(value, tested.get());
+    Assert.assertTrue(tested.isReusable(tested.completedAt));
+    Assert.assertFalse(tested.isReusable(tested.completedAt + 1));
+
+    // case - listener added after completion is notified immediately
+    ActionListener<BytesReference> l2 = Mockito.mock(ActionListener.class);
+    tested.addListener(l2);
+    Mockito.verify(l2).onResponse(value);
+    Mockito.verify(l1).onResponse(value);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void complete_failure() throws Exception {
+    SysinfoSharedRead tested = new SysinfoSharedRead();
+    ActionListener<BytesReference> listener = Mockito.mock(ActionListener.class);
+    tested.addListener(listener);
+    IOException failure = new IOException("mocked");
+    tested.complete(null, failure);
+    Mockito.verify(listener).onFailure(failure);
+    Assert.assertFalse(tested.isReusable(0));
+    try {
+      tested.get();
+      Assert.fail("IOException must be thrown");
+    } catch (IOException e) {
+      Assert.assertSame(failure, e);
+    }
+
+    // case - other failures are wrapped
+    tested = new SysinfoSharedRead();
+    tested.complete(null, new IllegalStateException("mocked"));
+    try {
+      tested.get();
+      Assert.fail("IOException must be thrown");
+    } catch (IOException e) {
+      Assert.assertEquals("Shared read of information failed: mocked", e.getMessage());
+    }
+
+    tested = new SysinfoSharedRead();
+    tested.complete(null, new InterruptedException());
+    try {
+      tested.get();
+      Assert.fail("IOException must be thrown");
+    } catch (IOException e) {
+      Assert.assertEquals("Shared read of information interrupted", e.getMessage());
+    }
+  }
+
+}
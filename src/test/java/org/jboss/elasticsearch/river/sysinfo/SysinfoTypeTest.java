@@ -44,4 +44,11 @@ public class SysinfoTypeTest {
 
   }
 
+  @Test
+  public void getReadType() {
+    Assert.assertEquals(SysinfoType.CLUSTER_STATE, SysinfoType.CLUSTER_STATE.getReadType());
+    Assert.assertEquals(SysinfoType.CLUSTER_HEALTH, SysinfoType.CLUSTER_HEALTH.getReadType());
+    Assert.assertEquals(SysinfoType.CLUSTER_STATE, SysinfoType.CLUSTER_STATE_CHANGES.getReadType());
+  }
+
 }
@@ -5,6 +5,8 @@
  */
 package org.jboss.elasticsearch.river.sysinfo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -106,4 +108,12 @@ public class UtilsTest {
 		}
 	}
 
+	@Test
+	public void nodeStringArrayValue() {
+		Assert.assertNull(Utils.nodeStringArrayValue(null));
+		Assert.assertTrue(Arrays.equals(new String[] { "a" }, Utils.nodeStringArrayValue("a")));
+		Assert.assertTrue(Arrays.equals(new String[] { "a", "b" }, Utils.nodeStringArrayValue(Arrays.asList("a", "b"))));
+		Assert.assertEquals(0, Utils.nodeStringArrayValue(new ArrayList<String>()).length);
+	}
+
 }
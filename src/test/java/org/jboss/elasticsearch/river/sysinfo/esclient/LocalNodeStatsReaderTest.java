@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.esclient;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.node.service.NodeService;
+import org.jboss.elasticsearch.river.sysinfo.testtools.ESRealClientTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link LocalNodeStatsReader}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class LocalNodeStatsReaderTest extends ESRealClientTestBase {
+
+	@Test
+	public void supports() {
+		Assert.assertTrue(LocalNodeStatsReader.supports(null));
+
+		Map<String, String> params = new HashMap<String, String>();
+		Assert.assertTrue(LocalNodeStatsReader.supports(params));
+		params.put("metric", "jvm, thread_pool");
+		params.put("human", "true");
+		Assert.assertTrue(LocalNodeStatsReader.supports(params));
+		params.put("metric", "_all");
+		Assert.assertTrue(LocalNodeStatsReader.supports(params));
+
+		params.put("metric", "jvm,unknown");
+		Assert.assertFalse(LocalNodeStatsReader.supports(params));
+		params.put("metric", "jvm");
+		params.put("nodeId", "_local");
+		Assert.assertFalse(LocalNodeStatsReader.supports(params));
+	}
+
+	@Test
+	public void parseMetrics() {
+		Assert.assertEquals(LocalNodeStatsReader.DEFAULT_METRICS, LocalNodeStatsReader.parseMetrics(null));
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("metric", " ");
+		Assert.assertEquals(LocalNodeStatsReader.DEFAULT_METRICS, LocalNodeStatsReader.parseMetrics(params));
+		params.put("metric", "jvm,,fs");
+		Assert.assertEquals(2, LocalNodeStatsReader.parseMetrics(params).size());
+		params.put("metric", "jvm,_all");
+		Assert.assertEquals(LocalNodeStatsReader.METRICS, LocalNodeStatsReader.parseMetrics(params));
+		params.put("metric", "jvm,unknown");
+		Assert.assertNull(LocalNodeStatsReader.parseMetrics(params));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public synchronized void read() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+			LocalNodeStatsReader tested = new LocalNodeStatsReader(getNodeInstance(NodeService.class), client.settings());
+
+			// case - default metrics
+			Map<String, Object> info = XContentHelper.convertToMap(tested.read(new LocalRestRequest(null)), true).v2();
+			Assert.assertEquals("elasticsearch", info.get("cluster_name"));
+			Map<String, Object> nodes = (Map<String, Object>) info.get("nodes");
+			Assert.assertEquals(1, nodes.size());
+			Map<String, Object> node = (Map<String, Object>) nodes.values().iterator().next();
+			Assert.assertNotNull(node.get("name"));
+			Assert.assertNotNull(((Map<String, Object>) node.get("jvm")).get("mem"));
+			Assert.assertNotNull(((Map<String, Object>) node.get("jvm")).get("gc"));
+			Assert.assertNotNull(node.get("os"));
+			Assert.assertNotNull(node.get("process"));
+			Assert.assertNotNull(node.get("thread_pool"));
+			Assert.assertNull(node.get("indices"));
+			Assert.assertNull(node.get("fs"));
+
+			// case - narrowed metrics
+			Map<String, String> params = new HashMap<String, String>();
+			params.put("metric", "jvm");
+			info = XContentHelper.convertToMap(tested.read(new LocalRestRequest(params)), true).v2();
+			node = (Map<String, Object>) ((Map<String, Object>) info.get("nodes")).values().iterator().next();
+			Assert.assertNotNull(node.get("jvm"));
+			Assert.assertNull(node.get("os"));
+			Assert.assertNull(node.get("thread_pool"));
+
+			// case - indices stats read in-process too
+			params.put("metric", "indices");
+			info = XContentHelper.convertToMap(tested.read(new LocalRestRequest(params)), true).v2();
+			node = (Map<String, Object>) ((Map<String, Object>) info.get("nodes")).values().iterator().next();
+			Assert.assertNotNull(node.get("indices"));
+			Assert.assertNull(node.get("jvm"));
+
+			// case - unsupported metric
+			params.put("metric", "unknown");
+			try {
+				tested.read(new LocalRestRequest(params));
+				Assert.fail("IllegalArgumentException must be thrown");
+			} catch (IllegalArgumentException e) {
+				// OK
+			}
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+}
@@ -25,10 +25,12 @@ public class LocalRestChannelTest {
 
 		LocalRestRequest request = new LocalRestRequest(new HashMap<String, String>());
 		LocalRestChannel tested = new LocalRestChannel(request);
+		Assert.assertEquals(LocalRestChannel.DEFAULT_TIMEOUT, tested.timeout);
 
 		tested.sendResponse(new BytesRestResponse(RestStatus.OK, "text/plain", "result"));
 
 		Assert.assertEquals("result", tested.getResponseContent());
+		Assert.assertTrue(tested.getResponseFuture().isDone());
 
 	}
 
@@ -52,15 +54,46 @@ public class LocalRestChannelTest {
 	public void response_timeout() throws IOException, InterruptedException {
 
 		LocalRestRequest request = new LocalRestRequest(new HashMap<String, String>());
-		LocalRestChannel tested = new LocalRestChannel(request);
-		tested.TIMEOUT = 50;
+		LocalRestChannel tested = new LocalRestChannel(request, 50);
+		Assert.assertEquals(50, tested.timeout);
 
 		try {
 			tested.getResponseContent();
-			Assert.fail("IOException must be thrown");
-		} catch (IOException e) {
-			// OK
+			Assert.fail("LocalRequestTimeoutException must be thrown");
+		} catch (LocalRequestTimeoutException e) {
+			Assert.assertSame(tested.getResponseFuture(), e.getRequest());
+			Assert.assertFalse(e.getRequest().isDone());
 		}
+		Assert.assertTrue(tested.isTimedOut());
+		Assert.assertTrue(tested.getWaitTime() >= 50);
+
+		// case - response sent by handler after timeout is discarded
+		tested.sendResponse(new BytesRestResponse(RestStatus.OK, "text/plain", "result"));
+		Assert.assertNull(tested.response);
+		Assert.assertTrue(tested.getResponseFuture().isDone());
+	}
+
+	@Test
+	public void response_wakesUpWaitingThread() throws IOException, InterruptedException {
+
+		LocalRestRequest request = new LocalRestRequest(new HashMap<String, String>());
+		final LocalRestChannel tested = new LocalRestChannel(request);
+
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					return;
+				}
+				tested.sendResponse(new BytesRestResponse(RestStatus.OK, "text/plain", "result"));
+			}
+		}.start();
+
+		Assert.assertEquals("result", tested.getResponseContent());
+		Assert.assertFalse(tested.isTimedOut());
+		Assert.assertTrue(tested.getWaitTime() < 1000);
 	}
 
 }
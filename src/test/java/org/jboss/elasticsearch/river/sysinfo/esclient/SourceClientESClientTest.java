@@ -11,9 +11,16 @@ import java.util.Map;
 
 import junit.framework.Assert;
 
+import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.node.service.NodeService;
+import org.jboss.elasticsearch.river.sysinfo.SysinfoRequestPlan;
+import org.jboss.elasticsearch.river.sysinfo.SysinfoType;
 import org.jboss.elasticsearch.river.sysinfo.testtools.ESRealClientTestBase;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 /**
  * Unit test for {@link SourceClientESClient}.
@@ -29,7 +36,7 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 
 			SourceClientESClient tested = new SourceClientESClient(client);
 
-			String info = tested.readClusterStateInfo(null);
+			String info = tested.readClusterStateInfo(null).toUtf8();
 			System.out.println(info);
 			assertStartsWith("{\"cluster_name\":\"elasticsearch\",\"version\":2,\"master_node\":\"", info);
 
@@ -45,14 +52,14 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 
 			SourceClientESClient tested = new SourceClientESClient(client);
 
-			String info = tested.readClusterStatsInfo(null);
+			String info = tested.readClusterStatsInfo(null).toUtf8();
 			System.out.println(info);
 			assertContains(info, "\"cluster_name\":\"elasticsearch\",\"status\":\"green\",\"indices\":{\"count\":0,\"shards\":{},\"docs\":{\"count\":0,\"deleted\":0}");
 			assertContains(info, "\"nodes\":{\"count\":{\"total\":1");
 
 			Map<String, String> params = new HashMap<String, String>();
 			params.put("nodeId", "this_node_does_not_exists");
-			info = tested.readClusterStatsInfo(params);
+			info = tested.readClusterStatsInfo(params).toUtf8();
 			System.out.println(info);
 			assertContains(info, "\"nodes\":{\"count\":{\"total\":0");
 
@@ -68,7 +75,7 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 
 			SourceClientESClient tested = new SourceClientESClient(client);
 
-			String info = tested.readPendingClusterTasksInfo(null);
+			String info = tested.readPendingClusterTasksInfo(null).toUtf8();
 			System.out.println(info);
 			Assert.assertEquals("{\"tasks\":[]}", info);
 
@@ -84,7 +91,7 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 
 			SourceClientESClient tested = new SourceClientESClient(client);
 
-			String info = tested.readClusterHealthInfo(null);
+			String info = tested.readClusterHealthInfo(null).toUtf8();
 			System.out.println(info);
 			assertStartsWith("{\"cluster_name\":\"elasticsearch\",\"status\":", info);
 
@@ -100,7 +107,7 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 
 			SourceClientESClient tested = new SourceClientESClient(client);
 
-			String info = tested.readClusterNodesInfoInfo(null);
+			String info = tested.readClusterNodesInfoInfo(null).toUtf8();
 			System.out.println(info);
 			assertStartsWith("{\"cluster_name\":\"elasticsearch\",\"nodes\":{", info);
 
@@ -116,7 +123,7 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 
 			SourceClientESClient tested = new SourceClientESClient(client);
 
-			String info = tested.readClusterNodesStatsInfo(null);
+			String info = tested.readClusterNodesStatsInfo(null).toUtf8();
 			System.out.println(info);
 			assertStartsWith("{\"cluster_name\":\"elasticsearch\",\"nodes\":{", info);
 
@@ -125,6 +132,39 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 		}
 	}
 
+	@Test
+	public synchronized void readLocalNodeStatsInfo() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			// case - not available without node service
+			SourceClientESClient tested = new SourceClientESClient(client);
+			Assert.assertFalse(tested.supportsLocalNodeStats(null));
+			try {
+				tested.readLocalNodeStatsInfo(null);
+				Assert.fail("UnsupportedOperationException must be thrown");
+			} catch (UnsupportedOperationException e) {
+				// OK
+			}
+
+			tested = new SourceClientESClient(client, getNodeInstance(NodeService.class));
+			Assert.assertTrue(tested.supportsLocalNodeStats(null));
+			String info = tested.readLocalNodeStatsInfo(null).toUtf8();
+			assertStartsWith("{\"cluster_name\":\"elasticsearch\",\"nodes\":{", info);
+			assertContains(info, "\"heap_used_in_bytes\"");
+
+			Map<String, String> params = new HashMap<String, String>();
+			params.put("metric", "thread_pool");
+			info = tested.readSysinfoBytes(tested.prepareRequestPlan(SysinfoType.LOCAL_NODE_STATS, params)).toUtf8();
+			assertContains(info, "\"thread_pool\"");
+			Assert.assertFalse(info.contains("\"jvm\""));
+			Assert.assertEquals(2l, tested.getStatistics().get("direct_requests"));
+			Assert.assertEquals(0l, tested.getStatistics().get("requests"));
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
 	@Test
 	public synchronized void readIndicesStatusInfo() throws Exception {
 		try {
@@ -132,13 +172,13 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 
 			SourceClientESClient tested = new SourceClientESClient(client);
 
-			String info = tested.readIndicesStatusInfo(null);
+			String info = tested.readIndicesStatusInfo(null).toUtf8();
 			System.out.println(info);
 			assertStartsWith("{\"_shards\":{\"total\":0,\"successful\":0,\"failed\":0},\"indices\":{}}", info);
 
 			Map<String, String> params = new HashMap<String, String>();
 			params.put("index", "test");
-			info = tested.readIndicesStatusInfo(params);
+			info = tested.readIndicesStatusInfo(params).toUtf8();
 			Assert.fail("IOException must be thrown due missing index");
 		} catch (IOException e) {
 			Assert
@@ -157,7 +197,7 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 
 			SourceClientESClient tested = new SourceClientESClient(client);
 
-			String info = tested.readIndicesStatsInfo(null);
+			String info = tested.readIndicesStatsInfo(null).toUtf8();
 			System.out.println(info);
 			assertStartsWith(
 					"{\"_shards\":{\"total\":0,\"successful\":0,\"failed\":0},\"_all\":{\"primaries\":{},\"total\":{}},\"indices\":{}}",
@@ -165,7 +205,7 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 
 			Map<String, String> params = new HashMap<String, String>();
 			params.put("index", "test");
-			info = tested.readIndicesStatsInfo(params);
+			info = tested.readIndicesStatsInfo(params).toUtf8();
 			Assert.fail("IOException must be thrown due missing index");
 		} catch (IOException e) {
 			Assert
@@ -186,7 +226,7 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 
 			indexCreate("test_index");
 
-			String info = tested.readIndicesSegmentsInfo(null);
+			String info = tested.readIndicesSegmentsInfo(null).toUtf8();
 			System.out.println(info);
 			assertStartsWith("{\"_shards\":{\"total\":10,\"successful\":5,\"failed\":0},\"indices\":{\"test_index\":{\"",
 					info);
@@ -245,7 +285,7 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 
 			indexCreate("test_index");
 
-			String info = tested.readIndicesRecoveryInfo(null);
+			String info = tested.readIndicesRecoveryInfo(null).toUtf8();
 			System.out.println(info);
 			assertStartsWith("{\"test_index\":{\"shards\":[{\"id\":0,\"type\":\"GATEWAY\"", info);
 
@@ -254,6 +294,168 @@ public class SourceClientESClientTest extends ESRealClientTestBase {
 		}
 	}
 
+	@Test
+	public synchronized void readDirect_sameAsRestEmulation() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+			indexCreate("test_index");
+
+			SourceClientESClient tested = new SourceClientESClient(client);
+			SourceClientESClient emulated = new SourceClientESClient(client);
+			emulated.setDirect(false);
+
+			Map<String, String> params = new HashMap<String, String>();
+			Assert.assertEquals(emulated.readClusterStateInfo(params).toUtf8(),
+					tested.readClusterStateInfo(params).toUtf8());
+			Assert.assertEquals(emulated.readClusterNodesInfoInfo(params).toUtf8(),
+					tested.readClusterNodesInfoInfo(params).toUtf8());
+			Assert.assertEquals(emulated.readPendingClusterTasksInfo(params).toUtf8(),
+					tested.readPendingClusterTasksInfo(params).toUtf8());
+			params.put("level", "shards");
+			Assert.assertEquals(emulated.readClusterHealthInfo(params).toUtf8(),
+					tested.readClusterHealthInfo(params).toUtf8());
+			params.clear();
+			params.put("metric", "nodes,blocks");
+			Assert.assertEquals(emulated.readClusterStateInfo(params).toUtf8(),
+					tested.readClusterStateInfo(params).toUtf8());
+			params.clear();
+			params.put("nodeId", "jvm,os");
+			Assert.assertEquals(emulated.readClusterNodesInfoInfo(params).toUtf8(),
+					tested.readClusterNodesInfoInfo(params).toUtf8());
+			params.clear();
+			params.put("metric", "docs");
+			Assert.assertEquals(emulated.readIndicesStatsInfo(params).toUtf8(),
+					tested.readIndicesStatsInfo(params).toUtf8());
+
+			Assert.assertEquals(7l, tested.getStatistics().get("direct_requests"));
+			Assert.assertEquals(0l, tested.getStatistics().get("requests"));
+			Assert.assertEquals(0l, emulated.getStatistics().get("direct_requests"));
+			Assert.assertEquals(7l, emulated.getStatistics().get("requests"));
+
+			// case - unsupported param read over REST handler emulation
+			params.put("unknown", "value");
+			tested.readIndicesStatsInfo(params);
+			Assert.assertEquals(1l, tested.getStatistics().get("requests"));
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@Test
+	public synchronized void readSysinfoBytes_plan() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			SourceClientESClient tested = new SourceClientESClient(client);
+
+			Map<String, String> params = new HashMap<String, String>();
+			params.put("level", "indices");
+			SourceClientESClient.LocalRequestPlan plan = tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, params);
+			Assert.assertTrue(plan.typedRequestSupported);
+			Assert.assertEquals("indices", plan.request.param("level"));
+
+			// case - plan is reused for more reads
+			String info = tested.readSysinfoBytes(plan).toUtf8();
+			assertStartsWith("{\"cluster_name\":\"elasticsearch\",\"status\":\"green\"", info);
+			Assert.assertEquals(info, tested.readSysinfoBytes(plan).toUtf8());
+			Assert.assertEquals(2l, tested.getStatistics().get("direct_requests"));
+
+			// case - REST handler emulation reuses plan request
+			tested.setDirect(false);
+			Assert.assertEquals(info, tested.readSysinfoBytes(plan).toUtf8());
+			Assert.assertEquals(1l, tested.getStatistics().get("requests"));
+
+			// case - unsupported params are read over REST handler emulation only
+			params.put("unknown", "value");
+			Assert.assertFalse(tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, params).typedRequestSupported);
+			Assert.assertFalse(tested.prepareRequestPlan(SysinfoType.INDICES_STATUS, null).typedRequestSupported);
+
+			// case - plain plan read over type specific method
+			info = tested.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_HEALTH, null)).toUtf8();
+			assertStartsWith("{\"cluster_name\":\"elasticsearch\"", info);
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@Test
+	public synchronized void readSysinfoBytes_clusterState() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+			indexCreate("test_index");
+
+			SourceClientESClient tested = new SourceClientESClient(client);
+			ClusterState state = client.admin().cluster().prepareState().get().getState();
+
+			Map<String, String> params = new HashMap<String, String>();
+			params.put("level", "indices");
+			Assert.assertEquals(tested.readClusterHealthInfo(params).toUtf8(),
+					tested.readSysinfoBytes(tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, params), state).toUtf8());
+			Assert.assertEquals(tested.readClusterStateInfo(null).toUtf8(),
+					tested.readSysinfoBytes(tested.prepareRequestPlan(SysinfoType.CLUSTER_STATE, null), state).toUtf8());
+			params.clear();
+			params.put("metric", "nodes");
+			Assert.assertEquals(tested.readClusterStateInfo(params).toUtf8(),
+					tested.readSysinfoBytes(new SysinfoRequestPlan(SysinfoType.CLUSTER_STATE, params), state).toUtf8());
+
+			// case - missing index
+			params.clear();
+			params.put("index", "missing_index");
+			String info = tested.readSysinfoBytes(tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, params), state)
+					.toUtf8();
+			assertContains(info, "\"status\":\"red\"");
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@Test
+	public void readSysinfoBytes_abandonedRequest() throws Exception {
+		SourceClientESClient tested = new SourceClientESClient(Mockito.mock(Client.class));
+		SourceClientESClient.LocalRequestPlan plan = tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+		plan.setTimeout(100);
+		SourceClientESClient.LocalRequestPlan equalPlan = tested.prepareRequestPlan(SysinfoType.CLUSTER_HEALTH, null);
+		tested.typedRequestReader = Mockito.mock(TypedRequestReader.class);
+		PlainActionFuture<Object> abandoned = PlainActionFuture.newFuture();
+		Mockito.when(
+				tested.typedRequestReader.read(Mockito.any(Client.class), Mockito.eq(SysinfoType.CLUSTER_HEALTH),
+						Mockito.any(LocalRestRequest.class), Mockito.anyLong())).thenThrow(
+				new LocalRequestTimeoutException("timeout", abandoned));
+
+		// case - timeout, request is abandoned
+		try {
+			tested.readSysinfoBytes(plan);
+			Assert.fail("LocalRequestTimeoutException must be thrown");
+		} catch (LocalRequestTimeoutException e) {
+			// OK
+		}
+		Mockito.verify(tested.typedRequestReader).read(Mockito.any(Client.class), Mockito.eq(SysinfoType.CLUSTER_HEALTH),
+				Mockito.any(LocalRestRequest.class), Mockito.eq(100l));
+
+		// case - read skipped while abandoned request is processed by cluster, also for equal plan
+		try {
+			tested.readSysinfoBytes(equalPlan);
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			Assert.assertFalse(e instanceof LocalRequestTimeoutException);
+		}
+		Mockito.verify(tested.typedRequestReader, Mockito.times(1)).read(Mockito.any(Client.class),
+				Mockito.eq(SysinfoType.CLUSTER_HEALTH), Mockito.any(LocalRestRequest.class), Mockito.anyLong());
+
+		// case - read performed again when abandoned request is finished
+		abandoned.onResponse("done");
+		Mockito.reset(tested.typedRequestReader);
+		Mockito.when(
+				tested.typedRequestReader.read(Mockito.any(Client.class), Mockito.eq(SysinfoType.CLUSTER_HEALTH),
+						Mockito.any(LocalRestRequest.class), Mockito.anyLong())).thenReturn(new BytesArray("{}"));
+		Assert.assertEquals("{}", tested.readSysinfoBytes(plan).toUtf8());
+
+		Map<String, Object> stats = tested.getStatistics();
+		Assert.assertEquals(1l, stats.get("timeouts"));
+		Assert.assertEquals(0, stats.get("abandoned_requests"));
+		Assert.assertEquals(1l, stats.get("skipped_requests"));
+	}
+
 	protected void assertStartsWith(String expected, String actual) {
 		if (expected == null && actual == null)
 			return;
@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.esclient;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoRequest;
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsRequest;
+import org.elasticsearch.action.admin.indices.stats.CommonStatsFlags;
+import org.jboss.elasticsearch.river.sysinfo.SysinfoType;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link TypedRequestReader}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class TypedRequestReaderTest {
+
+	@Test
+	public void supports() {
+		TypedRequestReader tested = new TypedRequestReader(null);
+
+		Assert.assertTrue(tested.supports(SysinfoType.CLUSTER_HEALTH, null));
+		Assert.assertFalse(tested.supports(SysinfoType.INDICES_STATUS, null));
+
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("level", "shards");
+		params.put("pretty", "true");
+		Assert.assertTrue(tested.supports(SysinfoType.CLUSTER_HEALTH, params));
+		Assert.assertFalse(tested.supports(SysinfoType.CLUSTER_STATE, params));
+
+		params.put("unknown", "value");
+		Assert.assertFalse(tested.supports(SysinfoType.CLUSTER_HEALTH, params));
+	}
+
+	@Test
+	public void supportsClusterState() {
+		TypedRequestReader tested = new TypedRequestReader(null);
+
+		Assert.assertTrue(tested.supportsClusterState(SysinfoType.CLUSTER_HEALTH, null));
+		Assert.assertTrue(tested.supportsClusterState(SysinfoType.CLUSTER_STATE, null));
+		Assert.assertFalse(tested.supportsClusterState(SysinfoType.CLUSTER_NODES_STATS, null));
+
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("level", "shards");
+		params.put("index", "idx");
+		Assert.assertTrue(tested.supportsClusterState(SysinfoType.CLUSTER_HEALTH, params));
+		Assert.assertFalse(tested.supportsClusterState(SysinfoType.CLUSTER_STATE, params));
+
+		params.put("wait_for_status", "green");
+		Assert.assertFalse(tested.supportsClusterState(SysinfoType.CLUSTER_HEALTH, params));
+	}
+
+	@Test
+	public void nodesInfoRequest() {
+		TypedRequestReader tested = new TypedRequestReader(null);
+
+		NodesInfoRequest r = tested.nodesInfoRequest(new LocalRestRequest(null));
+		Assert.assertArrayEquals(new String[] { "_all" }, r.nodesIds());
+		Assert.assertTrue(r.jvm());
+		Assert.assertTrue(r.settings());
+
+		// case - metrics in nodeId param
+		r = tested.nodesInfoRequest(new LocalRestRequest(null).addParam("nodeId", "jvm,os"));
+		Assert.assertArrayEquals(new String[] { "_all" }, r.nodesIds());
+		Assert.assertTrue(r.jvm());
+		Assert.assertTrue(r.os());
+		Assert.assertFalse(r.settings());
+
+		// case - node ids and metrics
+		r = tested.nodesInfoRequest(new LocalRestRequest(null).addParam("nodeId", "node1").addParam("metrics", "http"));
+		Assert.assertArrayEquals(new String[] { "node1" }, r.nodesIds());
+		Assert.assertTrue(r.http());
+		Assert.assertFalse(r.jvm());
+	}
+
+	@Test
+	public void nodesStatsRequest() {
+		TypedRequestReader tested = new TypedRequestReader(null);
+
+		NodesStatsRequest r = tested.nodesStatsRequest(new LocalRestRequest(null));
+		Assert.assertTrue(r.jvm());
+		Assert.assertTrue(r.indices().isSet(CommonStatsFlags.Flag.Docs));
+
+		r = tested.nodesStatsRequest(new LocalRestRequest(null).addParam("metric", "jvm,indices").addParam("indexMetric",
+				"docs"));
+		Assert.assertTrue(r.jvm());
+		Assert.assertFalse(r.os());
+		Assert.assertTrue(r.indices().isSet(CommonStatsFlags.Flag.Docs));
+		Assert.assertFalse(r.indices().isSet(CommonStatsFlags.Flag.Store));
+	}
+
+}
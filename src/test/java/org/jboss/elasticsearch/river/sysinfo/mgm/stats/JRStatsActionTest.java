@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import org.elasticsearch.client.ClusterAdminClient;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link JRStatsAction}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class JRStatsActionTest {
+
+	@Test
+	public void constructor() {
+		Assert.assertEquals(JRStatsAction.NAME, JRStatsAction.INSTANCE.name());
+	}
+
+	@Test
+	public void newRequestBuilder() {
+		ClusterAdminClient client = Mockito.mock(ClusterAdminClient.class);
+
+		JRStatsRequestBuilder rb = JRStatsAction.INSTANCE.newRequestBuilder(client);
+		Assert.assertNotNull(rb);
+	}
+
+	@Test
+	public void newResponse() {
+		JRStatsResponse rb = JRStatsAction.INSTANCE.newResponse();
+		Assert.assertNotNull(rb);
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.ClusterAdminClient;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link JRStatsRequestBuilder}
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class JRStatsRequestBuilderTest {
+
+	@Test
+	public void test() {
+
+		ClusterAdminClient client = Mockito.mock(ClusterAdminClient.class);
+
+		{
+			JRStatsRequestBuilder tested = new JRStatsRequestBuilder(client);
+			Assert.assertNull(tested.request().getRiverName());
+
+			try {
+				tested.doExecute(null);
+				Assert.fail("IllegalArgumentException must be thrown");
+			} catch (IllegalArgumentException e) {
+				// OK
+			}
+		}
+
+		{
+			JRStatsRequestBuilder tested = new JRStatsRequestBuilder(client);
+			Assert.assertEquals(tested, tested.setRiverName("my river"));
+			Assert.assertEquals("my river", tested.request().getRiverName());
+			ActionListener<JRStatsResponse> al = new ActionListener<JRStatsResponse>() {
+
+				@Override
+				public void onResponse(JRStatsResponse response) {
+				}
+
+				@Override
+				public void onFailure(Throwable e) {
+				}
+			};
+			tested.doExecute(al);
+			Mockito.verify(client).execute(JRStatsAction.INSTANCE, tested.request(), al);
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import java.io.IOException;
+
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link JRStatsRequest}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class JRStatsRequestTest {
+
+	@Test
+	public void constructor_empty() {
+		JRStatsRequest tested = new JRStatsRequest();
+		Assert.assertNull(tested.getRiverName());
+		tested.setRiverName("myriver");
+		Assert.assertEquals("myriver", tested.getRiverName());
+	}
+
+	@Test
+	public void constructor_filling() {
+
+		try {
+			new JRStatsRequest(null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		JRStatsRequest tested = new JRStatsRequest("myriver");
+		Assert.assertEquals("myriver", tested.getRiverName());
+	}
+
+	@Test
+	public void serialization() throws IOException {
+		JRStatsRequest testedSrc = new JRStatsRequest("myriver");
+		BytesStreamOutput out = new BytesStreamOutput();
+		testedSrc.writeTo(out);
+		JRStatsRequest testedTarget = new JRStatsRequest();
+		testedTarget.readFrom(new BytesStreamInput(out.bytes()));
+		Assert.assertEquals("myriver", testedTarget.getRiverName());
+	}
+
+}
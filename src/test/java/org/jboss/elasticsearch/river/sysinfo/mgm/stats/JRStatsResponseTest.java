@@ -0,0 +1,58 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import java.io.IOException;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link JRStatsResponse}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class JRStatsResponseTest {
+
+	@Test
+	public void constructor_filling() {
+		ClusterName cn = new ClusterName("mycluster");
+
+		NodeJRStatsResponse[] nodes = new NodeJRStatsResponse[0];
+		JRStatsResponse tested = new JRStatsResponse(cn, nodes);
+
+		Assert.assertEquals(cn, tested.getClusterName());
+		Assert.assertEquals(nodes, tested.getNodes());
+	}
+
+	@Test
+	public void serialization() throws IOException {
+		ClusterName cn = new ClusterName("mycluster");
+
+		DiscoveryNode dn = new DiscoveryNode("aa", DummyTransportAddress.INSTANCE, Version.CURRENT);
+		DiscoveryNode dn2 = new DiscoveryNode("aa2", DummyTransportAddress.INSTANCE, Version.CURRENT);
+
+		NodeJRStatsResponse[] nodes = new NodeJRStatsResponse[] { new NodeJRStatsResponse(dn, false, null),
+				new NodeJRStatsResponse(dn2, true, null) };
+		JRStatsResponse testedSrc = new JRStatsResponse(cn, nodes);
+
+		BytesStreamOutput out = new BytesStreamOutput();
+		testedSrc.writeTo(out);
+		JRStatsResponse testedTarget = new JRStatsResponse();
+		testedTarget.readFrom(new BytesStreamInput(out.bytes()));
+
+		Assert.assertEquals(testedSrc.getClusterName(), testedTarget.getClusterName());
+		Assert.assertEquals(2, testedTarget.getNodes().length);
+		Assert.assertEquals("aa2", testedTarget.getSuccessNodeResponse().getNode().getId());
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import java.io.IOException;
+
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link NodeJRStatsRequest}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class NodeJRStatsRequestTest {
+
+	@Test
+	public void constructor() {
+
+		{
+			NodeJRStatsRequest tested = new NodeJRStatsRequest();
+			Assert.assertNull(tested.getRequest());
+		}
+
+		{
+			JRStatsRequest request = new JRStatsRequest();
+			NodeJRStatsRequest tested = new NodeJRStatsRequest("myNode", request);
+			Assert.assertEquals(request, tested.getRequest());
+		}
+
+	}
+
+	@Test
+	public void serialization() throws IOException {
+		JRStatsRequest request = new JRStatsRequest("my river");
+		NodeJRStatsRequest testedSrc = new NodeJRStatsRequest("myNode", request);
+		BytesStreamOutput out = new BytesStreamOutput();
+		testedSrc.writeTo(out);
+		NodeJRStatsRequest testedTarget = new NodeJRStatsRequest();
+		testedTarget.readFrom(new BytesStreamInput(out.bytes()));
+		Assert.assertEquals(testedSrc.getRequest().getRiverName(), testedTarget.getRequest().getRiverName());
+	}
+
+}
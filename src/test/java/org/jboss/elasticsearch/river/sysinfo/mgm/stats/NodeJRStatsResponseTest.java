@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link NodeJRStatsResponse}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class NodeJRStatsResponseTest {
+
+	DiscoveryNode dn = new DiscoveryNode("aa", DummyTransportAddress.INSTANCE, Version.CURRENT);
+
+	@Test
+	public void constructor() {
+		{
+			NodeJRStatsResponse tested = new NodeJRStatsResponse();
+			Assert.assertNull(tested.getNode());
+			Assert.assertFalse(tested.isRiverFound());
+			Assert.assertNull(tested.getStatistics());
+		}
+
+		{
+			NodeJRStatsResponse tested = new NodeJRStatsResponse(dn);
+			Assert.assertEquals(dn, tested.getNode());
+			Assert.assertFalse(tested.isRiverFound());
+			Assert.assertNull(tested.getStatistics());
+		}
+
+		{
+			Map<String, Object> stats = new HashMap<String, Object>();
+			NodeJRStatsResponse tested = new NodeJRStatsResponse(dn, true, stats);
+			Assert.assertEquals(dn, tested.getNode());
+			Assert.assertTrue(tested.isRiverFound());
+			Assert.assertEquals(stats, tested.getStatistics());
+		}
+	}
+
+	@Test
+	public void serialization() throws IOException {
+
+		{
+			NodeJRStatsResponse testedSrc = new NodeJRStatsResponse(dn, false, null);
+			NodeJRStatsResponse testedTarget = performSerializationAndBasicAsserts(testedSrc);
+			Assert.assertNull(testedTarget.getStatistics());
+		}
+		{
+			Map<String, Object> stats = new HashMap<String, Object>();
+			stats.put("running", true);
+			Map<String, Object> indexer = new HashMap<String, Object>();
+			indexer.put("overruns", 10l);
+			stats.put("indexers", indexer);
+			NodeJRStatsResponse testedSrc = new NodeJRStatsResponse(dn, true, stats);
+			NodeJRStatsResponse testedTarget = performSerializationAndBasicAsserts(testedSrc);
+			Assert.assertEquals(stats, testedTarget.getStatistics());
+		}
+
+	}
+
+	private NodeJRStatsResponse performSerializationAndBasicAsserts(NodeJRStatsResponse testedSrc) throws IOException {
+		BytesStreamOutput out = new BytesStreamOutput();
+		testedSrc.writeTo(out);
+		NodeJRStatsResponse testedTarget = new NodeJRStatsResponse();
+		testedTarget.readFrom(new BytesStreamInput(out.bytes()));
+		Assert.assertEquals(testedSrc.getNode().getId(), testedTarget.getNode().getId());
+		Assert.assertEquals(testedSrc.isRiverFound(), testedTarget.isRiverFound());
+		return testedTarget;
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.sysinfo.mgm.stats;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.Transport;
+import org.elasticsearch.transport.TransportService;
+import org.jboss.elasticsearch.river.sysinfo.IRiverMgm;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link TransportJRStatsAction}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class TransportJRStatsActionTest {
+
+	public static final ClusterName clusterName = new ClusterName("myCluster");
+
+	@Test
+	public void newRequest() {
+		TransportJRStatsAction tested = prepareTestedInstance(clusterName);
+		Assert.assertNotNull(tested.newRequest());
+	}
+
+	@Test
+	public void newNodeRequest() {
+		TransportJRStatsAction tested = prepareTestedInstance(clusterName);
+
+		{
+			Assert.assertNotNull(tested.newNodeRequest());
+		}
+
+		{
+			JRStatsRequest request = new JRStatsRequest();
+			NodeJRStatsRequest nodeReq = tested.newNodeRequest("myNodeId", request);
+			Assert.assertEquals(request, nodeReq.getRequest());
+		}
+	}
+
+	@Test
+	public void newNodeResponse() {
+		TransportJRStatsAction tested = prepareTestedInstance(clusterName);
+
+		NodeJRStatsResponse resp = tested.newNodeResponse();
+		Assert.assertNotNull(resp);
+		Assert.assertEquals(dn, resp.getNode());
+	}
+
+	@Test
+	public void newNodeResponseArray() {
+		TransportJRStatsAction tested = prepareTestedInstance(clusterName);
+		NodeJRStatsResponse[] array = tested.newNodeResponseArray(2);
+		Assert.assertNotNull(array);
+		Assert.assertEquals(2, array.length);
+	}
+
+	@Test
+	public void newResponse() {
+		TransportJRStatsAction tested = prepareTestedInstance(clusterName);
+
+		NodeJRStatsResponse[] array = new NodeJRStatsResponse[0];
+		JRStatsResponse resp = tested.newResponse(clusterName, array);
+		Assert.assertNotNull(resp);
+		Assert.assertEquals(resp.getClusterName(), clusterName);
+		Assert.assertArrayEquals(resp.getNodes(), array);
+	}
+
+	@Test
+	public void performOperationOnRiver() throws Exception {
+
+		TransportJRStatsAction tested = prepareTestedInstance(clusterName);
+
+		IRiverMgm river = Mockito.mock(IRiverMgm.class);
+		Map<String, Object> stats = new HashMap<String, Object>();
+		Mockito.when(river.getStatistics()).thenReturn(stats);
+
+		JRStatsRequest req = new JRStatsRequest("myriver");
+		NodeJRStatsResponse resp = tested.performOperationOnRiver(river, req, dn);
+		Assert.assertNotNull(resp);
+		Assert.assertTrue(resp.isRiverFound());
+		Assert.assertEquals(stats, resp.getStatistics());
+		Assert.assertEquals(dn, resp.getNode());
+		Mockito.verify(river).getStatistics();
+		Mockito.verifyNoMoreInteractions(river);
+	}
+
+	private static DiscoveryNode dn = new DiscoveryNode("aa", DummyTransportAddress.INSTANCE, Version.CURRENT);
+	private static ClusterService clusterService = Mockito.mock(ClusterService.class);
+	static {
+		Mockito.when(clusterService.localNode()).thenReturn(dn);
+	}
+
+	public static TransportJRStatsAction prepareTestedInstance(ClusterName clusterName) {
+		Settings settings = Mockito.mock(Settings.class);
+		ThreadPool threadPool = new ThreadPool("tp");
+		TransportService transportService = new TransportService(Mockito.mock(Transport.class), threadPool);
+		ActionFilters actionFilters = Mockito.mock(ActionFilters.class);
+		TransportJRStatsAction tested = new TransportJRStatsAction(settings, clusterName, threadPool, clusterService,
+				transportService, actionFilters);
+		return tested;
+	}
+}
@@ -15,6 +15,7 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.node.NodeBuilder;
+import org.elasticsearch.node.internal.InternalNode;
 
 /**
  * Base class for unit tests which need to run some test against ElasticSearch cluster. You can use next pattern in your
@@ -85,6 +86,16 @@ public abstract class ESRealClientTestBase {
 		}
 	}
 
+	/**
+	 * Get instance of service bound in in-memory ES node.
+	 * 
+	 * @param type of service
+	 * @return service instance
+	 */
+	public final <T> T getNodeInstance(Class<T> type) {
+		return ((InternalNode) node).injector().getInstance(type);
+	}
+
 	public final void finalizeESClientForUnitTest() {
 		if (client != null)
 			client.close();